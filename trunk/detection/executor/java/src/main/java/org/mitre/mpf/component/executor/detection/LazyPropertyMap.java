@@ -0,0 +1,72 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.component.executor.detection;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ForwardingMap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A mutable map that is not populated until one of its methods is called. Many of the properties in a detection
+ * request, like the detection properties of each location in a feed-forward track, are never looked at by the
+ * component, so there is no reason to build maps for them up front.
+ */
+class LazyPropertyMap extends ForwardingMap<String, String> {
+
+    private final Supplier<Map<String, String>> _delegate;
+
+    private LazyPropertyMap(Supplier<Map<String, String>> delegateSupplier) {
+        _delegate = Suppliers.memoize(delegateSupplier);
+    }
+
+
+    public static <T> Map<String, String> of(List<T> entries, Function<T, String> keyGetter,
+                                             Function<T, String> valueGetter) {
+        if (entries.isEmpty()) {
+            // An empty HashMap does not allocate its table until an entry is added.
+            return new HashMap<>();
+        }
+        return new LazyPropertyMap(() -> {
+            var map = new HashMap<String, String>(entries.size() * 4 / 3 + 1);
+            for (T entry : entries) {
+                map.put(keyGetter.apply(entry), valueGetter.apply(entry));
+            }
+            return map;
+        });
+    }
+
+
+    @Override
+    protected Map<String, String> delegate() {
+        return _delegate.get();
+    }
+}
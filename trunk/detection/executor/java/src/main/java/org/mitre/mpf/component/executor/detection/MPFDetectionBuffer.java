@@ -28,6 +28,8 @@ package org.mitre.mpf.component.executor.detection;
 
 import com.google.common.base.Joiner;
 import com.google.protobuf.InvalidProtocolBufferException;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.util.ByteSequence;
 import org.apache.commons.io.FilenameUtils;
 import org.mitre.mpf.component.api.detection.*;
 import org.mitre.mpf.wfm.buffers.AlgorithmPropertyProtocolBuffer.AlgorithmProperty;
@@ -37,6 +39,7 @@ import org.mitre.mpf.wfm.buffers.DetectionProtobuf.DetectionResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import java.util.*;
@@ -56,12 +59,35 @@ public class MPFDetectionBuffer {
         }
     }
 
-    public Map<String, String> copyProperties(List<DetectionProtobuf.PropertyMap> prop_map) {
-        Map<String, String> props = new HashMap<String, String>();
-        for (int i = 0; i < prop_map.size(); i++) {
-            props.put(prop_map.get(i).getKey(), prop_map.get(i).getValue());
+    public MPFDetectionBuffer(final BytesMessage message) throws InvalidProtocolBufferException, JMSException {
+        try {
+            detectionRequest = parseRequest(message);
+        } catch (InvalidProtocolBufferException e) {
+            LOG.error("Failed to parse the request protocol buffer.");
+            throw e;
+        }
+    }
+
+    private static DetectionRequest parseRequest(BytesMessage message)
+            throws InvalidProtocolBufferException, JMSException {
+        if (message instanceof ActiveMQBytesMessage) {
+            ActiveMQBytesMessage activeMqMessage = (ActiveMQBytesMessage) message;
+            ByteSequence content = activeMqMessage.getContent();
+            // When the message is compressed, the content must be inflated by readBytes.
+            if (content != null && !activeMqMessage.isCompressed()) {
+                // Parse directly from the message's buffer instead of copying the body in to a new array first.
+                return DetectionRequest.PARSER.parseFrom(content.getData(), content.getOffset(), content.getLength());
+            }
         }
-        return props;
+        byte[] requestBytes = new byte[(int) message.getBodyLength()];
+        message.readBytes(requestBytes);
+        return DetectionRequest.parseFrom(requestBytes);
+    }
+
+    // The returned map is not populated until it is first used.
+    public Map<String, String> copyProperties(List<DetectionProtobuf.PropertyMap> prop_map) {
+        return LazyPropertyMap.of(prop_map, DetectionProtobuf.PropertyMap::getKey,
+                                  DetectionProtobuf.PropertyMap::getValue);
     }
 
     public MPFMessageMetadata getMessageMetadata(Message message) throws JMSException {
@@ -70,11 +96,9 @@ public class MPFDetectionBuffer {
         MPFDataType dataType = translateProtobufDataType(detectionRequest.getDataType());
         long requestId = detectionRequest.getRequestId();
 
-        Map<String, String> algorithmProperties = new HashMap<String, String>();
-        for (int i = 0; i < detectionRequest.getAlgorithmPropertyList().size(); i++) {
-            AlgorithmProperty algProp = detectionRequest.getAlgorithmProperty(i);
-            algorithmProperties.put(algProp.getPropertyName(), algProp.getPropertyValue());
-        }
+        Map<String, String> algorithmProperties = LazyPropertyMap.of(
+                detectionRequest.getAlgorithmPropertyList(),
+                AlgorithmProperty::getPropertyName, AlgorithmProperty::getPropertyValue);
 
         Map<String, String> mediaProperties = copyProperties(detectionRequest.getMediaMetadataList());
 
@@ -237,8 +261,8 @@ public class MPFDetectionBuffer {
         audioResponseBuilder.setDetectionType(detectionType);
 
         if (!tracks.isEmpty()) {
-            LOG.debug("Number of audio tracks in detection response for job ID " +
-                    msgMetadata.getJobId() + " = " + tracks.size());
+            LOG.debug("Number of audio tracks in detection response for job ID {} = {}",
+                      msgMetadata.getJobId(), tracks.size());
 
             for (int i = 0; i < tracks.size(); i++) {
 
@@ -279,8 +303,8 @@ public class MPFDetectionBuffer {
         videoResponseBuilder.setDetectionType(detectionType);
 
         if (!tracks.isEmpty()) {
-            LOG.info("Number of video tracks in detection response for job ID " +
-                    msgMetadata.getJobId() + " = " + tracks.size());
+            LOG.info("Number of video tracks in detection response for job ID {} = {}",
+                     msgMetadata.getJobId(), tracks.size());
 
             for (int i = 0; i < tracks.size(); i++) {
                 Set<DetectionProtobuf.VideoTrack.FrameLocationMap> frameLocationMapSet = new HashSet<>();
@@ -307,7 +331,9 @@ public class MPFDetectionBuffer {
                         .addAllFrameLocations(frameLocationMapSet)
                         .build();
 
-                LOG.info("Detection properties: {}", Joiner.on(";").withKeyValueSeparator("=").join(tracks.get(i).getDetectionProperties()));
+                if (LOG.isInfoEnabled()) {
+                    LOG.info("Detection properties: {}", Joiner.on(";").withKeyValueSeparator("=").join(tracks.get(i).getDetectionProperties()));
+                }
             }
         }
 
@@ -334,8 +360,8 @@ public class MPFDetectionBuffer {
         imageResponseBuilder.setDetectionType(detectionType);
 
         if (!locations.isEmpty()) {
-            LOG.debug("Number of image locations in detection response for job ID " +
-                    msgMetadata.getJobId() + " = " + locations.size());
+            LOG.debug("Number of image locations in detection response for job ID {} = {}",
+                      msgMetadata.getJobId(), locations.size());
 
             for (int i = 0; i < locations.size(); i++) {
                 imageResponseBuilder.addImageLocations(DetectionProtobuf.ImageLocation.newBuilder()
@@ -373,8 +399,8 @@ public class MPFDetectionBuffer {
         genericResponseBuilder.setDetectionType(detectionType);
 
         if (!tracks.isEmpty()) {
-            LOG.debug("Number of generic tracks in detection response for job ID " +
-                    msgMetadata.getJobId() + " = " + tracks.size());
+            LOG.debug("Number of generic tracks in detection response for job ID {} = {}",
+                      msgMetadata.getJobId(), tracks.size());
 
             for (int i = 0; i < tracks.size(); i++) {
 
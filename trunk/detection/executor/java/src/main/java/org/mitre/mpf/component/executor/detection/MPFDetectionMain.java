@@ -28,6 +28,7 @@ package org.mitre.mpf.component.executor.detection;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.mitre.mpf.component.api.detection.MPFDetectionComponentBase;
+import org.mitre.mpf.component.api.detection.MPFDetectionComponentInterface;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.support.AbstractApplicationContext;
@@ -35,10 +36,9 @@ import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import javax.jms.*;
 import java.io.IOException;
-import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.joining;
@@ -62,7 +62,7 @@ public class MPFDetectionMain {
             throw exception;
         }
 
-        MPFDetectionComponentBase component = null;
+        List<MPFDetectionComponentBase> components = List.of();
         Connection connection = null;
         AtomicBoolean quitReceived = new AtomicBoolean(false);
 
@@ -70,13 +70,14 @@ public class MPFDetectionMain {
                      = new ClassPathXmlApplicationContext("applicationContext.xml")) {
             context.registerShutdownHook();
 
-            component = initializeComponent(context);
+            int consumerCount = getConsumerCount(System.getenv());
+            components = initializeComponents(context, consumerCount, isComponentPerConsumer(System.getenv()));
             connection = getConnection(getBrokerUri(args));
 
             startWatchingStandardIn(connection, quitReceived, Thread.currentThread());
 
             String queueName = args[0];
-            processMessages(connection, queueName, component);
+            processMessages(connection, queueName, getMediaTypeSelector(), components);
         }
         catch (JMSException e) {
             if (!quitReceived.get()) {
@@ -89,9 +90,10 @@ public class MPFDetectionMain {
             throw e;
         }
         finally {
-            if (component != null) {
-                component.close();
-            }
+            // In shared mode the same component instance appears in the list once per consumer.
+            components.stream()
+                    .distinct()
+                    .forEach(MPFDetectionComponentBase::close);
             if (connection != null) {
                 connection.close();
             }
@@ -99,29 +101,92 @@ public class MPFDetectionMain {
     }
 
 
-    private static void processMessages(Connection connection, String queueName, MPFDetectionComponentBase component)
-            throws JMSException {
-        Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+    /**
+     * Starts one consumer thread per element of components and blocks until all of them exit. Each consumer has its
+     * own transacted session, message consumer, and {@link MPFDetectionMessenger}. The same component instance may
+     * appear more than once in components, in which case it must be able to process multiple jobs concurrently.
+     * The consumers exit when the connection is closed. If any consumer fails, the connection is closed so that the
+     * others exit too, and the first failure is re-thrown.
+     */
+    static void processMessages(Connection connection, String queueName, Optional<String> mediaTypeSelector,
+                                List<? extends MPFDetectionComponentInterface> components) throws JMSException {
+        // By default, ActiveMQ sends up to 1000 messages to a consumer before they are requested. That would prevent
+        // the other consumers from receiving any of the messages that are already queued up.
+        String queueOptions = components.size() > 1 ? "?consumer.prefetchSize=1" : "";
+
+        var consumerThreads = new ArrayList<Thread>(components.size());
+        var consumerError = new AtomicReference<Exception>();
+        for (int i = 0; i < components.size(); i++) {
+            Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            MessageConsumer requestConsumer
+                    = createRequestConsumer(session, queueName + queueOptions, mediaTypeSelector);
+            var messenger = new MPFDetectionMessenger(components.get(i), session);
+
+            var thread = new Thread(
+                    () -> runConsumer(requestConsumer, messenger, connection, consumerError),
+                    "MessageConsumer-" + i);
+            consumerThreads.add(thread);
+        }
+        LOG.info("Starting {} message consumer(s) for queue: {}", consumerThreads.size(), queueName);
+        consumerThreads.forEach(Thread::start);
+
+        try {
+            for (Thread thread : consumerThreads) {
+                thread.join();
+            }
+        }
+        catch (InterruptedException e) {
+            LOG.info("Interrupted while waiting for the message consumers to exit.");
+            consumerThreads.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+            return;
+        }
 
-        Optional<String> mediaTypeSelector = getMediaTypeSelector();
-        MessageConsumer requestConsumer;
+        Exception error = consumerError.get();
+        if (error == null) {
+            LOG.info("Received null message indicating that the ActiveMQ connection was closed. Shutting down...");
+        }
+        else if (error instanceof JMSException) {
+            throw (JMSException) error;
+        }
+        else {
+            throw (RuntimeException) error;
+        }
+    }
+
+
+    private static MessageConsumer createRequestConsumer(Session session, String queue,
+                                                         Optional<String> mediaTypeSelector) throws JMSException {
         if (mediaTypeSelector.isPresent()) {
-            LOG.info("Creating ActiveMQ consumer for queue {} with selector: {}", queueName, mediaTypeSelector.get());
-            requestConsumer = session.createConsumer(session.createQueue(queueName), mediaTypeSelector.get());
+            LOG.info("Creating ActiveMQ consumer for queue {} with selector: {}", queue, mediaTypeSelector.get());
+            return session.createConsumer(session.createQueue(queue), mediaTypeSelector.get());
         }
         else {
-            LOG.info("Creating ActiveMQ consumer for queue: {}", queueName);
-            requestConsumer = session.createConsumer(session.createQueue(queueName));
+            LOG.info("Creating ActiveMQ consumer for queue: {}", queue);
+            return session.createConsumer(session.createQueue(queue));
         }
+    }
 
-        MPFDetectionMessenger messenger = new MPFDetectionMessenger(component, session);
 
-        Message message;
-        // Null message means the connection was closed.
-        while ((message = requestConsumer.receive()) != null) {
-            messenger.onMessage(message);
+    private static void runConsumer(MessageConsumer requestConsumer, MPFDetectionMessenger messenger,
+                                    Connection connection, AtomicReference<Exception> consumerError) {
+        try {
+            Message message;
+            // Null message means the connection was closed.
+            while ((message = requestConsumer.receive()) != null) {
+                messenger.onMessage(message);
+            }
+        }
+        catch (JMSException | RuntimeException e) {
+            if (consumerError.compareAndSet(null, e)) {
+                try {
+                    connection.close();
+                }
+                catch (JMSException closeException) {
+                    e.addSuppressed(closeException);
+                }
+            }
         }
-        LOG.info("Received null message indicating that the ActiveMQ connection was closed. Shutting down...");
     }
 
 
@@ -152,6 +217,37 @@ public class MPFDetectionMain {
                 : Optional.of(String.format("MediaType in (%s)", joinedTokens));
     }
 
+    public static final String CONSUMER_COUNT_ENV_NAME = "MPF_CONSUMER_COUNT";
+
+    public static int getConsumerCount(Map<String, String> environment) {
+        String envValue = environment.get(CONSUMER_COUNT_ENV_NAME);
+        if (envValue == null || envValue.isBlank()) {
+            return 1;
+        }
+        try {
+            int consumerCount = Integer.parseInt(envValue.strip());
+            if (consumerCount > 0) {
+                return consumerCount;
+            }
+        }
+        catch (NumberFormatException ignored) {
+            // Handled below.
+        }
+        throw new IllegalArgumentException(String.format(
+                "Expected the %s environment variable to be a positive integer, but it was \"%s\".",
+                CONSUMER_COUNT_ENV_NAME, envValue));
+    }
+
+
+    public static final String COMPONENT_PER_CONSUMER_ENV_NAME = "MPF_COMPONENT_PER_CONSUMER";
+
+    // When false, all of the consumers share one component instance, so the component must be thread-safe.
+    // When true, each consumer gets its own component instance.
+    public static boolean isComponentPerConsumer(Map<String, String> environment) {
+        return Boolean.parseBoolean(environment.getOrDefault(COMPONENT_PER_CONSUMER_ENV_NAME, "false").strip());
+    }
+
+
     private static final Set<String> VALID_MEDIA_TYPES = Set.of("VIDEO", "AUDIO", "IMAGE", "UNKNOWN");
 
     private static void validateMediaType(String mediaType) {
@@ -219,10 +315,30 @@ public class MPFDetectionMain {
     }
 
 
-    private static MPFDetectionComponentBase initializeComponent(AbstractApplicationContext context) {
-        MPFDetectionComponentBase component = context.getBean("component", MPFDetectionComponentBase.class);
-        LOG.info("Found component class {}", component.getClass().getName());
+    // Returns a list with one element per consumer.
+    private static List<MPFDetectionComponentBase> initializeComponents(
+            AbstractApplicationContext context, int consumerCount, boolean componentPerConsumer) {
+        MPFDetectionComponentBase firstComponent = initializeComponent(
+                context.getBean("component", MPFDetectionComponentBase.class));
+        LOG.info("Found component class {}", firstComponent.getClass().getName());
+        if (!componentPerConsumer) {
+            return Collections.nCopies(consumerCount, firstComponent);
+        }
+
+        var components = new ArrayList<MPFDetectionComponentBase>(consumerCount);
+        components.add(firstComponent);
+        while (components.size() < consumerCount) {
+            // Most components declare the "component" bean as a singleton, so getBean would keep returning the same
+            // instance.
+            MPFDetectionComponentBase component = context.isPrototype("component")
+                    ? context.getBean("component", MPFDetectionComponentBase.class)
+                    : context.getAutowireCapableBeanFactory().createBean(firstComponent.getClass());
+            components.add(initializeComponent(component));
+        }
+        return components;
+    }
 
+    private static MPFDetectionComponentBase initializeComponent(MPFDetectionComponentBase component) {
         component.setRunDirectory(System.getenv().getOrDefault("MPF_HOME", "/opt/mpf") + "/plugins");
         component.init();
         return component;
@@ -35,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import javax.jms.*;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -46,6 +47,10 @@ public class MPFDetectionMessenger {
 	private final MPFDetectionComponentInterface component;
 	private final Session session;
 
+	// Responses are almost always sent to the same destination, so the producers are created once and reused for
+	// the life of the session. Closing the session also closes the producers.
+	private final Map<Destination, MessageProducer> replyProducers = new HashMap<>();
+
     public MPFDetectionMessenger(MPFDetectionComponentInterface component, Session session) {
         this.component = component;
         this.session = session;
@@ -53,35 +58,34 @@ public class MPFDetectionMessenger {
 
     public void onMessage(Message message) {
 		try {
-            LOG.info("Detection request received with message length = " + ((BytesMessage) message).getBodyLength());
-
-			byte[] requestBytesMessage = new byte[(int) ((BytesMessage) message).getBodyLength()];
-            ((BytesMessage) message).readBytes(requestBytesMessage);
-			Map<String, Object> headerProperties = ProtoUtils.copyMsgProperties(message);
+            BytesMessage requestMessage = (BytesMessage) message;
+            LOG.info("Detection request received with message length = {}", requestMessage.getBodyLength());
 
-			MPFDetectionBuffer detectionBuffer = new MPFDetectionBuffer(requestBytesMessage);
+			MPFDetectionBuffer detectionBuffer = new MPFDetectionBuffer(requestMessage);
 			MPFMessageMetadata msgMetadata = detectionBuffer.getMessageMetadata(message);
             Destination out = message.getJMSReplyTo();
 
             if (msgMetadata != null) {
 
-                LOG.debug("requestId = " + msgMetadata.getRequestId() +
-                          " correlationId = " + msgMetadata.getCorrelationId() +
-                          " breadcrumbId = " + msgMetadata.getBreadcrumbId() +
-                          " splitSize = " + msgMetadata.getSplitSize() +
-                          " jobId = " + msgMetadata.getJobId() +
-                          " dataUri = " + msgMetadata.getDataUri() +
-                          " mediaId = " + msgMetadata.getMediaId() +
-                          " taskName = " + msgMetadata.getTaskName() +
-                          " taskIndex = " + msgMetadata.getTaskIndex() +
-                          " actionName = " + msgMetadata.getActionName() +
-                          " actionIndex = " + msgMetadata.getActionIndex() +
-                          " dataType = " + msgMetadata.getDataType() +
-                          " size of algorithmProperties = " + msgMetadata.getAlgorithmProperties().size() +
-						  " size of mediaProperties = " + msgMetadata.getMediaProperties().size());
-
-                LOG.info("Detection request received with job ID " + msgMetadata.getJobId() +
-                         " for media file " + msgMetadata.getDataUri());
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("requestId = " + msgMetadata.getRequestId() +
+                              " correlationId = " + msgMetadata.getCorrelationId() +
+                              " breadcrumbId = " + msgMetadata.getBreadcrumbId() +
+                              " splitSize = " + msgMetadata.getSplitSize() +
+                              " jobId = " + msgMetadata.getJobId() +
+                              " dataUri = " + msgMetadata.getDataUri() +
+                              " mediaId = " + msgMetadata.getMediaId() +
+                              " taskName = " + msgMetadata.getTaskName() +
+                              " taskIndex = " + msgMetadata.getTaskIndex() +
+                              " actionName = " + msgMetadata.getActionName() +
+                              " actionIndex = " + msgMetadata.getActionIndex() +
+                              " dataType = " + msgMetadata.getDataType() +
+                              " size of algorithmProperties = " + msgMetadata.getAlgorithmProperties().size() +
+                              " size of mediaProperties = " + msgMetadata.getMediaProperties().size());
+                }
+
+                LOG.info("Detection request received with job ID {} for media file {}",
+                         msgMetadata.getJobId(), msgMetadata.getDataUri());
 
 				String detectionType = component.getDetectionType();
 
@@ -171,24 +175,24 @@ public class MPFDetectionMessenger {
 						}
 					}
                     // for debugging purposes
-                    LOG.debug("Detection results for file " + msgMetadata.getDataUri() + ":\n" + responseBytes.toString());
+                    LOG.debug("Detection results for file {} are {} bytes.", msgMetadata.getDataUri(),
+                              responseBytes.length);
 
                     BytesMessage responseBytesMessage;
                     try {
                         responseBytesMessage = session.createBytesMessage();
                         responseBytesMessage.writeBytes(responseBytes);
-                        ProtoUtils.setMsgProperties(headerProperties, responseBytesMessage);
-	                    MessageProducer replyProducer = session.createProducer(out);
-                        replyProducer.send(responseBytesMessage);
+                        ProtoUtils.copyMsgProperties(message, responseBytesMessage);
+                        getReplyProducer(out).send(responseBytesMessage);
                         session.commit();
                         LOG.info("Detection response sent for job ID {}", msgMetadata.getJobId());
-                        LOG.debug(responseBytesMessage.toString());
+                        LOG.debug("{}", responseBytesMessage);
                     } catch (JMSException e) {
                         LOG.error("Failed to send detection response message due to exception: " + e.getMessage(), e);
                     }
 
                 } else {
-					LOG.error("Detection cannot be performed on the " + msgMetadata.getDataType() + " data type");
+					LOG.error("Detection cannot be performed on the {} data type", msgMetadata.getDataType());
 
 					DetectionProtobuf.DetectionResponse.Builder responseBuilder = DetectionProtobuf.DetectionResponse.newBuilder();
 					if (actAsPreprocessor(msgMetadata)) {
@@ -198,7 +202,7 @@ public class MPFDetectionMessenger {
 						buildUnsupportedMediaTypeResponse(msgMetadata, responseBuilder);
 					}
 
-					buildAndSend(responseBuilder.build(), message.getJMSReplyTo(), headerProperties);
+					buildAndSend(responseBuilder.build(), message.getJMSReplyTo(), message);
 				}
 
             } else {
@@ -211,20 +215,18 @@ public class MPFDetectionMessenger {
         }
     }
 
-	private void buildAndSend(DetectionProtobuf.DetectionResponse detectionResponse, Destination destination, Map<String, Object> headers) {
+	private void buildAndSend(DetectionProtobuf.DetectionResponse detectionResponse, Destination destination, Message request) {
 		try {
 			// Create a new response message and re-use the incoming headers.
 			BytesMessage response = session.createBytesMessage();
-			ProtoUtils.setMsgProperties(headers, response);
+			ProtoUtils.copyMsgProperties(request, response);
 
 			// Set the body of the message.
 			response.writeBytes(detectionResponse.toByteArray());
 
-			// Create a transacted producer, send the message, and close the producer.
-			MessageProducer producer = session.createProducer(destination);
-			producer.send(response);
+			// Send the message using the cached producer for the destination.
+			getReplyProducer(destination).send(response);
 			session.commit();
-			producer.close();
 
 			// Record the success.
 			LOG.debug("[Request #{}] Built and sent response. Error: {}.", detectionResponse.getRequestId(), detectionResponse.getError());
@@ -234,6 +236,15 @@ public class MPFDetectionMessenger {
 		}
 	}
 
+	private MessageProducer getReplyProducer(Destination destination) throws JMSException {
+		MessageProducer producer = replyProducers.get(destination);
+		if (producer == null) {
+			producer = session.createProducer(destination);
+			replyProducers.put(destination, producer);
+		}
+		return producer;
+	}
+
 	private boolean actAsPreprocessor(MPFMessageMetadata msgMetadata) {
 		if(msgMetadata.getAlgorithmProperties().containsKey(usePreprocessorPropertyName)) {
 			try {
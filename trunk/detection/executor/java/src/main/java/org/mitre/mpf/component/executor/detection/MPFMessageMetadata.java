@@ -153,18 +153,18 @@ public class MPFMessageMetadata {
 
         this.jobName = jobName;
 
-        //TODO:  may need to deep copy map depending on the types of properties it contains
+		// The maps are not copied because MPFDetectionBuffer creates new maps for each request. Copying them would
+		// also force the lazily populated maps to be built.
 	    if(algorithmProperties == null) {
 		    this.algorithmProperties = new HashMap<String, String>(); // Treat a null properties map as an empty map.
 	    } else {
-		    this.algorithmProperties = new HashMap<String, String>(algorithmProperties);
+		    this.algorithmProperties = algorithmProperties;
 	    }
 
-		//TODO:  may need to deep copy map depending on the types of properties it contains
 		if(mediaProperties == null) {
 			this.mediaProperties = new HashMap<String, String>(); // Treat a null properties map as an empty map.
 		} else {
-			this.mediaProperties = new HashMap<String, String>(mediaProperties);
+			this.mediaProperties = mediaProperties;
 		}
     }
 
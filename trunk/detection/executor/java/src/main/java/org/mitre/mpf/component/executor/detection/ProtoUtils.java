@@ -29,32 +29,18 @@ package org.mitre.mpf.component.executor.detection;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
 
 public class ProtoUtils {
 	
-    public static Map<String, Object> copyMsgProperties(Message src) throws JMSException {
-        Map<String, Object> objectProperties = new HashMap<String, Object>();
+    /**
+     * Copies all of the message properties from src to dest.
+     */
+    public static void copyMsgProperties(Message src, Message dest) throws JMSException {
         @SuppressWarnings("rawtypes")
         Enumeration e = src.getPropertyNames();
         while (e.hasMoreElements()) {
             String k = (String) e.nextElement();
-            objectProperties.put(k, src.getObjectProperty(k));
-        }
-        return objectProperties;
-    }
-
-    /**
-     * Sets message properties using the given mapping.
-     * 
-     * @param properties
-     * @param dsc
-     * @throws JMSException 
-     */
-    public static void setMsgProperties(Map<String, Object> properties, Message dsc) throws JMSException {
-        for (Map.Entry<String, Object> e : properties.entrySet()) {
-            dsc.setObjectProperty(e.getKey(), e.getValue());
+            dest.setObjectProperty(k, src.getObjectProperty(k));
         }
     }
 
@@ -0,0 +1,194 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.component.executor.detection;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.commons.io.FilenameUtils;
+import org.mitre.mpf.wfm.buffers.AlgorithmPropertyProtocolBuffer.AlgorithmProperty;
+import org.mitre.mpf.wfm.buffers.DetectionProtobuf;
+import org.mitre.mpf.wfm.buffers.DetectionProtobuf.DetectionRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the garbage created while decoding a detection request using the current approach with the previous
+ * approach. The previous approach copied the message body in to a new array, eagerly copied every property list in to
+ * a map, copied the maps again in MPFMessageMetadata, copied the JMS properties in to an intermediate map, and built
+ * the debug message even when debug logging was disabled. This is not run as part of the unit tests. To run it,
+ * execute the main method from an IDE or run:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.mitre.mpf.component.executor.detection.DetectionRequestDecodingBenchmark
+ * The main method enables the GC profiler, so the gc.alloc.rate.norm rows show the bytes allocated per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DetectionRequestDecodingBenchmark {
+
+    @Param({"10", "100"})
+    public int propertyCount;
+
+    private ActiveMQBytesMessage _request;
+
+
+    @Setup
+    public void setup() throws JMSException {
+        var requestBuilder = DetectionRequest.newBuilder()
+                .setRequestId(1)
+                .setDataUri("/opt/mpf/share/remote-media/video.mp4")
+                .setDataType(DetectionRequest.DataType.VIDEO)
+                .setMediaId(2)
+                .setTaskIndex(0)
+                .setActionIndex(0);
+        requestBuilder.getVideoRequestBuilder()
+                .setStartFrame(0)
+                .setStopFrame(499);
+        for (int i = 0; i < propertyCount; i++) {
+            requestBuilder.addAlgorithmProperty(AlgorithmProperty.newBuilder()
+                                                        .setPropertyName("ALGORITHM_PROPERTY_" + i)
+                                                        .setPropertyValue("value " + i));
+            requestBuilder.addMediaMetadata(DetectionProtobuf.PropertyMap.newBuilder()
+                                                    .setKey("MEDIA_PROPERTY_" + i)
+                                                    .setValue("value " + i));
+        }
+
+        _request = new ActiveMQBytesMessage();
+        _request.writeBytes(requestBuilder.build().toByteArray());
+        _request.setStringProperty("CorrelationId", "1-2-3");
+        _request.setStringProperty("breadcrumbId", "ID-host-1234");
+        _request.setIntProperty("SplitSize", 10);
+        _request.setLongProperty("JobId", 3);
+        _request.setLongProperty("MediaId", 2);
+        _request.setStringProperty("MediaType", "VIDEO");
+        _request.reset();
+    }
+
+
+    @Benchmark
+    public void currentDecode(Blackhole blackhole) throws Exception {
+        _request.reset();
+        var detectionBuffer = new MPFDetectionBuffer(_request);
+        MPFMessageMetadata metadata = detectionBuffer.getMessageMetadata(_request);
+        blackhole.consume(detectionBuffer.getVideoRequest());
+        blackhole.consume(metadata);
+
+        var response = new ActiveMQBytesMessage();
+        ProtoUtils.copyMsgProperties(_request, response);
+        blackhole.consume(response);
+    }
+
+
+    @Benchmark
+    public void previousDecode(Blackhole blackhole) throws Exception {
+        _request.reset();
+        byte[] requestBytes = new byte[(int) _request.getBodyLength()];
+        _request.readBytes(requestBytes);
+        Map<String, Object> headerProperties = copyMsgProperties(_request);
+
+        DetectionRequest detectionRequest = DetectionRequest.parseFrom(requestBytes);
+        var algorithmProperties = new HashMap<String, String>();
+        for (AlgorithmProperty property : detectionRequest.getAlgorithmPropertyList()) {
+            algorithmProperties.put(property.getPropertyName(), property.getPropertyValue());
+        }
+        var mediaProperties = new HashMap<String, String>();
+        for (DetectionProtobuf.PropertyMap property : detectionRequest.getMediaMetadataList()) {
+            mediaProperties.put(property.getKey(), property.getValue());
+        }
+        long jobId = _request.getLongProperty("JobId");
+        var metadata = new MPFMessageMetadata(
+                detectionRequest.getDataUri(),
+                MPFDetectionBuffer.translateProtobufDataType(detectionRequest.getDataType()),
+                detectionRequest.getMediaId(),
+                detectionRequest.getTaskName(), detectionRequest.getTaskIndex(),
+                detectionRequest.getActionName(), detectionRequest.getActionIndex(),
+                // MPFMessageMetadata used to copy both of the maps.
+                new HashMap<>(algorithmProperties), new HashMap<>(mediaProperties),
+                detectionRequest.getRequestId(),
+                _request.getStringProperty("CorrelationId"), _request.getStringProperty("breadcrumbId"),
+                _request.getIntProperty("SplitSize"), jobId,
+                "Job " + jobId + ":" + FilenameUtils.getName(detectionRequest.getDataUri()));
+        blackhole.consume(new MPFDetectionVideoRequest(detectionRequest.getVideoRequest().getStartFrame(),
+                                                       detectionRequest.getVideoRequest().getStopFrame()));
+
+        // The debug message was built even when debug logging was disabled.
+        blackhole.consume("requestId = " + metadata.getRequestId() +
+                          " correlationId = " + metadata.getCorrelationId() +
+                          " breadcrumbId = " + metadata.getBreadcrumbId() +
+                          " splitSize = " + metadata.getSplitSize() +
+                          " jobId = " + metadata.getJobId() +
+                          " dataUri = " + metadata.getDataUri() +
+                          " mediaId = " + metadata.getMediaId() +
+                          " taskName = " + metadata.getTaskName() +
+                          " taskIndex = " + metadata.getTaskIndex() +
+                          " actionName = " + metadata.getActionName() +
+                          " actionIndex = " + metadata.getActionIndex() +
+                          " dataType = " + metadata.getDataType() +
+                          " size of algorithmProperties = " + metadata.getAlgorithmProperties().size() +
+                          " size of mediaProperties = " + metadata.getMediaProperties().size());
+        blackhole.consume(metadata);
+
+        var response = new ActiveMQBytesMessage();
+        for (Map.Entry<String, Object> entry : headerProperties.entrySet()) {
+            response.setObjectProperty(entry.getKey(), entry.getValue());
+        }
+        blackhole.consume(response);
+    }
+
+
+    // ProtoUtils.copyMsgProperties as it was prior to copying the properties directly to the response.
+    private static Map<String, Object> copyMsgProperties(Message src) throws JMSException {
+        var properties = new HashMap<String, Object>();
+        Enumeration<?> names = src.getPropertyNames();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            properties.put(name, src.getObjectProperty(name));
+        }
+        return properties;
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(DetectionRequestDecodingBenchmark.class.getSimpleName())
+                           .addProfiler(GCProfiler.class)
+                           .build())
+                .run();
+    }
+}
@@ -0,0 +1,194 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.component.executor.detection;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.mitre.mpf.component.api.detection.MPFDetectionComponentInterface;
+import org.mitre.mpf.detection.test.JavaTestDetectionComponent;
+import org.mitre.mpf.wfm.buffers.DetectionProtobuf.DetectionRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.jms.*;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Measures how long it takes the Java component executor to process a batch of detection requests using the
+ * JavaTestDetection component and an embedded ActiveMQ broker. Compares a single consumer with multiple consumers
+ * that either share one component instance or each have their own. The JavaTestDetection component does almost no
+ * work, so this mostly measures the messaging overhead. This is not run as part of the unit tests. To run it, execute
+ * the main method from an IDE or run:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.mitre.mpf.component.executor.detection.JavaTestDetectionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JavaTestDetectionBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String REQUEST_QUEUE = "MPF.DETECTION_TEST_JAVA_REQUEST";
+
+    private static final String REPLY_QUEUE = "MPF.COMPLETED_DETECTIONS";
+
+    @Param({"1", "2", "4", "8"})
+    public int consumerCount;
+
+    @Param({"false", "true"})
+    public boolean componentPerConsumer;
+
+    private BrokerService _broker;
+
+    private Connection _executorConnection;
+
+    private Thread _executorThread;
+
+    // Set by the executor thread and re-thrown in tearDown, so that a failed executor fails the benchmark.
+    private volatile JMSException _executorError;
+
+    private Connection _clientConnection;
+
+    private Session _clientSession;
+
+    private MessageProducer _requestProducer;
+
+    private MessageConsumer _replyConsumer;
+
+    private Queue _replyQueue;
+
+
+    @Setup
+    public void setup() throws Exception {
+        _broker = new BrokerService();
+        _broker.setBrokerName("benchmark");
+        _broker.setPersistent(false);
+        _broker.setUseJmx(false);
+        _broker.start();
+        var connectionFactory = new ActiveMQConnectionFactory("vm://benchmark?create=false");
+
+        List<MPFDetectionComponentInterface> components;
+        if (componentPerConsumer) {
+            components = Stream.generate(JavaTestDetectionComponent::new)
+                    .limit(consumerCount)
+                    .collect(toList());
+        }
+        else {
+            components = Collections.nCopies(consumerCount, new JavaTestDetectionComponent());
+        }
+
+        _executorConnection = connectionFactory.createConnection();
+        _executorConnection.start();
+        _executorThread = new Thread(() -> {
+            try {
+                MPFDetectionMain.processMessages(_executorConnection, REQUEST_QUEUE, Optional.empty(), components);
+            }
+            catch (JMSException e) {
+                _executorError = e;
+            }
+        });
+        _executorThread.start();
+
+        _clientConnection = connectionFactory.createConnection();
+        _clientConnection.start();
+        _clientSession = _clientConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        _requestProducer = _clientSession.createProducer(_clientSession.createQueue(REQUEST_QUEUE));
+        _requestProducer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        _replyQueue = _clientSession.createQueue(REPLY_QUEUE);
+        _replyConsumer = _clientSession.createConsumer(_replyQueue);
+    }
+
+
+    @TearDown
+    public void tearDown() throws Exception {
+        _clientConnection.close();
+        _executorConnection.close();
+        _executorThread.join();
+        _broker.stop();
+        _broker.waitUntilStopped();
+        if (_executorError != null) {
+            throw _executorError;
+        }
+    }
+
+
+    @Benchmark
+    public int processBatch() throws JMSException {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            _requestProducer.send(createVideoRequest(i));
+        }
+        int replyCount = 0;
+        while (replyCount < BATCH_SIZE) {
+            if (_replyConsumer.receive(30_000) == null) {
+                throw new java.lang.IllegalStateException("Timed out waiting for detection responses.");
+            }
+            replyCount++;
+        }
+        return replyCount;
+    }
+
+
+    private BytesMessage createVideoRequest(long requestId) throws JMSException {
+        BytesMessage message = _clientSession.createBytesMessage();
+        message.writeBytes(DetectionRequest.newBuilder()
+                                   .setRequestId(requestId)
+                                   .setDataUri("/tmp/video.mp4")
+                                   .setDataType(DetectionRequest.DataType.VIDEO)
+                                   .setTaskIndex(0)
+                                   .setActionIndex(0)
+                                   .setVideoRequest(DetectionRequest.VideoRequest.newBuilder()
+                                                            .setStartFrame(0)
+                                                            .setStopFrame(99))
+                                   .build()
+                                   .toByteArray());
+        message.setStringProperty("CorrelationId", "benchmark");
+        message.setStringProperty("breadcrumbId", "benchmark");
+        message.setLongProperty("JobId", 1);
+        message.setIntProperty("SplitSize", BATCH_SIZE);
+        message.setJMSReplyTo(_replyQueue);
+        return message;
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(JavaTestDetectionBenchmark.class.getSimpleName())
+                           .build())
+                .run();
+    }
+}
@@ -0,0 +1,103 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.component.executor.detection;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.junit.Test;
+import org.mitre.mpf.component.api.detection.MPFDataType;
+import org.mitre.mpf.wfm.buffers.AlgorithmPropertyProtocolBuffer.AlgorithmProperty;
+import org.mitre.mpf.wfm.buffers.DetectionProtobuf;
+import org.mitre.mpf.wfm.buffers.DetectionProtobuf.DetectionRequest;
+
+import javax.jms.JMSException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestMPFDetectionBuffer {
+
+    @Test
+    public void canParseFromActiveMqMessageBuffer() throws Exception {
+        var message = createMessage();
+        var metadata = new MPFDetectionBuffer(message).getMessageMetadata(message);
+        assertMetadata(metadata);
+    }
+
+
+    @Test
+    public void propertyMapsAreMutable() throws Exception {
+        var message = createMessage();
+        var metadata = new MPFDetectionBuffer(message).getMessageMetadata(message);
+
+        metadata.getAlgorithmProperties().put("NEW", "VALUE");
+        assertEquals("VALUE", metadata.getAlgorithmProperties().get("NEW"));
+        assertEquals(3, metadata.getAlgorithmProperties().size());
+
+        metadata.getMediaProperties().remove("FPS");
+        assertTrue(metadata.getMediaProperties().isEmpty());
+    }
+
+
+    private static void assertMetadata(MPFMessageMetadata metadata) {
+        assertEquals(7, metadata.getRequestId());
+        assertEquals("/tmp/video.mp4", metadata.getDataUri());
+        assertEquals(MPFDataType.VIDEO, metadata.getDataType());
+        assertEquals(12, metadata.getJobId());
+        assertEquals(3, metadata.getSplitSize());
+        assertEquals("Job 12:video.mp4", metadata.getJobName());
+        assertEquals(Map.of("CONFIDENCE_THRESHOLD", "0.5", "MODEL", "test"), metadata.getAlgorithmProperties());
+        assertEquals(Map.of("FPS", "30"), metadata.getMediaProperties());
+    }
+
+
+    private static ActiveMQBytesMessage createMessage() throws JMSException {
+        var message = new ActiveMQBytesMessage();
+        message.writeBytes(DetectionRequest.newBuilder()
+                                   .setRequestId(7)
+                                   .setDataUri("/tmp/video.mp4")
+                                   .setDataType(DetectionRequest.DataType.VIDEO)
+                                   .setTaskIndex(0)
+                                   .setActionIndex(0)
+                                   .addAlgorithmProperty(AlgorithmProperty.newBuilder()
+                                                                 .setPropertyName("CONFIDENCE_THRESHOLD")
+                                                                 .setPropertyValue("0.5"))
+                                   .addAlgorithmProperty(AlgorithmProperty.newBuilder()
+                                                                 .setPropertyName("MODEL")
+                                                                 .setPropertyValue("test"))
+                                   .addMediaMetadata(DetectionProtobuf.PropertyMap.newBuilder()
+                                                             .setKey("FPS")
+                                                             .setValue("30"))
+                                   .build()
+                                   .toByteArray());
+        message.setLongProperty("JobId", 12);
+        message.setIntProperty("SplitSize", 3);
+        // Make the message read-only like it would be when it is received from the broker.
+        message.reset();
+        return message;
+    }
+}
@@ -27,12 +27,23 @@
 
 package org.mitre.mpf.component.executor.detection;
 
+import org.apache.activemq.ActiveMQConnectionFactory;
 import org.junit.Test;
+import org.mitre.mpf.component.api.detection.MPFDataType;
+import org.mitre.mpf.component.api.detection.MPFDetectionComponentInterface;
+import org.mitre.mpf.component.api.detection.MPFImageJob;
+import org.mitre.mpf.wfm.buffers.DetectionProtobuf.DetectionRequest;
 
+import javax.jms.*;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 public class TestMPFDetectionMain {
 
@@ -70,4 +81,100 @@ public class TestMPFDetectionMain {
     private static Map<String, String> restrictMediaTypeEnv(String envValue) {
         return Map.of(MPFDetectionMain.RESTRICT_MEDIA_TYPES_ENV_NAME, envValue);
     }
+
+
+    @Test
+    public void defaultsToSingleConsumer() {
+        assertEquals(1, MPFDetectionMain.getConsumerCount(Map.of()));
+        assertEquals(1, MPFDetectionMain.getConsumerCount(Map.of(MPFDetectionMain.CONSUMER_COUNT_ENV_NAME, " ")));
+        assertEquals(4, MPFDetectionMain.getConsumerCount(Map.of(MPFDetectionMain.CONSUMER_COUNT_ENV_NAME, " 4")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsWhenConsumerCountNotPositive() {
+        MPFDetectionMain.getConsumerCount(Map.of(MPFDetectionMain.CONSUMER_COUNT_ENV_NAME, "0"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsWhenConsumerCountNotInteger() {
+        MPFDetectionMain.getConsumerCount(Map.of(MPFDetectionMain.CONSUMER_COUNT_ENV_NAME, "many"));
+    }
+
+    @Test
+    public void sharesComponentByDefault() {
+        assertFalse(MPFDetectionMain.isComponentPerConsumer(Map.of()));
+        assertTrue(MPFDetectionMain.isComponentPerConsumer(
+                Map.of(MPFDetectionMain.COMPONENT_PER_CONSUMER_ENV_NAME, "TRUE")));
+    }
+
+
+    @Test(timeout = 30_000)
+    public void processesMessagesConcurrently() throws Exception {
+        int consumerCount = 3;
+        // Each call to getDetections blocks until all of the consumers are in getDetections at the same time.
+        var allConsumersActive = new CountDownLatch(consumerCount);
+        var component = mock(MPFDetectionComponentInterface.class);
+        when(component.supports(MPFDataType.IMAGE))
+                .thenReturn(true);
+        when(component.getDetectionType())
+                .thenReturn("TEST");
+        when(component.getDetections(any(MPFImageJob.class)))
+                .thenAnswer(inv -> {
+                    allConsumersActive.countDown();
+                    assertTrue(allConsumersActive.await(10, TimeUnit.SECONDS));
+                    return List.of();
+                });
+
+        var connectionFactory = new ActiveMQConnectionFactory(
+                "vm://processesMessagesConcurrently?broker.persistent=false&broker.useJmx=false");
+        Connection consumerConnection = connectionFactory.createConnection();
+        consumerConnection.start();
+        var consumerThread = new Thread(() -> {
+            try {
+                MPFDetectionMain.processMessages(consumerConnection, "REQUESTS", Optional.empty(),
+                                                 Collections.nCopies(consumerCount, component));
+            }
+            catch (JMSException e) {
+                throw new java.lang.IllegalStateException(e);
+            }
+        });
+        consumerThread.start();
+
+        try (Connection connection = connectionFactory.createConnection()) {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue replyQueue = session.createQueue("REPLIES");
+            MessageProducer producer = session.createProducer(session.createQueue("REQUESTS"));
+            for (int i = 0; i < consumerCount; i++) {
+                producer.send(createImageRequest(session, i, replyQueue));
+            }
+
+            MessageConsumer replyConsumer = session.createConsumer(replyQueue);
+            for (int i = 0; i < consumerCount; i++) {
+                assertNotNull(replyConsumer.receive(10_000));
+            }
+        }
+        finally {
+            consumerConnection.close();
+            consumerThread.join();
+        }
+    }
+
+
+    private static BytesMessage createImageRequest(Session session, long requestId, Destination replyTo)
+            throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(DetectionRequest.newBuilder()
+                                   .setRequestId(requestId)
+                                   .setDataUri("/tmp/image.jpg")
+                                   .setDataType(DetectionRequest.DataType.IMAGE)
+                                   .setTaskIndex(0)
+                                   .setActionIndex(0)
+                                   .build()
+                                   .toByteArray());
+        message.setLongProperty("JobId", 1);
+        message.setIntProperty("SplitSize", 1);
+        message.setJMSReplyTo(replyTo);
+        return message;
+    }
 }
@@ -0,0 +1,137 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.component.executor.detection;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mitre.mpf.component.api.detection.MPFDataType;
+import org.mitre.mpf.component.api.detection.MPFDetectionComponentInterface;
+import org.mitre.mpf.component.api.detection.MPFImageJob;
+import org.mitre.mpf.wfm.buffers.DetectionProtobuf.DetectionRequest;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.jms.*;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+public class TestMPFDetectionMessenger {
+
+    @Mock
+    private MPFDetectionComponentInterface _mockComponent;
+
+    @Mock
+    private Session _mockSession;
+
+    @Mock
+    private MessageProducer _mockProducer;
+
+    private MPFDetectionMessenger _messenger;
+
+
+    @Before
+    public void init() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(_mockComponent.supports(MPFDataType.IMAGE))
+                .thenReturn(true);
+        when(_mockComponent.getDetectionType())
+                .thenReturn("TEST");
+        when(_mockComponent.getDetections(any(MPFImageJob.class)))
+                .thenReturn(List.of());
+
+        when(_mockSession.createBytesMessage())
+                .thenAnswer(inv -> mock(BytesMessage.class));
+        when(_mockSession.createProducer(any()))
+                .thenReturn(_mockProducer);
+
+        _messenger = new MPFDetectionMessenger(_mockComponent, _mockSession);
+    }
+
+
+    @Test
+    public void reusesReplyProducer() throws JMSException {
+        Queue replyQueue = mock(Queue.class);
+        _messenger.onMessage(createImageRequest(1, replyQueue));
+        _messenger.onMessage(createImageRequest(2, replyQueue));
+        _messenger.onMessage(createImageRequest(3, replyQueue));
+
+        verify(_mockSession, times(1))
+                .createProducer(replyQueue);
+        verify(_mockProducer, times(3))
+                .send(any(Message.class));
+        verify(_mockSession, times(3))
+                .commit();
+        verify(_mockProducer, never())
+                .close();
+    }
+
+
+    @Test
+    public void createsProducerPerReplyDestination() throws JMSException {
+        Queue replyQueue1 = mock(Queue.class);
+        Queue replyQueue2 = mock(Queue.class);
+        _messenger.onMessage(createImageRequest(1, replyQueue1));
+        _messenger.onMessage(createImageRequest(2, replyQueue2));
+        _messenger.onMessage(createImageRequest(3, replyQueue1));
+
+        verify(_mockSession, times(1))
+                .createProducer(replyQueue1);
+        verify(_mockSession, times(1))
+                .createProducer(replyQueue2);
+    }
+
+
+    private static BytesMessage createImageRequest(long requestId, Destination replyTo) throws JMSException {
+        byte[] requestBytes = DetectionRequest.newBuilder()
+                .setRequestId(requestId)
+                .setDataUri("/tmp/image.jpg")
+                .setDataType(DetectionRequest.DataType.IMAGE)
+                .setTaskIndex(0)
+                .setActionIndex(0)
+                .build()
+                .toByteArray();
+
+        BytesMessage message = mock(BytesMessage.class);
+        when(message.getBodyLength())
+                .thenReturn((long) requestBytes.length);
+        when(message.readBytes(any(byte[].class)))
+                .thenAnswer(inv -> {
+                    byte[] dest = inv.getArgument(0);
+                    System.arraycopy(requestBytes, 0, dest, 0, requestBytes.length);
+                    return requestBytes.length;
+                });
+        when(message.getPropertyNames())
+                .thenReturn(Collections.emptyEnumeration());
+        when(message.getLongProperty("JobId"))
+                .thenReturn(5L);
+        when(message.getJMSReplyTo())
+                .thenReturn(replyTo);
+        return message;
+    }
+}
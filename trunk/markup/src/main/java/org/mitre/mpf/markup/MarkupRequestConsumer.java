@@ -30,6 +30,8 @@ import com.google.common.base.Stopwatch;
 import org.apache.commons.io.FileUtils;
 import org.mitre.mpf.videooverlay.BoundingBox;
 import org.mitre.mpf.videooverlay.BoundingBoxMap;
+import org.mitre.mpf.videooverlay.BoundingBoxTrack;
+import org.mitre.mpf.videooverlay.BoundingBoxTrackInterpolator;
 import org.mitre.mpf.videooverlay.BoundingBoxWriter;
 import org.mitre.mpf.wfm.buffers.Markup;
 import org.slf4j.Logger;
@@ -93,21 +95,24 @@ public class MarkupRequestConsumer implements MessageListener {
         writer.setSourceMedium(URI.create(markupRequest.getSourceUri()));
         writer.setDestinationMedium(URI.create(markupRequest.getDestinationUri()));
 
+        if (markupRequest.getTracksCount() > 0) {
+            // The boxes between keyframes are interpolated as each frame is written, rather than expanding every
+            // frame of every track up front.
+            List<BoundingBoxTrack> tracks = new ArrayList<>(markupRequest.getTracksCount());
+            for (Markup.BoundingBoxTrack track : markupRequest.getTracksList()) {
+                tracks.add(BoundingBoxTrack.fromProtocolBuffer(track));
+            }
+            log.info("[Markup Request #{}] Marking up {} tracks on '{}'.", markupRequest.getRequestId(), markupRequest.getTracksCount(), markupRequest.getDestinationUri());
+            writer.setBoundingBoxSource(new BoundingBoxTrackInterpolator(tracks));
+            writer.markupVideo();
+            return true;
+        }
+
         BoundingBoxMap map = new BoundingBoxMap();
         int boxesAdded = 0;
         for(Markup.BoundingBoxMapEntry boundingBoxMapEntry : markupRequest.getMapEntriesList()) {
-            BoundingBox boundingBox = new BoundingBox(
-                    boundingBoxMapEntry.getBoundingBox().getX(),
-                    boundingBoxMapEntry.getBoundingBox().getY(),
-                    boundingBoxMapEntry.getBoundingBox().getWidth(),
-                    boundingBoxMapEntry.getBoundingBox().getHeight(),
-                    boundingBoxMapEntry.getBoundingBox().getRotationDegrees(),
-                    boundingBoxMapEntry.getBoundingBox().getFlip(),
-                    boundingBoxMapEntry.getBoundingBox().getRed(),
-                    boundingBoxMapEntry.getBoundingBox().getGreen(),
-                    boundingBoxMapEntry.getBoundingBox().getBlue());
-
-            map.putOnFrame(boundingBoxMapEntry.getFrameNumber(), boundingBox);
+            map.putOnFrame(boundingBoxMapEntry.getFrameNumber(),
+                           BoundingBox.fromProtocolBuffer(boundingBoxMapEntry.getBoundingBox()));
             boxesAdded++;
         }
 
@@ -205,7 +210,7 @@ public class MarkupRequestConsumer implements MessageListener {
 	        }
 
 	        if(!markupResponseBuilder.getHasError()) {
-		        if (markupRequest.getMapEntriesCount() == 0) {
+		        if (markupRequest.getMapEntriesCount() == 0 && markupRequest.getTracksCount() == 0) {
 			        try {
 				        FileUtils.copyFile(
 						        new File(URI.create(markupRequest.getSourceUri())),
@@ -29,9 +29,12 @@ package org.mitre.mpf.nms;
 import org.apache.commons.lang3.tuple.Pair;
 import org.jgroups.Address;
 import org.jgroups.JChannel;
+import org.jgroups.Message;
 import org.jgroups.Receiver;
 import org.jgroups.View;
+import org.jgroups.util.Util;
 import org.mitre.mpf.nms.util.PropertiesUtil;
+import org.mitre.mpf.wfm.buffers.NodeManagerProtobuf.ClusterStateUpdate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -103,6 +106,24 @@ public class ChannelNode {
         send(null, object);
     }
 
+    /**
+     * Sends the protobuf encoded update instead of using Java serialization.
+     * @param address : destination address or null for broadcast
+     * @param update : changes to send
+     */
+    public void sendStateUpdate(Address address, ClusterStateUpdate update) {
+        try {
+            // Util.objectToByteBuffer adds a one byte type marker, so receivers can still use Message.getObject().
+            channel.send(new Message(address, Util.objectToByteBuffer(update.toByteArray())));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void broadcastStateUpdate(ClusterStateUpdate update) {
+        sendStateUpdate(null, update);
+    }
+
     public Address getAddress() {
         return channel.getAddress();
     }
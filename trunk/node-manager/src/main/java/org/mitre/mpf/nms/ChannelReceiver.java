@@ -25,18 +25,20 @@
  ******************************************************************************/
 package org.mitre.mpf.nms;
 
+import com.google.protobuf.InvalidProtocolBufferException;
 import org.apache.commons.lang3.tuple.Pair;
 import org.jgroups.Address;
 import org.jgroups.Message;
 import org.jgroups.ReceiverAdapter;
 import org.jgroups.View;
 import org.mitre.mpf.nms.util.PropertiesUtil;
+import org.mitre.mpf.wfm.buffers.NodeManagerProtobuf.ClusterStateUpdate;
+import org.mitre.mpf.wfm.buffers.NodeManagerProtobuf.NodeStateChange;
+import org.mitre.mpf.wfm.buffers.NodeManagerProtobuf.ServiceStateChange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Controller;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.*;
@@ -60,6 +62,10 @@ public abstract class ChannelReceiver extends ReceiverAdapter {
     // key is target (logical) host name: mpf1
     private final Map<String, NodeDescriptor> nodeTable = new ConcurrentHashMap<>();
 
+    // Changes for services whose configuration has not arrived yet. Since there is no ordering between messages from
+    // different senders, a node manager's response to a request can arrive before the master's configuration message.
+    private final Map<String, ServiceStateChange> pendingServiceChanges = new HashMap<>();
+
     private ClusterChangeNotifier notifier;          // For callbacks when changing node states
 
 
@@ -88,12 +94,18 @@ public abstract class ChannelReceiver extends ReceiverAdapter {
     public void getState(OutputStream output) throws Exception {
         LOG.debug("Responding to cluster state request");
 
+        ClusterStateUpdate.Builder state = ClusterStateUpdate.newBuilder();
         synchronized (serviceTable) {
-            org.jgroups.util.Util.objectToStream(serviceTable, new DataOutputStream(output));
+            for (ServiceDescriptor service : serviceTable.values()) {
+                state.addServiceChanges(ClusterStateCodec.toServiceChange(service, true));
+            }
         }
         synchronized (nodeTable) {
-            org.jgroups.util.Util.objectToStream(nodeTable, new DataOutputStream(output));
+            for (NodeDescriptor node : nodeTable.values()) {
+                state.addNodeChanges(ClusterStateCodec.toNodeChange(node));
+            }
         }
+        state.build().writeDelimitedTo(output);
     }
 
     /**
@@ -106,15 +118,21 @@ public abstract class ChannelReceiver extends ReceiverAdapter {
     public void setState(InputStream input) throws Exception {
         LOG.debug("Setting cluster state");
 
+        ClusterStateUpdate state = ClusterStateUpdate.parseDelimitedFrom(input);
         synchronized (serviceTable) {
-            Map newMap = (Map) org.jgroups.util.Util.objectFromStream(new DataInputStream(input));
             serviceTable.clear();
-            serviceTable.putAll(newMap);
+            pendingServiceChanges.clear();
+            for (ServiceStateChange change : state.getServiceChangesList()) {
+                serviceTable.put(change.getName(), ClusterStateCodec.toServiceDescriptor(change));
+            }
         }
         synchronized (nodeTable) {
-            Map newMap = (Map) org.jgroups.util.Util.objectFromStream(new DataInputStream(input));
             nodeTable.clear();
-            nodeTable.putAll(newMap);
+            for (NodeStateChange change : state.getNodeChangesList()) {
+                NodeDescriptor node = new NodeDescriptor(change.getHostname());
+                ClusterStateCodec.applyState(change, node);
+                nodeTable.put(change.getHostname(), node);
+            }
         }
     }
 
@@ -220,7 +238,126 @@ public abstract class ChannelReceiver extends ReceiverAdapter {
 
 
     @Override
-    public abstract void receive(Message msg);
+    public void receive(Message msg) {
+        Object obj = msg.getObject();
+        Address sender = msg.getSrc();
+        if (!(obj instanceof byte[])) {
+            receiveObject(obj, sender);
+            return;
+        }
+
+        ClusterStateUpdate update;
+        try {
+            update = ClusterStateUpdate.parseFrom((byte[]) obj);
+        }
+        catch (InvalidProtocolBufferException e) {
+            LOG.error("Received an invalid cluster state update from " + sender, e);
+            return;
+        }
+
+        for (ServiceStateChange change : update.getServiceChangesList()) {
+            ServiceDescriptor service = applyServiceChange(change);
+            if (service != null) {
+                serviceStateChanged(service, sender);
+            }
+        }
+        for (NodeStateChange change : update.getNodeChangesList()) {
+            NodeDescriptor node = applyNodeChange(change);
+            if (node != null) {
+                nodeStateChanged(node, sender);
+            }
+        }
+    }
+
+    /**
+     * Handles messages other than service and node state changes.
+     */
+    protected abstract void receiveObject(Object obj, Address sender);
+
+    /**
+     * Called after a service state change has been applied to the service table.
+     */
+    protected abstract void serviceStateChanged(ServiceDescriptor service, Address sender);
+
+    /**
+     * Called after a node state change has been applied to the node table.
+     */
+    protected abstract void nodeStateChanged(NodeDescriptor node, Address sender);
+
+
+    /**
+     * Updates the service table with the change.
+     *
+     * @return the updated descriptor from the service table, or null if the change was ignored.
+     */
+    ServiceDescriptor applyServiceChange(ServiceStateChange change) {
+        String name = change.getName();
+        synchronized (serviceTable) {
+            ServiceDescriptor tableService = serviceTable.get(name);
+            if (tableService != null && change.getVersion() < tableService.getVersion()) {
+                LOG.debug("Ignoring version {} of service '{}' because version {} has already been received.",
+                          change.getVersion(), name, tableService.getVersion());
+                return null;
+            }
+
+            NodeManagerConstants.States newState = ClusterStateCodec.fromProtobuf(change.getState());
+            // Two nodes can send the same version when they both change the service at the same time. For example,
+            // a fast node manager can act on the master's request and respond before other observers see the
+            // original request. In that case don't permit the state to go backwards.
+            if (tableService != null
+                    && change.getVersion() == tableService.getVersion()
+                    && tableService.getLastKnownState().ordinal() - newState.ordinal() == 1) {
+                LOG.warn("Fast node: the state of the service '{}' changed too fast!. Went from '{}' to '{}' with ordinal difference of '{}'",
+                         name, tableService.getLastKnownState(), newState,
+                         tableService.getLastKnownState().ordinal() - newState.ordinal());
+                return null;
+            }
+
+            if (change.hasConfig()) {
+                tableService = ClusterStateCodec.toServiceDescriptor(change);
+                serviceTable.put(name, tableService);
+            }
+            else if (tableService == null) {
+                LOG.debug("Received version {} of service '{}' before its configuration.", change.getVersion(), name);
+                pendingServiceChanges.merge(name, change,
+                                            (c1, c2) -> c1.getVersion() >= c2.getVersion() ? c1 : c2);
+                return null;
+            }
+            else {
+                ClusterStateCodec.applyState(change, tableService);
+            }
+
+            ServiceStateChange pendingChange = pendingServiceChanges.remove(name);
+            if (pendingChange != null && pendingChange.getVersion() > tableService.getVersion()) {
+                ClusterStateCodec.applyState(pendingChange, tableService);
+            }
+            return tableService;
+        }
+    }
+
+
+    /**
+     * Updates the node table with the change.
+     *
+     * @return the updated descriptor from the node table, or null if the change was ignored.
+     */
+    NodeDescriptor applyNodeChange(NodeStateChange change) {
+        String hostname = change.getHostname();
+        synchronized (nodeTable) {
+            NodeDescriptor tableNode = nodeTable.get(hostname);
+            if (tableNode == null) {
+                tableNode = new NodeDescriptor(hostname);
+                nodeTable.put(hostname, tableNode);
+            }
+            else if (change.getVersion() < tableNode.getVersion()) {
+                LOG.debug("Ignoring version {} of node '{}' because version {} has already been received.",
+                          change.getVersion(), hostname, tableNode.getVersion());
+                return null;
+            }
+            ClusterStateCodec.applyState(change, tableNode);
+            return tableNode;
+        }
+    }
 
 
     /**
@@ -267,19 +404,49 @@ public abstract class ChannelReceiver extends ReceiverAdapter {
 
 
     protected void updateState(ServiceDescriptor service, NodeManagerConstants.States status) {
-        service.setLastKnownState(status);
-        msgChannel.broadcast(new ServiceStatusUpdate(service));
+        msgChannel.broadcastStateUpdate(createServiceUpdate(service, status));
     }
 
     protected void updateState(Address address, ServiceDescriptor service, NodeManagerConstants.States status) {
-        service.setLastKnownState(status);
-        msgChannel.send(address, new ServiceStatusUpdate(service));
+        msgChannel.sendStateUpdate(address, createServiceUpdate(service, status));
     }
 
 
     protected void updateState(NodeDescriptor nodeDesc, NodeManagerConstants.States status) {
         nodeDesc.setLastKnownState(status);
-        msgChannel.broadcast(new NodeStatusUpdate(nodeDesc));
+        NodeDescriptor tableNode = nodeTable.get(nodeDesc.getHostname());
+        long currentVersion = tableNode == null ? 0 : tableNode.getVersion();
+        nodeDesc.setVersion(Math.max(nodeDesc.getVersion(), currentVersion) + 1);
+
+        msgChannel.broadcastStateUpdate(ClusterStateUpdate.newBuilder()
+                                                .addNodeChanges(ClusterStateCodec.toNodeChange(nodeDesc))
+                                                .build());
+    }
+
+
+    /**
+     * The service's configuration is only included when it is not already in the service table, or when the
+     * service table has a different configuration. Every member of the channel has the same configuration
+     * because they either received it in an earlier update or in the state transfer when they joined.
+     */
+    ClusterStateUpdate createServiceUpdate(ServiceDescriptor service, NodeManagerConstants.States status) {
+        service.setLastKnownState(status);
+        ServiceDescriptor tableService = serviceTable.get(service.getName());
+        boolean includeConfig;
+        if (tableService == null) {
+            includeConfig = true;
+            service.setVersion(service.getVersion() + 1);
+        }
+        else {
+            includeConfig = tableService != service
+                    && !ClusterStateCodec.toServiceConfig(tableService).equals(
+                            ClusterStateCodec.toServiceConfig(service));
+            service.setVersion(Math.max(service.getVersion(), tableService.getVersion()) + 1);
+        }
+
+        return ClusterStateUpdate.newBuilder()
+                .addServiceChanges(ClusterStateCodec.toServiceChange(service, includeConfig))
+                .build();
     }
 
 
@@ -27,7 +27,6 @@
 package org.mitre.mpf.nms;
 
 import org.jgroups.Address;
-import org.jgroups.Message;
 import org.mitre.mpf.nms.streaming.messages.StreamingJobMessage;
 import org.mitre.mpf.nms.streaming.ChildStreamingJobManager;
 import org.mitre.mpf.nms.util.PropertiesUtil;
@@ -65,86 +64,59 @@ public class ChildNodeStateManager extends ChannelReceiver {
 
 
     @Override
-    public void receive(Message msg) {
-        Object obj = msg.getObject();   // actual payload, we'll figure out what it is in a sec
-        Address sender = msg.getSrc();  // handle so we can send a response back (if desired)
-
-        //log.info("Received message from {}", sender);
+    protected void receiveObject(Object obj, Address sender) {
 	    if (obj instanceof StreamingJobMessage) {
 	       streamingJobManager.handle((StreamingJobMessage) obj);
         }
-        else if (obj instanceof ServiceStatusUpdate) {
-            LOG.debug("Received a ServiceStatusUpdate from {}", sender);
-            ServiceStatusUpdate ssu = (ServiceStatusUpdate) obj;
-            ServiceDescriptor sd = ssu.getServiceDescriptor();
-            String name = ssu.getServiceName();
-            LOG.debug("Message received by address: {} for service descriptor with name: {}",
-                    getMessageChannel().getAddress(), name);
-            //System.err.println("\tReceived  " + sd.getLastKnownState().toString() + " state for " + sd.getName());
-
-            synchronized (getServiceTable()) {
-                // Odd network latencies can yield out-of-order state changes where a JGroups observer sees
-                // the request after the result. So, a service might go from LAUNCHING to RUNNING, but we could
-                // get the messages as RUNNING followed by LAUNCHING.  Trap these and don't permit reversals.
-
-                ServiceDescriptor tableService = getServiceTable().get(name);
-                if (tableService != null
-                        && (tableService.getLastKnownState().ordinal() - ssu.getLastKnownState().ordinal()) == 1) {
-                    // Bad dog.  A fast node manager acted on a request and got its state change to us before we
-                    // even saw the original (master) request to do it.  Don't act on old data.
-                    // @TODO: fix this
-                    LOG.warn("Fast node: the state of the service '{}' changed too fast!. Went from '{}' to '{}' with ordinal difference of '{}'",
-                            name, tableService.getLastKnownState(), ssu.getLastKnownState(),
-                            tableService.getLastKnownState().ordinal() - ssu.getLastKnownState().ordinal());
-                } else {
-                    getServiceTable().put(name, sd);
-                }
-            }
+    }
 
-            if (sd.doesHostMatch(propertiesUtil.getThisMpfNode())) {
-                // one of ours set it up correctly
-                switch (sd.getLastKnownState()) {
-                    case Delete:
-                        LOG.debug("Processing a shutdown and delete request for {} from {} ", sd.getName(), sender);
-                        shutdown(sd, true, false);
-                        break;
-                    case ShuttingDown:
-                        LOG.debug("Processing a shutdown request for {} from {} ", sd.getName(), sender);
-                        shutdown(sd, false, false);
-                        break;
-                    case ShuttingDownNoRestart:
-                        LOG.debug("Processing a shutdown with no restart request for {} from {} ", sd.getName(), sender);
-                        shutdown(sd, false, true);
-                        break;
-                    case Launching:
-                        LOG.debug("Processing a launch request for {} from {} ", sd.getName(), sender);
-                        launch(sd);
-                        break;
-                }
+
+    @Override
+    protected void serviceStateChanged(ServiceDescriptor sd, Address sender) {
+        LOG.debug("Received a ServiceStatusUpdate from {}", sender);
+        LOG.debug("Message received by address: {} for service descriptor with name: {}",
+                getMessageChannel().getAddress(), sd.getName());
+
+        if (sd.doesHostMatch(propertiesUtil.getThisMpfNode())) {
+            // one of ours set it up correctly
+            switch (sd.getLastKnownState()) {
+                case Delete:
+                    LOG.debug("Processing a shutdown and delete request for {} from {} ", sd.getName(), sender);
+                    shutdown(sd, true, false);
+                    break;
+                case ShuttingDown:
+                    LOG.debug("Processing a shutdown request for {} from {} ", sd.getName(), sender);
+                    shutdown(sd, false, false);
+                    break;
+                case ShuttingDownNoRestart:
+                    LOG.debug("Processing a shutdown with no restart request for {} from {} ", sd.getName(), sender);
+                    shutdown(sd, false, true);
+                    break;
+                case Launching:
+                    LOG.debug("Processing a launch request for {} from {} ", sd.getName(), sender);
+                    launch(sd);
+                    break;
             }
-        } else if (obj instanceof NodeStatusUpdate) {
-            //TODO: another node manager may want to remove (nodeTable.remove) a node descriptor from its node table
-            //this would be the case if another node was set to delete inactive by the master node in a multi node scenario
-            NodeStatusUpdate msu = (NodeStatusUpdate) obj;
-            LOG.debug("Received a ManagerStatusUpdate: {} for {} ", msu.getLastKnownState(), msu.getHostName());
-
-            String name = msu.getHostName();
-            if(msu.getLastKnownState() == NodeManagerConstants.States.DeleteInactive) {
-                synchronized (getNodeTable()) {
-                    LOG.info("removing node with name '{}'", name);
-                    getNodeTable().remove(name);
-                }
-            } else {
-                synchronized (getNodeTable()) {
-                    getNodeTable().put(name, msu.getTheNode());
-                }
+        }
+    }
 
-                // If we are not already deemed running, tell the world that indeed we are
-                if (msu.getLastKnownState() != NodeManagerConstants.States.Running
-                        && msu.getTheNode().doesHostMatch(propertiesUtil.getThisMpfNode())) {
-                    updateState(msu.getTheNode(), NodeManagerConstants.States.Running);
-                }
+
+    @Override
+    protected void nodeStateChanged(NodeDescriptor node, Address sender) {
+        //TODO: another node manager may want to remove (nodeTable.remove) a node descriptor from its node table
+        //this would be the case if another node was set to delete inactive by the master node in a multi node scenario
+        LOG.debug("Received a ManagerStatusUpdate: {} for {} ", node.getLastKnownState(), node.getHostname());
+
+        String name = node.getHostname();
+        if (node.getLastKnownState() == NodeManagerConstants.States.DeleteInactive) {
+            synchronized (getNodeTable()) {
+                LOG.info("removing node with name '{}'", name);
+                getNodeTable().remove(name);
             }
+        } else if (node.getLastKnownState() != NodeManagerConstants.States.Running
+                && node.doesHostMatch(propertiesUtil.getThisMpfNode())) {
+            // If we are not already deemed running, tell the world that indeed we are
+            updateState(node, NodeManagerConstants.States.Running);
         }
     }
 
@@ -0,0 +1,173 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.nms;
+
+import org.mitre.mpf.nms.xml.EnvironmentVariable;
+import org.mitre.mpf.nms.xml.Service;
+import org.mitre.mpf.wfm.buffers.NodeManagerProtobuf.ClusterStateUpdate;
+import org.mitre.mpf.wfm.buffers.NodeManagerProtobuf.NodeStateChange;
+import org.mitre.mpf.wfm.buffers.NodeManagerProtobuf.ServiceConfig;
+import org.mitre.mpf.wfm.buffers.NodeManagerProtobuf.ServiceStateChange;
+
+import java.util.ArrayList;
+
+/**
+ * Converts service and node descriptors to and from the protobuf messages sent on the JGroups channel.
+ */
+final class ClusterStateCodec {
+
+    private static final NodeManagerConstants.States[] STATES = NodeManagerConstants.States.values();
+
+    private ClusterStateCodec() {
+    }
+
+
+    static ServiceStateChange toServiceChange(ServiceDescriptor service, boolean includeConfig) {
+        ServiceStateChange.Builder builder = ServiceStateChange.newBuilder()
+                .setName(service.getName())
+                .setVersion(service.getVersion())
+                .setState(toProtobuf(service.getLastKnownState()))
+                .setRestarts(service.getRestarts())
+                .setFatalIssue(service.getFatalIssueFlag())
+                .setStartTimeMillis(service.getStartTimeMillis());
+        if (includeConfig) {
+            builder.setConfig(toServiceConfig(service));
+        }
+        return builder.build();
+    }
+
+
+    static ServiceConfig toServiceConfig(ServiceDescriptor descriptor) {
+        Service service = descriptor.getService();
+        ServiceConfig.Builder builder = ServiceConfig.newBuilder()
+                .setCount(service.getCount())
+                .setTargetHost(descriptor.getHost())
+                .setRank(descriptor.getRank());
+        if (service.getName() != null) {
+            builder.setServiceName(service.getName());
+        }
+        if (service.getCmdPath() != null) {
+            builder.setCmdPath(service.getCmdPath());
+        }
+        if (service.getLauncher() != null) {
+            builder.setLauncher(service.getLauncher());
+        }
+        if (service.getArgs() != null) {
+            builder.addAllArgs(service.getArgs());
+        }
+        for (EnvironmentVariable envVar : service.getEnvVars()) {
+            ServiceConfig.EnvironmentVariable.Builder envVarBuilder = ServiceConfig.EnvironmentVariable.newBuilder();
+            if (envVar.getKey() != null) {
+                envVarBuilder.setKey(envVar.getKey());
+            }
+            if (envVar.getValue() != null) {
+                envVarBuilder.setValue(envVar.getValue());
+            }
+            if (envVar.getSep() != null) {
+                envVarBuilder.setSep(envVar.getSep());
+            }
+            builder.addEnvironmentVariables(envVarBuilder);
+        }
+        if (service.getWorkingDirectory() != null) {
+            builder.setWorkingDirectory(service.getWorkingDirectory());
+        }
+        if (service.getDescription() != null) {
+            builder.setDescription(service.getDescription());
+        }
+        if (descriptor.getActiveMqHost() != null) {
+            builder.setActiveMqHost(descriptor.getActiveMqHost());
+        }
+        return builder.build();
+    }
+
+
+    /**
+     * Creates a new descriptor from a change that includes the service's configuration.
+     */
+    static ServiceDescriptor toServiceDescriptor(ServiceStateChange change) {
+        ServiceConfig config = change.getConfig();
+        Service service = new Service(
+                config.hasServiceName() ? config.getServiceName() : null,
+                config.hasCmdPath() ? config.getCmdPath() : null);
+        service.setCount(config.getCount());
+        service.setLauncher(config.hasLauncher() ? config.getLauncher() : null);
+        service.setArgs(new ArrayList<>(config.getArgsList()));
+        var envVars = new ArrayList<EnvironmentVariable>(config.getEnvironmentVariablesCount());
+        for (ServiceConfig.EnvironmentVariable protoEnvVar : config.getEnvironmentVariablesList()) {
+            var envVar = new EnvironmentVariable();
+            envVar.setKey(protoEnvVar.hasKey() ? protoEnvVar.getKey() : null);
+            envVar.setValue(protoEnvVar.hasValue() ? protoEnvVar.getValue() : null);
+            envVar.setSep(protoEnvVar.hasSep() ? protoEnvVar.getSep() : null);
+            envVars.add(envVar);
+        }
+        service.setEnvVars(envVars);
+        service.setWorkingDirectory(config.hasWorkingDirectory() ? config.getWorkingDirectory() : null);
+        service.setDescription(config.hasDescription() ? config.getDescription() : null);
+
+        var descriptor = new ServiceDescriptor(service, config.getTargetHost(), config.getRank());
+        descriptor.setActiveMqHost(config.hasActiveMqHost() ? config.getActiveMqHost() : null);
+        applyState(change, descriptor);
+        return descriptor;
+    }
+
+
+    /**
+     * Copies everything except the configuration from the change to the descriptor.
+     */
+    static void applyState(ServiceStateChange change, ServiceDescriptor descriptor) {
+        descriptor.setVersion(change.getVersion());
+        descriptor.setLastKnownState(fromProtobuf(change.getState()));
+        descriptor.setRestarts(change.getRestarts());
+        descriptor.setFatalIssueFlag(change.getFatalIssue());
+        descriptor.setStartTimeMillis(change.getStartTimeMillis());
+    }
+
+
+    static NodeStateChange toNodeChange(NodeDescriptor node) {
+        return NodeStateChange.newBuilder()
+                .setHostname(node.getHostname())
+                .setVersion(node.getVersion())
+                .setState(toProtobuf(node.getLastKnownState()))
+                .build();
+    }
+
+
+    static void applyState(NodeStateChange change, NodeDescriptor node) {
+        node.setVersion(change.getVersion());
+        node.setLastKnownState(fromProtobuf(change.getState()));
+    }
+
+
+    static ClusterStateUpdate.State toProtobuf(NodeManagerConstants.States state) {
+        return ClusterStateUpdate.State.valueOf(state.ordinal());
+    }
+
+
+    static NodeManagerConstants.States fromProtobuf(ClusterStateUpdate.State state) {
+        return STATES[state.getNumber()];
+    }
+}
@@ -26,7 +26,7 @@
 
 package org.mitre.mpf.nms;
 
-import org.jgroups.Message;
+import org.jgroups.Address;
 import org.mitre.mpf.nms.streaming.MasterStreamingJobManager;
 import org.mitre.mpf.nms.streaming.messages.LaunchStreamingJobMessage;
 import org.mitre.mpf.nms.streaming.messages.StopStreamingJobMessage;
@@ -55,86 +55,69 @@ public class MasterNodeStateManager extends ChannelReceiver {
 
 
     @Override
-    public void receive(Message msg) {
-        Object obj = msg.getObject();
+    protected void receiveObject(Object obj, Address sender) {
         if (obj instanceof StreamingJobExitedMessage) {
             StreamingJobExitedMessage exitMessage = (StreamingJobExitedMessage) obj;
             streamingJobManager.streamingJobExited(exitMessage);
             getNotifier().streamingJobExited(exitMessage);
         }
-        else if (obj instanceof ServiceStatusUpdate) {
-            ServiceStatusUpdate nsu = (ServiceStatusUpdate) obj;
-            //System.out.println("I received a node status update: " + nsu.getNodeName() + " : " + nsu.getTheNode().getLastKnownState());
-
-            // Replace our node view (basically, only an internal state will change)
-            String name = nsu.getServiceName();
-            NodeManagerConstants.States state = nsu.getLastKnownState();
-            synchronized (getServiceTable()) {
-                // Odd network latencies can yield out-of-order state changes where a JGroups observer sees
-                // the request after the result. So, a service might go from LAUNCHING to RUNNING, but we could
-                // get the messages as RUNNING followed by LAUNCHING.  Trap these and don't permit reversals.
-
-                if (getServiceTable().get(name) != null
-                        && (getServiceTable().get(name).getLastKnownState().ordinal() - nsu.getLastKnownState().ordinal()) == 1) {
-                    // Bad dog.  A fast node manager acted on a request and got its state change to us before we
-                    // even saw the original (master) request to do it.  Don't act on old data.
-                } else {
-                    getServiceTable().put(name, nsu.getServiceDescriptor());
-                }
-            }
-            // Two things get notified, going to a running state and going to a non-running state
-            // Intermediate stuff (Launching) is transitory
-            if (null != getNotifier() && null != state) {
-                switch (state) {
-                    case Running:
-                        //This is a real running state, so mark it
-                        getNotifier().newService(getServiceTable().get(name));
-                        break;
-                    case Inactive:
-                        //Reverting back to a non-working state, mark it - the state of a normal shutdown
-                        //example: WFM goes down, all Running services go to the 'Inactive' state
-                        getNotifier().serviceDown(getServiceTable().get(name));
-                        break;
-                    case InactiveNoStart:
-                        //The final state of a shutdown from the WFM web application
-                        getNotifier().serviceDown(getServiceTable().get(name));
-                        break;
-                    case DeleteInactive:
-                        //Service has been shut down and is ready to be removed from the service table if desired
-                        //this is the final state of a service that has been removed from the MasterNode's config
-                        //Delete is not handled here because it should be handled once it reaches 'DeleteInactive'
-                        getNotifier().serviceReadyToRemove(getServiceTable().get(name));
-                        break;
-                    default:
-                        LOG.debug("Unprocessed ServiceStatusUpdate state of '{}' for service '{}'.", state, name);
-                }
-            }
-        } else if (obj instanceof NodeStatusUpdate) {
-            NodeStatusUpdate msu = (NodeStatusUpdate) obj;
-            //System.out.println("I received a manager status update of " + msu.getHostName() + " " + msu.getLastKnownState());
-
-            String name = msu.getHostName();
-            NodeManagerConstants.States state = msu.getLastKnownState();
-            synchronized (getNodeTable()) {
-                getNodeTable().put(name, msu.getTheNode());
+    }
+
+
+    @Override
+    protected void serviceStateChanged(ServiceDescriptor service, Address sender) {
+        // Two things get notified, going to a running state and going to a non-running state
+        // Intermediate stuff (Launching) is transitory
+        String name = service.getName();
+        NodeManagerConstants.States state = service.getLastKnownState();
+        if (null != getNotifier() && null != state) {
+            switch (state) {
+                case Running:
+                    //This is a real running state, so mark it
+                    getNotifier().newService(service);
+                    break;
+                case Inactive:
+                    //Reverting back to a non-working state, mark it - the state of a normal shutdown
+                    //example: WFM goes down, all Running services go to the 'Inactive' state
+                    getNotifier().serviceDown(service);
+                    break;
+                case InactiveNoStart:
+                    //The final state of a shutdown from the WFM web application
+                    getNotifier().serviceDown(service);
+                    break;
+                case DeleteInactive:
+                    //Service has been shut down and is ready to be removed from the service table if desired
+                    //this is the final state of a service that has been removed from the MasterNode's config
+                    //Delete is not handled here because it should be handled once it reaches 'DeleteInactive'
+                    getNotifier().serviceReadyToRemove(service);
+                    break;
+                default:
+                    LOG.debug("Unprocessed ServiceStatusUpdate state of '{}' for service '{}'.", state, name);
             }
-            if (null != getNotifier() && null != state) {
-                switch (state) {
-                    case Running:
-                        // This is a real running state, so mark it
-                        getNotifier().newManager(name);
-                        break;
-                    case Inactive:
-                        // Reverting back to a non-working state, mark it
-                        getNotifier().managerDown(name);
-                        break;
-                    case DeleteInactive:
-                        // Node has been shut down and is ready to be removed from the node table if desired
-                        getNotifier().managerDown(name);
-                        break;
-                    default:
-                        LOG.debug("Unprocessed Manager StatusUpdate state: {} ", state);
-                }
+        }
+    }
+
+
+    @Override
+    protected void nodeStateChanged(NodeDescriptor node, Address sender) {
+        String name = node.getHostname();
+        NodeManagerConstants.States state = node.getLastKnownState();
+        if (null != getNotifier() && null != state) {
+            switch (state) {
+                case Running:
+                    // This is a real running state, so mark it
+                    getNotifier().newManager(name);
+                    break;
+                case Inactive:
+                    // Reverting back to a non-working state, mark it
+                    getNotifier().managerDown(name);
+                    break;
+                case DeleteInactive:
+                    // Node has been shut down and is ready to be removed from the node table if desired
+                    getNotifier().managerDown(name);
+                    break;
+                default:
+                    LOG.debug("Unprocessed Manager StatusUpdate state: {} ", state);
             }
         }
     }
@@ -40,6 +40,8 @@ public class NodeDescriptor implements Serializable {
 
     private  NodeManagerConstants.States lastKnownState =  NodeManagerConstants.States.Unknown;
 
+    private long version = 0; // incremented each time the state is sent to the cluster
+
     public  NodeDescriptor(String hostname) {
         this.hostname = hostname;
     }
@@ -60,6 +62,14 @@ public class NodeDescriptor implements Serializable {
         this.lastKnownState = lastKnownState;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public boolean doesHostMatch(String host) {
         return (hostname.compareTo(host) == 0);
     }
@@ -54,6 +54,7 @@ public class ServiceDescriptor implements Serializable {
     private boolean fatalIssueFlag = false;
     private NodeManagerConstants.States lastKnownState = NodeManagerConstants.States.Unknown;
     private long startTimeMillis = 0;
+    private long version = 0;       // incremented each time the state is sent to the cluster
   
 
     public ServiceDescriptor() {}
@@ -153,5 +154,9 @@ public class ServiceDescriptor implements Serializable {
 	public long getStartTimeMillis() { return startTimeMillis;}
 
 	public void setStartTimeMillis(long startTimeMillis) { this.startTimeMillis = startTimeMillis; }
+
+    public long getVersion() { return version; }
+
+    public void setVersion(long version) { this.version = version; }
 }
 
@@ -0,0 +1,112 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.nms;
+
+import org.mitre.mpf.nms.streaming.ChildStreamingJobManager;
+import org.mitre.mpf.nms.streaming.MasterStreamingJobManager;
+import org.mitre.mpf.nms.util.PropertiesUtil;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs several node manager channel members in the current process. The members communicate over JGroups'
+ * SHARED_LOOPBACK transport, so no network access is required.
+ */
+public class LoopbackCluster implements AutoCloseable {
+
+    private final String _channelName = "nm-loopback-" + UUID.randomUUID();
+
+    private final List<ChannelReceiver> _members = new ArrayList<>();
+
+
+    public MasterNodeStateManager addMaster(String hostname, ClusterChangeNotifier notifier) {
+        PropertiesUtil propertiesUtil = createPropertiesUtil(hostname);
+        var master = new MasterNodeStateManager(propertiesUtil, new ChannelNode(propertiesUtil),
+                                                mock(MasterStreamingJobManager.class));
+        master.setCallback(notifier);
+        master.startReceiving(NodeTypes.MasterNode, "");
+        _members.add(master);
+        return master;
+    }
+
+
+    public ChildNodeStateManager addChild(String hostname) {
+        PropertiesUtil propertiesUtil = createPropertiesUtil(hostname);
+        var child = new ChildNodeStateManager(propertiesUtil, new ChannelNode(propertiesUtil),
+                                              mock(ChildStreamingJobManager.class));
+        child.startReceiving(NodeTypes.NodeManager, "");
+        _members.add(child);
+        return child;
+    }
+
+
+    private PropertiesUtil createPropertiesUtil(String hostname) {
+        PropertiesUtil propertiesUtil = mock(PropertiesUtil.class);
+        when(propertiesUtil.getJGroupsConfig())
+                .thenReturn(new ClassPathResource("jGroupsLoopbackConfig.xml"));
+        when(propertiesUtil.getChannelName())
+                .thenReturn(_channelName);
+        when(propertiesUtil.getThisMpfNode())
+                .thenReturn(hostname);
+        return propertiesUtil;
+    }
+
+
+    public static void awaitCondition(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for the cluster state to be synchronized.");
+            }
+            try {
+                Thread.sleep(20);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+
+    @Override
+    public void close() {
+        for (ChannelReceiver member : _members) {
+            if (member.isConnected()) {
+                member.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.nms;
+
+import org.junit.Test;
+import org.mitre.mpf.nms.xml.Service;
+import org.mitre.mpf.wfm.buffers.NodeManagerProtobuf.ClusterStateUpdate;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestClusterStateCodec {
+
+    @Test
+    public void protobufStatesMatchJavaStates() {
+        for (NodeManagerConstants.States state : NodeManagerConstants.States.values()) {
+            ClusterStateUpdate.State protobufState = ClusterStateCodec.toProtobuf(state);
+            assertEquals(state.name().toLowerCase(), protobufState.name().replace("_", "").toLowerCase());
+            assertEquals(state, ClusterStateCodec.fromProtobuf(protobufState));
+        }
+        assertEquals(NodeManagerConstants.States.values().length, ClusterStateUpdate.State.values().length);
+    }
+
+
+    @Test
+    public void canRoundTripService() {
+        ServiceDescriptor original = TestClusterStateSync.createService("node1", "arg1");
+        original.setLastKnownState(NodeManagerConstants.States.Running);
+        original.setVersion(7);
+        original.setRestarts(2);
+        original.setFatalIssueFlag(true);
+        original.setStartTimeMillis(1234);
+
+        ServiceDescriptor copy = ClusterStateCodec.toServiceDescriptor(
+                ClusterStateCodec.toServiceChange(original, true));
+
+        assertEquals(original.getName(), copy.getName());
+        assertEquals("node1", copy.getHost());
+        assertEquals(1, copy.getRank());
+        assertEquals(original.getActiveMqHost(), copy.getActiveMqHost());
+        assertEquals(NodeManagerConstants.States.Running, copy.getLastKnownState());
+        assertEquals(7, copy.getVersion());
+        assertEquals(2, copy.getRestarts());
+        assertTrue(copy.getFatalIssueFlag());
+        assertEquals(1234, copy.getStartTimeMillis());
+
+        Service copyService = copy.getService();
+        assertEquals("Markup", copyService.getName());
+        assertEquals("/opt/mpf/bin/markup", copyService.getCmdPath());
+        assertEquals("simple", copyService.getLauncher());
+        assertEquals(1, copyService.getCount());
+        assertEquals(List.of("arg1"), copyService.getArgs());
+        assertEquals("", copyService.getWorkingDirectory());
+        assertEquals(1, copyService.getEnvVars().size());
+        assertEquals("LD_LIBRARY_PATH", copyService.getEnvVars().get(0).getKey());
+        assertEquals("/opt/mpf/lib", copyService.getEnvVars().get(0).getValue());
+        assertEquals(":", copyService.getEnvVars().get(0).getSep());
+
+        assertEquals(ClusterStateCodec.toServiceConfig(original), ClusterStateCodec.toServiceConfig(copy));
+    }
+
+
+    @Test
+    public void preservesNullConfigValues() {
+        var service = new Service("Markup", "/opt/mpf/bin/markup");
+        service.setWorkingDirectory(null);
+        service.setDescription(null);
+        service.setEnvVars(List.of(new org.mitre.mpf.nms.xml.EnvironmentVariable()));
+        var original = new ServiceDescriptor(service, "node1", 2);
+        original.setActiveMqHost(null);
+
+        ServiceDescriptor copy = ClusterStateCodec.toServiceDescriptor(
+                ClusterStateCodec.toServiceChange(original, true));
+        assertNull(copy.getService().getWorkingDirectory());
+        assertNull(copy.getService().getDescription());
+        assertNull(copy.getService().getEnvVars().get(0).getKey());
+        assertNull(copy.getActiveMqHost());
+        assertEquals("node1:Markup:2", copy.getName());
+    }
+}
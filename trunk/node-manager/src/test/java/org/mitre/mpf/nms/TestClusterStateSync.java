@@ -0,0 +1,253 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.nms;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mitre.mpf.nms.NodeManagerConstants.States;
+import org.mitre.mpf.nms.streaming.MasterStreamingJobManager;
+import org.mitre.mpf.nms.util.PropertiesUtil;
+import org.mitre.mpf.nms.xml.Service;
+import org.mitre.mpf.wfm.buffers.NodeManagerProtobuf.ClusterStateUpdate;
+import org.mitre.mpf.wfm.buffers.NodeManagerProtobuf.NodeStateChange;
+import org.mitre.mpf.wfm.buffers.NodeManagerProtobuf.ServiceStateChange;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TestClusterStateSync {
+
+    private final LoopbackCluster _cluster = new LoopbackCluster();
+
+
+    @After
+    public void cleanup() {
+        _cluster.close();
+    }
+
+
+    @Test
+    public void membersOnlyExchangeChangedState() {
+        var notifier = mock(ClusterChangeNotifier.class);
+        var master = _cluster.addMaster("master-host", notifier);
+        var child1 = _cluster.addChild("node1");
+        var child2 = _cluster.addChild("node2");
+
+        ServiceDescriptor service = createService("node1", "arg1");
+        String name = service.getName();
+        master.updateState(service, States.Configured);
+
+        LoopbackCluster.awaitCondition(
+                () -> List.of(master, child1, child2).stream().allMatch(m -> hasState(m, name, States.Configured)));
+
+        ServiceDescriptor child2Descriptor = child2.getServiceTable().get(name);
+        assertEquals("/opt/mpf/bin/markup", child2Descriptor.getService().getCmdPath());
+        assertEquals(List.of("arg1"), child2Descriptor.getService().getArgs());
+        assertEquals("LD_LIBRARY_PATH", child2Descriptor.getService().getEnvVars().get(0).getKey());
+        assertEquals("failover://tcp://localhost:61616", child2Descriptor.getActiveMqHost());
+        assertEquals(1, child2Descriptor.getVersion());
+
+        ServiceDescriptor child1Descriptor = child1.getServiceTable().get(name);
+        child1Descriptor.setRestarts(3);
+        child1.updateState(child1Descriptor, States.Running);
+
+        LoopbackCluster.awaitCondition(
+                () -> hasState(master, name, States.Running) && hasState(child2, name, States.Running));
+
+        // The update did not include the configuration, so the existing descriptor was updated in place.
+        assertSame(child2Descriptor, child2.getServiceTable().get(name));
+        assertEquals(3, child2Descriptor.getRestarts());
+        assertEquals(2, child2Descriptor.getVersion());
+
+        ServiceDescriptor masterDescriptor = master.getServiceTable().get(name);
+        assertEquals(3, masterDescriptor.getRestarts());
+        verify(notifier)
+                .newService(masterDescriptor);
+    }
+
+
+    @Test
+    public void newMemberReceivesCompleteState() {
+        var master = _cluster.addMaster("master-host", null);
+        var child1 = _cluster.addChild("node1");
+
+        ServiceDescriptor service = createService("node1", "arg1");
+        String name = service.getName();
+        master.updateState(service, States.Configured);
+        LoopbackCluster.awaitCondition(() -> hasState(child1, name, States.Configured));
+
+        ServiceDescriptor child1Descriptor = child1.getServiceTable().get(name);
+        child1Descriptor.setFatalIssueFlag(true);
+        child1.updateState(child1Descriptor, States.InactiveNoStart);
+        LoopbackCluster.awaitCondition(() -> hasState(master, name, States.InactiveNoStart));
+
+        var child2 = _cluster.addChild("node2");
+        ServiceDescriptor child2Descriptor = child2.getServiceTable().get(name);
+        assertEquals(States.InactiveNoStart, child2Descriptor.getLastKnownState());
+        assertEquals(2, child2Descriptor.getVersion());
+        assertTrue(child2Descriptor.getFatalIssueFlag());
+        assertEquals("/opt/mpf/bin/markup", child2Descriptor.getService().getCmdPath());
+        assertEquals(List.of("arg1"), child2Descriptor.getService().getArgs());
+
+        assertTrue(child2.getNodeTable().containsKey("node1"));
+        LoopbackCluster.awaitCondition(() -> master.getRunningNodes().contains("node2"));
+    }
+
+
+    @Test
+    public void onlyIncludesConfigurationWhenNeeded() {
+        var receiver = createDisconnectedReceiver();
+
+        ServiceStateChange configuredChange = getServiceChange(
+                receiver.createServiceUpdate(createService("node1", "arg1"), States.Configured));
+        assertTrue(configuredChange.hasConfig());
+        assertEquals(1, configuredChange.getVersion());
+        ServiceDescriptor tableDescriptor = receiver.applyServiceChange(configuredChange);
+
+        ServiceStateChange launchingChange = getServiceChange(
+                receiver.createServiceUpdate(tableDescriptor, States.Launching));
+        assertFalse(launchingChange.hasConfig());
+        assertEquals(2, launchingChange.getVersion());
+        assertSame(tableDescriptor, receiver.applyServiceChange(launchingChange));
+
+        // The master creates a new descriptor each time the configuration is saved.
+        ServiceStateChange sameConfigChange = getServiceChange(
+                receiver.createServiceUpdate(createService("node1", "arg1"), States.Configured));
+        assertFalse(sameConfigChange.hasConfig());
+        assertEquals(3, sameConfigChange.getVersion());
+        assertSame(tableDescriptor, receiver.applyServiceChange(sameConfigChange));
+
+        ServiceStateChange newConfigChange = getServiceChange(
+                receiver.createServiceUpdate(createService("node1", "arg2"), States.Configured));
+        assertTrue(newConfigChange.hasConfig());
+        assertEquals(4, newConfigChange.getVersion());
+        ServiceDescriptor newTableDescriptor = receiver.applyServiceChange(newConfigChange);
+        assertNotSame(tableDescriptor, newTableDescriptor);
+        assertEquals(List.of("arg2"), newTableDescriptor.getService().getArgs());
+    }
+
+
+    @Test
+    public void ignoresStaleServiceChanges() {
+        var receiver = createDisconnectedReceiver();
+        ServiceDescriptor service = createService("node1", "arg1");
+        service.setVersion(5);
+        service.setLastKnownState(States.Running);
+        receiver.applyServiceChange(ClusterStateCodec.toServiceChange(service, true));
+
+        service.setVersion(4);
+        service.setLastKnownState(States.Launching);
+        assertNull(receiver.applyServiceChange(ClusterStateCodec.toServiceChange(service, false)));
+
+        // Concurrent changes with the same version are not permitted to move the state backwards.
+        service.setVersion(5);
+        assertNull(receiver.applyServiceChange(ClusterStateCodec.toServiceChange(service, false)));
+
+        ServiceDescriptor tableDescriptor = receiver.getServiceTable().get(service.getName());
+        assertEquals(States.Running, tableDescriptor.getLastKnownState());
+        assertEquals(5, tableDescriptor.getVersion());
+
+        service.setVersion(6);
+        service.setLastKnownState(States.ShuttingDown);
+        assertSame(tableDescriptor, receiver.applyServiceChange(ClusterStateCodec.toServiceChange(service, false)));
+        assertEquals(States.ShuttingDown, tableDescriptor.getLastKnownState());
+    }
+
+
+    @Test
+    public void appliesChangeThatArrivesBeforeConfiguration() {
+        var receiver = createDisconnectedReceiver();
+        ServiceDescriptor service = createService("node1", "arg1");
+        service.setVersion(2);
+        service.setLastKnownState(States.Running);
+        assertNull(receiver.applyServiceChange(ClusterStateCodec.toServiceChange(service, false)));
+        assertTrue(receiver.getServiceTable().isEmpty());
+
+        service.setVersion(1);
+        service.setLastKnownState(States.Launching);
+        ServiceDescriptor tableDescriptor
+                = receiver.applyServiceChange(ClusterStateCodec.toServiceChange(service, true));
+        assertEquals(States.Running, tableDescriptor.getLastKnownState());
+        assertEquals(2, tableDescriptor.getVersion());
+    }
+
+
+    @Test
+    public void ignoresStaleNodeChanges() {
+        var receiver = createDisconnectedReceiver();
+        NodeStateChange runningChange = NodeStateChange.newBuilder()
+                .setHostname("node1")
+                .setVersion(3)
+                .setState(ClusterStateUpdate.State.RUNNING)
+                .build();
+        NodeDescriptor node = receiver.applyNodeChange(runningChange);
+        assertEquals(States.Running, node.getLastKnownState());
+
+        NodeStateChange staleChange = runningChange.toBuilder()
+                .setVersion(2)
+                .setState(ClusterStateUpdate.State.CONFIGURED)
+                .build();
+        assertNull(receiver.applyNodeChange(staleChange));
+        assertEquals(States.Running, node.getLastKnownState());
+    }
+
+
+    private static ChannelReceiver createDisconnectedReceiver() {
+        return new MasterNodeStateManager(mock(PropertiesUtil.class), mock(ChannelNode.class),
+                                          mock(MasterStreamingJobManager.class));
+    }
+
+
+    private static ServiceStateChange getServiceChange(ClusterStateUpdate update) {
+        assertEquals(1, update.getServiceChangesCount());
+        assertEquals(0, update.getNodeChangesCount());
+        return update.getServiceChanges(0);
+    }
+
+
+    private static boolean hasState(ChannelReceiver member, String serviceName, States state) {
+        ServiceDescriptor descriptor = member.getServiceTable().get(serviceName);
+        return descriptor != null && descriptor.getLastKnownState() == state;
+    }
+
+
+    public static ServiceDescriptor createService(String host, String arg) {
+        var service = new Service("Markup", "/opt/mpf/bin/markup");
+        service.addArg(arg);
+        service.setLauncher("simple");
+        var envVar = new org.mitre.mpf.nms.xml.EnvironmentVariable();
+        envVar.setKey("LD_LIBRARY_PATH");
+        envVar.setValue("/opt/mpf/lib");
+        envVar.setSep(":");
+        service.setEnvVars(List.of(envVar));
+        var descriptor = new ServiceDescriptor(service, host, 1);
+        descriptor.setActiveMqHost("failover://tcp://localhost:61616");
+        return descriptor;
+    }
+}
@@ -64,23 +64,11 @@ JNIEXPORT void JNICALL Java_org_mitre_mpf_videooverlay_BoundingBoxWriter_markupV
 {
     JniHelper jni(env);
     try {
-        // Get the bounding box map.
-
+        // The writer returns the boxes for each frame. Depending on how it was configured, they either come from a
+        // BoundingBoxMap or they are interpolated from keyframes as each frame is requested.
         jclass clzBoundingBoxWriter = jni.GetObjectClass(boundingBoxWriterInstance);
-        jmethodID clzBoundingBoxWriter_fnGetBoundingBoxMap
-                = jni.GetMethodID(clzBoundingBoxWriter, "getBoundingBoxMap",
-                                  "()Lorg/mitre/mpf/videooverlay/BoundingBoxMap;");
-        jobject boundingBoxMap = jni.CallObjectMethod(boundingBoxWriterInstance, clzBoundingBoxWriter_fnGetBoundingBoxMap);
-
-        // Get BoundingBoxMap methods.
-        jclass clzBoundingBoxMap = jni.GetObjectClass(boundingBoxMap);
-        jmethodID clzBoundingBoxMap_fnGet
-                = jni.GetMethodID(clzBoundingBoxMap, "get", "(Ljava/lang/Object;)Ljava/lang/Object;"); // May be a list.
-        jmethodID clzBoundingBoxMap_fnContainsKey = jni.GetMethodID(clzBoundingBoxMap, "containsKey",
-                                                                    "(Ljava/lang/Object;)Z");
-
-        jint allFramesKey = jni.GetStaticIntField(clzBoundingBoxMap,
-                                                  jni.GetStaticFieldID(clzBoundingBoxMap, "ALL_FRAMES", "I"));
+        jmethodID clzBoundingBoxWriter_fnGetBoundingBoxes
+                = jni.GetMethodID(clzBoundingBoxWriter, "getBoundingBoxes", "(I)Ljava/util/List;");
 
         // Get List class and methods.
         jclass clzList = jni.FindClass("java/util/List");
@@ -100,9 +88,6 @@ JNIEXPORT void JNICALL Java_org_mitre_mpf_videooverlay_BoundingBoxWriter_markupV
         jmethodID clzBoundingBox_fnGetRotationDegrees = jni.GetMethodID(clzBoundingBox, "getRotationDegrees", "()D");
         jmethodID clzBoundingBox_fnGetFlip = jni.GetMethodID(clzBoundingBox, "getFlip", "()Z");
 
-        jclass clzInteger = jni.FindClass("java/lang/Integer");
-        jmethodID clzInteger_fnValueOf = jni.GetStaticMethodID(clzInteger, "valueOf", "(I)Ljava/lang/Integer;");
-
         // Set up the videos...
         std::string sourceVideoPath = jni.ToStdString(sourceVideoPathJString);
         MPF::COMPONENT::MPFVideoCapture src(sourceVideoPath);
@@ -124,7 +109,6 @@ JNIEXPORT void JNICALL Java_org_mitre_mpf_videooverlay_BoundingBoxWriter_markupV
         jint currentFrame = -1;
         while (true) {
             currentFrame++;
-            jobject currentFrameBoxed = jni.CallStaticObjectMethod(clzInteger, clzInteger_fnValueOf, currentFrame);
 
             // Get the next frame.
             src >> frame;
@@ -132,79 +116,40 @@ JNIEXPORT void JNICALL Java_org_mitre_mpf_videooverlay_BoundingBoxWriter_markupV
             // if that frame is empty, we've reached the end of the video.
             if(frame.empty()) { break; }
 
-            // Otherwise, get the list of boxes that need to be drawn on this frame. This is the union of the boxes
-            // found in keys ALL_FRAMES and currentFrame.
-            jboolean foundEntryForCurrentFrame = jni.CallBooleanMethod(boundingBoxMap,
-                                                                       clzBoundingBoxMap_fnContainsKey,
-                                                                       currentFrameBoxed);
-            if (foundEntryForCurrentFrame) {
-                // Map has elements which are to be drawn on every frame.
-                jobject allFramesElements = jni.CallObjectMethod(boundingBoxMap, clzBoundingBoxMap_fnGet,
-                                                                 currentFrameBoxed);
-
-                // Iterate through this list, drawing the box on the frame.
-                jint numBoxesCurrentFrame = jni.CallIntMethod(allFramesElements, clzList_fnSize);
-
-                for (jint i = 0; i < numBoxesCurrentFrame; i++) {
-                    jobject box = jni.CallObjectMethod(allFramesElements, clzList_fnGet, i);
-                    jint x = jni.CallIntMethod(box, clzBoundingBox_fnGetX);
-                    jint y = jni.CallIntMethod(box, clzBoundingBox_fnGetY);
-
-                    jint height = jni.CallIntMethod(box, clzBoundingBox_fnGetHeight);
-                    if (height == 0) {
-                        height = cvSize.height;
-                    }
-
-                    jint width = jni.CallIntMethod(box, clzBoundingBox_fnGetWidth);
-                    if (width == 0) {
-                        width = cvSize.width;
-                    }
-
-                    jint red = jni.CallIntMethod(box, clzBoundingBox_fnGetRed);
-                    jint green = jni.CallIntMethod(box, clzBoundingBox_fnGetGreen);
-                    jint blue = jni.CallIntMethod(box, clzBoundingBox_fnGetBlue);
-                    jdouble rotation = jni.CallDoubleMethod(box, clzBoundingBox_fnGetRotationDegrees);
-                    jboolean flip = jni.CallBooleanMethod(box, clzBoundingBox_fnGetFlip);
-
-                    drawBoundingBox(x, y, width, height, rotation, flip, red, green, blue, &frame);
+            // Otherwise, get the list of boxes that need to be drawn on this frame.
+            jobject boxes = jni.CallObjectMethod(boundingBoxWriterInstance, clzBoundingBoxWriter_fnGetBoundingBoxes,
+                                                 currentFrame);
+
+            // Iterate through this list, drawing the box on the frame.
+            jint numBoxes = jni.CallIntMethod(boxes, clzList_fnSize);
+
+            for (jint i = 0; i < numBoxes; i++) {
+                jobject box = jni.CallObjectMethod(boxes, clzList_fnGet, i);
+                jint x = jni.CallIntMethod(box, clzBoundingBox_fnGetX);
+                jint y = jni.CallIntMethod(box, clzBoundingBox_fnGetY);
+
+                jint height = jni.CallIntMethod(box, clzBoundingBox_fnGetHeight);
+                if (height == 0) {
+                    height = cvSize.height;
                 }
-            }
 
-            jobject boxedAllFramesKey = jni.CallStaticObjectMethod(clzInteger, clzInteger_fnValueOf, allFramesKey);
-
-            jboolean foundAllFramesKey = jni.CallBooleanMethod(boundingBoxMap, clzBoundingBoxMap_fnContainsKey,
-                                                               boxedAllFramesKey);
-            if (foundAllFramesKey) {
-                // Map has elements which are to be drawn on every frame.
-                jobject allFramesElements = jni.CallObjectMethod(boundingBoxMap, clzBoundingBoxMap_fnGet,
-                                                                 boxedAllFramesKey);
-
-                // Iterate through this list, drawing the box on the frame.
-                jint numBoxesAllFrames = jni.CallIntMethod(allFramesElements, clzList_fnSize);
-
-                for (jint i = 0; i < numBoxesAllFrames; i++) {
-                    jobject box = jni.CallObjectMethod(allFramesElements, clzList_fnGet, i);
-                    jint x = jni.CallIntMethod(box, clzBoundingBox_fnGetX);
-                    jint y = jni.CallIntMethod(box, clzBoundingBox_fnGetY);
-
-                    jint height = jni.CallIntMethod(box, clzBoundingBox_fnGetHeight);
-                    if (height == 0) {
-                        height = cvSize.height;
-                    }
-                    jint width = jni.CallIntMethod(box, clzBoundingBox_fnGetWidth);
-                    if (width == 0) {
-                        width = cvSize.width;
-                    }
-
-                    jint red = jni.CallIntMethod(box, clzBoundingBox_fnGetRed);
-                    jint green = jni.CallIntMethod(box, clzBoundingBox_fnGetGreen);
-                    jint blue = jni.CallIntMethod(box, clzBoundingBox_fnGetBlue);
-                    jdouble rotation = jni.CallDoubleMethod(box, clzBoundingBox_fnGetRotationDegrees);
-                    jboolean flip = jni.CallBooleanMethod(box, clzBoundingBox_fnGetFlip);
-
-                    drawBoundingBox(x, y, width, height, rotation, flip, red, green, blue, &frame);
+                jint width = jni.CallIntMethod(box, clzBoundingBox_fnGetWidth);
+                if (width == 0) {
+                    width = cvSize.width;
                 }
+
+                jint red = jni.CallIntMethod(box, clzBoundingBox_fnGetRed);
+                jint green = jni.CallIntMethod(box, clzBoundingBox_fnGetGreen);
+                jint blue = jni.CallIntMethod(box, clzBoundingBox_fnGetBlue);
+                jdouble rotation = jni.CallDoubleMethod(box, clzBoundingBox_fnGetRotationDegrees);
+                jboolean flip = jni.CallBooleanMethod(box, clzBoundingBox_fnGetFlip);
+
+                drawBoundingBox(x, y, width, height, rotation, flip, red, green, blue, &frame);
+                // The boxes are created as each frame is requested, so release them rather than letting the local
+                // references build up until the whole video has been written.
+                jni.DeleteLocalRef(box);
             }
+            jni.DeleteLocalRef(boxes);
 
             dest << frame;
         }
@@ -61,6 +61,10 @@ jint JniHelper::ThrowNew(jclass clz, const char *msg) {
     return env_->ThrowNew(clz, msg);
 }
 
+void JniHelper::DeleteLocalRef(jobject obj) {
+    env_->DeleteLocalRef(obj);
+}
+
 
 std::string JniHelper::ToStdString(jstring jString) {
     const char* chars = callJni(&JNIEnv::GetStringUTFChars, jString, nullptr);
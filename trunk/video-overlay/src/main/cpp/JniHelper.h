@@ -85,6 +85,8 @@ public:
 
     jint ThrowNew(jclass clz, const char * msg);
 
+    void DeleteLocalRef(jobject obj);
+
 
     void ReportCppException(const char * msg = nullptr);
 
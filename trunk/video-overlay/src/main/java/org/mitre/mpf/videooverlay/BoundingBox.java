@@ -157,6 +157,19 @@ public class BoundingBox {
         return Objects.hash(x, y, height, width, rotationDegrees, flip, red, green, blue);
     }
 
+    public static BoundingBox fromProtocolBuffer(Markup.BoundingBox box) {
+        return new BoundingBox(
+                box.getX(),
+                box.getY(),
+                box.getWidth(),
+                box.getHeight(),
+                box.getRotationDegrees(),
+                box.getFlip(),
+                box.getRed(),
+                box.getGreen(),
+                box.getBlue());
+    }
+
     public Markup.BoundingBox toProtocolBuffer() {
         return Markup.BoundingBox.newBuilder()
                 .setX(x)
@@ -30,7 +30,7 @@ import org.mitre.mpf.wfm.buffers.*;
 
 import java.util.*;
 
-public class BoundingBoxMap extends TreeMap<Integer, List<BoundingBox>> {
+public class BoundingBoxMap extends TreeMap<Integer, List<BoundingBox>> implements BoundingBoxSource {
     /**
      * Indicates that a box should be drawn on all frames.
      */
@@ -173,6 +173,49 @@ public class BoundingBoxMap extends TreeMap<Integer, List<BoundingBox>> {
         }
     }
 
+    /**
+     * Puts the boxes for every frame covered by the track's keyframes into this map.
+     *
+     * @param track The track. Must not be null.
+     */
+    public void putTrack(BoundingBoxTrack track) {
+        if (track == null) {
+            throw new IllegalArgumentException("track must not be null");
+        }
+
+        List<BoundingBoxTrack.Keyframe> keyframes = track.getKeyframes();
+        for (int i = 0; i < keyframes.size(); i++) {
+            BoundingBoxTrack.Keyframe keyframe = keyframes.get(i);
+            boolean hasNext = i < keyframes.size() - 1;
+            int gap = hasNext ? keyframes.get(i + 1).getFrame() - keyframe.getFrame() : 0;
+            if (keyframe.isInterpolate() && gap > 1) {
+                animate(keyframe.getBoundingBox(), keyframes.get(i + 1).getBoundingBox(), keyframe.getFrame(), gap);
+            }
+            else {
+                putOnFrame(keyframe.getFrame(), keyframe.getBoundingBox());
+            }
+        }
+    }
+
+    /**
+     * Returns the union of the boxes on the given frame and the boxes on {@link #ALL_FRAMES}.
+     */
+    @Override
+    public List<BoundingBox> getBoundingBoxes(int frame) {
+        List<BoundingBox> frameBoxes = get(frame);
+        List<BoundingBox> allFramesBoxes = get(ALL_FRAMES);
+        if (allFramesBoxes == null) {
+            return frameBoxes == null ? List.of() : frameBoxes;
+        }
+        if (frameBoxes == null) {
+            return allFramesBoxes;
+        }
+        List<BoundingBox> boxes = new ArrayList<>(frameBoxes.size() + allFramesBoxes.size());
+        boxes.addAll(frameBoxes);
+        boxes.addAll(allFramesBoxes);
+        return boxes;
+    }
+
     @Override
     public String toString() {
         return String.format("%s#<keys=%d, size=%d>",
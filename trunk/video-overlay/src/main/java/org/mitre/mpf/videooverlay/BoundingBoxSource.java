@@ -24,27 +24,20 @@
  * limitations under the License.                                             *
  ******************************************************************************/
 
-package org.mitre.mpf.nms;
+package org.mitre.mpf.videooverlay;
 
-import java.io.Serializable;
+import java.util.List;
 
 /**
- * Used to send messages about the status of a Node.
+ * Provides the boxes that {@link BoundingBoxWriter} draws on each frame of a video.
  */
-public class NodeStatusUpdate implements Serializable {
-    private final NodeDescriptor node;
-
-    public NodeStatusUpdate(NodeDescriptor node) {
-        this.node = node;
-    }
-
-    public NodeDescriptor getTheNode() {
-        return node;
-    }
-
-    public String getHostName() {
-        return node.getHostname();
-    }
-
-    public  NodeManagerConstants.States getLastKnownState() { return node.getLastKnownState(); }
+public interface BoundingBoxSource {
+
+    /**
+     * Returns the boxes to draw on the given 0-based frame. The writer requests the frames in increasing order.
+     *
+     * @param frame The 0-based index of the frame in the video.
+     * @return The boxes to draw. Must not be null.
+     */
+    List<BoundingBox> getBoundingBoxes(int frame);
 }
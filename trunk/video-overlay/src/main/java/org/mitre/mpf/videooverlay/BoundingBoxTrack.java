@@ -0,0 +1,123 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.videooverlay;
+
+import org.mitre.mpf.wfm.buffers.Markup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The keyframes for the boxes of a single track. Rather than storing a box for every frame the track appears on, a
+ * box is only stored for each detection. The boxes on the frames between two keyframes are computed when they are
+ * needed by {@link BoundingBoxTrackInterpolator}.
+ */
+public class BoundingBoxTrack {
+
+    private final List<Keyframe> keyframes = new ArrayList<>();
+
+    public List<Keyframe> getKeyframes() {
+        return Collections.unmodifiableList(keyframes);
+    }
+
+    /**
+     * Adds a keyframe to the end of this track.
+     *
+     * @param frame       The 0-based index of the frame in the video. Must not be less than the previous keyframe's frame.
+     * @param boundingBox The box to draw on the frame. Must not be null.
+     * @param interpolate When true, the box is also drawn on each frame between this keyframe and the next, moving and
+     *                    resizing towards the next keyframe's box.
+     */
+    public void addKeyframe(int frame, BoundingBox boundingBox, boolean interpolate) {
+        if (frame < 0) {
+            throw new IllegalArgumentException("frame must not be less than 0");
+        }
+
+        if (boundingBox == null) {
+            throw new IllegalArgumentException("boundingBox must not be null");
+        }
+
+        if (!keyframes.isEmpty() && frame < keyframes.get(keyframes.size() - 1).getFrame()) {
+            throw new IllegalArgumentException("Keyframes must be added in frame order.");
+        }
+
+        keyframes.add(new Keyframe(frame, boundingBox, interpolate));
+    }
+
+    public boolean isEmpty() {
+        return keyframes.isEmpty();
+    }
+
+    public Markup.BoundingBoxTrack toProtocolBuffer() {
+        Markup.BoundingBoxTrack.Builder builder = Markup.BoundingBoxTrack.newBuilder();
+        for (Keyframe keyframe : keyframes) {
+            Markup.BoundingBoxKeyframe.Builder keyframeBuilder = builder.addKeyframesBuilder()
+                    .setFrameNumber(keyframe.getFrame())
+                    .setBoundingBox(keyframe.getBoundingBox().toProtocolBuffer());
+            // Left unset when false so that it is not written out.
+            if (keyframe.isInterpolate()) {
+                keyframeBuilder.setInterpolate(true);
+            }
+        }
+        return builder.build();
+    }
+
+    public static BoundingBoxTrack fromProtocolBuffer(Markup.BoundingBoxTrack protobufTrack) {
+        BoundingBoxTrack track = new BoundingBoxTrack();
+        for (Markup.BoundingBoxKeyframe keyframe : protobufTrack.getKeyframesList()) {
+            track.addKeyframe(keyframe.getFrameNumber(), BoundingBox.fromProtocolBuffer(keyframe.getBoundingBox()),
+                              keyframe.getInterpolate());
+        }
+        return track;
+    }
+
+
+    public static class Keyframe {
+        private final int frame;
+        private final BoundingBox boundingBox;
+        private final boolean interpolate;
+
+        private Keyframe(int frame, BoundingBox boundingBox, boolean interpolate) {
+            this.frame = frame;
+            this.boundingBox = boundingBox;
+            this.interpolate = interpolate;
+        }
+
+        public int getFrame() {
+            return frame;
+        }
+
+        public BoundingBox getBoundingBox() {
+            return boundingBox;
+        }
+
+        public boolean isInterpolate() {
+            return interpolate;
+        }
+    }
+}
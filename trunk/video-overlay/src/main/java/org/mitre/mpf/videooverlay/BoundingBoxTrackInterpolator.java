@@ -0,0 +1,136 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.videooverlay;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Computes the boxes for a frame from the keyframes of a set of tracks. Only the boxes for the requested frame are
+ * created, so memory use depends on the number of keyframes rather than on the number of frames the tracks span.
+ * The boxes are computed the same way as {@link BoundingBoxMap#animate}.
+ */
+public class BoundingBoxTrackInterpolator implements BoundingBoxSource {
+
+    // Ordered by first frame.
+    private final List<Segment> segments = new ArrayList<>();
+
+    // The segments that started on or before the last requested frame and had not ended before it.
+    private final List<Segment> activeSegments = new ArrayList<>();
+
+    private int nextSegmentIndex;
+
+    private int lastFrame = -1;
+
+
+    public BoundingBoxTrackInterpolator(Collection<BoundingBoxTrack> tracks) {
+        for (BoundingBoxTrack track : tracks) {
+            List<BoundingBoxTrack.Keyframe> keyframes = track.getKeyframes();
+            for (int i = 0; i < keyframes.size(); i++) {
+                BoundingBoxTrack.Keyframe keyframe = keyframes.get(i);
+                boolean hasNext = i < keyframes.size() - 1;
+                if (keyframe.isInterpolate() && hasNext) {
+                    BoundingBoxTrack.Keyframe next = keyframes.get(i + 1);
+                    segments.add(new Segment(keyframe.getFrame(), Math.max(keyframe.getFrame(), next.getFrame() - 1),
+                                             keyframe.getBoundingBox(), next.getBoundingBox()));
+                }
+                else {
+                    segments.add(new Segment(keyframe.getFrame(), keyframe.getFrame(),
+                                             keyframe.getBoundingBox(), null));
+                }
+            }
+        }
+        // List.sort is stable, so boxes on the same frame are drawn in track order.
+        segments.sort(Comparator.comparingInt(s -> s.firstFrame));
+    }
+
+
+    @Override
+    public List<BoundingBox> getBoundingBoxes(int frame) {
+        if (frame < lastFrame) {
+            activeSegments.clear();
+            nextSegmentIndex = 0;
+        }
+        lastFrame = frame;
+
+        while (nextSegmentIndex < segments.size() && segments.get(nextSegmentIndex).firstFrame <= frame) {
+            activeSegments.add(segments.get(nextSegmentIndex));
+            nextSegmentIndex++;
+        }
+        activeSegments.removeIf(s -> s.lastFrame < frame);
+
+        if (activeSegments.isEmpty()) {
+            return List.of();
+        }
+        List<BoundingBox> boxes = new ArrayList<>(activeSegments.size());
+        for (Segment segment : activeSegments) {
+            boxes.add(segment.getBoundingBox(frame));
+        }
+        return boxes;
+    }
+
+
+    private static class Segment {
+        final int firstFrame;
+        final int lastFrame;
+        final BoundingBox origin;
+        final BoundingBox destination; // null when the box does not move
+
+        Segment(int firstFrame, int lastFrame, BoundingBox origin, BoundingBox destination) {
+            this.firstFrame = firstFrame;
+            this.lastFrame = lastFrame;
+            this.origin = origin;
+            this.destination = destination;
+        }
+
+        BoundingBox getBoundingBox(int frame) {
+            int frameOffset = frame - firstFrame;
+            if (destination == null || frameOffset == 0) {
+                return origin;
+            }
+            // The destination box is drawn by the next keyframe, so the animation takes one more frame than the
+            // segment covers.
+            double interval = lastFrame - firstFrame + 1;
+            double dx = (destination.getX() - origin.getX()) / interval;
+            double dy = (destination.getY() - origin.getY()) / interval;
+            double dWidth = (destination.getWidth() - origin.getWidth()) / interval;
+            double dHeight = (destination.getHeight() - origin.getHeight()) / interval;
+            return new BoundingBox(
+                    (int) Math.round(origin.getX() + dx * frameOffset),
+                    (int) Math.round(origin.getY() + dy * frameOffset),
+                    (int) Math.round(origin.getWidth() + dWidth * frameOffset),
+                    (int) Math.round(origin.getHeight() + dHeight * frameOffset),
+                    origin.getRotationDegrees(),
+                    origin.getFlip(),
+                    origin.getRed(),
+                    origin.getGreen(),
+                    origin.getBlue());
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.List;
 
 public class BoundingBoxWriter {
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(BoundingBoxWriter.class);
@@ -57,6 +58,8 @@ public class BoundingBoxWriter {
 
     private BoundingBoxMap boundingBoxMap = new BoundingBoxMap(); // Assigned a default value to prevent NPEs.
 
+    private BoundingBoxSource boundingBoxSource = boundingBoxMap; // Defaults to the BoundingBoxMap.
+
     public BoundingBoxMap getBoundingBoxMap() {
         return boundingBoxMap;
     }
@@ -70,6 +73,27 @@ public class BoundingBoxWriter {
         }
 
         this.boundingBoxMap = boundingBoxMap;
+        this.boundingBoxSource = boundingBoxMap;
+    }
+
+    /**
+     * Sets where the boxes drawn by {@link #markupVideo()} come from. This replaces the source set by
+     * {@link #setBoundingBoxMap(BoundingBoxMap)}. Images are always marked up using the BoundingBoxMap.
+     * The parameter must not be null.
+     */
+    public void setBoundingBoxSource(BoundingBoxSource boundingBoxSource) {
+        if (boundingBoxSource == null) {
+            throw new IllegalArgumentException("boundingBoxSource must not be null");
+        }
+
+        this.boundingBoxSource = boundingBoxSource;
+    }
+
+    /**
+     * Called from native code to get the boxes for each frame of the video as it is written.
+     */
+    public List<BoundingBox> getBoundingBoxes(int frame) {
+        return boundingBoxSource.getBoundingBoxes(frame);
     }
 
     /**
@@ -0,0 +1,148 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.videooverlay;
+
+import org.mitre.mpf.wfm.buffers.Markup;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares sending a markup request for a long video track as per-frame {@link BoundingBoxMap} entries with sending
+ * only the track's keyframes and interpolating them with {@link BoundingBoxTrackInterpolator}. Each benchmark method
+ * builds the request on the WFM side, parses it on the markup side, and then gets the boxes for every frame the way
+ * {@link BoundingBoxWriter} does. Run with "-prof gc" to compare the allocation rates. The serialized size of each
+ * request is printed during setup. This is not run as part of the unit tests. To run it, execute the main method from
+ * an IDE or run:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.mitre.mpf.videooverlay.BoundingBoxTrackBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BoundingBoxTrackBenchmark {
+
+    private static final int FRAME_COUNT = 100_000;
+
+    // The number of frames between detections, as if the detection frame interval was set.
+    @Param({"1", "10"})
+    public int detectionInterval;
+
+    private BoundingBoxTrack _track;
+
+
+    @Setup
+    public void setup() {
+        _track = new BoundingBoxTrack();
+        for (int frame = 0; frame < FRAME_COUNT; frame += detectionInterval) {
+            BoundingBox box = new BoundingBox(frame % 640, frame % 480, 50 + frame % 20, 80 + frame % 30,
+                                              0, false, 0xFF, 0, 0);
+            boolean isLast = frame + detectionInterval >= FRAME_COUNT;
+            _track.addKeyframe(frame, box, !isLast && detectionInterval > 1);
+        }
+
+        System.out.printf("%nPer-frame request size: %,d bytes. Keyframe request size: %,d bytes.%n",
+                          createPerFrameRequest().length, createKeyframeRequest().length);
+    }
+
+
+    @Benchmark
+    public int perFrameMap() throws Exception {
+        Markup.MarkupRequest request = Markup.MarkupRequest.parseFrom(createPerFrameRequest());
+        BoundingBoxMap map = new BoundingBoxMap();
+        for (Markup.BoundingBoxMapEntry entry : request.getMapEntriesList()) {
+            map.putOnFrame(entry.getFrameNumber(), BoundingBox.fromProtocolBuffer(entry.getBoundingBox()));
+        }
+        return drawAllFrames(map);
+    }
+
+
+    @Benchmark
+    public int keyframes() throws Exception {
+        Markup.MarkupRequest request = Markup.MarkupRequest.parseFrom(createKeyframeRequest());
+        List<BoundingBoxTrack> tracks = new ArrayList<>();
+        for (Markup.BoundingBoxTrack track : request.getTracksList()) {
+            tracks.add(BoundingBoxTrack.fromProtocolBuffer(track));
+        }
+        return drawAllFrames(new BoundingBoxTrackInterpolator(tracks));
+    }
+
+
+    private byte[] createPerFrameRequest() {
+        BoundingBoxMap map = new BoundingBoxMap();
+        map.putTrack(_track);
+        return createRequestBuilder()
+                .addAllMapEntries(map.toBoundingBoxMapEntryList())
+                .build()
+                .toByteArray();
+    }
+
+
+    private byte[] createKeyframeRequest() {
+        return createRequestBuilder()
+                .addTracks(_track.toProtocolBuffer())
+                .build()
+                .toByteArray();
+    }
+
+
+    private static Markup.MarkupRequest.Builder createRequestBuilder() {
+        return Markup.MarkupRequest.newBuilder()
+                .setRequestId(1)
+                .setMediaIndex(0)
+                .setTaskIndex(0)
+                .setActionIndex(0)
+                .setMediaId(1)
+                .setMediaType(Markup.MediaType.VIDEO)
+                .setSourceUri("file:///tmp/source.avi")
+                .setDestinationUri("file:///tmp/destination.avi");
+    }
+
+
+    private static int drawAllFrames(BoundingBoxSource source) {
+        int boxCount = 0;
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            boxCount += source.getBoundingBoxes(frame).size();
+        }
+        return boxCount;
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(BoundingBoxTrackBenchmark.class.getSimpleName())
+                           .build())
+                .run();
+    }
+}
@@ -215,4 +215,16 @@ public class TestBoundingBoxMap {
         BoundingBoxMap map = new BoundingBoxMap();
         map.putOnFrames(3, -15, new BoundingBox(0, 0, 0, 0, 0, false, 0, 0, 0));
     }
+
+    @Test
+    public void testGetBoundingBoxesIncludesAllFrames() {
+        BoundingBoxMap map = new BoundingBoxMap();
+        BoundingBox frameBox = new BoundingBox(1, 1, 1, 1, 0, false, 0, 0, 0);
+        BoundingBox allFramesBox = new BoundingBox(2, 2, 2, 2, 0, false, 0, 0, 0);
+        map.putOnFrame(3, frameBox);
+        map.putOnFrame(BoundingBoxMap.ALL_FRAMES, allFramesBox);
+
+        Assert.assertEquals(List.of(allFramesBox), map.getBoundingBoxes(2));
+        Assert.assertEquals(List.of(frameBox, allFramesBox), map.getBoundingBoxes(3));
+    }
 }
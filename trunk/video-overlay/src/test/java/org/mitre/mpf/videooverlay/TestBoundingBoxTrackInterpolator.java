@@ -0,0 +1,127 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.videooverlay;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+public class TestBoundingBoxTrackInterpolator {
+
+    @Test
+    public void testMatchesBoundingBoxMap() {
+        Random random = new Random(42);
+        List<BoundingBoxTrack> tracks = new ArrayList<>();
+        for (int t = 0; t < 20; t++) {
+            BoundingBoxTrack track = new BoundingBoxTrack();
+            int frame = random.nextInt(50);
+            int keyframeCount = 1 + random.nextInt(10);
+            for (int k = 0; k < keyframeCount; k++) {
+                BoundingBox box = new BoundingBox(random.nextInt(500), random.nextInt(500),
+                                                  1 + random.nextInt(200), 1 + random.nextInt(200),
+                                                  0, false, t, t, t);
+                boolean isLast = k == keyframeCount - 1;
+                track.addKeyframe(frame, box, !isLast && random.nextBoolean());
+                frame += random.nextInt(15);
+            }
+            tracks.add(track);
+        }
+
+        BoundingBoxMap map = new BoundingBoxMap();
+        tracks.forEach(map::putTrack);
+        BoundingBoxTrackInterpolator interpolator = new BoundingBoxTrackInterpolator(tracks);
+
+        for (int frame = 0; frame <= map.lastKey() + 5; frame++) {
+            // BoundingBoxMap.animate puts the origin box on the first frame twice, so duplicates are ignored.
+            Assert.assertEquals(String.format("Boxes for frame %d did not match.", frame),
+                                new LinkedHashSet<>(map.getBoundingBoxes(frame)),
+                                new LinkedHashSet<>(interpolator.getBoundingBoxes(frame)));
+        }
+    }
+
+    @Test
+    public void testInterpolation() {
+        BoundingBoxTrack track = new BoundingBoxTrack();
+        track.addKeyframe(10, new BoundingBox(0, 0, 10, 10, 0, false, 0xFF, 0, 0), true);
+        track.addKeyframe(14, new BoundingBox(40, 20, 50, 10, 0, false, 0xFF, 0, 0), false);
+
+        BoundingBoxTrackInterpolator interpolator = new BoundingBoxTrackInterpolator(List.of(track));
+
+        Assert.assertTrue(interpolator.getBoundingBoxes(9).isEmpty());
+        Assert.assertEquals(List.of(new BoundingBox(0, 0, 10, 10, 0, false, 0xFF, 0, 0)),
+                            interpolator.getBoundingBoxes(10));
+        Assert.assertEquals(List.of(new BoundingBox(20, 10, 30, 10, 0, false, 0xFF, 0, 0)),
+                            interpolator.getBoundingBoxes(12));
+        Assert.assertEquals(List.of(new BoundingBox(40, 20, 50, 10, 0, false, 0xFF, 0, 0)),
+                            interpolator.getBoundingBoxes(14));
+        Assert.assertTrue(interpolator.getBoundingBoxes(15).isEmpty());
+    }
+
+    @Test
+    public void testFramesRequestedOutOfOrder() {
+        BoundingBoxTrack track = new BoundingBoxTrack();
+        track.addKeyframe(2, new BoundingBox(0, 0, 10, 10, 0, false, 0, 0xFF, 0), true);
+        track.addKeyframe(6, new BoundingBox(8, 8, 10, 10, 0, false, 0, 0xFF, 0), false);
+
+        BoundingBoxTrackInterpolator interpolator = new BoundingBoxTrackInterpolator(List.of(track));
+        List<BoundingBox> frame4Boxes = interpolator.getBoundingBoxes(4);
+        Assert.assertTrue(interpolator.getBoundingBoxes(7).isEmpty());
+
+        Assert.assertEquals(List.of(new BoundingBox(0, 0, 10, 10, 0, false, 0, 0xFF, 0)),
+                            interpolator.getBoundingBoxes(2));
+        Assert.assertEquals(frame4Boxes, interpolator.getBoundingBoxes(4));
+    }
+
+    @Test
+    public void testProtocolBufferRoundTrip() {
+        BoundingBoxTrack track = new BoundingBoxTrack();
+        track.addKeyframe(0, new BoundingBox(1, 2, 3, 4, 90, true, 5, 6, 7), true);
+        track.addKeyframe(100, new BoundingBox(8, 9, 10, 11, 0, false, 5, 6, 7), false);
+
+        BoundingBoxTrack copy = BoundingBoxTrack.fromProtocolBuffer(track.toProtocolBuffer());
+
+        Assert.assertEquals(track.getKeyframes().size(), copy.getKeyframes().size());
+        for (int i = 0; i < track.getKeyframes().size(); i++) {
+            BoundingBoxTrack.Keyframe expected = track.getKeyframes().get(i);
+            BoundingBoxTrack.Keyframe actual = copy.getKeyframes().get(i);
+            Assert.assertEquals(expected.getFrame(), actual.getFrame());
+            Assert.assertEquals(expected.getBoundingBox(), actual.getBoundingBox());
+            Assert.assertEquals(expected.isInterpolate(), actual.isInterpolate());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testKeyframesMustNotGoBackwards() {
+        BoundingBoxTrack track = new BoundingBoxTrack();
+        track.addKeyframe(10, new BoundingBox(0, 0, 0, 0, 0, false, 0, 0, 0), false);
+        track.addKeyframe(9, new BoundingBox(0, 0, 0, 0, 0, false, 0, 0, 0), false);
+    }
+}
@@ -27,6 +27,7 @@
 package org.mitre.mpf.mvc.controller;
 
  import org.mitre.mpf.mvc.util.tailer.FilteredMpfLogTailerListener;
+import org.mitre.mpf.mvc.util.tailer.MpfLogIndex;
 import org.mitre.mpf.mvc.util.tailer.MpfLogLevel;
 import org.mitre.mpf.mvc.util.tailer.MpfLogTailer;
 import org.mitre.mpf.wfm.WfmProcessingException;
@@ -45,7 +46,9 @@ import org.springframework.web.servlet.ModelAndView;
 import javax.servlet.http.HttpServletRequest;
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 // NOTE: Don't use @Scope("request") because we don't need to access to the session
 // and the additional overhead associated with creating the log file maps per request.
@@ -64,6 +67,9 @@ public class AdminLogsController
     // a map between nodes and another map between log name and log File
     private Map<String, Map<String, File>> nodesAndLogFiles = new HashMap<String, Map<String, File>>();
 
+    // a map between log File and the index used to read it from the end
+    private final Map<File, MpfLogIndex> logIndices = new ConcurrentHashMap<>();
+
     @Autowired
     private PropertiesUtil propertiesUtil;
 
@@ -86,6 +92,7 @@ public class AdminLogsController
                                          @RequestParam(value = "logSelection") String logSelection,
                                          @RequestParam(value = "logLevelSelection") String logLevelSelection,
                                          @RequestParam(value = "maxLines") int maxLines,
+                                         @RequestParam(value = "maxChars", required = false) Integer maxChars,
                                          @RequestParam(value = "cycleId") int cycleId,
                                          @RequestParam(value = "lastChecked") long lastChecked,
                                          @RequestParam(value = "lastPosition") long lastPosition,
@@ -97,24 +104,32 @@ public class AdminLogsController
         nodeSelection, logSelection, logLevelSelection, maxLines,, cycleId, lastChecked, lastPosition, lastLineLevel);
         */
 
-        // check for empty nodes and logs lists; this won't happen ordinarily but could happen if tomcat is restarted
-        // after the user has viewed logs(?)
-        if (nodesAndLogFiles.isEmpty()) {
-            nodesAndLogs = getNodesAndLogs();
-        }
-        File logFile = null;
-        if (nodesAndLogFiles.containsKey(nodeSelection)) {
-            // get the log files for this node
-            Map<String, File> logFiles = nodesAndLogFiles.get(nodeSelection);
+        File logFile = getLogFile(nodeSelection, logSelection);
 
-            if (logFiles.containsKey(logSelection)) {
-                // get the File object for this log
-                logFile = logFiles.get(logSelection);
+        Map<String, Object> json = new HashMap<>();
+        if (logFile != null && logFile.exists() && lastChecked == -1 && lastPosition == -1) {
+            // when tailing the file for the first time, only the end of the file is needed, so read it backward
+            // from the end instead of reading the whole file
+            MpfLogIndex.Page page = readLastLines(
+                    logFile, maxLines, Objects.requireNonNullElse(maxChars, Integer.MAX_VALUE),
+                    MpfLogLevel.toLevel(logLevelSelection));
+
+            String lastLineLevelStr = null;
+            if (page.getLastLineLevel() != null) {
+                lastLineLevelStr = page.getLastLineLevel().toString();
             }
-        }
 
-        Map<String, Object> json = new HashMap<>();
-        if (logFile != null && logFile.exists()) {
+            json.put("logExists", true);
+            json.put("text", String.join("\n", page.getLines()).trim());
+            json.put("numLines", page.getLines().size());
+            json.put("cycleId", cycleId);
+            json.put("lastChecked", System.currentTimeMillis());
+            json.put("lastPosition", page.getEndPosition());
+            json.put("lastLineLevel", lastLineLevelStr);
+            json.put("skippedAhead", page.hasEarlierLines());
+            json.put("indexId", page.getIndexId());
+            json.put("firstLine", page.getFirstLine());
+        } else if (logFile != null && logFile.exists()) {
             // log.info("creating tailer for {}", logFile );
             FilteredMpfLogTailerListener tailerListener =
                     new FilteredMpfLogTailerListener(MpfLogLevel.toLevel(logLevelSelection), MpfLogLevel.toLevel(lastLineLevel, null));
@@ -122,16 +137,6 @@ public class AdminLogsController
 
             int numLines = tailer.readLines(maxLines);
             List<String> lines = tailerListener.purgeLines();
-            boolean skippedAhead = false;
-
-            // if tailing the file for the first time and we haven't read to the end of the file ...
-            if (lastChecked == -1 && lastPosition == -1 && numLines == maxLines) {
-                while (tailer.readLines(1) > 0) {
-                    lines.remove(0);
-                    lines.add(tailerListener.purgeLines().get(0));
-                    skippedAhead = true;
-                }
-            }
 
             StringBuilder buff = new StringBuilder();
             for (String line : lines) {
@@ -151,7 +156,7 @@ public class AdminLogsController
             json.put("lastChecked", tailer.getLastChecked());
             json.put("lastPosition", tailer.getLastPosition());
             json.put("lastLineLevel", lastLineLevelStr);
-            json.put("skippedAhead", skippedAhead);
+            json.put("skippedAhead", false);
 
             tailer.cleanup();
         } else {
@@ -162,6 +167,81 @@ public class AdminLogsController
         return json;
     }
 
+    @RequestMapping(value = "/adminLogsPage", method = RequestMethod.GET)
+    @ResponseBody
+    public Map<String, Object> getLogPage(@RequestParam(value = "nodeSelection") String nodeSelection,
+                                          @RequestParam(value = "logSelection") String logSelection,
+                                          @RequestParam(value = "logLevelSelection") String logLevelSelection,
+                                          @RequestParam(value = "maxLines") int maxLines,
+                                          @RequestParam(value = "maxChars", required = false) Integer maxChars,
+                                          @RequestParam(value = "indexId") String indexId,
+                                          @RequestParam(value = "beforeLine") long beforeLine)
+        throws WfmProcessingException {
+
+        // returns the lines before the first line that the client already has, using the index created when the
+        // client started tailing the file
+        File logFile = getLogFile(nodeSelection, logSelection);
+
+        Map<String, Object> json = new HashMap<>();
+        if (logFile == null || !logFile.exists()) {
+            json.put("logExists", false);
+            return json;
+        }
+
+        Optional<MpfLogIndex.Page> page;
+        try {
+            page = getLogIndex(logFile).readLinesBefore(
+                    indexId, beforeLine, maxLines, Objects.requireNonNullElse(maxChars, Integer.MAX_VALUE),
+                    MpfLogLevel.toLevel(logLevelSelection));
+        } catch (IOException e) {
+            throw new WfmProcessingException(String.format("Failed to read log file %s.", logFile), e);
+        }
+
+        json.put("logExists", true);
+        // the log was rotated or truncated, so the client must start over
+        json.put("indexReset", page.isEmpty());
+        page.ifPresent(p -> {
+            json.put("text", String.join("\n", p.getLines()).trim());
+            json.put("numLines", p.getLines().size());
+            json.put("indexId", p.getIndexId());
+            json.put("firstLine", p.getFirstLine());
+            json.put("hasEarlierLines", p.hasEarlierLines());
+        });
+        return json;
+    }
+
+    private File getLogFile(String nodeSelection, String logSelection) throws WfmProcessingException {
+        // check for empty nodes and logs lists; this won't happen ordinarily but could happen if tomcat is restarted
+        // after the user has viewed logs(?)
+        if (nodesAndLogFiles.isEmpty()) {
+            nodesAndLogs = getNodesAndLogs();
+        }
+        File logFile = null;
+        if (nodesAndLogFiles.containsKey(nodeSelection)) {
+            // get the log files for this node
+            Map<String, File> logFiles = nodesAndLogFiles.get(nodeSelection);
+
+            if (logFiles.containsKey(logSelection)) {
+                // get the File object for this log
+                logFile = logFiles.get(logSelection);
+            }
+        }
+        return logFile;
+    }
+
+    private MpfLogIndex getLogIndex(File logFile) {
+        return logIndices.computeIfAbsent(logFile, f -> new MpfLogIndex(f.toPath()));
+    }
+
+    private MpfLogIndex.Page readLastLines(File logFile, int maxLines, int maxChars, MpfLogLevel filterLevel)
+            throws WfmProcessingException {
+        try {
+            return getLogIndex(logFile).readLastLines(maxLines, maxChars, filterLevel);
+        } catch (IOException e) {
+            throw new WfmProcessingException(String.format("Failed to read log file %s.", logFile), e);
+        }
+    }
+
     private Map<String, Set<String>> getNodesAndLogs() throws WfmProcessingException {
 
         // this method has a side effect of populating nodesAndLogFiles, the map of host to [a map of simple logname to
@@ -34,14 +34,15 @@ import org.mitre.mpf.mvc.model.SessionModel;
 import org.mitre.mpf.rest.api.*;
 import org.mitre.mpf.wfm.WfmProcessingException;
 import org.mitre.mpf.wfm.businessrules.JobRequestService;
+import org.mitre.mpf.wfm.data.BatchJobBlobCodec;
 import org.mitre.mpf.wfm.data.access.JobRequestDao;
 import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
 import org.mitre.mpf.wfm.data.entities.persistent.JobRequest;
+import org.mitre.mpf.wfm.data.entities.persistent.JobRequestSummary;
 import org.mitre.mpf.wfm.event.JobProgress;
 import org.mitre.mpf.wfm.service.S3StorageBackend;
 import org.mitre.mpf.wfm.service.StorageException;
 import org.mitre.mpf.wfm.util.IoUtils;
-import org.mitre.mpf.wfm.util.JsonUtils;
 import org.mitre.mpf.wfm.util.PropertiesUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -90,7 +91,7 @@ public class JobController {
     private JobProgress jobProgress;
 
     @Autowired
-    private JsonUtils jsonUtils;
+    private BatchJobBlobCodec batchJobBlobCodec;
 
     @Autowired
     private S3StorageBackend s3StorageBackend;
@@ -159,12 +160,13 @@ public class JobController {
     @ResponseBody
     public List<SingleJobInfo> getJobStatus(@RequestParam(value = "useSession", required = false) boolean useSession) {
         if (useSession) {
-            return sessionModel.getSessionJobs().stream()
-                    .map(id -> convertJob(jobRequestDao.findById(id)))
+            return jobRequestDao.findSummariesByIds(sessionModel.getSessionJobs())
+                    .stream()
+                    .map(this::convertJob)
                     .collect(toList());
         }
         else {
-            return jobRequestDao.findAll()
+            return jobRequestDao.findAllSummaries()
                     .stream()
                     .map(this::convertJob)
                     .collect(toList());
@@ -176,8 +178,8 @@ public class JobController {
             = ImmutableMap.<String, String>builder()
             .put("0", "id")
             .put("1", "pipeline")
-            .put("2", "time_received")
-            .put("3", "time_completed")
+            .put("2", "timeReceived")
+            .put("3", "timeCompleted")
             .put("4", "status")
             .put("5", "priority")
             .build();
@@ -193,15 +195,21 @@ public class JobController {
             @RequestParam(value = "length", required = false) int length,
             @RequestParam(value = "search", required = false) String search,
             @RequestParam(value = "order[0][column]", defaultValue = "0") String orderByColumn,
-            @RequestParam(value = "order[0][dir]", defaultValue = "desc") String orderDirection) {
-        log.debug("Params draw:{} start:{},length:{},search:{}", draw, start, length, search);
+            @RequestParam(value = "order[0][dir]", defaultValue = "desc") String orderDirection,
+            @RequestParam(value = "afterJobId", required = false) Long afterJobId) {
+        log.debug("Params draw:{} start:{},length:{},search:{},afterJobId:{}", draw, start, length, search,
+                  afterJobId);
 
-        String sortColumn = JOB_TABLE_COLUMN_NAMES.get(orderByColumn);
+        String sortColumn = JOB_TABLE_COLUMN_NAMES.getOrDefault(orderByColumn, "id");
         String sortOrderDirection = orderDirection.equals("desc") ? orderDirection : "asc";
 
         //handle paging
-        List<SingleJobInfo> jobInfoModels = jobRequestDao
-                .findByPage(length, start, search, sortColumn, sortOrderDirection)
+        // When the client sends the last job id from the previous page, the page can be found using the primary key
+        // index instead of skipping over all of the earlier pages.
+        List<JobRequestSummary> jobSummaries = afterJobId != null && sortColumn.equals("id")
+                ? jobRequestDao.findSummaryPageAfter(afterJobId, length, search, sortOrderDirection)
+                : jobRequestDao.findSummaryPage(length, start, search, sortColumn, sortOrderDirection);
+        List<SingleJobInfo> jobInfoModels = jobSummaries
                 .stream()
                 .map(this::convertJob)
                 .collect(toList());
@@ -293,7 +301,7 @@ public class JobController {
                 return ResponseEntity.ok(new FileSystemResource(new File(outputObjectUri)));
             }
 
-            var job = jsonUtils.deserialize(jobRequest.getJob(), BatchJob.class);
+            var job = batchJobBlobCodec.decode(jobRequest.getJob());
             InputStreamResource inputStreamResource;
             if (S3StorageBackend.requiresS3ResultUpload(job.getJobProperties()::get)) {
                 S3Object s3Object = s3StorageBackend.getFromS3(jobRequest.getOutputObjectPath(),
@@ -433,6 +441,10 @@ public class JobController {
 
 
     private SingleJobInfo convertJob(JobRequest job) {
+        return convertJob(new JobRequestSummary(job));
+    }
+
+    private SingleJobInfo convertJob(JobRequestSummary job) {
         float jobProgressVal = jobProgress.getJobProgress(job.getId())
                 .orElseGet(() -> job.getStatus().isTerminal() ? 100 : 0.0f);
         return new SingleJobInfo(
@@ -37,6 +37,7 @@ import org.mitre.mpf.rest.api.MarkupPageListModel;
 import org.mitre.mpf.rest.api.MarkupResultConvertedModel;
 import org.mitre.mpf.rest.api.MarkupResultModel;
 import org.mitre.mpf.wfm.WfmProcessingException;
+import org.mitre.mpf.wfm.data.BatchJobBlobCodec;
 import org.mitre.mpf.wfm.data.access.JobRequestDao;
 import org.mitre.mpf.wfm.data.access.MarkupResultDao;
 import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
@@ -47,7 +48,6 @@ import org.mitre.mpf.wfm.service.S3StorageBackend;
 import org.mitre.mpf.wfm.service.StorageException;
 import org.mitre.mpf.wfm.util.AggregateJobPropertiesUtil;
 import org.mitre.mpf.wfm.util.IoUtils;
-import org.mitre.mpf.wfm.util.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -90,7 +90,7 @@ public class MarkupController {
     private JobRequestDao jobRequestDao;
 
     @Autowired
-    private JsonUtils jsonUtils;
+    private BatchJobBlobCodec batchJobBlobCodec;
 
     @Autowired
     private S3StorageBackend s3StorageBackend;
@@ -148,7 +148,7 @@ public class MarkupController {
         //add job media that may exist without markup
         JobRequest jobRequest = jobRequestDao.findById(jobId);
         if (jobRequest != null) {
-            BatchJob job = jsonUtils.deserialize(jobRequest.getJob(), BatchJob.class);
+            BatchJob job = batchJobBlobCodec.decode(jobRequest.getJob());
 
             for (Media med : job.getMedia()) {
                 MarkupResultConvertedModel model = new MarkupResultConvertedModel();
@@ -280,7 +280,7 @@ public class MarkupController {
     private Function<String, String> getProperties(MarkupResult markupResult) {
         BatchJob job = Optional.ofNullable(jobRequestDao.findById(markupResult.getJobId()))
                 .map(JobRequest::getJob)
-                .map(bytes -> jsonUtils.deserialize(bytes, BatchJob.class))
+                .map(batchJobBlobCodec::decode)
                 .orElse(null);
 
         if (job == null) {
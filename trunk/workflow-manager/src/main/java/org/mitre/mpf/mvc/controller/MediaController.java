@@ -177,7 +177,7 @@ public class MediaController {
 			}
 		}
 
-		serverMediaService.addFilesToCache(desiredpath, successFiles, request.getServletContext());
+		serverMediaService.addFiles(successFiles);
 
 		return urlResultMap;
 	}
@@ -234,7 +234,7 @@ public class MediaController {
 				stream.close();
 				log.info("Completed upload and write of {} to {} ContentType:{}", newFile.getPath(), newFile.getAbsolutePath(),contentType);
 
-				serverMediaService.addFileToCache(desiredPathParam, newFile, request.getServletContext());
+				serverMediaService.addFile(newFile);
 
 				return new ResponseEntity<>(filename, HttpStatus.OK);
 			}
@@ -266,7 +266,7 @@ public class MediaController {
 			if(!dir.exists()){
 				if(dir.mkdir()){
 					log.debug("Directory added:"+dir.getAbsolutePath());
-					serverMediaService.getAllDirectories(propertiesUtil.getServerMediaTreeRoot(), request.getServletContext(),false, uploadPath);//reload the directories
+					serverMediaService.addDirectory(dir);
 					return new ResponseEntity<>("{\"dir\":\""+dir.getAbsolutePath()+"\"}", HttpStatus.OK);
 				}else{
 					return new ResponseEntity<>("{\"error\":\"Cannot Create Folder\"}", HttpStatus.INTERNAL_SERVER_ERROR);
@@ -34,6 +34,7 @@ import org.mitre.mpf.mvc.model.DirectoryTreeNode;
 import org.mitre.mpf.mvc.model.ServerMediaFile;
 import org.mitre.mpf.mvc.model.ServerMediaFilteredListing;
 import org.mitre.mpf.mvc.model.ServerMediaListing;
+import org.mitre.mpf.wfm.data.BatchJobBlobCodec;
 import org.mitre.mpf.wfm.data.access.JobRequestDao;
 import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
 import org.mitre.mpf.wfm.data.entities.persistent.JobRequest;
@@ -42,7 +43,6 @@ import org.mitre.mpf.wfm.service.ServerMediaService;
 import org.mitre.mpf.wfm.service.StorageException;
 import org.mitre.mpf.wfm.util.AggregateJobPropertiesUtil;
 import org.mitre.mpf.wfm.util.IoUtils;
-import org.mitre.mpf.wfm.util.JsonUtils;
 import org.mitre.mpf.wfm.util.PropertiesUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,9 +65,6 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.function.Function;
 
@@ -91,35 +88,18 @@ public class ServerMediaController {
     private JobRequestDao jobRequestDao;
 
     @Autowired
-    private JsonUtils jsonUtils;
+    private BatchJobBlobCodec batchJobBlobCodec;
 
     @Autowired
     private S3StorageBackend s3StorageBackend;
 
 
-    private static class SortAlphabeticalCaseInsensitive implements Comparator<ServerMediaFile> {
-        @Override
-        public int compare(ServerMediaFile s1, ServerMediaFile s2) {
-            return s1.getName().toLowerCase().compareTo(s2.getName().toLowerCase());
-        }
-    }
-
-    private static class SortAlphabeticalCaseSensitive implements Comparator<ServerMediaFile> {
-        @Override
-        public int compare(ServerMediaFile s1, ServerMediaFile s2) {
-            return s1.getName().compareTo(s2.getName());
-        }
-    }
-
     @RequestMapping(value = { "/server/get-all-directories" }, method = RequestMethod.GET)
     @ResponseBody
     public DirectoryTreeNode getAllDirectories(HttpServletRequest request, @RequestParam(required = false) Boolean useUploadRoot,
                                                @RequestParam(required = false, defaultValue = "true") boolean useCache){
-        String nodePath = propertiesUtil.getServerMediaTreeRoot();
-
         // if useUploadRoot is set it will take precedence over nodeFullPath
-        DirectoryTreeNode node = serverMediaService.getAllDirectories(nodePath, request.getServletContext(), useCache,
-                                                                      propertiesUtil.getRemoteMediaDirectory().getAbsolutePath());
+        DirectoryTreeNode node = serverMediaService.getAllDirectories(useCache);
         if(useUploadRoot != null && useUploadRoot){
             node =  DirectoryTreeNode.find(node, propertiesUtil.getRemoteMediaDirectory().getAbsolutePath());
         }
@@ -134,7 +114,7 @@ public class ServerMediaController {
         File dir = new File(fullPath);
         if(!dir.isDirectory() && fullPath.startsWith(propertiesUtil.getServerMediaTreeRoot())) return null; // security check
 
-        List<ServerMediaFile> mediaFiles = serverMediaService.getFiles(fullPath, request.getServletContext(), useCache, true);
+        List<ServerMediaFile> mediaFiles = serverMediaService.getFiles(fullPath, useCache, true);
         return new ServerMediaListing(mediaFiles);
     }
 
@@ -156,29 +136,8 @@ public class ServerMediaController {
         File dir = new File(fullPath);
         if(!dir.isDirectory() && fullPath.startsWith(propertiesUtil.getServerMediaTreeRoot())) return null; // security check
 
-        List<ServerMediaFile> mediaFiles = serverMediaService.getFiles(fullPath, request.getServletContext(), useCache, false);
-
-        // handle sort
-        Collections.sort(mediaFiles, (new SortAlphabeticalCaseInsensitive()). // make 'A' come before 'B'
-                thenComparing(new SortAlphabeticalCaseSensitive()) );         // make 'A' come before 'a'
-
-        // handle search
-        if(search != null && search.length() > 0) {
-            List<ServerMediaFile> searchResults = new ArrayList<>();
-            for (ServerMediaFile mediaFile : mediaFiles) {
-                if (mediaFile.getName().toLowerCase().contains(search.toLowerCase())) {
-                    searchResults.add(mediaFile);
-                }
-            }
-            mediaFiles = searchResults;
-        }
-
-        // handle paging
-        int end = start + length;
-        end = (end > mediaFiles.size())? mediaFiles.size() : end;
-        start = (start <= end)? start : end;
-
-        return new ServerMediaFilteredListing(draw, mediaFiles.size(), mediaFiles.size(), mediaFiles.subList(start, end));
+        // The index keeps the file names sorted, so only the files on the requested page are loaded.
+        return serverMediaService.getFilesPage(fullPath, draw, start, length, search, useCache);
     }
 
     /***
@@ -226,7 +185,7 @@ public class ServerMediaController {
             return;
         }
 
-        var job = jsonUtils.deserialize(jobRequest.getJob(), BatchJob.class);
+        var job = batchJobBlobCodec.decode(jobRequest.getJob());
         Function<String, String> combinedProperties
                 = aggregateJobPropertiesUtil.getCombinedProperties(job, sourceUri);
         if (S3StorageBackend.requiresS3MediaDownload(combinedProperties)) {
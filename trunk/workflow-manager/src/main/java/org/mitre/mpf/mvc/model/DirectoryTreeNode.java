@@ -26,22 +26,16 @@
 
 package org.mitre.mpf.mvc.model;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.*;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 
 public class DirectoryTreeNode {
-    private static final Logger log = LoggerFactory.getLogger(DirectoryTreeNode.class);
     private String text = null; //file or dir text/path;
     private String fullPath = null;
     private List<DirectoryTreeNode> nodes = null;
     private boolean canUpload = false;
+    private int fileCount = 0; // the number of media files directly in this directory
+    private boolean pending = false; // the directory has not been listed, or its files counted, yet
 
     public DirectoryTreeNode(File f) {
         this.text = f.getName();
@@ -68,6 +62,10 @@ public class DirectoryTreeNode {
         return this.nodes;
     }
 
+    public void setNodes(List<DirectoryTreeNode> nodes) {
+        this.nodes = nodes;
+    }
+
     public void addNode(DirectoryTreeNode node) {
         this.nodes.add(node);
     }
@@ -80,65 +78,20 @@ public class DirectoryTreeNode {
         this.canUpload = canUpload;
     }
 
-    public static DirectoryStream.Filter<Path> DirectoryFilter = entry -> (Files.isDirectory(entry));
-
-    public static DirectoryTreeNode fillDirectoryTree(DirectoryTreeNode node, List<DirectoryTreeNode> seenNodes, String uploadDir) {
-
-        List<Path> dirs = new ArrayList<Path>();
-        Path folder = Paths.get(node.getFullPath());
-
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, DirectoryFilter)) {
-            for (Path entry : stream) {
-                dirs.add(entry);
-            }
-        } catch (IOException e) {
-            log.error("Error detecting directories: " + e.getMessage());
-            return node;
-        }
+    public int getFileCount() {
+        return fileCount;
+    }
 
-        if(dirs.size() > 0) {
-            node.nodes = new ArrayList<DirectoryTreeNode>();
-            for (Path child : dirs) {
-                Path realPath = null;
-                try {
-                    realPath = child.toRealPath();
-                } catch (IOException e) {
-                    log.error("Error determining real path: " + e.getMessage());
-                }
-                if (realPath != null) {
-                    DirectoryTreeNode realChildNode = new DirectoryTreeNode(realPath.toFile()); // resolve symbolic link to real path
-
-                    if (Files.isSymbolicLink(child)) {
-                        if (seenNodes.contains(realChildNode)) {
-                            log.warn("Omitting duplicate symbolically linked directory in this branch: " + child.toAbsolutePath() + " --> " + realPath);
-                            continue; // prevent symlink loop
-                        }
-                        log.info("Adding symbolically linked directory: " + child.toAbsolutePath() + " --> " + realPath);
-                    }
-
-                    // only keep track of the nodes we've seen in this branch of the file tree;
-                    // it's okay for two separate branches to have the same symbolic links as long as there are no cycles
-                    List<DirectoryTreeNode> seenNodesCopy = new ArrayList<DirectoryTreeNode>();
-                    seenNodesCopy.addAll(seenNodes);
-                    seenNodesCopy.add(realChildNode);
-
-                    node.addNode(fillDirectoryTree(new DirectoryTreeNode(child.toFile()), seenNodesCopy, uploadDir)); // use absolute path
-                }
-            }
-            if (node.nodes.isEmpty()) {
-                node.nodes = null; // don't show a + for this node in the directory tree if it has no children
-            } else {
-                Comparator<String> stableCaseInsensitive = String.CASE_INSENSITIVE_ORDER
-                        .thenComparing(Comparator.naturalOrder());
-                node.nodes.sort(Comparator.comparing(DirectoryTreeNode::getText, stableCaseInsensitive));
-            }
-        }
+    public void setFileCount(int fileCount) {
+        this.fileCount = fileCount;
+    }
 
-        if (node.getFullPath().startsWith(uploadDir)) {
-            node.canUpload = true;
-        }
+    public boolean isPending() {
+        return pending;
+    }
 
-        return node;
+    public void setPending(boolean pending) {
+        this.pending = pending;
     }
 
     public static DirectoryTreeNode find(DirectoryTreeNode node,String fullPath) {
@@ -0,0 +1,477 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.mvc.util.tailer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * A sparse index of where the lines in a log file start. It is used to show the end of a log, and to page backward
+ * from there, without reading the whole file.
+ *
+ * Lines are numbered relative to the end of the file at the time the index was created, so earlier lines have
+ * negative numbers. Only the first and last indexed lines, and every line whose number is a multiple of the checkpoint
+ * interval, are recorded. The index starts out empty and is extended backward, by reading the file from the end in
+ * large blocks, only as far as a request needs. Reading a page of lines that has already been indexed only requires
+ * reading from the nearest checkpoint.
+ *
+ * When the file grows by a small amount, the new lines are added to the end of the index. When the file is rotated,
+ * truncated, or overwritten, or when it grows by a large amount, the index is rebuilt from the new end of the file and
+ * it gets a new id. Line numbers are only meaningful together with the id of the index that issued them.
+ */
+public class MpfLogIndex {
+
+    private static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 1024;
+
+    // The number of lines read at a time while searching backward for lines that match the filter level.
+    private static final int FILTER_PAGE_LINES = 4096;
+
+    // Lines that do not start with a log level get the level of the closest line before them that does. When more
+    // than this many of those lines are found in a row, they are dropped rather than held on to.
+    private static final int MAX_UNRESOLVED_LINES = 100_000;
+
+    private static final int FINGERPRINT_LENGTH = 512;
+
+    // When the file has grown by more than this many blocks, it is cheaper to start over from the new end of the file.
+    private static final int MAX_FORWARD_EXTENSION_BLOCKS = 64;
+
+    private final Path _path;
+
+    private final int _blockSize;
+
+    private final int _checkpointInterval;
+
+    // Line number -> offset of the first byte of the line.
+    private final TreeMap<Long, Long> _checkpoints = new TreeMap<>();
+
+    private String _id;
+
+    private Object _fileKey;
+
+    // Checksum of the bytes just before _endOffset. Used to detect when the file has been replaced.
+    private long _fingerprint;
+
+    // The indexed lines are [_firstLine, _endLine).
+    private long _firstLine;
+
+    private long _endLine;
+
+    // Offset just past the newline at the end of the last complete line in the file.
+    private long _endOffset;
+
+
+    public MpfLogIndex(Path path) {
+        this(path, DEFAULT_BLOCK_SIZE, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+
+    public MpfLogIndex(Path path, int blockSize, int checkpointInterval) {
+        _path = path;
+        _blockSize = blockSize;
+        _checkpointInterval = checkpointInterval;
+    }
+
+
+    /**
+     * Returns the last lines in the file that are at or above the filter level. A trailing line that does not end
+     * with a newline is assumed to still be being written, so it is not included.
+     *
+     * @param maxLines The maximum number of lines to return
+     * @param maxChars Stop reading earlier lines once the returned lines contain at least this many characters
+     * @param filterLevel The minimum log level
+     * @return The matching lines
+     * @throws IOException if an I/O error occurs.
+     */
+    public synchronized Page readLastLines(int maxLines, int maxChars, MpfLogLevel filterLevel) throws IOException {
+        try (FileChannel channel = FileChannel.open(_path, StandardOpenOption.READ)) {
+            sync(channel);
+            return readFilteredLines(channel, _endLine, maxLines, maxChars, filterLevel);
+        }
+    }
+
+
+    /**
+     * Returns the lines that are at or above the filter level and that come before the given line.
+     *
+     * @param indexId The id of the index that issued {@code beforeLine}
+     * @param beforeLine Usually the value of {@link Page#getFirstLine()} from the previous page
+     * @param maxLines The maximum number of lines to return
+     * @param maxChars Stop reading earlier lines once the returned lines contain at least this many characters
+     * @param filterLevel The minimum log level
+     * @return The matching lines, or empty if the file has changed such that the index was rebuilt since
+     *         {@code indexId} was issued.
+     * @throws IOException if an I/O error occurs.
+     */
+    public synchronized Optional<Page> readLinesBefore(String indexId, long beforeLine, int maxLines, int maxChars,
+                                                       MpfLogLevel filterLevel) throws IOException {
+        try (FileChannel channel = FileChannel.open(_path, StandardOpenOption.READ)) {
+            sync(channel);
+            if (!_id.equals(indexId)) {
+                return Optional.empty();
+            }
+            return Optional.of(readFilteredLines(channel, Math.min(beforeLine, _endLine), maxLines, maxChars,
+                                                 filterLevel));
+        }
+    }
+
+
+    synchronized long getIndexedLineCount() {
+        return _endLine - _firstLine;
+    }
+
+
+    synchronized int getCheckpointCount() {
+        return _checkpoints.size();
+    }
+
+
+    private Page readFilteredLines(FileChannel channel, long beforeLine, int maxLines, int maxChars,
+                                   MpfLogLevel filterLevel) throws IOException {
+        var lines = new ArrayDeque<String>();
+        var lineNumbers = new ArrayDeque<Long>();
+        // Leading lines from the previously read page that did not have their own level. Their level comes from a
+        // line on an earlier page.
+        List<String> unresolvedLines = List.of();
+        MpfLogLevel lastLineLevel = null;
+        boolean reachedStart = false;
+        long charCount = 0;
+        long end = beforeLine;
+
+        while (lines.size() < maxLines && charCount < maxChars) {
+            List<String> rawLines = readRawLines(channel, end - FILTER_PAGE_LINES, end);
+            long rawStart = end - rawLines.size();
+
+            var pageLines = new ArrayList<String>(rawLines.size() + unresolvedLines.size());
+            pageLines.addAll(rawLines);
+            pageLines.addAll(unresolvedLines);
+
+            var listener = new FilteredMpfLogTailerListener(filterLevel);
+            var matches = new boolean[pageLines.size()];
+            int firstLevelIndex = pageLines.size();
+            for (int i = 0; i < pageLines.size(); i++) {
+                matches[i] = listener.handle(pageLines.get(i));
+                if (firstLevelIndex == pageLines.size() && listener.getLastLineLevel() != null) {
+                    firstLevelIndex = i;
+                }
+            }
+            if (lastLineLevel == null) {
+                lastLineLevel = listener.getLastLineLevel();
+            }
+
+            for (int i = pageLines.size() - 1; i >= firstLevelIndex; i--) {
+                if (matches[i]) {
+                    lines.addFirst(pageLines.get(i));
+                    lineNumbers.addFirst(rawStart + i);
+                    charCount += pageLines.get(i).length() + 1;
+                }
+            }
+            unresolvedLines = firstLevelIndex > MAX_UNRESOLVED_LINES
+                    ? List.of()
+                    : new ArrayList<>(pageLines.subList(0, firstLevelIndex));
+            end = rawStart;
+
+            if (end <= _firstLine && _checkpoints.get(_firstLine) == 0) {
+                reachedStart = true;
+                break;
+            }
+        }
+
+        boolean hasEarlierLines = !reachedStart;
+        while (lines.size() > maxLines) {
+            lines.removeFirst();
+            lineNumbers.removeFirst();
+            hasEarlierLines = true;
+        }
+        long firstLine = lineNumbers.isEmpty() ? end : lineNumbers.getFirst();
+        return new Page(_id, new ArrayList<>(lines), firstLine, hasEarlierLines, _endOffset, lastLineLevel);
+    }
+
+
+    /**
+     * Returns the lines in [fromLine, toLine). Fewer lines are returned when the range extends past the start or
+     * end of the file.
+     */
+    private List<String> readRawLines(FileChannel channel, long fromLine, long toLine) throws IOException {
+        if (fromLine < _firstLine) {
+            extendBackward(channel, fromLine);
+            fromLine = Math.max(fromLine, _firstLine);
+        }
+        toLine = Math.min(toLine, _endLine);
+        if (fromLine >= toLine) {
+            return List.of();
+        }
+
+        Map.Entry<Long, Long> checkpoint = _checkpoints.floorEntry(fromLine);
+        long linesToSkip = fromLine - checkpoint.getKey();
+        int lineCount = (int) (toLine - fromLine);
+        var lines = new ArrayList<String>(lineCount);
+
+        channel.position(checkpoint.getValue());
+        InputStream inputStream = new BufferedInputStream(Channels.newInputStream(channel), _blockSize);
+        var lineBuffer = new ByteArrayOutputStream(256);
+        int b;
+        while (lines.size() < lineCount && (b = inputStream.read()) != -1) {
+            if (b != '\n') {
+                if (linesToSkip == 0) {
+                    lineBuffer.write(b);
+                }
+                continue;
+            }
+            if (linesToSkip > 0) {
+                linesToSkip--;
+                continue;
+            }
+            lines.add(decode(lineBuffer));
+            lineBuffer.reset();
+        }
+        return lines;
+    }
+
+
+    // Lines are decoded the same way as in MpfLogTailer so that they look the same regardless of how they were read.
+    private static String decode(ByteArrayOutputStream lineBuffer) {
+        String line = lineBuffer.toString(StandardCharsets.ISO_8859_1);
+        return line.endsWith("\r")
+                ? line.substring(0, line.length() - 1)
+                : line;
+    }
+
+
+    /**
+     * Makes sure the index still describes the file, and adds any lines that were appended since the last request.
+     */
+    private void sync(FileChannel channel) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(_path, BasicFileAttributes.class);
+        long length = channel.size();
+        boolean isSameFile = _id != null
+                && Objects.equals(attributes.fileKey(), _fileKey)
+                && length >= _endOffset
+                && getFingerprint(channel, _endOffset) == _fingerprint;
+
+        if (isSameFile && length - _endOffset <= (long) MAX_FORWARD_EXTENSION_BLOCKS * _blockSize) {
+            extendForward(channel, length);
+            return;
+        }
+
+        // The file was rotated, truncated, overwritten, or has grown too much since the index was created.
+        _id = UUID.randomUUID().toString();
+        _fileKey = attributes.fileKey();
+        _endOffset = findLastLineEnd(channel, length);
+        _firstLine = 0;
+        _endLine = 0;
+        _checkpoints.clear();
+        _checkpoints.put(0L, _endOffset);
+        _fingerprint = getFingerprint(channel, _endOffset);
+    }
+
+
+    private void extendForward(FileChannel channel, long length) throws IOException {
+        long previousEndLine = _endLine;
+        var buffer = ByteBuffer.allocate(_blockSize);
+        long blockStart = _endOffset;
+        while (blockStart < length) {
+            int bytesRead = readBlock(channel, buffer, blockStart, length);
+            for (int i = 0; i < bytesRead; i++) {
+                if (buffer.get(i) == '\n') {
+                    _endLine++;
+                    _endOffset = blockStart + i + 1;
+                    if (isCheckpointLine(_endLine)) {
+                        _checkpoints.put(_endLine, _endOffset);
+                    }
+                }
+            }
+            blockStart += bytesRead;
+        }
+
+        if (_endLine == previousEndLine) {
+            return;
+        }
+        _checkpoints.put(_endLine, _endOffset);
+        removeIfNotNeeded(previousEndLine);
+        _fingerprint = getFingerprint(channel, _endOffset);
+    }
+
+
+    private void extendBackward(FileChannel channel, long targetLine) throws IOException {
+        long previousFirstLine = _firstLine;
+        long firstOffset = _checkpoints.get(_firstLine);
+        var buffer = ByteBuffer.allocate(_blockSize);
+        // The byte just before firstOffset is the newline at the end of the line before _firstLine.
+        long scanEnd = firstOffset - 1;
+
+        while (_firstLine > targetLine && firstOffset > 0) {
+            if (scanEnd <= 0) {
+                _firstLine--;
+                firstOffset = 0;
+                break;
+            }
+            long blockStart = Math.max(0, scanEnd - _blockSize);
+            int bytesRead = readBlock(channel, buffer, blockStart, scanEnd);
+            for (int i = bytesRead - 1; i >= 0 && _firstLine > targetLine; i--) {
+                if (buffer.get(i) == '\n') {
+                    _firstLine--;
+                    firstOffset = blockStart + i + 1;
+                    if (isCheckpointLine(_firstLine)) {
+                        _checkpoints.put(_firstLine, firstOffset);
+                    }
+                }
+            }
+            scanEnd = blockStart;
+        }
+
+        if (_firstLine == previousFirstLine) {
+            return;
+        }
+        _checkpoints.put(_firstLine, firstOffset);
+        removeIfNotNeeded(previousFirstLine);
+    }
+
+
+    private long findLastLineEnd(FileChannel channel, long length) throws IOException {
+        var buffer = ByteBuffer.allocate(_blockSize);
+        long scanEnd = length;
+        while (scanEnd > 0) {
+            long blockStart = Math.max(0, scanEnd - _blockSize);
+            int bytesRead = readBlock(channel, buffer, blockStart, scanEnd);
+            for (int i = bytesRead - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return blockStart + i + 1;
+                }
+            }
+            scanEnd = blockStart;
+        }
+        return 0;
+    }
+
+
+    private long getFingerprint(FileChannel channel, long endOffset) throws IOException {
+        long start = Math.max(0, endOffset - FINGERPRINT_LENGTH);
+        var buffer = ByteBuffer.allocate(FINGERPRINT_LENGTH);
+        int bytesRead = readBlock(channel, buffer, start, endOffset);
+        var crc = new CRC32();
+        crc.update(buffer.array(), 0, bytesRead);
+        return crc.getValue();
+    }
+
+
+    private static int readBlock(FileChannel channel, ByteBuffer buffer, long start, long end) throws IOException {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+
+    private boolean isCheckpointLine(long line) {
+        return Math.floorMod(line, _checkpointInterval) == 0;
+    }
+
+
+    private void removeIfNotNeeded(long line) {
+        if (line != _firstLine && line != _endLine && !isCheckpointLine(line)) {
+            _checkpoints.remove(line);
+        }
+    }
+
+
+
+    public static class Page {
+        private final String _indexId;
+
+        private final List<String> _lines;
+
+        private final long _firstLine;
+
+        private final boolean _hasEarlierLines;
+
+        private final long _endPosition;
+
+        private final MpfLogLevel _lastLineLevel;
+
+        private Page(String indexId, List<String> lines, long firstLine, boolean hasEarlierLines, long endPosition,
+                     MpfLogLevel lastLineLevel) {
+            _indexId = indexId;
+            _lines = lines;
+            _firstLine = firstLine;
+            _hasEarlierLines = hasEarlierLines;
+            _endPosition = endPosition;
+            _lastLineLevel = lastLineLevel;
+        }
+
+        public String getIndexId() {
+            return _indexId;
+        }
+
+        public List<String> getLines() {
+            return _lines;
+        }
+
+        /**
+         * The number of the first line in this page. Pass it to {@link MpfLogIndex#readLinesBefore} to get the
+         * previous page.
+         */
+        public long getFirstLine() {
+            return _firstLine;
+        }
+
+        public boolean hasEarlierLines() {
+            return _hasEarlierLines;
+        }
+
+        /**
+         * The position just past the last complete line in the file. {@link MpfLogTailer} can continue from here.
+         */
+        public long getEndPosition() {
+            return _endPosition;
+        }
+
+        /**
+         * The level of the last line in the file that starts with a log level.
+         */
+        public MpfLogLevel getLastLineLevel() {
+            return _lastLineLevel;
+        }
+    }
+}
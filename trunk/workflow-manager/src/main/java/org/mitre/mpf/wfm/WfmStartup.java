@@ -54,7 +54,6 @@ import javax.management.ObjectName;
 import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
-import javax.servlet.ServletContext;
 import java.util.*;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -136,11 +135,7 @@ public class WfmStartup implements ApplicationListener<ApplicationEvent> {
 
     private void startFileIndexing(ApplicationContext appContext)  {
         if (appContext instanceof WebApplicationContext) {
-            WebApplicationContext webContext = (WebApplicationContext) appContext;
-            ServletContext servletContext = webContext.getServletContext();
-            ThreadUtil.runAsync(
-                    () -> serverMediaService.getFiles(propertiesUtil.getServerMediaTreeRoot(), servletContext,
-                                                      true, true));
+            serverMediaService.startIndexing();
         }
     }
 
@@ -37,6 +37,7 @@ import org.mitre.mpf.wfm.businessrules.JobRequestService;
 import org.mitre.mpf.wfm.camel.operations.detection.padding.DetectionPaddingException;
 import org.mitre.mpf.wfm.camel.operations.detection.padding.DetectionPaddingProcessor;
 import org.mitre.mpf.wfm.camel.routes.MediaRetrieverRouteBuilder;
+import org.mitre.mpf.wfm.data.BatchJobBlobCodec;
 import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
 import org.mitre.mpf.wfm.data.access.JobRequestDao;
 import org.mitre.mpf.wfm.data.access.MarkupResultDao;
@@ -71,7 +72,7 @@ public class JobRequestServiceImpl implements JobRequestService {
 
     private final PipelineService _pipelineService;
 
-    private final JsonUtils _jsonUtils;
+    private final BatchJobBlobCodec _batchJobBlobCodec;
 
     private final JmsUtils _jmsUtils;
 
@@ -90,7 +91,7 @@ public class JobRequestServiceImpl implements JobRequestService {
             PropertiesUtil propertiesUtil,
             AggregateJobPropertiesUtil aggregateJobPropertiesUtil,
             PipelineService pipelineService,
-            JsonUtils jsonUtils,
+            BatchJobBlobCodec batchJobBlobCodec,
             JmsUtils jmsUtils,
             InProgressBatchJobsService inProgressJobs,
             JobRequestDao jobRequestDao,
@@ -100,7 +101,7 @@ public class JobRequestServiceImpl implements JobRequestService {
         _pipelineService = pipelineService;
         _propertiesUtil = propertiesUtil;
         _aggregateJobPropertiesUtil = aggregateJobPropertiesUtil;
-        _jsonUtils = jsonUtils;
+        _batchJobBlobCodec = batchJobBlobCodec;
         _jmsUtils = jmsUtils;
         _inProgressJobs = inProgressJobs;
         _jobRequestDao = jobRequestDao;
@@ -153,7 +154,7 @@ public class JobRequestServiceImpl implements JobRequestService {
                     jobId, jobRequestEntity.getStatus().name()));
         }
 
-        BatchJob originalJob = _jsonUtils.deserialize(jobRequestEntity.getJob(), BatchJob.class);
+        BatchJob originalJob = _batchJobBlobCodec.decode(jobRequestEntity.getJob());
 
         List<Media> media = originalJob.getMedia()
                 .stream()
@@ -244,7 +245,7 @@ public class JobRequestServiceImpl implements JobRequestService {
 
             _inProgressJobs.setJobStatus(job.getId(), jobStatus);
 
-            jobRequestEntity.setJob(_jsonUtils.serialize(job));
+            jobRequestEntity.setJob(_batchJobBlobCodec.encode(job));
             jobRequestEntity.setStatus(jobStatus);
             jobRequestEntity = _jobRequestDao.persist(jobRequestEntity);
 
@@ -378,7 +379,7 @@ public class JobRequestServiceImpl implements JobRequestService {
                     LOG.warn("[Job {}:*:*] Failed to remove the pending work elements in the message broker for this job. The job must complete the pending work elements before it will cancel the job.", jobId, exception);
                 }
                 jobRequest.setStatus(BatchJobStatusType.CANCELLING);
-                jobRequest.setJob(_jsonUtils.serialize(_inProgressJobs.getJob(jobId)));
+                jobRequest.setJob(_batchJobBlobCodec.encode(_inProgressJobs.getJob(jobId)));
                 _jobRequestDao.persist(jobRequest);
             } else {
                 LOG.warn("[Job {}:*:*] The job is not in progress and cannot be cancelled at this time.", jobId);
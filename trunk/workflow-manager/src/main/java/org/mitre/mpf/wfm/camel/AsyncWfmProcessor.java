@@ -0,0 +1,145 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camel;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.mitre.mpf.wfm.WfmProcessingException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A {@link WfmProcessor} whose work completes on a different thread. When the route's consumer endpoint has
+ * asyncConsumer enabled, the consumer thread is released as soon as {@link #wfmProcessAsync(Exchange)} returns, so it
+ * can start on the next message while this one is still in progress. The rest of the route continues on the thread
+ * that completes the returned future.
+ *
+ * At most maxInProgress exchanges can be in progress at the same time. When that limit is reached, the consumer
+ * thread waits in {@link #process(Exchange, AsyncCallback)} until an earlier exchange completes. Since the consumer
+ * has not returned, the JMS message is not acknowledged and the remaining messages stay on the broker.
+ */
+public abstract class AsyncWfmProcessor implements WfmProcessorInterface, AsyncProcessor {
+
+	private final Semaphore _inProgressPermits;
+
+
+	protected AsyncWfmProcessor(int maxInProgress) {
+		_inProgressPermits = new Semaphore(maxInProgress);
+	}
+
+	/**
+	 * Starts processing the exchange. Any changes to the exchange's out message must be made before the returned
+	 * future completes.
+	 */
+	public abstract CompletableFuture<Void> wfmProcessAsync(Exchange exchange);
+
+
+	@Override
+	public boolean process(Exchange exchange, AsyncCallback callback) {
+		WfmProcessor.copyEssentialHeaders(exchange);
+
+		try {
+			_inProgressPermits.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			exchange.setException(e);
+			callback.done(true);
+			return true;
+		}
+
+		CompletableFuture<Void> future;
+		try {
+			future = wfmProcessAsync(exchange);
+		}
+		catch (Exception e) {
+			_inProgressPermits.release();
+			exchange.setException(e);
+			callback.done(true);
+			return true;
+		}
+
+		if (future.isDone()) {
+			_inProgressPermits.release();
+			setExceptionIfFailed(exchange, future);
+			callback.done(true);
+			return true;
+		}
+
+		future.whenComplete((result, error) -> {
+			_inProgressPermits.release();
+			setExceptionIfFailed(exchange, future);
+			callback.done(false);
+		});
+		return false;
+	}
+
+
+	@Override
+	public void process(Exchange exchange) {
+		WfmProcessor.copyEssentialHeaders(exchange);
+		wfmProcess(exchange);
+	}
+
+
+	/** Processes the exchange and waits for it to complete. */
+	@Override
+	public void wfmProcess(Exchange exchange) throws WfmProcessingException {
+		try {
+			wfmProcessAsync(exchange).join();
+		}
+		catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new WfmProcessingException(cause);
+		}
+	}
+
+
+	private static void setExceptionIfFailed(Exchange exchange, CompletableFuture<Void> future) {
+		try {
+			future.join();
+		}
+		catch (CompletionException e) {
+			exchange.setException(e.getCause());
+		}
+		catch (RuntimeException e) {
+			exchange.setException(e);
+		}
+	}
+
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName();
+	}
+}
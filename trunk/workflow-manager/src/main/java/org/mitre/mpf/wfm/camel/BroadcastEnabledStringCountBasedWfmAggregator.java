@@ -27,12 +27,8 @@
 package org.mitre.mpf.wfm.camel;
 
 import org.apache.camel.Exchange;
-import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
-import org.mitre.mpf.wfm.data.access.JobRequestDao;
-import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
 import org.mitre.mpf.wfm.enums.MpfHeaders;
-import org.mitre.mpf.wfm.event.JobProgress;
-import org.mitre.mpf.wfm.service.JobStatusBroadcaster;
+import org.mitre.mpf.wfm.service.JobProgressCoalescer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,16 +40,7 @@ public class BroadcastEnabledStringCountBasedWfmAggregator extends StringCountBa
     public static final String REF = "broadcastEnabledStringCountBasedWfmAggregator";
 
     @Autowired
-    private InProgressBatchJobsService inProgressBatchJobs;
-
-    @Autowired
-    private JobRequestDao hibernateJobRequestDao;
-
-    @Autowired
-    private JobProgress jobProgressStore;
-
-    @Autowired
-    private JobStatusBroadcaster jobStatusBroadcaster;
+    private JobProgressCoalescer jobProgressCoalescer;
 
     @Override
     public void onResponse(Exchange newExchange) {
@@ -67,15 +54,14 @@ public class BroadcastEnabledStringCountBasedWfmAggregator extends StringCountBa
             int aggregateCount = newExchange.getOut().getHeader(MpfHeaders.AGGREGATED_COUNT, Integer.class);
             int splitSize = newExchange.getOut().getHeader(MpfHeaders.SPLIT_SIZE, Integer.class);
             long jobId = newExchange.getOut().getHeader(MpfHeaders.JOB_ID, Long.class);
+            if (splitSize < 0) {
+                // The split is still being created lazily, so use the number of work units created so far.
+                splitSize = lazySplitSizes.getEstimatedSize(
+                        newExchange.getOut().getHeader(MpfHeaders.CORRELATION_ID, String.class));
+            }
 
-            BatchJob job = inProgressBatchJobs.getJob(jobId);
-            int tasksCompleted = job.getCurrentTaskIndex();
-            int totalTasks = job.getPipelineElements().getTaskCount();
-            float progressInCurrentTask = (float) aggregateCount / splitSize;
-            float jobProgress = (tasksCompleted + progressInCurrentTask) / totalTasks * 100;
-
-            jobStatusBroadcaster.broadcast(jobId, jobProgress, job.getStatus());
-            jobProgressStore.setJobProgress(jobId, jobProgress);
+            // The progress is broadcast later, along with any other responses received in the same interval.
+            jobProgressCoalescer.recordSplitProgress(jobId, aggregateCount, splitSize);
         } catch (Exception e) {
             log.error("Error getting necessary information to create a job progress update.");
         }
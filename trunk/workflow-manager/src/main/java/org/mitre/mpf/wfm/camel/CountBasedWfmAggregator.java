@@ -56,6 +56,7 @@ import org.apache.camel.Exchange;
 import org.mitre.mpf.wfm.enums.MpfHeaders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 
 /**
  * A count-based aggregator naively counts the number of exchanges which pass through it. When the count
@@ -68,6 +69,9 @@ import org.slf4j.LoggerFactory;
 public class CountBasedWfmAggregator<T> extends DefaultWfmAggregator<T> {
 	private static final Logger log = LoggerFactory.getLogger(CountBasedWfmAggregator.class);
 
+	@Autowired
+	protected LazySplitSizes lazySplitSizes;
+
 	public CountBasedWfmAggregator(Class<T> bodyClass) {
 		super(bodyClass);
 	}
@@ -83,6 +87,16 @@ public class CountBasedWfmAggregator<T> extends DefaultWfmAggregator<T> {
 			// After the first time through, increment the output exchange's AGGREGATED_COUNT.
 			aggregateCount = oldExchange.getIn().getHeader(MpfHeaders.AGGREGATED_COUNT, Integer.class) + 1;
 			newExchange.getOut().getHeaders().put(MpfHeaders.AGGREGATED_COUNT, aggregateCount);
+
+			// When a split is produced lazily, only the last work unit has the actual SPLIT_SIZE, and its response
+			// may arrive before the others. The rest use WfmSplitter.UNKNOWN_SPLIT_SIZE, which is negative.
+			splitSize = Math.max(splitSize, oldExchange.getIn().getHeader(MpfHeaders.SPLIT_SIZE, Integer.class));
+		}
+
+		String correlationId = newExchange.getIn().getHeader(MpfHeaders.CORRELATION_ID, String.class);
+		if (splitSize < 0) {
+			// The splitter records the actual size as soon as it creates the last work unit.
+			splitSize = lazySplitSizes.getFinalSize(correlationId);
 		}
 
 		// Regardless of whether or not this is the first time through the aggregator, copy the JOB_ID, JMS_PRIORITY, CORRELATION_ID, and SPLIT_SIZE
@@ -98,6 +112,7 @@ public class CountBasedWfmAggregator<T> extends DefaultWfmAggregator<T> {
 		if(aggregateCount == splitSize) {
 			// When the AGGREGATED_COUNT matches the SPLIT_SIZE, we set the SPLIT_COMPLETED header.
 			newExchange.getOut().setHeader(MpfHeaders.SPLIT_COMPLETED, Boolean.TRUE);
+			lazySplitSizes.remove(correlationId);
 		}
 
 		try {
@@ -66,7 +66,7 @@ public class DefaultTaskSplitter extends WfmSplitter {
 
 
     @Override
-    public List<Message> wfmSplit(Exchange exchange) {
+    public Iterable<Message> wfmSplit(Exchange exchange) {
         BatchJob job = inProgressJobs.getJob(exchange.getIn().getHeader(MpfHeaders.JOB_ID, Long.class));
         Task task = job.getPipelineElements().getTask(job.getCurrentTaskIndex());
         ActionType actionType = job.getPipelineElements()
@@ -32,8 +32,7 @@ import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
 import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
 import org.mitre.mpf.wfm.enums.BatchJobStatusType;
 import org.mitre.mpf.wfm.enums.MpfHeaders;
-import org.mitre.mpf.wfm.event.JobProgress;
-import org.mitre.mpf.wfm.service.JobStatusBroadcaster;
+import org.mitre.mpf.wfm.service.JobProgressCoalescer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -50,10 +49,7 @@ public class EndOfTaskProcessor extends WfmProcessor {
     private InProgressBatchJobsService inProgressBatchJobs;
 
     @Autowired
-    private JobProgress jobProgressStore;
-
-    @Autowired
-    private JobStatusBroadcaster jobStatusBroadcaster;
+    private JobProgressCoalescer jobProgressCoalescer;
 
     @Override
     public void wfmProcess(Exchange exchange) throws WfmProcessingException {
@@ -71,15 +67,14 @@ public class EndOfTaskProcessor extends WfmProcessor {
         if(job.getCurrentTaskIndex() >= job.getPipelineElements().getTaskCount()) {
             //notify of completion - use
             if(!job.isOutputEnabled()) {
-                jobStatusBroadcaster.broadcast(
+                jobProgressCoalescer.broadcastNow(
                         jobId,
                         100,
                         job.isCancelled() ? BatchJobStatusType.CANCELLED : BatchJobStatusType.COMPLETE,
                         Instant.now());
-                jobProgressStore.setJobProgress(jobId, 100.0f);
             } else {
-                jobStatusBroadcaster.broadcast(jobId, 99, BatchJobStatusType.BUILDING_OUTPUT_OBJECT, Instant.now());
-                jobProgressStore.setJobProgress(jobId, 99.0f);
+                jobProgressCoalescer.broadcastNow(jobId, 99, BatchJobStatusType.BUILDING_OUTPUT_OBJECT,
+                                                  Instant.now());
             }
             log.debug("[Job {}|*|*] All tasks have completed. Setting the {} flag.", jobId, MpfHeaders.JOB_COMPLETE);
             exchange.getOut().setHeader(MpfHeaders.JOB_COMPLETE, Boolean.TRUE);
@@ -26,23 +26,22 @@
 
 package org.mitre.mpf.wfm.camel;
 
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Table;
 import org.apache.camel.Exchange;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.mutable.Mutable;
 import org.apache.commons.lang3.mutable.MutableObject;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.mitre.mpf.interop.*;
 import org.mitre.mpf.rest.api.pipelines.Action;
 import org.mitre.mpf.rest.api.pipelines.ActionType;
 import org.mitre.mpf.rest.api.pipelines.Task;
 import org.mitre.mpf.wfm.WfmProcessingException;
+import org.mitre.mpf.wfm.data.BatchJobBlobCodec;
 import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
 import org.mitre.mpf.wfm.data.access.JobRequestDao;
 import org.mitre.mpf.wfm.data.access.MarkupResultDao;
@@ -52,9 +51,8 @@ import org.mitre.mpf.wfm.data.entities.transients.Detection;
 import org.mitre.mpf.wfm.data.entities.transients.Track;
 import org.mitre.mpf.wfm.enums.*;
 import org.mitre.mpf.wfm.event.JobCompleteNotification;
-import org.mitre.mpf.wfm.event.JobProgress;
 import org.mitre.mpf.wfm.event.NotificationConsumer;
-import org.mitre.mpf.wfm.service.JobStatusBroadcaster;
+import org.mitre.mpf.wfm.service.JobProgressCoalescer;
 import org.mitre.mpf.wfm.service.StorageService;
 import org.mitre.mpf.wfm.util.*;
 import org.slf4j.Logger;
@@ -98,16 +96,19 @@ public class JobCompleteProcessorImpl extends WfmProcessor implements JobComplet
     private JsonUtils jsonUtils;
 
     @Autowired
-    private InProgressBatchJobsService inProgressBatchJobs;
+    private BatchJobBlobCodec batchJobBlobCodec;
 
     @Autowired
-    private JobProgress jobProgressStore;
+    private InProgressBatchJobsService inProgressBatchJobs;
 
     @Autowired
     private StorageService storageService;
 
     @Autowired
-    private JobStatusBroadcaster jobStatusBroadcaster;
+    private JobProgressCoalescer jobProgressCoalescer;
+
+    @Autowired
+    private LazySplitSizes lazySplitSizes;
 
     @Autowired
     private AggregateJobPropertiesUtil aggregateJobPropertiesUtil;
@@ -152,20 +153,16 @@ public class JobCompleteProcessorImpl extends WfmProcessor implements JobComplet
 
             inProgressBatchJobs.setJobStatus(jobId, jobStatus.getValue());
             jobRequest.setStatus(jobStatus.getValue());
-            jobRequest.setJob(jsonUtils.serialize(job));
+            jobRequest.setJob(batchJobBlobCodec.encode(job));
             jobRequestDao.persist(jobRequest);
 
             IoUtils.deleteEmptyDirectoriesRecursively(propertiesUtil.getJobMarkupDirectory(jobId).toPath());
             IoUtils.deleteEmptyDirectoriesRecursively(propertiesUtil.getJobArtifactsDirectory(jobId).toPath());
             IoUtils.deleteEmptyDirectoriesRecursively(propertiesUtil.getJobOutputObjectsDirectory(jobId).toPath());
 
-            try {
-                jmsUtils.destroyCancellationRoutes(jobId);
-            }
-            catch (Exception exception) {
-                log.warn(String.format("Failed to destroy the cancellation routes associated with job %d." +
-                                " If this job is resubmitted, it will likely not complete again!", jobId), exception);
-            }
+            jmsUtils.removeCancelledJob(jobId);
+            // Normally removed when each split completes, but a failed or cancelled task may not complete its split.
+            lazySplitSizes.removeJob(jobId);
 
             if (job.getCallbackUrl().isPresent()) {
                 sendCallbackAsync(job, outputObjectUri)
@@ -200,8 +197,8 @@ public class JobCompleteProcessorImpl extends WfmProcessor implements JobComplet
             }
         }
 
-        jobStatusBroadcaster.broadcast(job.getId(), 100, jobStatus.getValue(), Instant.now());
-        jobProgressStore.removeJob(job.getId());
+        jobProgressCoalescer.broadcastNow(job.getId(), 100, jobStatus.getValue(), Instant.now());
+        jobProgressCoalescer.removeJob(job.getId());
         log.info("[Job {}:*:*] Job complete!", job.getId());
     }
 
@@ -248,9 +245,9 @@ public class JobCompleteProcessorImpl extends WfmProcessor implements JobComplet
 
         log.info("Starting {} callback to {} for job id {}.", callbackMethod, callbackUrl, job.getId());
         try {
-            HttpUriRequest request = createCallbackRequest(callbackMethod, callbackUrl,
-                                                           job, outputObjectUri);
-            return callbackUtils.executeRequest(request, propertiesUtil.getHttpCallbackRetryCount())
+            CallbackRequest request = createCallbackRequest(callbackMethod, callbackUrl,
+                                                            job, outputObjectUri);
+            return callbackUtils.sendCallback(request)
                     .thenApply(JobCompleteProcessorImpl::checkResponse);
         }
         catch (Exception e) {
@@ -270,15 +267,10 @@ public class JobCompleteProcessorImpl extends WfmProcessor implements JobComplet
     }
 
 
-    private HttpUriRequest createCallbackRequest(
+    private CallbackRequest createCallbackRequest(
             String jsonCallbackMethod, String jsonCallbackURL, BatchJob job, URI outputObjectUri)
                 throws URISyntaxException {
 
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setSocketTimeout(propertiesUtil.getHttpCallbackTimeoutMs())
-                .setConnectTimeout(propertiesUtil.getHttpCallbackTimeoutMs())
-                .build();
-
         if ("GET".equals(jsonCallbackMethod)) {
             URIBuilder callbackUriWithParamsBuilder = new URIBuilder(jsonCallbackURL)
                     .setParameter("jobid", String.valueOf(job.getId()));
@@ -289,15 +281,9 @@ public class JobCompleteProcessorImpl extends WfmProcessor implements JobComplet
             if (outputObjectUri != null) {
                 callbackUriWithParamsBuilder.setParameter("outputobjecturi", outputObjectUri.toString());
             }
-            var getRequest = new HttpGet(callbackUriWithParamsBuilder.build());
-            getRequest.setConfig(requestConfig);
-            return getRequest;
+            return CallbackRequest.get(callbackUriWithParamsBuilder.build());
         }
 
-        var postRequest = new HttpPost(jsonCallbackURL);
-        postRequest.addHeader("Content-Type", "application/json");
-        postRequest.setConfig(requestConfig);
-
         String outputObjectUriString = outputObjectUri == null
                 ? null
                 : outputObjectUri.toString();
@@ -305,9 +291,7 @@ public class JobCompleteProcessorImpl extends WfmProcessor implements JobComplet
         JsonCallbackBody jsonBody = new JsonCallbackBody(
                 job.getId(), job.getExternalId().orElse(null), outputObjectUriString);
 
-        postRequest.setEntity(new StringEntity(jsonUtils.serializeAsTextString(jsonBody),
-                                               ContentType.APPLICATION_JSON));
-        return postRequest;
+        return CallbackRequest.post(new URI(jsonCallbackURL), jsonUtils.serializeAsText(jsonBody));
     }
 
 
@@ -320,7 +304,12 @@ public class JobCompleteProcessorImpl extends WfmProcessor implements JobComplet
             jobStatus.setValue(BatchJobStatusType.CANCELLED);
         }
 
-        JsonOutputObject jsonOutputObject = new JsonOutputObject(
+        // The tracks are not added to the output object. Instead, the (task index, action index) pairs that
+        // produced tracks of each type are recorded, and the tracks are read from the track store while the output
+        // object is being written.
+        Map<Long, Table<String, String, List<Map.Entry<Integer, Integer>>>> actionTracks = new HashMap<>();
+
+        StreamingJsonOutputObject jsonOutputObject = new StreamingJsonOutputObject(
                 jobId,
                 UUID.randomUUID().toString(),
                 jsonUtils.convert(job.getPipelineElements()),
@@ -329,7 +318,11 @@ public class JobCompleteProcessorImpl extends WfmProcessor implements JobComplet
                 job.getExternalId().orElse(null),
                 timeReceived,
                 timeCompleted,
-                jobStatus.getValue().toString());
+                jobStatus.getValue().toString(),
+                (mediaOutputObject, type, stateKey) -> getTrackOutputObjects(
+                        job, mediaOutputObject.getMediaId(), type, stateKey,
+                        actionTracks.getOrDefault(mediaOutputObject.getMediaId(), ImmutableTable.of())
+                                .get(type, stateKey)));
 
         if (job.getJobProperties() != null) {
             jsonOutputObject.getJobProperties().putAll(job.getJobProperties());
@@ -393,37 +386,26 @@ public class JobCompleteProcessorImpl extends WfmProcessor implements JobComplet
                                                                              taskIndex, actionIndex);
                     if(tracks.isEmpty()) {
                         // Always include detection actions in the output object, even if they do not generate any results.
-                        addMissingTrackInfo(JsonActionOutputObject.NO_TRACKS_TYPE, stateKey, mediaOutputObject);
+                        addActionOutputObject(JsonActionOutputObject.NO_TRACKS_TYPE, stateKey, mediaOutputObject);
                     }
                     else if (suppressedTasks.contains(taskIndex)) {
-                        addMissingTrackInfo(JsonActionOutputObject.TRACKS_SUPPRESSED_TYPE, stateKey,
-                                            mediaOutputObject);
+                        addActionOutputObject(JsonActionOutputObject.TRACKS_SUPPRESSED_TYPE, stateKey,
+                                              mediaOutputObject);
                     }
                     else {
-                        for (Track track : tracks) {
-                            JsonTrackOutputObject jsonTrackOutputObject
-                                    = createTrackOutputObject(track, stateKey, action, media,
-                                                              job);
-
-                            String type = jsonTrackOutputObject.getType();
-                            if (!mediaOutputObject.getTypes().containsKey(type)) {
-                                mediaOutputObject.getTypes().put(type, new TreeSet<>());
-                            }
-
-                            SortedSet<JsonActionOutputObject> actionSet = mediaOutputObject.getTypes().get(type);
-                            boolean stateFound = false;
-                            for (JsonActionOutputObject jsonAction : actionSet) {
-                                if (stateKey.equals(jsonAction.getSource())) {
-                                    stateFound = true;
-                                    jsonAction.getTracks().add(jsonTrackOutputObject);
-                                    break;
-                                }
-                            }
-                            if (!stateFound) {
-                                JsonActionOutputObject jsonAction = new JsonActionOutputObject(stateKey);
-                                actionSet.add(jsonAction);
-                                jsonAction.getTracks().add(jsonTrackOutputObject);
+                        Table<String, String, List<Map.Entry<Integer, Integer>>> mediaActionTracks
+                                = actionTracks.computeIfAbsent(media.getId(), k -> HashBasedTable.create());
+                        Set<String> trackTypes = tracks.stream()
+                                .map(Track::getType)
+                                .collect(toSet());
+                        for (String type : trackTypes) {
+                            addActionOutputObject(type, stateKey, mediaOutputObject);
+                            List<Map.Entry<Integer, Integer>> taskActions = mediaActionTracks.get(type, stateKey);
+                            if (taskActions == null) {
+                                taskActions = new ArrayList<>();
+                                mediaActionTracks.put(type, stateKey, taskActions);
                             }
+                            taskActions.add(Map.entry(taskIndex, actionIndex));
                         }
                     }
 
@@ -442,6 +424,68 @@ public class JobCompleteProcessorImpl extends WfmProcessor implements JobComplet
     }
 
 
+    // Tracks in a JsonActionOutputObject are sorted by start frame, stop frame, start time, and stop time first.
+    private static final Comparator<Track> TRACK_OUTPUT_ORDER = Comparator
+            .comparingInt(Track::getStartOffsetFrameInclusive)
+            .thenComparingInt(Track::getEndOffsetFrameInclusive)
+            .thenComparingInt(Track::getStartOffsetTimeInclusive)
+            .thenComparingInt(Track::getEndOffsetTimeInclusive);
+
+
+    /**
+     * Creates the track output objects for a single JsonActionOutputObject in the order they would appear in
+     * {@link JsonActionOutputObject#getTracks()}. Track output objects are only created for one group of tracks with
+     * the same start and stop offsets at a time, so they do not all need to be in memory at once.
+     */
+    private Iterator<JsonTrackOutputObject> getTrackOutputObjects(
+            BatchJob job, long mediaId, String type, String stateKey,
+            List<Map.Entry<Integer, Integer>> taskActions) {
+        if (taskActions == null) {
+            return Collections.emptyIterator();
+        }
+
+        Media media = job.getMedia(mediaId);
+        List<Track> tracks = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> taskAction : taskActions) {
+            for (Track track : inProgressBatchJobs.getTracks(job.getId(), mediaId, taskAction.getKey(),
+                                                             taskAction.getValue())) {
+                if (type.equals(track.getType())) {
+                    tracks.add(track);
+                }
+            }
+        }
+        tracks.sort(TRACK_OUTPUT_ORDER);
+
+        return new AbstractIterator<>() {
+            private int _nextTrackIdx;
+
+            private Iterator<JsonTrackOutputObject> _group = Collections.emptyIterator();
+
+            @Override
+            protected JsonTrackOutputObject computeNext() {
+                while (!_group.hasNext()) {
+                    if (_nextTrackIdx >= tracks.size()) {
+                        return endOfData();
+                    }
+                    Track firstInGroup = tracks.get(_nextTrackIdx);
+                    // Tracks with the same offsets are ordered by the remaining JsonTrackOutputObject fields.
+                    SortedSet<JsonTrackOutputObject> group = new TreeSet<>();
+                    while (_nextTrackIdx < tracks.size()
+                            && TRACK_OUTPUT_ORDER.compare(firstInGroup, tracks.get(_nextTrackIdx)) == 0) {
+                        Track track = tracks.set(_nextTrackIdx, null); // Allow written tracks to be collected.
+                        Action action = job.getPipelineElements().getAction(track.getTaskIndex(),
+                                                                            track.getActionIndex());
+                        group.add(createTrackOutputObject(track, stateKey, action, media, job));
+                        _nextTrackIdx++;
+                    }
+                    _group = group.iterator();
+                }
+                return _group.next();
+            }
+        };
+    }
+
+
     private static List<DetectionProcessingError> getDetectionProcessingErrors(
         BatchJob job, long mediaId, int taskIndex, int actionIndex) {
         return job.getDetectionProcessingErrors()
@@ -542,10 +586,10 @@ public class JobCompleteProcessorImpl extends WfmProcessor implements JobComplet
     }
 
 
-    private static void addMissingTrackInfo(String missingTrackKey, String stateKey,
-                                            JsonMediaOutputObject mediaOutputObject) {
+    private static void addActionOutputObject(String type, String stateKey,
+                                              JsonMediaOutputObject mediaOutputObject) {
         Set<JsonActionOutputObject> trackSet = mediaOutputObject.getTypes().computeIfAbsent(
-            missingTrackKey, k -> new TreeSet<>());
+            type, k -> new TreeSet<>());
         boolean stateMissing = trackSet.stream().noneMatch(a -> stateKey.equals(a.getSource()));
         if (stateMissing) {
             trackSet.add(new JsonActionOutputObject(stateKey));
@@ -0,0 +1,101 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camel;
+
+import org.springframework.stereotype.Component;
+
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the size of the splits that {@link WfmSplitter} produces lazily, keyed by correlation id.
+ *
+ * Only the last message of a lazy split has the actual SPLIT_SIZE header, so responses to the earlier messages can
+ * not determine the size on their own. The splitter records the number of messages it has created so far, and the
+ * final size once it has created the last message. Entries are removed when the aggregator sees the split complete,
+ * or when the job completes.
+ */
+@Component
+@Singleton
+public class LazySplitSizes {
+
+    private final Map<String, SplitCounts> _splits = new ConcurrentHashMap<>();
+
+
+    public void recordCreated(String correlationId, int createdCount) {
+        _splits.computeIfAbsent(correlationId, id -> new SplitCounts()).created = createdCount;
+    }
+
+
+    public void recordFinalSize(String correlationId, int splitSize) {
+        var counts = _splits.computeIfAbsent(correlationId, id -> new SplitCounts());
+        counts.created = splitSize;
+        counts.finalSize = splitSize;
+    }
+
+
+    /**
+     * @return The size of the split, or {@link WfmSplitter#UNKNOWN_SPLIT_SIZE} if the splitter has not created the
+     *         last message yet.
+     */
+    public int getFinalSize(String correlationId) {
+        SplitCounts counts = _splits.get(correlationId);
+        return counts == null ? WfmSplitter.UNKNOWN_SPLIT_SIZE : counts.finalSize;
+    }
+
+
+    /**
+     * @return The size of the split if it is known, otherwise the number of messages created so far. Every
+     *         response is to a message that has already been created, so this is never less than the number of
+     *         responses received.
+     */
+    public int getEstimatedSize(String correlationId) {
+        SplitCounts counts = _splits.get(correlationId);
+        return counts == null ? WfmSplitter.UNKNOWN_SPLIT_SIZE : counts.created;
+    }
+
+
+    public void remove(String correlationId) {
+        _splits.remove(correlationId);
+    }
+
+
+    // Correlation ids start with the job id. See WfmSplitter.split.
+    public void removeJob(long jobId) {
+        String prefix = jobId + ":";
+        _splits.keySet().removeIf(id -> id.startsWith(prefix));
+    }
+
+
+    private static class SplitCounts {
+        // Only written by the thread iterating over the split.
+        volatile int created;
+
+        volatile int finalSize = WfmSplitter.UNKNOWN_SPLIT_SIZE;
+    }
+}
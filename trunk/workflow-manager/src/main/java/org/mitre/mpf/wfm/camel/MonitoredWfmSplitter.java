@@ -30,7 +30,7 @@ import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.javasimon.aop.Monitored;
 
-import java.util.List;
+import java.util.Iterator;
 
 @Monitored
 /**
@@ -38,5 +38,5 @@ import java.util.List;
  * and {@link WfmSplitter#split(Exchange)} is final.
  */
 public interface MonitoredWfmSplitter {
-    List<Message> split(Exchange exchange);
+    Iterator<Message> split(Exchange exchange);
 }
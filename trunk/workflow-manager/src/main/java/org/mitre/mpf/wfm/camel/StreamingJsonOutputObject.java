@@ -0,0 +1,181 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camel;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.mitre.mpf.interop.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedSet;
+
+/**
+ * An output object whose tracks are not held in memory. The media and actions are present as usual, but each
+ * {@link JsonActionOutputObject} has an empty track set. When the output object is serialized, the tracks for each
+ * action are requested from the {@link TrackSource} and written directly to the output. The serialized form is
+ * identical to the form that would be produced if the tracks had been added to the action track sets.
+ */
+@JsonSerialize(using = StreamingJsonOutputObject.Serializer.class)
+public class StreamingJsonOutputObject extends JsonOutputObject {
+
+    @FunctionalInterface
+    public interface TrackSource {
+        /**
+         * Gets the tracks of the given type that were produced by the action identified by source.
+         * The tracks must be returned in the same order that they would appear in
+         * {@link JsonActionOutputObject#getTracks()}. This is called each time the output object is serialized.
+         */
+        Iterator<JsonTrackOutputObject> getTracks(JsonMediaOutputObject media, String type, String source);
+    }
+
+
+    private final TrackSource _trackSource;
+
+
+    public StreamingJsonOutputObject(long jobId, String objectId, JsonPipeline pipeline, int priority,
+                                     String siteId, String externalJobId, Instant timeStart, Instant timeStop,
+                                     String status, TrackSource trackSource) {
+        super(jobId, objectId, pipeline, priority, siteId, externalJobId, timeStart, timeStop, status);
+        _trackSource = trackSource;
+    }
+
+
+
+    public static class Serializer extends StdSerializer<StreamingJsonOutputObject> {
+
+        public Serializer() {
+            super(StreamingJsonOutputObject.class);
+        }
+
+
+        @Override
+        public void serialize(StreamingJsonOutputObject outputObject, JsonGenerator gen,
+                              SerializerProvider provider) throws IOException {
+            gen.writeStartObject(outputObject);
+            for (PropertyWriter property : getProperties(JsonOutputObject.class, provider)) {
+                if (property.getName().equals("media")) {
+                    gen.writeFieldName(property.getName());
+                    gen.writeStartArray();
+                    for (JsonMediaOutputObject media : outputObject.getMedia()) {
+                        writeMedia(media, outputObject._trackSource, gen, provider);
+                    }
+                    gen.writeEndArray();
+                }
+                else {
+                    writeProperty(property, outputObject, gen, provider);
+                }
+            }
+            gen.writeEndObject();
+        }
+
+
+        private void writeMedia(JsonMediaOutputObject media, TrackSource trackSource, JsonGenerator gen,
+                                       SerializerProvider provider) throws IOException {
+            gen.writeStartObject(media);
+            for (PropertyWriter property : getProperties(JsonMediaOutputObject.class, provider)) {
+                if (property.getName().equals("output")) {
+                    gen.writeFieldName(property.getName());
+                    writeTypes(media, trackSource, gen, provider);
+                }
+                else {
+                    writeProperty(property, media, gen, provider);
+                }
+            }
+            gen.writeEndObject();
+        }
+
+
+        private void writeTypes(JsonMediaOutputObject media, TrackSource trackSource, JsonGenerator gen,
+                                       SerializerProvider provider) throws IOException {
+            JsonSerializer<Object> keySerializer = provider.findKeySerializer(String.class, null);
+            gen.writeStartObject(media.getTypes());
+            for (Map.Entry<String, SortedSet<JsonActionOutputObject>> entry : media.getTypes().entrySet()) {
+                String type = entry.getKey();
+                keySerializer.serialize(type, gen, provider);
+                gen.writeStartArray();
+                for (JsonActionOutputObject action : entry.getValue()) {
+                    writeAction(media, type, action, trackSource, gen, provider);
+                }
+                gen.writeEndArray();
+            }
+            gen.writeEndObject();
+        }
+
+
+        private void writeAction(JsonMediaOutputObject media, String type, JsonActionOutputObject action,
+                                        TrackSource trackSource, JsonGenerator gen,
+                                        SerializerProvider provider) throws IOException {
+            gen.writeStartObject(action);
+            for (PropertyWriter property : getProperties(JsonActionOutputObject.class, provider)) {
+                if (!property.getName().equals("tracks")) {
+                    writeProperty(property, action, gen, provider);
+                    continue;
+                }
+                // The tracks property is only included when it is not empty.
+                Iterator<JsonTrackOutputObject> tracks = trackSource.getTracks(media, type, action.getSource());
+                if (!tracks.hasNext()) {
+                    continue;
+                }
+                gen.writeFieldName(property.getName());
+                gen.writeStartArray();
+                JsonSerializer<Object> trackSerializer = provider.findValueSerializer(JsonTrackOutputObject.class);
+                while (tracks.hasNext()) {
+                    trackSerializer.serialize(tracks.next(), gen, provider);
+                }
+                gen.writeEndArray();
+            }
+            gen.writeEndObject();
+        }
+
+
+        private void writeProperty(PropertyWriter property, Object bean, JsonGenerator gen,
+                                   SerializerProvider provider) throws IOException {
+            try {
+                property.serializeAsField(bean, gen, provider);
+            }
+            catch (Exception e) {
+                wrapAndThrow(provider, e, bean, property.getName());
+            }
+        }
+
+
+        // Uses the properties from the regular Jackson serializer so that property order, property names, and
+        // inclusion rules match the non-streaming serialized form.
+        private static Iterable<PropertyWriter> getProperties(Class<?> beanClass, SerializerProvider provider)
+                throws IOException {
+            JsonSerializer<Object> beanSerializer = provider.findValueSerializer(beanClass);
+            return beanSerializer::properties;
+        }
+    }
+}
@@ -51,14 +51,19 @@ public abstract class WfmProcessor implements WfmProcessorInterface {
 		assert exchange.getIn().getHeader(MpfHeaders.JOB_ID, Long.class) != null : String.format("The '%s' header (value=%s) header be convertible to Long.", MpfHeaders.JOB_ID, exchange.getIn().getHeader(MpfHeaders.JOB_ID));
 
 		// Copy any essential headers.
-		exchange.getOut().getHeaders().put(MpfHeaders.JOB_ID, exchange.getIn().getHeader(MpfHeaders.JOB_ID));
-		exchange.getOut().getHeaders().put(MpfHeaders.JMS_PRIORITY, exchange.getIn().getHeader(MpfHeaders.JMS_PRIORITY));
+		copyEssentialHeaders(exchange);
 
 		// Execute the processor.
 		wfmProcess(exchange);
 	}
 
 
+	static void copyEssentialHeaders(Exchange exchange) {
+		exchange.getOut().getHeaders().put(MpfHeaders.JOB_ID, exchange.getIn().getHeader(MpfHeaders.JOB_ID));
+		exchange.getOut().getHeaders().put(MpfHeaders.JMS_PRIORITY, exchange.getIn().getHeader(MpfHeaders.JMS_PRIORITY));
+	}
+
+
 	@Override
 	public String toString() {
 		return this.getClass().getSimpleName();
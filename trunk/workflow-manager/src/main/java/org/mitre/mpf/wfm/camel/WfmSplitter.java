@@ -36,8 +36,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.Collections;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 
 /**
@@ -47,28 +49,41 @@ import java.util.UUID;
  *     <li>Key headers (JOB_ID, SPLIT_SIZE, CORRELATION_ID, et.c) are always associated with any messages produced by the split.</li>
  *     <li>Splits which do not produce any messages will have an EMPTY_SPLIT header value set to TRUE.</li>
  * </ul>
+ *
+ * When {@link #wfmSplit(Exchange)} returns a collection, every message's SPLIT_SIZE header is set to the size of the
+ * collection. Any other iterable is consumed lazily as Camel sends the messages, so the size of the split is not known
+ * until the last message has been created. In that case, the SPLIT_SIZE header is {@link #UNKNOWN_SPLIT_SIZE} for all
+ * but the last message. The number of messages created so far, and then the actual size, are recorded in
+ * {@link LazySplitSizes}, where {@link CountBasedWfmAggregator} can find them before the last message's response
+ * arrives.
  */
 public abstract class WfmSplitter implements MonitoredWfmSplitter {
 
     private static final Logger log = LoggerFactory.getLogger(WfmSplitter.class);
 
+    public static final int UNKNOWN_SPLIT_SIZE = -1;
+
     @Autowired
     private InProgressBatchJobsService inProgressJobs;
 
+    @Autowired
+    private LazySplitSizes lazySplitSizes;
+
     /**
-     * In an implementing class, returns the list of work units which are to be performed.
+     * In an implementing class, returns the work units which are to be performed.
      *
      * @param exchange The originating exchange for this split.
-     * @return A collection of work units to be performed.
+     * @return The work units to be performed. If this is not a collection, it will only be iterated once, as the
+     *         messages are sent.
      * @throws Exception
      */
-    protected abstract List<Message> wfmSplit(Exchange exchange);
+    protected abstract Iterable<Message> wfmSplit(Exchange exchange);
 
     protected abstract String getSplitterName();
 
 
     @Override
-    public final List<Message> split(Exchange exchange) {
+    public final Iterator<Message> split(Exchange exchange) {
         // Assume that the Job ID has been provided as a Long.
         assert exchange.getIn().getHeaders().containsKey(MpfHeaders.JOB_ID) : String.format("The '%s' header must be provided.", MpfHeaders.JOB_ID);
         assert exchange.getIn().getHeader(MpfHeaders.JOB_ID, Long.class) != null : String.format("The '%s' header (value=%s) must be provided and convertible to Long.", MpfHeaders.JOB_ID, exchange.getIn().getHeader(MpfHeaders.JOB_ID));
@@ -76,12 +91,16 @@ public abstract class WfmSplitter implements MonitoredWfmSplitter {
         // Get the Job ID from the headers.
         long jobId = exchange.getIn().getHeader(MpfHeaders.JOB_ID, Long.class);
 
-        // Declare a collection to hold all of the messages produced by the split.
-        List<Message> messages = null;
+        Iterable<Message> messages = null;
+        Iterator<Message> messageIter = null;
+        boolean emptySplit = true;
         boolean failed = false;
 
         try {
             messages = wfmSplit(exchange);
+            messageIter = messages.iterator();
+            // For lazy splits, this creates the first message, so errors creating it are handled here.
+            emptySplit = !messageIter.hasNext();
         }
         catch (Exception exception) {
             // The split operation failed. The job cannot continue.
@@ -92,31 +111,106 @@ public abstract class WfmSplitter implements MonitoredWfmSplitter {
             failed = true;
         }
 
-        boolean emptySplit = messages == null || messages.isEmpty();
+        // Create a correlation id to associate with all messages produced by this split.
+        String correlationId = String.format("%d:%s", jobId, UUID.randomUUID().toString());
+        Object priority = exchange.getIn().getHeader(MpfHeaders.JMS_PRIORITY);
+
         if (emptySplit) {
             // No messages were produced. Unless a dummy message is produced, the workflow will hang.
             Message defaultMessage = new DefaultMessage();
             defaultMessage.setHeader(MpfHeaders.EMPTY_SPLIT, true);
             defaultMessage.setHeader(MpfHeaders.SPLITTING_ERROR, failed);
-            defaultMessage.setHeader(MpfHeaders.JMS_PRIORITY, exchange.getIn().getHeader(MpfHeaders.JMS_PRIORITY));
-            log.info("[Job {}|*|*] WfmSplitter class: {}|{} produced 0 work units (error = {}).",
-                     jobId, getSplitterName(), getClass().getName(), failed);
-            messages = Collections.singletonList(defaultMessage);
+            setHeaders(defaultMessage, 1, jobId, priority, correlationId);
+            log.info("[Job {}|*|*] WfmSplitter class: {}|{} produced 0 work units with correlation id '{}' (error = {}).",
+                     jobId, getSplitterName(), getClass().getName(), correlationId, failed);
+            return List.of(defaultMessage).iterator();
         }
 
-        // Create a correlation id to associate with all messages produced by this split.
-        String correlationId = String.format("%d:%s", jobId, UUID.randomUUID().toString());
+        if (messages instanceof Collection) {
+            int splitSize = ((Collection<Message>) messages).size();
+            for (Message message : messages) {
+                setHeaders(message, splitSize, jobId, priority, correlationId);
+            }
+            log.info("[Job {}|*|*] WfmSplitter class: {}|{} produced {} work units with correlation id '{}' (error = {}).",
+                     jobId, getSplitterName(), getClass().getName(), splitSize, correlationId, false);
+            return messageIter;
+        }
+
+        return new LazySplitIterator(messageIter, jobId, priority, correlationId);
+    }
+
+
+    private static void setHeaders(Message message, int splitSize, long jobId, Object priority,
+                                   String correlationId) {
+        message.setHeader(MpfHeaders.SPLIT_SIZE, splitSize);
+        message.setHeader(MpfHeaders.JOB_ID, jobId);
+        message.setHeader(MpfHeaders.JMS_PRIORITY, priority);
+        message.setHeader(MpfHeaders.CORRELATION_ID, correlationId);
+    }
+
+
+    /**
+     * Looks one message ahead of the message being returned so that it can tell when it is returning the last
+     * message. If creating a later message fails, the split ends early and the job is marked as failed.
+     */
+    private class LazySplitIterator implements Iterator<Message> {
+        private final Iterator<Message> _messages;
+
+        private final long _jobId;
+
+        private final Object _priority;
 
-        for (Message message : messages) {
-            message.setHeader(MpfHeaders.SPLIT_SIZE, messages.size());
-            message.setHeader(MpfHeaders.JOB_ID, jobId);
-            message.setHeader(MpfHeaders.JMS_PRIORITY, exchange.getIn().getHeader(MpfHeaders.JMS_PRIORITY));
-            message.setHeader(MpfHeaders.CORRELATION_ID, correlationId);
+        private final String _correlationId;
+
+        private int _count;
+
+        private boolean _failed;
+
+        public LazySplitIterator(Iterator<Message> messages, long jobId, Object priority, String correlationId) {
+            _messages = messages;
+            _jobId = jobId;
+            _priority = priority;
+            _correlationId = correlationId;
         }
 
-        int messageCount = emptySplit ? 0 : messages.size();
-        log.info("[Job {}|*|*] WfmSplitter class: {}|{} produced {} work units with correlation id '{}' (error = {}).",
-                 jobId, getSplitterName(), getClass().getName(), messageCount, correlationId, failed);
-        return messages;
+        @Override
+        public boolean hasNext() {
+            if (_failed) {
+                return false;
+            }
+            try {
+                return _messages.hasNext();
+            }
+            catch (Exception exception) {
+                log.error(String.format(
+                        "Failed to complete the split operation for Job %s due to an exception.", _jobId),
+                        exception);
+                inProgressJobs.setJobStatus(_jobId, BatchJobStatusType.ERROR);
+                _failed = true;
+                return false;
+            }
+        }
+
+        @Override
+        public Message next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Message message = _messages.next();
+            _count++;
+            if (hasNext()) {
+                setHeaders(message, UNKNOWN_SPLIT_SIZE, _jobId, _priority, _correlationId);
+                // hasNext() created the next message, so it exists too.
+                lazySplitSizes.recordCreated(_correlationId, _count + 1);
+            }
+            else {
+                setHeaders(message, _count, _jobId, _priority, _correlationId);
+                lazySplitSizes.recordFinalSize(_correlationId, _count);
+                log.info("[Job {}|*|*] WfmSplitter class: {}|{} produced {} work units with correlation id '{}' (error = {}).",
+                         _jobId, getSplitterName(), WfmSplitter.this.getClass().getName(), _count, _correlationId,
+                         _failed);
+            }
+            return message;
+        }
     }
 }
@@ -147,6 +147,7 @@ public class DetectionResponseProcessor
         checkErrors(jobId, mediaLabel, detectionResponse, startFrame, stopFrame, startTime, stopTime);
 
         // Begin iterating through the tracks that were found by the detector.
+        List<Track> tracks = new ArrayList<>(videoResponse.getVideoTracksCount());
         for (DetectionProtobuf.VideoTrack objectTrack : videoResponse.getVideoTracksList()) {
             if (objectTrack.getConfidence() < confidenceThreshold) {
                 continue;
@@ -176,9 +177,10 @@ public class DetectionResponseProcessor
                         detections,
                         toMap(objectTrack.getDetectionPropertiesList()));
 
-                inProgressJobs.addTrack(track);
+                tracks.add(track);
             }
         }
+        inProgressJobs.addTracks(tracks);
     }
 
     private void processAudioResponse(long jobId, DetectionProtobuf.DetectionResponse detectionResponse,
@@ -198,6 +200,7 @@ public class DetectionResponseProcessor
         checkErrors(jobId, mediaLabel, detectionResponse, 0, 0, startTime, stopTime);
 
         // Begin iterating through the tracks that were found by the detector.
+        List<Track> tracks = new ArrayList<>(audioResponse.getAudioTracksCount());
         for (DetectionProtobuf.AudioTrack objectTrack : audioResponse.getAudioTracksList()) {
             if (objectTrack.getConfidence() >= confidenceThreshold) {
                 SortedMap<String, String> properties = toMap(objectTrack.getDetectionPropertiesList());
@@ -225,9 +228,10 @@ public class DetectionResponseProcessor
                         ImmutableSortedSet.of(detection),
                         properties);
 
-                inProgressJobs.addTrack(track);
+                tracks.add(track);
             }
         }
+        inProgressJobs.addTracks(tracks);
     }
 
     private void processImageResponse(long jobId, DetectionProtobuf.DetectionResponse detectionResponse,
@@ -239,6 +243,7 @@ public class DetectionResponseProcessor
         checkErrors(jobId, mediaLabel, detectionResponse, 0, 1, 0, 0);
 
         // Iterate through the list of detections. It is assumed that detections are not sorted in a meaningful way.
+        List<Track> tracks = new ArrayList<>(imageResponse.getImageLocationsCount());
         for (DetectionProtobuf.ImageLocation location : imageResponse.getImageLocationsList()) {
             if (location.getConfidence() >= confidenceThreshold) {
                 Track track = new Track(
@@ -254,9 +259,10 @@ public class DetectionResponseProcessor
                         location.getConfidence(),
                         ImmutableSortedSet.of(toDetection(location, 0, 0)),
                         toMap(location.getDetectionPropertiesList()));
-                inProgressJobs.addTrack(track);
+                tracks.add(track);
             }
         }
+        inProgressJobs.addTracks(tracks);
     }
 
     private void processGenericResponse(long jobId, DetectionProtobuf.DetectionResponse detectionResponse,
@@ -268,6 +274,7 @@ public class DetectionResponseProcessor
         checkErrors(jobId, mediaLabel, detectionResponse, 0, 0, 0, 0);
 
         // Begin iterating through the tracks that were found by the detector.
+        List<Track> tracks = new ArrayList<>(genericResponse.getGenericTracksCount());
         for (DetectionProtobuf.GenericTrack objectTrack : genericResponse.getGenericTracksList()) {
             if (objectTrack.getConfidence() >= confidenceThreshold) {
                 SortedMap<String, String> properties = toMap(objectTrack.getDetectionPropertiesList());
@@ -296,9 +303,10 @@ public class DetectionResponseProcessor
                         ImmutableSortedSet.of(detection),
                         properties);
 
-                inProgressJobs.addTrack(track);
+                tracks.add(track);
             }
         }
+        inProgressJobs.addTracks(tracks);
     }
 
     private void checkErrors(long jobId, String mediaLabel, DetectionProtobuf.DetectionResponse detectionResponse,
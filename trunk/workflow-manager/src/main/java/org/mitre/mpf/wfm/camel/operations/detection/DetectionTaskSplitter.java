@@ -26,6 +26,7 @@
 
 package org.mitre.mpf.wfm.camel.operations.detection;
 
+import com.google.common.collect.Iterators;
 import org.apache.camel.Message;
 import org.apache.commons.lang3.StringUtils;
 import org.javasimon.aop.Monitored;
@@ -82,108 +83,120 @@ public class DetectionTaskSplitter {
 
 
 
-    public List<Message> performSplit(BatchJob job, Task task) {
-        List<Message> messages = new ArrayList<>();
-
+    /**
+     * Returns the detection requests for the task. The requests are created one piece of media at a time, as Camel
+     * iterates over the result, so the requests for the first media can be sent to the components while the later
+     * media are still being segmented. The result should only be iterated once.
+     */
+    public Iterable<Message> performSplit(BatchJob job, Task task) {
         // Is this the first detection task in the pipeline?
         boolean isFirstDetectionTask = isFirstDetectionTask(job);
 
-        for (Media media : job.getMedia()) {
-            try {
-                if (media.isFailed()) {
-                    // If a media is in a failed state (it couldn't be retrieved, it couldn't be inspected, etc.), do nothing with it.
-                    log.warn("[Job {}:{}:*] Skipping Media #{} - it is in an error state.",
-                            job.getId(),
-                            job.getCurrentTaskIndex(),
-                            media.getId());
-                    continue;
-                }
+        return () -> Iterators.concat(Iterators.transform(
+                job.getMedia().iterator(),
+                media -> createMediaMessages(job, task, media, isFirstDetectionTask).iterator()));
+    }
 
-                // If this is the first detection task in the pipeline, we should segment the entire media for detection.
-                // If this is not the first detection task, we should build segments based off of the previous tasks's
-                // tracks. Note that the TimePairs created for these Tracks use the non-feed-forward version of timeUtils.createTimePairsForTracks
-                SortedSet<Track> previousTracks;
-                if (isFirstDetectionTask) {
-                    previousTracks = Collections.emptySortedSet();
-                }
-                else {
-                    previousTracks = inProgressBatchJobs.getTracks(
-                            job.getId(), media.getId(), job.getCurrentTaskIndex() - 1, 0);
-                }
 
-                // Iterate through each of the actions and segment the media using the properties provided in that action.
-                for (int actionIndex = 0; actionIndex < task.getActions().size(); actionIndex++) {
+    private List<Message> createMediaMessages(BatchJob job, Task task, Media media, boolean isFirstDetectionTask) {
+        List<Message> messages = new ArrayList<>();
+        if (job.isCancelled()) {
+            // The job was cancelled while the earlier media were being split.
+            return messages;
+        }
+        try {
+            if (media.isFailed()) {
+                // If a media is in a failed state (it couldn't be retrieved, it couldn't be inspected, etc.), do nothing with it.
+                log.warn("[Job {}:{}:*] Skipping Media #{} - it is in an error state.",
+                        job.getId(),
+                        job.getCurrentTaskIndex(),
+                        media.getId());
+                return messages;
+            }
 
-                    String actionName = task.getActions().get(actionIndex);
-                    Action action = job.getPipelineElements().getAction(actionName);
+            // If this is the first detection task in the pipeline, we should segment the entire media for detection.
+            // If this is not the first detection task, we should build segments based off of the previous tasks's
+            // tracks. Note that the TimePairs created for these Tracks use the non-feed-forward version of timeUtils.createTimePairsForTracks
+            SortedSet<Track> previousTracks;
+            if (isFirstDetectionTask) {
+                previousTracks = Collections.emptySortedSet();
+            }
+            else {
+                previousTracks = inProgressBatchJobs.getTracks(
+                        job.getId(), media.getId(), job.getCurrentTaskIndex() - 1, 0);
+            }
 
-                    var combinedProperties = new HashMap<String, String>(
-                            aggregateJobPropertiesUtil.getPropertyMap(job, media, action));
+            // Iterate through each of the actions and segment the media using the properties provided in that action.
+            for (int actionIndex = 0; actionIndex < task.getActions().size(); actionIndex++) {
 
-                    // Segmenting plan is only used by the VideoMediaSegmenter,
-                    // so only create the DetectionContext to include the segmenting plan for jobs with video media.
-                    SegmentingPlan segmentingPlan = null;
-                    if (media.getMediaType().equals(MediaType.VIDEO)) {
+                String actionName = task.getActions().get(actionIndex);
+                Action action = job.getPipelineElements().getAction(actionName);
 
-                        // Note that single-frame gifs are treated like videos, but have no native frame rate
-                        double fps = 1.0;
-                        String fpsFromMetadata = media.getMetadata("FPS");
-                        if (fpsFromMetadata != null) {
-                            fps = Double.valueOf(fpsFromMetadata);
-                        }
+                var combinedProperties = new HashMap<String, String>(
+                        aggregateJobPropertiesUtil.getPropertyMap(job, media, action));
 
-                        String calcframeInterval = aggregateJobPropertiesUtil.calculateFrameInterval(
-                                action, job, media,
-                                job.getSystemPropertiesSnapshot().getSamplingInterval(),
-                                job.getSystemPropertiesSnapshot().getFrameRateCap(), fps);
-                        combinedProperties.put(MpfConstants.MEDIA_SAMPLING_INTERVAL_PROPERTY, calcframeInterval);
+                // Segmenting plan is only used by the VideoMediaSegmenter,
+                // so only create the DetectionContext to include the segmenting plan for jobs with video media.
+                SegmentingPlan segmentingPlan = null;
+                if (media.getMediaType().equals(MediaType.VIDEO)) {
 
-                        segmentingPlan = createSegmentingPlan(job.getSystemPropertiesSnapshot(), combinedProperties);
+                    // Note that single-frame gifs are treated like videos, but have no native frame rate
+                    double fps = 1.0;
+                    String fpsFromMetadata = media.getMetadata("FPS");
+                    if (fpsFromMetadata != null) {
+                        fps = Double.valueOf(fpsFromMetadata);
                     }
 
-                    List<AlgorithmPropertyProtocolBuffer.AlgorithmProperty> algorithmProperties
-                            = convertPropertiesMapToAlgorithmPropertiesList(combinedProperties);
-
-                    DetectionContext detectionContext = new DetectionContext(
-                            job.getId(),
-                            job.getCurrentTaskIndex(),
-                            task.getName(),
-                            actionIndex,
-                            action.getName(),
-                            isFirstDetectionTask,
-                            algorithmProperties,
-                            previousTracks,
-                            segmentingPlan);
-
-                    // get detection request messages from ActiveMQ
-
-                    List<Message> detectionRequestMessages = createDetectionRequestMessages(media, detectionContext);
-
-                    ActionType actionType = job.getPipelineElements()
-                            .getAlgorithm(action.getAlgorithm())
-                            .getActionType();
-                    for (Message message : detectionRequestMessages) {
-                        message.setHeader(MpfHeaders.RECIPIENT_QUEUE,
-                                String.format("jms:MPF.%s_%s_REQUEST",
-                                        actionType,
-                                        action.getAlgorithm()));
-                        message.setHeader(MpfHeaders.JMS_REPLY_TO,
-                                StringUtils.replace(MpfEndpoints.COMPLETED_DETECTIONS, "jms:", ""));
-                        message.setHeader(MpfHeaders.MEDIA_TYPE, media.getMediaType().toString());
-                    }
-                    messages.addAll(detectionRequestMessages);
-                    log.debug("[Job {}|{}|{}] Created {} work units for Media #{}.",
-                            job.getId(),
-                            job.getCurrentTaskIndex(),
-                            actionIndex,
-                            detectionRequestMessages.size(), media.getId());
+                    String calcframeInterval = aggregateJobPropertiesUtil.calculateFrameInterval(
+                            action, job, media,
+                            job.getSystemPropertiesSnapshot().getSamplingInterval(),
+                            job.getSystemPropertiesSnapshot().getFrameRateCap(), fps);
+                    combinedProperties.put(MpfConstants.MEDIA_SAMPLING_INTERVAL_PROPERTY, calcframeInterval);
+
+                    segmentingPlan = createSegmentingPlan(job.getSystemPropertiesSnapshot(), combinedProperties);
+                }
+
+                List<AlgorithmPropertyProtocolBuffer.AlgorithmProperty> algorithmProperties
+                        = convertPropertiesMapToAlgorithmPropertiesList(combinedProperties);
+
+                DetectionContext detectionContext = new DetectionContext(
+                        job.getId(),
+                        job.getCurrentTaskIndex(),
+                        task.getName(),
+                        actionIndex,
+                        action.getName(),
+                        isFirstDetectionTask,
+                        algorithmProperties,
+                        previousTracks,
+                        segmentingPlan);
+
+                // get detection request messages from ActiveMQ
+
+                List<Message> detectionRequestMessages = createDetectionRequestMessages(media, detectionContext);
+
+                ActionType actionType = job.getPipelineElements()
+                        .getAlgorithm(action.getAlgorithm())
+                        .getActionType();
+                for (Message message : detectionRequestMessages) {
+                    message.setHeader(MpfHeaders.RECIPIENT_QUEUE,
+                            String.format("jms:MPF.%s_%s_REQUEST",
+                                    actionType,
+                                    action.getAlgorithm()));
+                    message.setHeader(MpfHeaders.JMS_REPLY_TO,
+                            StringUtils.replace(MpfEndpoints.COMPLETED_DETECTIONS, "jms:", ""));
+                    message.setHeader(MpfHeaders.MEDIA_TYPE, media.getMediaType().toString());
                 }
-            } catch (WfmProcessingException e) {
-                inProgressBatchJobs.setJobStatus(job.getId(), BatchJobStatusType.IN_PROGRESS_ERRORS);
-                inProgressBatchJobs.addError(job.getId(), media.getId(), IssueCodes.OTHER, e.getMessage());
+                messages.addAll(detectionRequestMessages);
+                log.debug("[Job {}|{}|{}] Created {} work units for Media #{}.",
+                        job.getId(),
+                        job.getCurrentTaskIndex(),
+                        actionIndex,
+                        detectionRequestMessages.size(), media.getId());
             }
+        } catch (WfmProcessingException e) {
+            inProgressBatchJobs.setJobStatus(job.getId(), BatchJobStatusType.IN_PROGRESS_ERRORS);
+            inProgressBatchJobs.addError(job.getId(), media.getId(), IssueCodes.OTHER, e.getMessage());
         }
-
         return messages;
     }
 
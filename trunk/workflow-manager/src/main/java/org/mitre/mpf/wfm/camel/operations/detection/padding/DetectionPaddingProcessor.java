@@ -46,6 +46,8 @@ import org.mitre.mpf.wfm.enums.MediaType;
 import org.mitre.mpf.wfm.enums.MpfConstants;
 import org.mitre.mpf.wfm.util.AggregateJobPropertiesUtil;
 import org.mitre.mpf.wfm.util.JsonUtils;
+import org.mitre.mpf.wfm.util.PropertiesUtil;
+import org.mitre.mpf.wfm.util.ThreadUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -70,15 +72,19 @@ public class DetectionPaddingProcessor extends WfmProcessor {
 
     private final AggregateJobPropertiesUtil _aggregateJobPropertiesUtil;
 
+    private final PropertiesUtil _propertiesUtil;
+
 
     @Inject
     DetectionPaddingProcessor(
             JsonUtils jsonUtils,
             InProgressBatchJobsService inProgressBatchJobs,
-            AggregateJobPropertiesUtil aggregateJobPropertiesUtil) {
+            AggregateJobPropertiesUtil aggregateJobPropertiesUtil,
+            PropertiesUtil propertiesUtil) {
         _jsonUtils = jsonUtils;
         _inProgressBatchJobs = inProgressBatchJobs;
         _aggregateJobPropertiesUtil = aggregateJobPropertiesUtil;
+        _propertiesUtil = propertiesUtil;
     }
 
 
@@ -89,47 +95,53 @@ public class DetectionPaddingProcessor extends WfmProcessor {
         BatchJob job = _inProgressBatchJobs.getJob(trackMergingContext.getJobId());
         Task task = job.getPipelineElements().getTask(trackMergingContext.getTaskIndex());
 
+        var mediaActions = new ArrayList<Map.Entry<Media, Integer>>();
         for (int actionIndex = 0; actionIndex < task.getActions().size(); actionIndex++) {
-            Action action = job.getPipelineElements().getAction(trackMergingContext.getTaskIndex(), actionIndex);
-
             for (Media media : job.getMedia()) {
-                if (media.isFailed()
-                        || (media.getMediaType() != MediaType.IMAGE
-                        && media.getMediaType() != MediaType.VIDEO)) {
-                    continue;
-                }
-
-                Function<String, String> combinedProperties =
-                        _aggregateJobPropertiesUtil.getCombinedProperties(job, media, action);
-
-                try {
-                    if (!requiresPadding(combinedProperties)) {
-                        continue;
-                    }
-                } catch (DetectionPaddingException e) {
-                    // This should not happen because we checked that the detection properties were valid when the
-                    // job was created.
-                    throw new WfmProcessingException(e);
+                if (!media.isFailed()
+                        && (media.getMediaType() == MediaType.IMAGE
+                        || media.getMediaType() == MediaType.VIDEO)) {
+                    mediaActions.add(Map.entry(media, actionIndex));
                 }
+            }
+        }
 
-                String xPadding = combinedProperties.apply(MpfConstants.DETECTION_PADDING_X);
-                String yPadding = combinedProperties.apply(MpfConstants.DETECTION_PADDING_Y);
+        // Each (media, action) pair has its own set of tracks, so they can be processed concurrently.
+        ThreadUtil.forEachInParallel(
+                mediaActions, _propertiesUtil.getTrackProcessingThreadCount(),
+                ma -> padTracks(job, trackMergingContext.getTaskIndex(), ma.getKey(), ma.getValue()));
 
-                int frameWidth = Integer.parseInt(media.getMetadata().get("FRAME_WIDTH"));
-                int frameHeight = Integer.parseInt(media.getMetadata().get("FRAME_HEIGHT"));
+        exchange.getOut().setBody(exchange.getIn().getBody());
+    }
 
-                Collection<Track> tracks = _inProgressBatchJobs.getTracks(job.getId(), media.getId(),
-                        trackMergingContext.getTaskIndex(), actionIndex);
 
-                Collection<Track> newTracks = processTracks(
-                        job.getId(), media.getId(), xPadding, yPadding, frameWidth, frameHeight, tracks);
+    private void padTracks(BatchJob job, int taskIndex, Media media, int actionIndex) {
+        Action action = job.getPipelineElements().getAction(taskIndex, actionIndex);
+        Function<String, String> combinedProperties =
+                _aggregateJobPropertiesUtil.getCombinedProperties(job, media, action);
 
-                _inProgressBatchJobs.setTracks(job.getId(), media.getId(),
-                        trackMergingContext.getTaskIndex(), actionIndex, newTracks);
+        try {
+            if (!requiresPadding(combinedProperties)) {
+                return;
             }
+        } catch (DetectionPaddingException e) {
+            // This should not happen because we checked that the detection properties were valid when the
+            // job was created.
+            throw new WfmProcessingException(e);
         }
 
-        exchange.getOut().setBody(exchange.getIn().getBody());
+        String xPadding = combinedProperties.apply(MpfConstants.DETECTION_PADDING_X);
+        String yPadding = combinedProperties.apply(MpfConstants.DETECTION_PADDING_Y);
+
+        int frameWidth = Integer.parseInt(media.getMetadata().get("FRAME_WIDTH"));
+        int frameHeight = Integer.parseInt(media.getMetadata().get("FRAME_HEIGHT"));
+
+        Collection<Track> tracks = _inProgressBatchJobs.getTracks(job.getId(), media.getId(), taskIndex, actionIndex);
+
+        Collection<Track> newTracks = processTracks(
+                job.getId(), media.getId(), xPadding, yPadding, frameWidth, frameHeight, tracks);
+
+        _inProgressBatchJobs.setTracks(job.getId(), media.getId(), taskIndex, actionIndex, newTracks);
     }
 
 
@@ -0,0 +1,330 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camel.operations.detection.trackmerging;
+
+import com.google.common.collect.ImmutableSortedSet;
+import org.apache.commons.lang3.StringUtils;
+import org.mitre.mpf.wfm.data.entities.transients.Detection;
+import org.mitre.mpf.wfm.data.entities.transients.Track;
+
+import java.awt.*;
+import java.util.List;
+import java.util.*;
+
+/**
+ * Merges the tracks produced by a single action on a single piece of media.
+ *
+ * The result is the same as repeatedly taking the earliest unmerged track and merging it with the earliest remaining
+ * track of the same type (and classification for CLASS tracks) that starts within the allowed gap and sufficiently
+ * overlaps it, until no remaining track can be merged. Rather than scanning every remaining track after each merge,
+ * the remaining tracks are indexed by type, classification, and start frame, so only the tracks that start within
+ * the allowed gap after the end of the current track are examined. Detections and properties are accumulated as
+ * tracks are merged, so the merged track is only created once.
+ *
+ * All of the input tracks must have the same job id, media id, task index, and action index.
+ */
+class TrackMerger {
+
+    private final TrackMergingPlan _plan;
+
+    private final Track[] _tracks;
+
+    private final boolean[] _consumed;
+
+    // type -> classification -> start frame -> indices in to _tracks, in natural order
+    private final Map<String, Map<String, NavigableMap<Integer, List<Integer>>>> _index = new HashMap<>();
+
+
+    private TrackMerger(SortedSet<Track> tracks, TrackMergingPlan plan) {
+        _plan = plan;
+        _tracks = tracks.toArray(new Track[0]);
+        _consumed = new boolean[_tracks.length];
+        for (int i = 0; i < _tracks.length; i++) {
+            Track track = _tracks[i];
+            getStartFrameIndex(getTypeKey(track.getType()), getClassificationKey(track))
+                    .computeIfAbsent(track.getStartOffsetFrameInclusive(), k -> new ArrayList<>(1))
+                    .add(i);
+        }
+    }
+
+
+    public static SortedSet<Track> merge(SortedSet<Track> tracks, TrackMergingPlan plan) {
+        if (tracks.isEmpty()) {
+            return tracks;
+        }
+        return new TrackMerger(tracks, plan).merge();
+    }
+
+
+    private SortedSet<Track> merge() {
+        var mergedTracks = new TreeSet<Track>();
+        for (int i = 0; i < _tracks.length; i++) {
+            if (_consumed[i]) {
+                continue;
+            }
+            consume(i);
+            var mergedTrack = new MergedTrack(_tracks[i]);
+
+            int candidateIdx;
+            while ((candidateIdx = findFirstCandidate(mergedTrack)) >= 0) {
+                consume(candidateIdx);
+                mergedTrack.add(_tracks[candidateIdx]);
+            }
+            mergedTracks.add(mergedTrack.build());
+        }
+        return mergedTracks;
+    }
+
+
+    private int findFirstCandidate(MergedTrack mergedTrack) {
+        String classificationKey = isClassTrack(mergedTrack.getType())
+                ? foldCase(getClassification(mergedTrack.getLastDetection()))
+                : null;
+        NavigableMap<Integer, List<Integer>> startFrameIndex
+                = getStartFrameIndex(getTypeKey(mergedTrack.getType()), classificationKey);
+
+        long firstAllowedStart = (long) mergedTrack.getEndFrame() + 1;
+        long lastAllowedStart = Math.max(firstAllowedStart,
+                                         (long) mergedTrack.getEndFrame() + _plan.getMinGapBetweenTracks() - 1);
+        if (firstAllowedStart > Integer.MAX_VALUE) {
+            return -1;
+        }
+
+        var candidatesInGap = startFrameIndex.subMap(
+                (int) firstAllowedStart, true, (int) Math.min(lastAllowedStart, Integer.MAX_VALUE), true);
+        for (List<Integer> candidates : candidatesInGap.values()) {
+            for (int candidateIdx : candidates) {
+                if (canMerge(mergedTrack, _tracks[candidateIdx])) {
+                    return candidateIdx;
+                }
+            }
+        }
+        return -1;
+    }
+
+
+    private boolean canMerge(MergedTrack mergedTrack, Track candidate) {
+        return canMerge(mergedTrack.getType(), mergedTrack.getLastDetection(), mergedTrack.getEndFrame(),
+                        candidate, _plan);
+    }
+
+
+    private void consume(int trackIdx) {
+        _consumed[trackIdx] = true;
+        Track track = _tracks[trackIdx];
+        var startFrameIndex = getStartFrameIndex(getTypeKey(track.getType()), getClassificationKey(track));
+        List<Integer> tracksWithSameStart = startFrameIndex.get(track.getStartOffsetFrameInclusive());
+        tracksWithSameStart.remove(Integer.valueOf(trackIdx));
+        if (tracksWithSameStart.isEmpty()) {
+            startFrameIndex.remove(track.getStartOffsetFrameInclusive());
+        }
+    }
+
+
+    private NavigableMap<Integer, List<Integer>> getStartFrameIndex(String typeKey, String classificationKey) {
+        return _index
+                .computeIfAbsent(typeKey, k -> new HashMap<>())
+                .computeIfAbsent(classificationKey, k -> new TreeMap<>());
+    }
+
+
+    private static String getTypeKey(String type) {
+        return foldCase(type);
+    }
+
+
+    // Only CLASS tracks are split up by classification. A CLASS track can only be merged in to a track whose last
+    // detection has the same classification as the candidate's first detection.
+    private static String getClassificationKey(Track track) {
+        if (!isClassTrack(track.getType()) || track.getDetections().isEmpty()) {
+            return null;
+        }
+        return foldCase(getClassification(track.getDetections().first()));
+    }
+
+
+    // Maps strings that are equal according to StringUtils.equalsIgnoreCase to the same key.
+    private static String foldCase(String str) {
+        if (str == null) {
+            return null;
+        }
+        var builder = new StringBuilder(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            builder.append(Character.toLowerCase(Character.toUpperCase(str.charAt(i))));
+        }
+        return builder.toString();
+    }
+
+
+    private static boolean canMerge(String type1, Detection track1End, int track1EndFrame, Track track2,
+                                    TrackMergingPlan plan) {
+        return StringUtils.equalsIgnoreCase(type1, track2.getType())
+                && isEligibleForMerge(type1, track1End, track2)
+                && isWithinGap(track1EndFrame, track2, plan.getMinGapBetweenTracks())
+                && intersects(track1End, track2, plan.getMinTrackOverlap());
+    }
+
+
+    private static boolean isClassTrack(String type) {
+        return type.toUpperCase().equals("CLASS");
+    }
+
+
+    private static boolean isEligibleForMerge(String type1, Detection track1End, Track track2) {
+        // NOTE: All tracks should be the same type.
+        if (isClassTrack(type1)) {
+            return isSameClassification(track1End, track2);
+        }
+        return true;
+    }
+
+
+    private static boolean isSameClassification(Detection track1End, Track track2) {
+        if (track1End == null || track2.getDetections().isEmpty()) {
+            return false;
+        }
+        String class1 = getClassification(track1End);
+        String class2 = getClassification(track2.getDetections().first());
+        return StringUtils.equalsIgnoreCase(class1, class2);
+    }
+
+
+    private static String getClassification(Detection detection) {
+        return detection == null
+                ? null
+                : detection.getDetectionProperties().get("CLASSIFICATION");
+    }
+
+
+    private static boolean isWithinGap(int track1EndFrame, Track track2, double minGapBetweenTracks) {
+        if (track1EndFrame + 1 == track2.getStartOffsetFrameInclusive()) {
+            return true; // tracks are adjacent
+        }
+        return (track1EndFrame < track2.getStartOffsetFrameInclusive()) &&
+                (minGapBetweenTracks - 1 >= track2.getStartOffsetFrameInclusive() - track1EndFrame);
+    }
+
+
+    private static boolean intersects(Detection track1End, Track track2, double minTrackOverlap) {
+        Detection track2Start = track2.getDetections().first();
+
+        Rectangle rectangle1 = new Rectangle(track1End.getX(), track1End.getY(), track1End.getWidth(), track1End.getHeight());
+        Rectangle rectangle2 = new Rectangle(track2Start.getX(), track2Start.getY(), track2Start.getWidth(), track2Start.getHeight());
+
+        if (rectangle1.getWidth() == 0 || rectangle2.getWidth() == 0 || rectangle1.getHeight() == 0 || rectangle2.getHeight() == 0) {
+            return false;
+        }
+
+        Rectangle intersection = rectangle1.intersection(rectangle2);
+
+        if (intersection.isEmpty()) {
+            return 0 >= minTrackOverlap;
+        }
+
+        double intersectArea = intersection.getHeight() * intersection.getWidth();
+        double unionArea = (rectangle2.getHeight() * rectangle2.getWidth()) + (rectangle1.getHeight() * rectangle1.getWidth()) - intersectArea;
+        double percentOverlap = intersectArea / unionArea;
+
+        return percentOverlap >= minTrackOverlap;
+    }
+
+
+
+    /**
+     * Accumulates the tracks that are merged in to the first track. This produces the same track that would be
+     * produced by repeatedly calling {@link TrackMergingProcessor#merge(Track, Track)}.
+     */
+    private static class MergedTrack {
+        private final Track _firstTrack;
+
+        private Track _lastTrack;
+
+        private Detection _lastDetection;
+
+        private float _confidence;
+
+        private ImmutableSortedSet.Builder<Detection> _detections;
+
+        private SortedMap<String, String> _properties;
+
+
+        MergedTrack(Track firstTrack) {
+            _firstTrack = firstTrack;
+            _lastTrack = firstTrack;
+            _confidence = firstTrack.getConfidence();
+            _lastDetection = firstTrack.getDetections().isEmpty() ? null : firstTrack.getDetections().last();
+        }
+
+        String getType() {
+            return _firstTrack.getType();
+        }
+
+        int getEndFrame() {
+            return _lastTrack.getEndOffsetFrameInclusive();
+        }
+
+        Detection getLastDetection() {
+            return _lastDetection;
+        }
+
+        void add(Track track) {
+            if (_detections == null) {
+                _detections = ImmutableSortedSet.<Detection>naturalOrder().addAll(_firstTrack.getDetections());
+                _properties = new TreeMap<>(_firstTrack.getTrackProperties());
+            }
+            _detections.addAll(track.getDetections());
+            track.getTrackProperties().forEach(
+                    (k, v) -> _properties.merge(k, v, (v1, v2) -> v1.equals(v2) ? v1 : v1 + "; " + v2));
+
+            if (!track.getDetections().isEmpty()
+                    && (_lastDetection == null || track.getDetections().last().compareTo(_lastDetection) > 0)) {
+                _lastDetection = track.getDetections().last();
+            }
+            _confidence = Math.max(_confidence, track.getConfidence());
+            _lastTrack = track;
+        }
+
+        Track build() {
+            if (_detections == null) {
+                return _firstTrack;
+            }
+            return new Track(
+                    _firstTrack.getJobId(),
+                    _firstTrack.getMediaId(),
+                    _firstTrack.getTaskIndex(),
+                    _firstTrack.getActionIndex(),
+                    _firstTrack.getStartOffsetFrameInclusive(),
+                    _lastTrack.getEndOffsetFrameInclusive(),
+                    _firstTrack.getStartOffsetTimeInclusive(),
+                    _lastTrack.getEndOffsetTimeInclusive(),
+                    _firstTrack.getType(),
+                    _confidence,
+                    _detections.build(),
+                    _properties);
+        }
+    }
+}
@@ -63,7 +63,7 @@ public class TrackMergingPlan {
 
 	@Override
 	public String toString() {
-		return String.format("%s#<mergeTracks=%s, minGapBetweenTracks=%d, minTrackLength=%d, minTrackOverlap=%d>",
+		return String.format("%s#<mergeTracks=%s, minGapBetweenTracks=%d, minTrackLength=%d, minTrackOverlap=%s>",
 				this.getClass().getSimpleName(), Boolean.toString(mergeTracks), minGapBetweenTracks, minTrackLength, minTrackOverlap);
 	}
 }
\ No newline at end of file
@@ -29,7 +29,6 @@ package org.mitre.mpf.wfm.camel.operations.detection.trackmerging;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import org.apache.camel.Exchange;
-import org.apache.commons.lang3.StringUtils;
 import org.mitre.mpf.rest.api.pipelines.Action;
 import org.mitre.mpf.rest.api.pipelines.Task;
 import org.mitre.mpf.wfm.WfmProcessingException;
@@ -43,13 +42,13 @@ import org.mitre.mpf.wfm.enums.MediaType;
 import org.mitre.mpf.wfm.enums.MpfConstants;
 import org.mitre.mpf.wfm.util.AggregateJobPropertiesUtil;
 import org.mitre.mpf.wfm.util.JsonUtils;
+import org.mitre.mpf.wfm.util.PropertiesUtil;
+import org.mitre.mpf.wfm.util.ThreadUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.awt.*;
-import java.util.List;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Stream;
@@ -89,6 +88,9 @@ public class TrackMergingProcessor extends WfmProcessor {
     @Autowired
     private AggregateJobPropertiesUtil aggregateJobPropertiesUtil;
 
+    @Autowired
+    private PropertiesUtil propertiesUtil;
+
     @Override
     public void wfmProcess(Exchange exchange) throws WfmProcessingException {
         TrackMergingContext trackMergingContext = jsonUtils.deserialize(exchange.getIn().getBody(byte[].class), TrackMergingContext.class);
@@ -96,61 +98,63 @@ public class TrackMergingProcessor extends WfmProcessor {
         BatchJob job = inProgressJobs.getJob(trackMergingContext.getJobId());
 
         Task task = job.getPipelineElements().getTask(trackMergingContext.getTaskIndex());
+        var mediaActions = new ArrayList<Map.Entry<Media, Integer>>();
         for (int actionIndex = 0; actionIndex < task.getActions().size(); actionIndex++) {
-            Action action = job.getPipelineElements()
-                    .getAction(trackMergingContext.getTaskIndex(), actionIndex);
-
             for (Media media : job.getMedia()) {
-
                 // NOTE: Only perform track merging and track pruning on video data.
-                if (!media.getMediaType().equals(MediaType.VIDEO) || media.isFailed()) {
-                    continue;
+                if (media.getMediaType().equals(MediaType.VIDEO) && !media.isFailed()) {
+                    mediaActions.add(Map.entry(media, actionIndex));
                 }
+            }
+        }
 
-                TrackMergingPlan trackMergingPlan = createTrackMergingPlan(job, media, action);
+        // Each (media, action) pair has its own set of tracks, so they can be processed concurrently.
+        ThreadUtil.forEachInParallel(
+                mediaActions, propertiesUtil.getTrackProcessingThreadCount(),
+                ma -> processTracks(job, trackMergingContext.getTaskIndex(), ma.getKey(), ma.getValue()));
 
-                boolean mergeRequested = trackMergingPlan.isMergeTracks();
-                boolean pruneRequested = trackMergingPlan.getMinTrackLength() > 1;
+        exchange.getOut().setBody(jsonUtils.serialize(trackMergingContext));
+    }
 
-                if (!mergeRequested && !pruneRequested) {
-                    continue; // nothing to do
-                }
 
-                SortedSet<Track> tracks = inProgressJobs.getTracks(
-                        trackMergingContext.getJobId(), media.getId(), trackMergingContext.getTaskIndex(),
-                        actionIndex);
+    private void processTracks(BatchJob job, int taskIndex, Media media, int actionIndex) {
+        Action action = job.getPipelineElements().getAction(taskIndex, actionIndex);
+        TrackMergingPlan trackMergingPlan = createTrackMergingPlan(job, media, action);
 
-                if (tracks.isEmpty() || !isEligibleForFixup(tracks)) {
-                    continue;
-                }
+        boolean mergeRequested = trackMergingPlan.isMergeTracks();
+        boolean pruneRequested = trackMergingPlan.getMinTrackLength() > 1;
 
-                if (mergeRequested) {
-                    int initialSize = tracks.size();
-                    tracks = new TreeSet<>(combine(tracks, trackMergingPlan));
+        if (!mergeRequested && !pruneRequested) {
+            return; // nothing to do
+        }
 
-                    log.debug("[Job {}|{}|{}] Merging {} tracks down to {} in Media {}.",
-                              trackMergingContext.getJobId(), trackMergingContext.getTaskIndex(), actionIndex,
-                              initialSize, tracks.size(), media.getId());
-                }
+        SortedSet<Track> tracks = inProgressJobs.getTracks(job.getId(), media.getId(), taskIndex, actionIndex);
 
-                if (pruneRequested) {
-                    int initialSize = tracks.size();
-                    int minTrackLength = trackMergingPlan.getMinTrackLength();
-                    tracks = tracks.stream()
-                            .filter(t -> t.getEndOffsetFrameInclusive() - t.getStartOffsetFrameInclusive() >= minTrackLength - 1)
-                            .collect(toCollection(TreeSet::new));
+        if (tracks.isEmpty() || !isEligibleForFixup(tracks)) {
+            return;
+        }
 
-                    log.debug("[Job {}|{}|{}] Pruning {} tracks down to {} tracks at least {} frames long in Media {}.",
-                              trackMergingContext.getJobId(), trackMergingContext.getTaskIndex(), actionIndex,
-                              initialSize, tracks.size(), minTrackLength, media.getId());
-                }
+        if (mergeRequested) {
+            int initialSize = tracks.size();
+            tracks = TrackMerger.merge(tracks, trackMergingPlan);
 
-                inProgressJobs.setTracks(trackMergingContext.getJobId(), media.getId(),
-                                         trackMergingContext.getTaskIndex(), actionIndex, tracks);
-            }
+            log.debug("[Job {}|{}|{}] Merging {} tracks down to {} in Media {}.",
+                      job.getId(), taskIndex, actionIndex, initialSize, tracks.size(), media.getId());
         }
 
-        exchange.getOut().setBody(jsonUtils.serialize(trackMergingContext));
+        if (pruneRequested) {
+            int initialSize = tracks.size();
+            int minTrackLength = trackMergingPlan.getMinTrackLength();
+            tracks = tracks.stream()
+                    .filter(t -> t.getEndOffsetFrameInclusive() - t.getStartOffsetFrameInclusive() >= minTrackLength - 1)
+                    .collect(toCollection(TreeSet::new));
+
+            log.debug("[Job {}|{}|{}] Pruning {} tracks down to {} tracks at least {} frames long in Media {}.",
+                      job.getId(), taskIndex, actionIndex, initialSize, tracks.size(), minTrackLength,
+                      media.getId());
+        }
+
+        inProgressJobs.setTracks(job.getId(), media.getId(), taskIndex, actionIndex, tracks);
     }
 
     private TrackMergingPlan createTrackMergingPlan(BatchJob job, Media media,
@@ -215,49 +219,6 @@ public class TrackMergingProcessor extends WfmProcessor {
         return new TrackMergingPlan(mergeTracks, minGapBetweenTracks, minTrackLength, minTrackOverlap);
     }
 
-    private static Set<Track> combine(SortedSet<Track> sourceTracks, TrackMergingPlan plan) {
-        // Do not attempt to merge an empty or null set.
-        if (sourceTracks.isEmpty()) {
-            return sourceTracks;
-        }
-
-        List<Track> tracks = new LinkedList<>(sourceTracks);
-        List<Track> mergedTracks = new LinkedList<>();
-
-        while (tracks.size() > 0) {
-            // Pop off the track with the earliest start time.
-            Track merged = tracks.remove(0);
-            boolean performedMerge = false;
-            Track trackToRemove = null;
-
-            for (Track candidate : tracks) {
-                // Iterate through the remaining tracks until a track is found which is within the frame gap and has sufficient region overlap.
-                if (canMerge(merged, candidate, plan)) {
-                    // If one is found, merge them and then push this track back to the beginning of the collection.
-                    tracks.add(0, merge(merged, candidate));
-                    performedMerge = true;
-
-                    // Keep a reference to the track which was merged into the original - it will be removed.
-                    trackToRemove = candidate;
-                    break;
-                }
-            }
-
-            if (performedMerge) {
-                // A merge was performed, so it is necessary to remove the merged track.
-                tracks.remove(trackToRemove);
-            } else {
-                // No merge was performed. The current track is no longer a candidate for merging.
-                mergedTracks.add(merged);
-            }
-        }
-
-        log.trace("Track merging complete. The {} input tracks were merged as appropriate to form {} output tracks.",
-                  sourceTracks.size(), mergedTracks.size());
-
-        return new HashSet<>(mergedTracks);
-    }
-
     /** Combines two tracks. This is a destructive method. The contents of track1 reflect the merged track. */
     public static Track merge(Track track1, Track track2){
 
@@ -289,13 +250,6 @@ public class TrackMergingProcessor extends WfmProcessor {
         return merged;
     }
 
-    private static boolean canMerge(Track track1, Track track2, TrackMergingPlan plan) {
-        return StringUtils.equalsIgnoreCase(track1.getType(), track2.getType())
-                && isEligibleForMerge(track1, track2)
-                && isWithinGap(track1, track2, plan.getMinGapBetweenTracks())
-                && intersects(track1, track2, plan.getMinTrackOverlap());
-    }
-
     private static boolean isEligibleForFixup(SortedSet<Track> tracks) {
         // NOTE: All tracks should be the same type.
         switch (tracks.first().getType().toUpperCase()) {
@@ -307,55 +261,4 @@ public class TrackMergingProcessor extends WfmProcessor {
         }
     }
 
-    // This method assumes that isEligibleForFixup() has been checked.
-    private static boolean isEligibleForMerge(Track track1, Track track2) {
-        // NOTE: All tracks should be the same type.
-        switch (track1.getType().toUpperCase()) {
-            case "CLASS":
-                return isSameClassification(track1, track2);
-            default:
-                return true;
-        }
-    }
-
-    private static boolean isSameClassification(Track track1, Track track2) {
-        if (track1.getDetections().isEmpty() || track2.getDetections().isEmpty()) {
-            return false;
-        }
-        String class1 = track1.getDetections().last().getDetectionProperties().get("CLASSIFICATION");
-        String class2 = track2.getDetections().first().getDetectionProperties().get("CLASSIFICATION");
-        return StringUtils.equalsIgnoreCase(class1, class2);
-    }
-
-    private static boolean isWithinGap(Track track1, Track track2, double minGapBetweenTracks) {
-        if (track1.getEndOffsetFrameInclusive() + 1 == track2.getStartOffsetFrameInclusive()) {
-            return true; // tracks are adjacent
-        }
-        return (track1.getEndOffsetFrameInclusive() < track2.getStartOffsetFrameInclusive()) &&
-                (minGapBetweenTracks - 1 >= track2.getStartOffsetFrameInclusive() - track1.getEndOffsetFrameInclusive());
-    }
-
-    private static boolean intersects(Track track1, Track track2, double minTrackOverlap) {
-        Detection track1End = track1.getDetections().last();
-        Detection track2Start = track2.getDetections().first();
-
-        Rectangle rectangle1 = new Rectangle(track1End.getX(), track1End.getY(), track1End.getWidth(), track1End.getHeight());
-        Rectangle rectangle2 = new Rectangle(track2Start.getX(), track2Start.getY(), track2Start.getWidth(), track2Start.getHeight());
-
-        if (rectangle1.getWidth() == 0 || rectangle2.getWidth() == 0 || rectangle1.getHeight() == 0 || rectangle2.getHeight() == 0) {
-            return false;
-        }
-
-        Rectangle intersection = rectangle1.intersection(rectangle2);
-
-        if (intersection.isEmpty()) {
-            return 0 >= minTrackOverlap;
-        }
-
-        double intersectArea = intersection.getHeight() * intersection.getWidth();
-        double unionArea = (rectangle2.getHeight() * rectangle2.getWidth()) + (rectangle1.getHeight() * rectangle1.getWidth()) - intersectArea;
-        double percentOverlap = intersectArea / unionArea;
-
-        return percentOverlap >= minTrackOverlap;
-    }
 }
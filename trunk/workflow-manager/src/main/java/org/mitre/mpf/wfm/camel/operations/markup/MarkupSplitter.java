@@ -37,6 +37,7 @@ import org.mitre.mpf.rest.api.pipelines.Algorithm;
 import org.mitre.mpf.rest.api.pipelines.Task;
 import org.mitre.mpf.videooverlay.BoundingBox;
 import org.mitre.mpf.videooverlay.BoundingBoxMap;
+import org.mitre.mpf.videooverlay.BoundingBoxTrack;
 import org.mitre.mpf.wfm.buffers.Markup;
 import org.mitre.mpf.wfm.data.IdGenerator;
 import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
@@ -96,11 +97,22 @@ public class MarkupSplitter {
                 } else if(!StringUtils.startsWith(media.getType(), "image") && !StringUtils.startsWith(media.getType(), "video")) {
                     log.debug("Skipping Media {} - only image and video files are eligible for markup.", media.getId());
                 } else {
-                    List<Markup.BoundingBoxMapEntry> boundingBoxMapEntryList
-                            = createMap(job, media, lastDetectionTaskIndex,
-                                        job.getPipelineElements().getTask(lastDetectionTaskIndex))
-                            .toBoundingBoxMapEntryList();
-                    Markup.MarkupRequest markupRequest = Markup.MarkupRequest.newBuilder()
+                    List<BoundingBoxTrack> boundingBoxTracks = createTracks(
+                            job, media, lastDetectionTaskIndex,
+                            job.getPipelineElements().getTask(lastDetectionTaskIndex));
+                    Markup.MarkupRequest.Builder markupRequestBuilder = Markup.MarkupRequest.newBuilder();
+                    if (media.getMediaType() == MediaType.VIDEO) {
+                        // Only the keyframes are sent for videos. The markup component interpolates the boxes
+                        // between them as it writes each frame.
+                        boundingBoxTracks.forEach(t -> markupRequestBuilder.addTracks(t.toProtocolBuffer()));
+                    }
+                    else {
+                        BoundingBoxMap boundingBoxMap = new BoundingBoxMap();
+                        boundingBoxTracks.forEach(boundingBoxMap::putTrack);
+                        markupRequestBuilder.addAllMapEntries(boundingBoxMap.toBoundingBoxMapEntryList());
+                    }
+
+                    Markup.MarkupRequest markupRequest = markupRequestBuilder
                             .setMediaIndex(mediaIndex)
                             .setTaskIndex(job.getCurrentTaskIndex())
                             .setActionIndex(actionIndex)
@@ -108,10 +120,9 @@ public class MarkupSplitter {
                             .setMediaType(Markup.MediaType.valueOf(media.getMediaType().toString().toUpperCase()))
                             .setRequestId(IdGenerator.next())
                             .setSourceUri(media.getLocalPath().toUri().toString())
-                            .setDestinationUri(boundingBoxMapEntryList.size() > 0 ?
+                            .setDestinationUri(!boundingBoxTracks.isEmpty() ?
                                                        propertiesUtil.createMarkupPath(job.getId(), media.getId(), getMarkedUpMediaExtensionForMediaType(media.getMediaType())).toUri().toString() :
                                                        propertiesUtil.createMarkupPath(job.getId(), media.getId(), getFileExtension(media.getType())).toUri().toString())
-                            .addAllMapEntries(boundingBoxMapEntryList)
                             .build();
 
                     Algorithm algorithm = job.getPipelineElements().getAlgorithm(action.getAlgorithm());
@@ -143,18 +154,21 @@ public class MarkupSplitter {
         return taskIndex;
     }
 
-    /** Creates a BoundingBoxMap containing all of the tracks which were produced by the specified action history keys. */
-    private BoundingBoxMap createMap(BatchJob job, Media media, int taskIndex, Task task) {
+    /** Creates the keyframes for all of the tracks which were produced by the specified task. */
+    private List<BoundingBoxTrack> createTracks(BatchJob job, Media media, int taskIndex, Task task) {
         Iterator<Color> trackColors = getTrackColors();
-        BoundingBoxMap boundingBoxMap = new BoundingBoxMap();
+        List<BoundingBoxTrack> boundingBoxTracks = new ArrayList<>();
         long mediaId = media.getId();
         for (int actionIndex = 0; actionIndex < task.getActions().size(); actionIndex++) {
             SortedSet<Track> tracks = inProgressJobs.getTracks(job.getId(), mediaId, taskIndex, actionIndex);
             for (Track track : tracks) {
-                addTrackToBoundingBoxMap(track, boundingBoxMap, trackColors.next());
+                BoundingBoxTrack boundingBoxTrack = createBoundingBoxTrack(track, trackColors.next());
+                if (!boundingBoxTrack.isEmpty()) {
+                    boundingBoxTracks.add(boundingBoxTrack);
+                }
             }
         }
-        return boundingBoxMap;
+        return boundingBoxTracks;
     }
 
 
@@ -172,7 +186,8 @@ public class MarkupSplitter {
                 .map(s -> Boolean.parseBoolean(s.strip()));
     }
 
-    private static void addTrackToBoundingBoxMap(Track track, BoundingBoxMap boundingBoxMap, Color trackColor) {
+    private static BoundingBoxTrack createBoundingBoxTrack(Track track, Color trackColor) {
+        BoundingBoxTrack boundingBoxTrack = new BoundingBoxTrack();
         OptionalDouble trackRotation = getRotation(track.getTrackProperties());
         Optional<Boolean> trackFlip = getFlip(track.getTrackProperties());
 
@@ -201,46 +216,38 @@ public class MarkupSplitter {
             if ("SPEECH".equalsIgnoreCase(objectType) || "AUDIO".equalsIgnoreCase(objectType)) {
                 // Special case: Speech doesn't populate object locations for each frame in the video, so you have to
                 // go by the track start and stop frames.
-                boundingBoxMap.putOnFrames(track.getStartOffsetFrameInclusive(),
-                                           track.getEndOffsetFrameInclusive(), boundingBox);
+                int startFrame = track.getStartOffsetFrameInclusive();
+                int stopFrame = track.getEndOffsetFrameInclusive();
+                // Interpolating between two identical boxes keeps the box in place on every frame of the track.
+                boundingBoxTrack.addKeyframe(startFrame, boundingBox, stopFrame - startFrame > 1);
+                if (stopFrame > startFrame) {
+                    boundingBoxTrack.addKeyframe(stopFrame, boundingBox, false);
+                }
                 break;
             }
 
             boolean isLastDetection = (i == (orderedDetections.size() - 1));
             if (isLastDetection) {
-                boundingBoxMap.putOnFrame(currentFrame, boundingBox);
+                boundingBoxTrack.addKeyframe(currentFrame, boundingBox, false);
                 break;
             }
 
             Detection nextDetection = orderedDetections.get(i + 1);
             int gapBetweenNextDetection = nextDetection.getMediaOffsetFrame() - detection.getMediaOffsetFrame();
             if (gapBetweenNextDetection == 1) {
-                boundingBoxMap.putOnFrame(currentFrame, boundingBox);
+                boundingBoxTrack.addKeyframe(currentFrame, boundingBox, false);
             }
             else {
                 // Since the gap between frames is greater than 1 and we are not at the last result in the
-                // collection, we draw bounding boxes on each frame in the collection such that on the
-                // first frame, the bounding box is at the position given by the object location, and on the
-                // last frame in the interval, the bounding box is very close to the position given by the object
-                // location of the next result. Consequently, the original bounding box appears to resize
-                // and translate to the position and size of the next result's bounding box.
-
-                OptionalDouble nextDetectionRotation = getRotation(nextDetection.getDetectionProperties());
-                Optional<Boolean> nextDetectionFlip = getFlip(nextDetection.getDetectionProperties());
-
-                BoundingBox nextBoundingBox = new BoundingBox(
-                        nextDetection.getX(),
-                        nextDetection.getY(),
-                        nextDetection.getWidth(),
-                        nextDetection.getHeight(),
-                        nextDetectionRotation.orElse(trackRotation.orElse(0)),
-                        nextDetectionFlip.orElse(trackFlip.orElse(false)),
-                        boundingBox.getRed(),
-                        boundingBox.getBlue(),
-                        boundingBox.getGreen());
-                boundingBoxMap.animate(boundingBox, nextBoundingBox, currentFrame, gapBetweenNextDetection);
+                // collection, the keyframe is marked for interpolation. When the markup is drawn, the bounding box
+                // is at the position given by the object location on the first frame, and on the last frame in the
+                // interval, the bounding box is very close to the position given by the object location of the next
+                // result. Consequently, the original bounding box appears to resize and translate to the position
+                // and size of the next result's bounding box.
+                boundingBoxTrack.addKeyframe(currentFrame, boundingBox, true);
             }
         }
+        return boundingBoxTrack;
     }
 
 
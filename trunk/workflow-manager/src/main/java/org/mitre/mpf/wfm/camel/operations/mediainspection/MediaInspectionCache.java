@@ -0,0 +1,403 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camel.operations.mediainspection;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.javasimon.Counter;
+import org.javasimon.SimonManager;
+import org.mitre.mpf.wfm.util.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Stores the results of media inspection so that media that is submitted more than once only needs to be inspected
+ * the first time. Each result is stored in its own file in the media inspection cache directory, so the cache
+ * survives restarts of the Workflow Manager.
+ *
+ * Results are stored under the media's SHA-256 hash. Local files are also indexed by the file's path, size, and
+ * modification time, so when an unchanged local file is submitted again, the file does not even need to be read to
+ * compute its hash. Each file index entry is a small link file that contains the hash of the result it refers to.
+ *
+ * The cache holds at most media.inspection.cache.size results. File index entries do not count towards the limit,
+ * but they are removed along with the result they refer to. When the cache is full, the least recently used result
+ * is removed. Results' modification times are updated when they are used, so the access order is restored on
+ * startup.
+ */
+@Component
+public class MediaInspectionCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MediaInspectionCache.class);
+
+    private static final String ENTRY_EXTENSION = ".json";
+
+    private static final String LINK_EXTENSION = ".link";
+
+    private final Path _cacheDir;
+
+    private final int _maxEntries;
+
+    private final ObjectMapper _objectMapper;
+
+    // Only the keys are used. The map is in access order so that the first key is the least recently used entry.
+    // Also guards _fileIndex.
+    private final LinkedHashMap<String, Boolean> _index = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Maps a file key to the SHA-256 hash of the file's contents.
+    private final Map<String, String> _fileIndex = new HashMap<>();
+
+    private final Counter _hitCounter = SimonManager.getCounter(MediaInspectionCache.class.getName() + ".hits");
+
+    private final Counter _missCounter = SimonManager.getCounter(MediaInspectionCache.class.getName() + ".misses");
+
+
+    @Inject
+    public MediaInspectionCache(PropertiesUtil propertiesUtil, ObjectMapper objectMapper) throws IOException {
+        _cacheDir = propertiesUtil.getMediaInspectionCacheDirectory().toPath();
+        _maxEntries = propertiesUtil.getMediaInspectionCacheSize();
+        _objectMapper = objectMapper;
+        loadIndex();
+    }
+
+
+    public boolean isEnabled() {
+        return _maxEntries > 0;
+    }
+
+
+    /**
+     * Gets the result for a local file that has not been modified since it was inspected.
+     * The file's contents are not read. When the file is not found, {@link #getBySha256} is expected to be called
+     * next, so a miss is not counted here.
+     */
+    public Optional<Entry> getByFile(Path path) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        String sha256;
+        try {
+            String fileKey = getFileKey(path);
+            synchronized (_index) {
+                sha256 = _fileIndex.get(fileKey);
+            }
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to get the attributes of \"{}\".", path, e);
+            return Optional.empty();
+        }
+        if (sha256 == null) {
+            return Optional.empty();
+        }
+        var result = get(getShaKey(sha256));
+        if (result.isPresent()) {
+            _hitCounter.increase();
+        }
+        return result;
+    }
+
+
+    /**
+     * Gets the result for media with the given hash. This is the last lookup before the media is inspected, so a
+     * miss is counted when no result is found.
+     */
+    public Optional<Entry> getBySha256(String sha256, String mimeType) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        Optional<Entry> result = sha256 == null
+                ? Optional.empty()
+                : get(getShaKey(sha256)).filter(e -> Objects.equals(e.getMimeType(), mimeType));
+        if (result.isPresent()) {
+            _hitCounter.increase();
+        }
+        else {
+            _missCounter.increase();
+        }
+        return result;
+    }
+
+
+    /**
+     * Stores the result of inspecting a piece of media.
+     * @param localFile The file to index the result under or null if the result should only be stored under
+     *                  the media's hash. It should only be provided when the file's original location is on the
+     *                  local file system, since downloaded files get a new path each time.
+     * @param entry The inspection result
+     */
+    public void put(Path localFile, Entry entry) {
+        if (!isEnabled() || entry.getSha256() == null) {
+            return;
+        }
+        try {
+            store(getShaKey(entry.getSha256()), entry);
+            if (localFile != null) {
+                storeLink(getFileKey(localFile), entry.getSha256());
+            }
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to store the media inspection result for \"{}\".", localFile, e);
+        }
+    }
+
+
+    public long getHitCount() {
+        return _hitCounter.getCounter();
+    }
+
+    public long getMissCount() {
+        return _missCounter.getCounter();
+    }
+
+
+
+    private Optional<Entry> get(String key) {
+        boolean inIndex;
+        synchronized (_index) {
+            inIndex = _index.get(key) != null;
+        }
+        if (!inIndex) {
+            return Optional.empty();
+        }
+
+        Path entryPath = getEntryPath(key);
+        try {
+            Entry entry = _objectMapper.readValue(entryPath.toFile(), Entry.class);
+            Files.setLastModifiedTime(entryPath, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(entry);
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to read the media inspection cache entry at \"{}\". It will be removed.", entryPath, e);
+            List<Path> removedFiles = new ArrayList<>();
+            synchronized (_index) {
+                removeFromIndex(key, removedFiles);
+            }
+            removedFiles.forEach(this::deleteCacheFile);
+            return Optional.empty();
+        }
+    }
+
+
+    private void store(String key, Entry entry) throws IOException {
+        writeAtomically(key, getEntryPath(key), tempPath -> _objectMapper.writeValue(tempPath.toFile(), entry));
+
+        List<Path> evictedFiles = new ArrayList<>();
+        synchronized (_index) {
+            _index.put(key, Boolean.TRUE);
+            Iterator<String> iter = _index.keySet().iterator();
+            while (_index.size() > _maxEntries && iter.hasNext()) {
+                String evictedKey = iter.next();
+                iter.remove();
+                removeFromIndex(evictedKey, evictedFiles);
+            }
+        }
+        evictedFiles.forEach(this::deleteCacheFile);
+    }
+
+
+    private void storeLink(String fileKey, String sha256) throws IOException {
+        Path linkPath = getLinkPath(fileKey);
+        writeAtomically(fileKey, linkPath, tempPath -> Files.writeString(tempPath, sha256));
+
+        boolean entryExists;
+        synchronized (_index) {
+            entryExists = _index.containsKey(getShaKey(sha256));
+            if (entryExists) {
+                _fileIndex.put(fileKey, sha256);
+            }
+        }
+        if (!entryExists) {
+            // The result was evicted while the link was being written.
+            deleteCacheFile(linkPath);
+        }
+    }
+
+
+    // Write to a temporary file first so that a partially written file is never visible.
+    private void writeAtomically(String key, Path destination, IoConsumer<Path> writer) throws IOException {
+        Path tempPath = Files.createTempFile(_cacheDir, key, ".tmp");
+        try {
+            writer.accept(tempPath);
+            Files.move(tempPath, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+
+    // Must be called while holding the lock on _index. The files that need to be deleted are added to removedFiles,
+    // so that they can be deleted after the lock is released.
+    private void removeFromIndex(String shaKey, List<Path> removedFiles) {
+        _index.remove(shaKey);
+        removedFiles.add(getEntryPath(shaKey));
+        for (var iter = _fileIndex.entrySet().iterator(); iter.hasNext(); ) {
+            var fileEntry = iter.next();
+            if (getShaKey(fileEntry.getValue()).equals(shaKey)) {
+                iter.remove();
+                removedFiles.add(getLinkPath(fileEntry.getKey()));
+            }
+        }
+    }
+
+
+    private void deleteCacheFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to delete media inspection cache file \"{}\".", path, e);
+        }
+    }
+
+
+    private void loadIndex() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        Files.createDirectories(_cacheDir);
+
+        List<Map.Entry<String, FileTime>> entries = new ArrayList<>();
+        Map<String, String> links = new HashMap<>();
+        try (Stream<Path> paths = Files.list(_cacheDir)) {
+            for (Iterator<Path> iter = paths.iterator(); iter.hasNext(); ) {
+                Path path = iter.next();
+                String fileName = path.getFileName().toString();
+                if (fileName.endsWith(ENTRY_EXTENSION)) {
+                    String key = fileName.substring(0, fileName.length() - ENTRY_EXTENSION.length());
+                    entries.add(Map.entry(key, Files.getLastModifiedTime(path)));
+                }
+                else if (fileName.endsWith(LINK_EXTENSION)) {
+                    String key = fileName.substring(0, fileName.length() - LINK_EXTENSION.length());
+                    links.put(key, Files.readString(path).strip());
+                }
+                else {
+                    // Left over from a write that was interrupted.
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        entries.sort(Map.Entry.comparingByValue());
+
+        int numToEvict = Math.max(0, entries.size() - _maxEntries);
+        synchronized (_index) {
+            for (int i = 0; i < entries.size(); i++) {
+                String key = entries.get(i).getKey();
+                if (i < numToEvict) {
+                    deleteCacheFile(getEntryPath(key));
+                }
+                else {
+                    _index.put(key, Boolean.TRUE);
+                }
+            }
+            links.forEach((fileKey, sha256) -> {
+                if (_index.containsKey(getShaKey(sha256))) {
+                    _fileIndex.put(fileKey, sha256);
+                }
+                else {
+                    deleteCacheFile(getLinkPath(fileKey));
+                }
+            });
+        }
+        LOG.info("Loaded {} media inspection cache entries and {} file index entries from \"{}\".",
+                 _index.size(), _fileIndex.size(), _cacheDir);
+    }
+
+
+    private Path getEntryPath(String key) {
+        return _cacheDir.resolve(key + ENTRY_EXTENSION);
+    }
+
+
+    private Path getLinkPath(String fileKey) {
+        return _cacheDir.resolve(fileKey + LINK_EXTENSION);
+    }
+
+
+    private static String getShaKey(String sha256) {
+        return "sha-" + sha256;
+    }
+
+
+    private static String getFileKey(Path path) throws IOException {
+        Path absolutePath = path.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(absolutePath, BasicFileAttributes.class);
+        String fileIdentity = String.join(
+                "|",
+                absolutePath.toString(),
+                String.valueOf(attributes.size()),
+                String.valueOf(attributes.lastModifiedTime().toMillis()),
+                String.valueOf(attributes.fileKey()));
+        return "file-" + DigestUtils.sha256Hex(fileIdentity);
+    }
+
+
+
+    @FunctionalInterface
+    private interface IoConsumer<T> {
+        void accept(T t) throws IOException;
+    }
+
+
+
+    public static class Entry {
+        private final String _sha256;
+        public String getSha256() { return _sha256; }
+
+        private final String _mimeType;
+        public String getMimeType() { return _mimeType; }
+
+        private final int _length;
+        public int getLength() { return _length; }
+
+        private final ImmutableMap<String, String> _metadata;
+        public ImmutableMap<String, String> getMetadata() { return _metadata; }
+
+        @JsonCreator
+        public Entry(
+                @JsonProperty("sha256") String sha256,
+                @JsonProperty("mimeType") String mimeType,
+                @JsonProperty("length") int length,
+                @JsonProperty("metadata") Map<String, String> metadata) {
+            _sha256 = sha256;
+            _mimeType = mimeType;
+            _length = length;
+            _metadata = metadata == null ? ImmutableMap.of() : ImmutableMap.copyOf(metadata);
+        }
+    }
+}
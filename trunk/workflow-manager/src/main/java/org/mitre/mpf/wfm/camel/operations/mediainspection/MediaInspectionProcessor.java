@@ -26,46 +26,49 @@
 
 package org.mitre.mpf.wfm.camel.operations.mediainspection;
 
-import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.camel.Exchange;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.tika.exception.TikaException;
-import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.AutoDetectParser;
-import org.apache.tika.parser.ParseContext;
-import org.apache.tika.parser.Parser;
-import org.apache.tika.parser.external.ExternalParsersConfigReader;
 import org.mitre.mpf.framecounter.FrameCounter;
-import org.mitre.mpf.wfm.WfmProcessingException;
-import org.mitre.mpf.wfm.camel.WfmProcessor;
+import org.mitre.mpf.wfm.camel.AsyncWfmProcessor;
 import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
 import org.mitre.mpf.wfm.data.entities.persistent.Media;
 import org.mitre.mpf.wfm.enums.BatchJobStatusType;
 import org.mitre.mpf.wfm.enums.IssueCodes;
 import org.mitre.mpf.wfm.enums.MpfHeaders;
+import org.mitre.mpf.wfm.enums.UriScheme;
 import org.mitre.mpf.wfm.util.IoUtils;
+import org.mitre.mpf.wfm.util.MediaIngestStream;
 import org.mitre.mpf.wfm.util.MediaTypeUtils;
+import org.mitre.mpf.wfm.util.PropertiesUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
 import javax.imageio.ImageIO;
 import javax.inject.Inject;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
-
-/** This processor extracts metadata about the input medium. */
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This processor extracts metadata about the input medium. Inspection runs on a pool of
+ * media.inspection.thread.count threads, so the Camel consumer thread is released while the media is inspected.
+ */
 @Component(MediaInspectionProcessor.REF)
-public class MediaInspectionProcessor extends WfmProcessor {
+public class MediaInspectionProcessor extends AsyncWfmProcessor implements AutoCloseable {
     private static final Logger log = LoggerFactory.getLogger(MediaInspectionProcessor.class);
     public static final String REF = "mediaInspectionProcessor";
 
@@ -73,15 +76,40 @@ public class MediaInspectionProcessor extends WfmProcessor {
 
     private final IoUtils ioUtils;
 
+    private final MediaInspectionCache inspectionCache;
+
+    private final MediaMetadataReader metadataReader;
+
+    private final ExecutorService inspectionExecutor;
+
     @Inject
-    public MediaInspectionProcessor(InProgressBatchJobsService inProgressJobs, IoUtils ioUtils) {
+    public MediaInspectionProcessor(InProgressBatchJobsService inProgressJobs, IoUtils ioUtils,
+                                    MediaInspectionCache inspectionCache, MediaMetadataReader metadataReader,
+                                    PropertiesUtil propertiesUtil) {
+        super(propertiesUtil.getMediaInspectionMaxInProgress());
         this.inProgressJobs = inProgressJobs;
         this.ioUtils = ioUtils;
+        this.inspectionCache = inspectionCache;
+        this.metadataReader = metadataReader;
+        this.inspectionExecutor = Executors.newFixedThreadPool(
+                propertiesUtil.getMediaInspectionThreadCount(),
+                new ThreadFactoryBuilder().setNameFormat("media-inspection-%d").setDaemon(true).build());
+    }
+
+
+    @Override
+    public CompletableFuture<Void> wfmProcessAsync(Exchange exchange) {
+        return CompletableFuture.runAsync(() -> inspectAndCopyHeaders(exchange), inspectionExecutor);
     }
 
 
     @Override
-    public void wfmProcess(Exchange exchange) throws WfmProcessingException {
+    public void close() {
+        inspectionExecutor.shutdownNow();
+    }
+
+
+    private void inspectAndCopyHeaders(Exchange exchange) {
         long jobId = exchange.getIn().getHeader(MpfHeaders.JOB_ID, Long.class);
         long mediaId = exchange.getIn().getHeader(MpfHeaders.MEDIA_ID, Long.class);
         Media media = inProgressJobs.getJob(jobId).getMedia(mediaId);
@@ -91,50 +119,7 @@ public class MediaInspectionProcessor extends WfmProcessor {
             assert media.getLocalPath() != null : "Media being processed by the MediaInspectionProcessor must have a local URI associated with them.";
 
             try {
-                Path localPath = media.getLocalPath();
-                String sha = null;
-                String mimeType = null;
-
-                try (InputStream inputStream = Files.newInputStream(localPath)) {
-                    log.debug("Calculating hash for '{}'.", localPath);
-                    sha = DigestUtils.sha256Hex(inputStream);
-                } catch(IOException ioe) {
-                    String errorMessage = "Could not calculate the SHA-256 hash for the file due to IOException: "
-                            + ioe;
-                    inProgressJobs.addError(jobId, mediaId, IssueCodes.ARTIFACT_EXTRACTION, errorMessage);
-                    log.error(errorMessage, ioe);
-                }
-
-                try {
-                    mimeType = ioUtils.getMimeType(localPath);
-                } catch(IOException ioe) {
-                    String errorMessage = "Could not determine the MIME type for the media due to IOException: "
-                            + ioe;
-                    inProgressJobs.addError(jobId, mediaId, IssueCodes.MEDIA_INSPECTION, errorMessage);
-                    log.error(errorMessage, ioe);
-                }
-
-                Map<String, String> mediaMetadata = new HashMap<>();
-                mediaMetadata.put("MIME_TYPE", mimeType);
-                int length = -1;
-                switch(MediaTypeUtils.parse(mimeType)) {
-                    case AUDIO:
-                        length = inspectAudio(localPath, jobId, mediaId, mediaMetadata);
-                        break;
-
-                    case VIDEO:
-                        length = inspectVideo(localPath, jobId, mediaId, mimeType, mediaMetadata);
-                        break;
-
-                    case IMAGE:
-                        length = inspectImage(localPath, jobId, mediaId, mediaMetadata);
-                        break;
-
-                    default:
-                        log.error("transientMedia.getMediaType() = {} is undefined. ", media.getMediaType());
-                        break;
-                }
-                inProgressJobs.addMediaInspectionInfo(jobId, mediaId, sha, mimeType, length, mediaMetadata);
+                inspect(jobId, mediaId, media);
             } catch (Exception exception) {
                 log.error("[Job {}|*|*] Failed to inspect {} due to an exception.", exchange.getIn().getHeader(MpfHeaders.JOB_ID), media.getLocalPath(), exception);
                 if (exception instanceof TikaException) {
@@ -160,10 +145,109 @@ public class MediaInspectionProcessor extends WfmProcessor {
         }
     }
 
-    private int inspectAudio(Path localPath,  long jobId, long mediaId, Map<String, String> mediaMetadata)
+
+    private void inspect(long jobId, long mediaId, Media media) throws IOException, TikaException, SAXException {
+        Path localPath = media.getLocalPath();
+        // Downloaded media gets a new local path every time, so only local files can be looked up by path.
+        Path cacheFile = media.getUriScheme() == UriScheme.FILE ? localPath : null;
+        if (cacheFile != null) {
+            var cached = inspectionCache.getByFile(cacheFile);
+            if (cached.isPresent()) {
+                addCachedInspectionInfo(jobId, mediaId, cached.get());
+                return;
+            }
+        }
+
+        // Media downloaded over HTTP was already hashed and had its MIME type detected while it was
+        // being downloaded.
+        String sha = media.getSha256();
+        String mimeType = media.getType();
+
+        if (sha == null || mimeType == null) {
+            try {
+                log.debug("Calculating hash and detecting MIME type for '{}'.", localPath);
+                MediaIngestStream ingestStream = MediaIngestStream.readFile(localPath);
+                sha = ingestStream.getSha256();
+                mimeType = ioUtils.getMimeType(ingestStream.getHeader(),
+                                               localPath.getFileName().toString());
+            }
+            catch (IOException ioe) {
+                log.warn("Failed to read '{}' in a single pass.", localPath, ioe);
+            }
+        }
+
+        if (sha == null) {
+            try (InputStream inputStream = Files.newInputStream(localPath)) {
+                log.debug("Calculating hash for '{}'.", localPath);
+                sha = DigestUtils.sha256Hex(inputStream);
+            } catch(IOException ioe) {
+                String errorMessage = "Could not calculate the SHA-256 hash for the file due to IOException: "
+                        + ioe;
+                inProgressJobs.addError(jobId, mediaId, IssueCodes.ARTIFACT_EXTRACTION, errorMessage);
+                log.error(errorMessage, ioe);
+            }
+        }
+
+        if (mimeType == null) {
+            try {
+                mimeType = ioUtils.getMimeType(localPath);
+            } catch(IOException ioe) {
+                String errorMessage = "Could not determine the MIME type for the media due to IOException: "
+                        + ioe;
+                inProgressJobs.addError(jobId, mediaId, IssueCodes.MEDIA_INSPECTION, errorMessage);
+                log.error(errorMessage, ioe);
+            }
+        }
+
+        var cached = inspectionCache.getBySha256(sha, mimeType);
+        if (cached.isPresent()) {
+            addCachedInspectionInfo(jobId, mediaId, cached.get());
+            inspectionCache.put(cacheFile, cached.get());
+            return;
+        }
+
+        Map<String, String> mediaMetadata = new HashMap<>();
+        mediaMetadata.put("MIME_TYPE", mimeType);
+        int length = -1;
+        switch(MediaTypeUtils.parse(mimeType)) {
+            case AUDIO:
+                length = inspectAudio(localPath, jobId, mediaId, mimeType, mediaMetadata);
+                break;
+
+            case VIDEO:
+                length = inspectVideo(localPath, jobId, mediaId, mimeType, mediaMetadata);
+                break;
+
+            case IMAGE:
+                length = inspectImage(localPath, jobId, mediaId, mimeType, mediaMetadata);
+                break;
+
+            default:
+                log.error("transientMedia.getMediaType() = {} is undefined. ", media.getMediaType());
+                break;
+        }
+        inProgressJobs.addMediaInspectionInfo(jobId, mediaId, sha, mimeType, length, mediaMetadata);
+        // Errors found during inspection mark the media as failed. Those results are not cached so that
+        // the media will be inspected again if it is resubmitted.
+        if (!media.isFailed() && mimeType != null) {
+            inspectionCache.put(cacheFile, new MediaInspectionCache.Entry(sha, mimeType, length,
+                                                                           mediaMetadata));
+        }
+    }
+
+
+    private void addCachedInspectionInfo(long jobId, long mediaId, MediaInspectionCache.Entry cached) {
+        log.debug("[Job {}|*|*] Using cached media inspection results for Media #{}.", jobId, mediaId);
+        inProgressJobs.addMediaInspectionInfo(jobId, mediaId, cached.getSha256(), cached.getMimeType(),
+                                              cached.getLength(), new HashMap<>(cached.getMetadata()));
+    }
+
+
+    private int inspectAudio(Path localPath,  long jobId, long mediaId, String mimeType,
+                             Map<String, String> mediaMetadata)
             throws IOException, TikaException, SAXException {
         // We do not fetch the length of audio files.
-        Metadata audioMetadata = generateFFMPEGMetadata(localPath);
+        Metadata audioMetadata = metadataReader.readFfmpegMetadata(localPath, mimeType);
 
         String durationStr = audioMetadata.get("xmpDM:duration");
         if (durationStr == null) {
@@ -206,7 +290,7 @@ public class MediaInspectionProcessor extends WfmProcessor {
 
         // FRAME_WIDTH and FRAME_HEIGHT
 
-        Metadata videoMetadata = generateFFMPEGMetadata(localPath);
+        Metadata videoMetadata = metadataReader.readFfmpegMetadata(localPath, mimeType);
 
         String resolutionStr = videoMetadata.get("videoResolution");
         if (resolutionStr == null) {
@@ -249,11 +333,20 @@ public class MediaInspectionProcessor extends WfmProcessor {
         return frameCount;
     }
 
-    private int inspectImage(Path localPath, long jobId, long mediaId, Map<String, String> mediaMetdata)
+    private int inspectImage(Path localPath, long jobId, long mediaId, String mimeType,
+                             Map<String, String> mediaMetdata)
             throws IOException, TikaException, SAXException {
-        Metadata imageMetadata = generateExifMetadata(localPath);
-
-        String widthStr = imageMetadata.get("tiff:ImageWidth"); // jpeg, png
+        // Most image formats store the dimensions in the header, so the whole file doesn't need to be parsed.
+        // Tika is still needed to get the EXIF orientation, or when no ImageIO reader supports the format.
+        Optional<Dimension> headerDimensions = MediaMetadataReader.readImageDimensions(localPath);
+        Metadata imageMetadata = headerDimensions.isEmpty() || MediaMetadataReader.mayContainExifOrientation(mimeType)
+                ? metadataReader.readTikaMetadata(localPath, mimeType)
+                : new Metadata();
+
+        String widthStr = headerDimensions.map(d -> Integer.toString(d.width)).orElse(null);
+        if (widthStr == null) {
+            widthStr = imageMetadata.get("tiff:ImageWidth"); // jpeg, png
+        }
         if (widthStr == null) {
             widthStr = imageMetadata.get("Image Width"); // jpeg, webp
         }
@@ -261,7 +354,10 @@ public class MediaInspectionProcessor extends WfmProcessor {
             widthStr = imageMetadata.get("width"); // png
         }
 
-        String heightStr = imageMetadata.get("tiff:ImageLength"); // jpeg, png
+        String heightStr = headerDimensions.map(d -> Integer.toString(d.height)).orElse(null);
+        if (heightStr == null) {
+            heightStr = imageMetadata.get("tiff:ImageLength"); // jpeg, png
+        }
         if (heightStr == null) {
             heightStr = imageMetadata.get("Image Height"); // jpeg, webp
         }
@@ -325,29 +421,6 @@ public class MediaInspectionProcessor extends WfmProcessor {
         return 1;
     }
 
-    private Metadata generateFFMPEGMetadata(Path path) throws IOException, TikaException, SAXException {
-        Metadata metadata = new Metadata();
-        try (InputStream stream = Preconditions.checkNotNull(TikaInputStream.get(path),
-                "Cannot open file '%s'", path)) {
-            metadata.set(Metadata.CONTENT_TYPE, ioUtils.getMimeType(path));
-            URL url = this.getClass().getClassLoader().getResource("tika-external-parsers.xml");
-            Parser parser = ExternalParsersConfigReader.read(url.openStream()).get(0);
-            parser.parse(stream, new DefaultHandler(), metadata, new ParseContext());
-        }
-        return metadata;
-    }
-
-    private Metadata generateExifMetadata(Path path) throws IOException, TikaException, SAXException {
-        Metadata metadata = new Metadata();
-        try (InputStream stream = Preconditions.checkNotNull(TikaInputStream.get(path),
-                "Cannot open file '%s'", path)) {
-            metadata.set(Metadata.CONTENT_TYPE, ioUtils.getMimeType(stream));
-            Parser parser = new AutoDetectParser();
-            parser.parse(stream, new DefaultHandler(), metadata, new ParseContext());
-        }
-        return metadata;
-    }
-
     private int calculateDurationMilliseconds(String durationStr) {
         if (durationStr != null) {
             String[] durationArray = durationStr.split("\\.|:");
@@ -0,0 +1,151 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camel.operations.mediainspection;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.external.ExternalParsersConfigReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Extracts media metadata using parsers that are only created once. Creating the parsers requires scanning the
+ * classpath and parsing tika-external-parsers.xml, which takes longer than inspecting a typical image. All of the
+ * parsers are stateless, so a single instance can be used by multiple threads at the same time.
+ */
+@Component
+public class MediaMetadataReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MediaMetadataReader.class);
+
+    // Formats that can contain an EXIF orientation tag. The orientation is only available from Tika.
+    private static final ImmutableSet<String> EXIF_MIME_TYPES = ImmutableSet.of(
+            "image/jpeg", "image/tiff", "image/webp", "image/heic", "image/heif");
+
+    // Null when the ffmpeg check command in tika-external-parsers.xml failed.
+    private final Parser _ffmpegParser;
+
+    private final Parser _autoDetectParser = new AutoDetectParser();
+
+
+    public MediaMetadataReader() {
+        try (InputStream configStream = MediaMetadataReader.class.getClassLoader()
+                .getResourceAsStream("tika-external-parsers.xml")) {
+            Preconditions.checkState(configStream != null, "Unable to find tika-external-parsers.xml.");
+            _ffmpegParser = ExternalParsersConfigReader.read(configStream).stream()
+                    .findFirst()
+                    .orElse(null);
+        }
+        catch (IOException | TikaException e) {
+            throw new IllegalStateException("Failed to load tika-external-parsers.xml: " + e, e);
+        }
+        if (_ffmpegParser == null) {
+            LOG.warn("ffmpeg is not available, so audio and video files can not be inspected.");
+        }
+    }
+
+
+    public Metadata readFfmpegMetadata(Path path, String mimeType) throws IOException, TikaException, SAXException {
+        if (_ffmpegParser == null) {
+            throw new TikaException("The ffmpeg parser is not available because the ffmpeg command failed.");
+        }
+        return parse(_ffmpegParser, path, mimeType);
+    }
+
+
+    public Metadata readTikaMetadata(Path path, String mimeType) throws IOException, TikaException, SAXException {
+        return parse(_autoDetectParser, path, mimeType);
+    }
+
+
+    /**
+     * Reads an image's width and height from its header without decoding the pixels.
+     * @return The image's dimensions or empty if none of the installed ImageIO readers could read the header.
+     */
+    public static Optional<Dimension> readImageDimensions(Path path) {
+        try (ImageInputStream imageStream = ImageIO.createImageInputStream(path.toFile())) {
+            if (imageStream == null) {
+                return Optional.empty();
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageStream);
+            while (readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    imageStream.seek(0);
+                    reader.setInput(imageStream, true, true);
+                    return Optional.of(new Dimension(reader.getWidth(0), reader.getHeight(0)));
+                }
+                catch (IOException | RuntimeException e) {
+                    LOG.debug("{} was unable to read the header of \"{}\".", reader.getClass().getName(), path, e);
+                }
+                finally {
+                    reader.dispose();
+                }
+            }
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to open \"{}\" to read the image dimensions.", path, e);
+        }
+        return Optional.empty();
+    }
+
+
+    public static boolean mayContainExifOrientation(String mimeType) {
+        return mimeType != null && EXIF_MIME_TYPES.contains(mimeType.toLowerCase());
+    }
+
+
+    private static Metadata parse(Parser parser, Path path, String mimeType)
+            throws IOException, TikaException, SAXException {
+        Metadata metadata = new Metadata();
+        try (InputStream stream = Preconditions.checkNotNull(TikaInputStream.get(path),
+                "Cannot open file '%s'", path)) {
+            metadata.set(Metadata.CONTENT_TYPE, mimeType);
+            parser.parse(stream, new DefaultHandler(), metadata, new ParseContext());
+        }
+        return metadata;
+    }
+}
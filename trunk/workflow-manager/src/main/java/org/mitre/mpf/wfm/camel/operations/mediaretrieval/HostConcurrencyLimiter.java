@@ -0,0 +1,148 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camel.operations.mediaretrieval;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of tasks that can run against a single host at the same time, without blocking any threads.
+ * When a host is already at its limit, new tasks for that host are queued and started when an earlier task for the
+ * same host completes. A slow host only delays its own tasks.
+ */
+public class HostConcurrencyLimiter {
+
+    private final int _maxTasksPerHost;
+
+    // Queued tasks are started on this executor rather than the thread that completed the previous task. This
+    // prevents deep recursion when many queued tasks for the same host fail immediately.
+    private final Executor _queuedTaskExecutor;
+
+    // Guarded by this. Hosts are removed when they have no running tasks.
+    private final Map<String, HostState> _hostStates = new HashMap<>();
+
+
+    public HostConcurrencyLimiter(int maxTasksPerHost, Executor queuedTaskExecutor) {
+        if (maxTasksPerHost < 1) {
+            throw new IllegalArgumentException("maxTasksPerHost must be at least 1, but it was " + maxTasksPerHost);
+        }
+        _maxTasksPerHost = maxTasksPerHost;
+        _queuedTaskExecutor = queuedTaskExecutor;
+    }
+
+
+    /**
+     * Starts the task now if the host is below its limit. Otherwise the task is started after an earlier task for the
+     * same host completes.
+     * @param host The host the task will connect to
+     * @param task Starts the task. It should return quickly and leave the actual work to the returned future.
+     * @return A future that completes when the task's future completes
+     */
+    public <T> CompletableFuture<T> submit(String host, Supplier<CompletableFuture<T>> task) {
+        var result = new CompletableFuture<T>();
+        Runnable starter = () -> start(host, task, result);
+        boolean startNow;
+        synchronized (this) {
+            HostState state = _hostStates.computeIfAbsent(host, h -> new HostState());
+            startNow = state.runningCount < _maxTasksPerHost;
+            if (startNow) {
+                state.runningCount++;
+            }
+            else {
+                state.pending.add(starter);
+            }
+        }
+        if (startNow) {
+            starter.run();
+        }
+        return result;
+    }
+
+
+    public synchronized int getRunningCount(String host) {
+        HostState state = _hostStates.get(host);
+        return state == null ? 0 : state.runningCount;
+    }
+
+
+    public synchronized int getPendingCount(String host) {
+        HostState state = _hostStates.get(host);
+        return state == null ? 0 : state.pending.size();
+    }
+
+
+    private <T> void start(String host, Supplier<CompletableFuture<T>> task, CompletableFuture<T> result) {
+        CompletableFuture<T> taskFuture;
+        try {
+            taskFuture = task.get();
+        }
+        catch (Exception e) {
+            taskFuture = CompletableFuture.failedFuture(e);
+        }
+        taskFuture.whenComplete((value, error) -> {
+            // Release the host before completing the result, so that callers that submit a new task as soon
+            // as this one completes will see the correct count.
+            release(host);
+            if (error == null) {
+                result.complete(value);
+            }
+            else {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+
+    private void release(String host) {
+        Runnable next;
+        synchronized (this) {
+            HostState state = _hostStates.get(host);
+            next = state.pending.poll();
+            if (next == null) {
+                state.runningCount--;
+                if (state.runningCount == 0) {
+                    _hostStates.remove(host);
+                }
+            }
+            // Otherwise, the next task takes the finished task's place, so the running count doesn't change.
+        }
+        if (next != null) {
+            _queuedTaskExecutor.execute(next);
+        }
+    }
+
+
+    private static class HostState {
+        int runningCount;
+        final Queue<Runnable> pending = new ArrayDeque<>();
+    }
+}
@@ -26,10 +26,9 @@
 
 package org.mitre.mpf.wfm.camel.operations.mediaretrieval;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.camel.Exchange;
-import org.apache.commons.io.FileUtils;
-import org.mitre.mpf.wfm.WfmProcessingException;
-import org.mitre.mpf.wfm.camel.WfmProcessor;
+import org.mitre.mpf.wfm.camel.AsyncWfmProcessor;
 import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
 import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
 import org.mitre.mpf.wfm.data.entities.persistent.Media;
@@ -39,6 +38,8 @@ import org.mitre.mpf.wfm.enums.MpfHeaders;
 import org.mitre.mpf.wfm.service.S3StorageBackend;
 import org.mitre.mpf.wfm.service.StorageException;
 import org.mitre.mpf.wfm.util.AggregateJobPropertiesUtil;
+import org.mitre.mpf.wfm.util.IoUtils;
+import org.mitre.mpf.wfm.util.MediaIngestBodySubscriber;
 import org.mitre.mpf.wfm.util.PropertiesUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,12 +48,28 @@ import org.springframework.stereotype.Component;
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
-/** This processor downloads a file from a remote URI to the local filesystem. */
+/**
+ * This processor downloads a file from a remote URI to the local filesystem.
+ *
+ * Downloads are asynchronous, so the Camel consumer thread is released while the media is downloading. HTTP
+ * downloads do not hold a thread while waiting for data, and retries are scheduled rather than sleeping on a thread.
+ * The number of simultaneous downloads from a single host is limited by remote.media.download.host.limit.
+ */
 @Component(RemoteMediaProcessor.REF)
-public class RemoteMediaProcessor extends WfmProcessor {
+public class RemoteMediaProcessor extends AsyncWfmProcessor implements AutoCloseable {
     public static final String REF = "remoteMediaProcessor";
     private static final Logger log = LoggerFactory.getLogger(RemoteMediaProcessor.class);
 
@@ -64,21 +81,45 @@ public class RemoteMediaProcessor extends WfmProcessor {
 
     private final AggregateJobPropertiesUtil _aggregateJobPropertiesUtil;
 
+    private final IoUtils _ioUtils;
+
+    private final ExecutorService _downloadExecutor;
+
+    private final HttpClient _httpClient;
+
+    private final HostConcurrencyLimiter _hostLimiter;
+
     @Inject
     public RemoteMediaProcessor(
             InProgressBatchJobsService inProgressJobs,
             S3StorageBackend s3Service,
             PropertiesUtil propertiesUtil,
-            AggregateJobPropertiesUtil aggregateJobPropertiesUtil) {
+            AggregateJobPropertiesUtil aggregateJobPropertiesUtil,
+            IoUtils ioUtils) {
+        super(propertiesUtil.getRemoteMediaDownloadMaxInProgress());
         _inProgressJobs = inProgressJobs;
         _s3Service = s3Service;
         _propertiesUtil = propertiesUtil;
         _aggregateJobPropertiesUtil = aggregateJobPropertiesUtil;
+        _ioUtils = ioUtils;
+
+        _downloadExecutor = Executors.newFixedThreadPool(
+                propertiesUtil.getRemoteMediaDownloadThreadCount(),
+                new ThreadFactoryBuilder().setNameFormat("remote-media-download-%d").setDaemon(true).build());
+        _httpClient = HttpClient.newBuilder()
+                .executor(_downloadExecutor)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(propertiesUtil.getRemoteMediaDownloadConnectTimeout()))
+                // Use the http.proxyHost and https.proxyHost system properties like URL.openStream() does.
+                .proxy(ProxySelector.getDefault())
+                .build();
+        _hostLimiter = new HostConcurrencyLimiter(propertiesUtil.getRemoteMediaDownloadHostLimit(),
+                                                  _downloadExecutor);
     }
 
 
     @Override
-    public void wfmProcess(Exchange exchange) throws WfmProcessingException {
+    public CompletableFuture<Void> wfmProcessAsync(Exchange exchange) {
 
         long jobId = exchange.getIn().getHeader(MpfHeaders.JOB_ID, Long.class);
         long mediaId = exchange.getIn().getHeader(MpfHeaders.MEDIA_ID, Long.class);
@@ -87,9 +128,11 @@ public class RemoteMediaProcessor extends WfmProcessor {
         Media media = job.getMedia(mediaId);
         log.debug("Retrieving {} and saving it to `{}`.", media.getUri(), media.getLocalPath());
 
+        CompletableFuture<Void> retrievalFuture;
         switch(media.getUriScheme()) {
             case FILE:
                 // Do nothing.
+                retrievalFuture = CompletableFuture.completedFuture(null);
                 break;
             case HTTP:
             case HTTPS:
@@ -97,65 +140,144 @@ public class RemoteMediaProcessor extends WfmProcessor {
                     Function<String, String> combinedProperties = _aggregateJobPropertiesUtil
                             .getCombinedProperties(job, media);
                     if (S3StorageBackend.requiresS3MediaDownload(combinedProperties)) {
-                        _s3Service.downloadFromS3(media, combinedProperties);
+                        retrievalFuture = downloadFromS3(jobId, media, combinedProperties);
                     }
                     else {
-                        downloadFile(jobId, media);
+                        retrievalFuture = downloadFile(jobId, media, 0);
                     }
-                    media.getLocalPath().toFile().deleteOnExit();
                 }
                 catch (StorageException e) {
-                    String message = handleMediaRetrievalException(
-                            media, media.getLocalPath().toFile(), e);
-                    handleMediaRetrievalFailure(jobId, media, message);
+                    retrievalFuture = CompletableFuture.failedFuture(e);
                 }
+                retrievalFuture = retrievalFuture
+                        .exceptionally(e -> {
+                            String message = handleMediaRetrievalException(
+                                    media, media.getLocalPath().toFile(), unwrap(e));
+                            handleMediaRetrievalFailure(jobId, media, message);
+                            return null;
+                        })
+                        .thenRun(() -> media.getLocalPath().toFile().deleteOnExit());
                 break;
             default:
                 log.warn("The UriScheme '{}' was not expected at this time.", media.getUriScheme());
                 _inProgressJobs.addError(jobId, mediaId, IssueCodes.REMOTE_STORAGE, String.format(
                         "The scheme '%s' was not expected or does not have a handler associated with it.",
                         media.getUriScheme()));
+                retrievalFuture = CompletableFuture.completedFuture(null);
                 break;
         }
 
-        exchange.getOut().setHeader(MpfHeaders.CORRELATION_ID, exchange.getIn().getHeader(MpfHeaders.CORRELATION_ID));
-        exchange.getOut().setHeader(MpfHeaders.SPLIT_SIZE, exchange.getIn().getHeader(MpfHeaders.SPLIT_SIZE));
-        exchange.getOut().setHeader(MpfHeaders.JMS_PRIORITY, exchange.getIn().getHeader(MpfHeaders.JMS_PRIORITY));
-        exchange.getOut().setHeader(MpfHeaders.MEDIA_ID, mediaId);
+        return retrievalFuture.thenRun(() -> {
+            exchange.getOut().setHeader(MpfHeaders.CORRELATION_ID,
+                                        exchange.getIn().getHeader(MpfHeaders.CORRELATION_ID));
+            exchange.getOut().setHeader(MpfHeaders.SPLIT_SIZE, exchange.getIn().getHeader(MpfHeaders.SPLIT_SIZE));
+            exchange.getOut().setHeader(MpfHeaders.JMS_PRIORITY,
+                                        exchange.getIn().getHeader(MpfHeaders.JMS_PRIORITY));
+            exchange.getOut().setHeader(MpfHeaders.MEDIA_ID, mediaId);
+        });
+    }
+
+
+    @Override
+    public void close() {
+        _downloadExecutor.shutdownNow();
     }
 
 
-    private void downloadFile(long jobId, Media media) {
-        File localFile = null;
-        for (int i = 0; i <= _propertiesUtil.getRemoteMediaDownloadRetries(); i++) {
-            String errorMessage;
+    private CompletableFuture<Void> downloadFromS3(long jobId, Media media,
+                                                   Function<String, String> combinedProperties) {
+        // The S3 client only supports blocking downloads, so they run on the download thread pool.
+        return _hostLimiter.submit(URI.create(media.getUri()).getHost(), () -> CompletableFuture.runAsync(() -> {
             try {
-                localFile = media.getLocalPath().toFile();
-                FileUtils.copyURLToFile(new URL(media.getUri()), localFile);
-                log.debug("Successfully retrieved {} and saved it to '{}'.", media.getUri(), media.getLocalPath());
-                break;
-            } catch (IOException e) { // "javax.net.ssl.SSLException: SSL peer shut down incorrectly" has been observed.
-                errorMessage = handleMediaRetrievalException(media, localFile, e);
-            } catch (Exception e) { // specifying "http::" will cause an IllegalArgumentException
-                errorMessage = handleMediaRetrievalException(media, localFile, e);
-                handleMediaRetrievalFailure(jobId, media, errorMessage);
-                break; // exception is not recoverable
+                _s3Service.downloadFromS3(media, combinedProperties);
             }
-
-            if (i < _propertiesUtil.getRemoteMediaDownloadRetries()) {
-                try {
-                    int sleepMillisec = _propertiesUtil.getRemoteMediaDownloadSleep() * (i + 1);
-                    log.warn("Sleeping for {} ms before trying to retrieve {} again.", sleepMillisec, media.getUri());
-                    Thread.sleep(sleepMillisec);
-                } catch (InterruptedException e) {
-                    log.warn("Sleep interrupted.");
-                    Thread.currentThread().interrupt();
-                    break; // abort download attempt
-                }
-            } else {
-                handleMediaRetrievalFailure(jobId, media, errorMessage);
+            catch (StorageException e) {
+                String message = handleMediaRetrievalException(media, media.getLocalPath().toFile(), e);
+                handleMediaRetrievalFailure(jobId, media, message);
             }
+        }, _downloadExecutor));
+    }
+
+
+    private CompletableFuture<Void> downloadFile(long jobId, Media media, int attempt) {
+        File localFile = media.getLocalPath().toFile();
+        // The request timeout only covers the response headers, so the body subscriber also fails the download
+        // when the server stops sending data. Otherwise, a stalled server would hold the host limiter slot forever.
+        var readTimeout = Duration.ofMillis(_propertiesUtil.getRemoteMediaDownloadReadTimeout());
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(media.getUri()))
+                    .timeout(readTimeout)
+                    .GET()
+                    .build();
+        }
+        catch (IllegalArgumentException e) { // specifying "http::" will cause an IllegalArgumentException
+            String errorMessage = handleMediaRetrievalException(media, localFile, e);
+            handleMediaRetrievalFailure(jobId, media, errorMessage);
+            return CompletableFuture.completedFuture(null); // exception is not recoverable
+        }
+
+        // The hash and MIME type are determined while the media is downloaded, so that media inspection
+        // does not need to read the whole file again.
+        HttpResponse.BodyHandler<MediaIngestBodySubscriber> bodyHandler = responseInfo ->
+                isSuccessStatus(responseInfo.statusCode())
+                        ? new MediaIngestBodySubscriber(localFile.toPath(), readTimeout)
+                        : HttpResponse.BodySubscribers.replacing(null);
+
+        return _hostLimiter.submit(
+                request.uri().getHost(),
+                () -> _httpClient.sendAsync(request, bodyHandler))
+                .thenApply(response -> {
+                    if (response.body() == null) {
+                        throw new CompletionException(new IOException(String.format(
+                                "Server returned HTTP response code: %s for URL: %s",
+                                response.statusCode(), media.getUri())));
+                    }
+                    return response.body();
+                })
+                .handle((ingestResult, error) -> {
+                    if (error == null) {
+                        String mimeType = _ioUtils.getMimeType(ingestResult.getHeader(), localFile.getName());
+                        _inProgressJobs.addMediaIngestInfo(jobId, media.getId(), ingestResult.getSha256(),
+                                                           mimeType);
+                        log.debug("Successfully retrieved {} and saved it to '{}'.",
+                                  media.getUri(), media.getLocalPath());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    return handleDownloadError(jobId, media, attempt, unwrap(error));
+                })
+                .thenCompose(Function.identity());
+    }
+
+
+    private CompletableFuture<Void> handleDownloadError(long jobId, Media media, int attempt, Throwable error) {
+        String errorMessage = handleMediaRetrievalException(media, media.getLocalPath().toFile(), error);
+        // "javax.net.ssl.SSLException: SSL peer shut down incorrectly" has been observed.
+        boolean recoverable = error instanceof IOException;
+        if (recoverable && attempt < _propertiesUtil.getRemoteMediaDownloadRetries()) {
+            int sleepMillisec = _propertiesUtil.getRemoteMediaDownloadSleep() * (attempt + 1);
+            log.warn("Waiting {} ms before trying to retrieve {} again.", sleepMillisec, media.getUri());
+            // Schedule the retry instead of sleeping, so that no thread is held while waiting.
+            var delayedExecutor = CompletableFuture.delayedExecutor(
+                    sleepMillisec, TimeUnit.MILLISECONDS, _downloadExecutor);
+            return CompletableFuture
+                    .supplyAsync(() -> downloadFile(jobId, media, attempt + 1), delayedExecutor)
+                    .thenCompose(Function.identity());
         }
+        handleMediaRetrievalFailure(jobId, media, errorMessage);
+        return CompletableFuture.completedFuture(null);
+    }
+
+
+    private static boolean isSuccessStatus(int statusCode) {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null
+                ? error.getCause()
+                : error;
     }
 
 
@@ -169,7 +291,7 @@ public class RemoteMediaProcessor extends WfmProcessor {
         }
     }
 
-    private static String handleMediaRetrievalException(Media media, File localFile, Exception e) {
+    private static String handleMediaRetrievalException(Media media, File localFile, Throwable e) {
         log.warn("Failed to retrieve {}.", media.getUri(), e);
         // Try to delete the local file, but do not throw an exception if this operation fails.
         deleteOrLeakFile(localFile);
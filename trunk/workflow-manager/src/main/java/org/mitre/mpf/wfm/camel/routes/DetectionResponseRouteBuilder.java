@@ -98,7 +98,7 @@ public class DetectionResponseRouteBuilder extends RouteBuilder {
 					.aggregate(header(MpfHeaders.CORRELATION_ID), aggregator)
 					.completionPredicate(new SplitCompletedPredicate(true)) // We need to forward the body of the last message on to the next processor.
 					.removeHeader(MpfHeaders.SPLIT_COMPLETED)
-					.process(TrackMergingProcessor.REF) // Track merging is trivial. If it becomes a heavy lift, put in a splitter/aggregator to divide the work.
+					.process(TrackMergingProcessor.REF) // Track merging and padding process each (media, action) pair on a bounded thread pool and return once all pairs are done.
 					.process(DetectionPaddingProcessor.REF)
 					.split().method(ArtifactExtractionSplitterImpl.REF, "split")
 						.parallelProcessing() // Create work units and process them in any order.
@@ -34,6 +34,7 @@ import org.mitre.mpf.wfm.camel.JobCompleteProcessorImpl;
 import org.mitre.mpf.wfm.camel.JobStatusCalculator;
 import org.mitre.mpf.wfm.enums.MpfEndpoints;
 import org.mitre.mpf.wfm.enums.MpfHeaders;
+import org.mitre.mpf.wfm.util.JmsUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -81,10 +82,13 @@ public class JobRouterRouteBuilder extends RouteBuilder {
 								.to(MpfEndpoints.TASK_RESULTS_AGGREGATOR)
 							.otherwise()
 								.marshal().protobuf()
-								.recipientList(header(MpfHeaders.RECIPIENT_QUEUE))
-				.endChoice()
-					.endChoice() // For unknown reasons, the split() DSL is ended by 'endChoice'.
-				.end()
-			.endChoice();
+								// Work units for cancelled jobs are sent straight to the cancellation queues.
+								.recipientList(method(JmsUtils.REF, "getRecipientQueue"))
+						.endChoice()
+						.end() // choice
+					.end() // split
+					// Catches work units that were sent to a request queue while the job was being cancelled.
+					.bean(JmsUtils.REF, "drainIfCancelled")
+			.end();
 	}
 }
@@ -102,7 +102,8 @@ public class MediaInspectionRouteBuilder extends RouteBuilder {
 					.to(MpfEndpoints.MEDIA_INSPECTION_WORK_QUEUE)
 			.end();
 
-		from(MpfEndpoints.MEDIA_INSPECTION_WORK_QUEUE)
+		// The processor completes asynchronously, so the consumer can take the next message while it runs.
+		from(MpfEndpoints.MEDIA_INSPECTION_WORK_QUEUE + "?asyncConsumer=true")
 			.setExchangePattern(ExchangePattern.InOnly)
 			.process(MediaInspectionProcessor.REF)
 			.aggregate(header(MpfHeaders.CORRELATION_ID), aggregator)
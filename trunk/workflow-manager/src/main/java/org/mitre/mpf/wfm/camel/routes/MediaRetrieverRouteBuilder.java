@@ -82,7 +82,8 @@ public class MediaRetrieverRouteBuilder extends RouteBuilder {
 					.to(MpfEndpoints.MEDIA_RETRIEVAL_WORK_QUEUE)
 			.end();
 
-		from(MpfEndpoints.MEDIA_RETRIEVAL_WORK_QUEUE)
+		// The processor completes asynchronously, so the consumer can take the next message while it runs.
+		from(MpfEndpoints.MEDIA_RETRIEVAL_WORK_QUEUE + "?asyncConsumer=true")
 			.setExchangePattern(ExchangePattern.InOnly)
 			.process(RemoteMediaProcessor.REF)
 			.aggregate(header(MpfHeaders.CORRELATION_ID), stringCountBasedAggregator)
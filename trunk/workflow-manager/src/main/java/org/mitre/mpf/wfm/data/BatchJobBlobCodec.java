@@ -0,0 +1,106 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.data;
+
+import org.mitre.mpf.wfm.WfmProcessingException;
+import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
+import org.mitre.mpf.wfm.util.JsonUtils;
+import org.mitre.mpf.wfm.util.PropertiesUtil;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Converts jobs to and from the byte arrays that are stored in {@link org.mitre.mpf.wfm.data.entities.persistent.JobRequest#getJob()}.
+ *
+ * When compression is enabled, the smile binary JSON is gzipped before it is stored. Smile documents always begin with
+ * ":)", so the gzip magic number is enough to tell the two formats apart. This allows jobs that were stored prior to
+ * enabling compression to still be decoded.
+ */
+@Component
+public class BatchJobBlobCodec {
+
+    private static final int GZIP_MAGIC_BYTE_1 = GZIPInputStream.GZIP_MAGIC & 0xFF;
+
+    private static final int GZIP_MAGIC_BYTE_2 = (GZIPInputStream.GZIP_MAGIC >> 8) & 0xFF;
+
+    private final PropertiesUtil _propertiesUtil;
+
+    private final JsonUtils _jsonUtils;
+
+    @Inject
+    public BatchJobBlobCodec(PropertiesUtil propertiesUtil, JsonUtils jsonUtils) {
+        _propertiesUtil = propertiesUtil;
+        _jsonUtils = jsonUtils;
+    }
+
+
+    public byte[] encode(BatchJob job) {
+        byte[] smile = _jsonUtils.serialize(job);
+        if (!_propertiesUtil.isPersistedJobCompressionEnabled()) {
+            return smile;
+        }
+
+        // Serialized jobs are mostly repeated property names and pipeline definitions, so they compress very well.
+        var outputStream = new ByteArrayOutputStream(smile.length / 4);
+        try (var gzipStream = new GZIPOutputStream(outputStream)) {
+            gzipStream.write(smile);
+        }
+        catch (IOException e) {
+            // ByteArrayOutputStream does not throw IOExceptions.
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+
+    public BatchJob decode(byte[] bytes) {
+        if (!isCompressed(bytes)) {
+            return _jsonUtils.deserialize(bytes, BatchJob.class);
+        }
+
+        try (var gzipStream = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return _jsonUtils.deserialize(gzipStream.readAllBytes(), BatchJob.class);
+        }
+        catch (IOException e) {
+            throw new WfmProcessingException("Failed to decompress the stored job: " + e.getMessage(), e);
+        }
+    }
+
+
+    public static boolean isCompressed(byte[] bytes) {
+        return bytes.length >= 2
+                && (bytes[0] & 0xFF) == GZIP_MAGIC_BYTE_1
+                && (bytes[1] & 0xFF) == GZIP_MAGIC_BYTE_2;
+    }
+}
@@ -0,0 +1,347 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.data;
+
+import com.google.common.collect.ImmutableSortedMap;
+import org.mitre.mpf.wfm.WfmProcessingException;
+import org.mitre.mpf.wfm.data.entities.transients.Detection;
+import org.mitre.mpf.wfm.data.entities.transients.Track;
+import org.mitre.mpf.wfm.enums.ArtifactExtractionStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Stores tracks using a compact varint based layout.
+ *
+ * Integers are written as variable length values, with signed values zig-zag encoded. Detection frame and time
+ * offsets are written relative to the previous detection in the track. Property keys tend to repeat across all of the
+ * detections in a track, so each distinct key is only written out the first time it appears in the track. Later
+ * occurrences just refer to the index of the first occurrence.
+ */
+public class BinaryTrackCodec implements TrackCodec {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final ArtifactExtractionStatus[] ARTIFACT_EXTRACTION_STATUSES = ArtifactExtractionStatus.values();
+
+
+    @Override
+    public byte[] encode(Track track) {
+        var output = new Output(64 + 48 * track.getDetections().size());
+        output.writeByte(FORMAT_VERSION);
+        output.writeUnsignedLong(track.getJobId());
+        output.writeUnsignedLong(track.getMediaId());
+        output.writeUnsignedInt(track.getTaskIndex());
+        output.writeUnsignedInt(track.getActionIndex());
+        output.writeSignedInt(track.getStartOffsetFrameInclusive());
+        output.writeSignedInt(track.getEndOffsetFrameInclusive() - track.getStartOffsetFrameInclusive());
+        output.writeSignedInt(track.getStartOffsetTimeInclusive());
+        output.writeSignedInt(track.getEndOffsetTimeInclusive() - track.getStartOffsetTimeInclusive());
+        output.writeNullableString(track.getType());
+        output.writeFloat(track.getConfidence());
+        output.writeSignedInt(track.getArtifactExtractionTrackIndex());
+        output.writeProperties(track.getTrackProperties());
+
+        output.writeUnsignedInt(track.getDetections().size());
+        int previousFrame = track.getStartOffsetFrameInclusive();
+        int previousTime = track.getStartOffsetTimeInclusive();
+        for (Detection detection : track.getDetections()) {
+            output.writeSignedInt(detection.getMediaOffsetFrame() - previousFrame);
+            output.writeSignedInt(detection.getMediaOffsetTime() - previousTime);
+            output.writeSignedInt(detection.getX());
+            output.writeSignedInt(detection.getY());
+            output.writeSignedInt(detection.getWidth());
+            output.writeSignedInt(detection.getHeight());
+            output.writeFloat(detection.getConfidence());
+            output.writeProperties(detection.getDetectionProperties());
+            output.writeNullableString(detection.getArtifactPath());
+            output.writeByte((byte) detection.getArtifactExtractionStatus().ordinal());
+            previousFrame = detection.getMediaOffsetFrame();
+            previousTime = detection.getMediaOffsetTime();
+        }
+        return output.toByteArray();
+    }
+
+
+    @Override
+    public Track decode(byte[] bytes) {
+        try {
+            return doDecode(new Input(bytes));
+        }
+        catch (ArrayIndexOutOfBoundsException e) {
+            throw new WfmProcessingException("Failed to decode track because the input was truncated.", e);
+        }
+    }
+
+
+    private static Track doDecode(Input input) {
+        byte version = input.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new WfmProcessingException(String.format(
+                    "Failed to decode track because it has format version %s, but only version %s is supported.",
+                    version, FORMAT_VERSION));
+        }
+        long jobId = input.readUnsignedLong();
+        long mediaId = input.readUnsignedLong();
+        int taskIndex = input.readUnsignedInt();
+        int actionIndex = input.readUnsignedInt();
+        int startFrame = input.readSignedInt();
+        int stopFrame = startFrame + input.readSignedInt();
+        int startTime = input.readSignedInt();
+        int stopTime = startTime + input.readSignedInt();
+        String type = input.readNullableString();
+        float confidence = input.readFloat();
+        int artifactExtractionTrackIndex = input.readSignedInt();
+        ImmutableSortedMap<String, String> trackProperties = input.readProperties();
+
+        int detectionCount = input.readUnsignedInt();
+        var detections = new ArrayList<Detection>(detectionCount);
+        int previousFrame = startFrame;
+        int previousTime = startTime;
+        for (int i = 0; i < detectionCount; i++) {
+            int frame = previousFrame + input.readSignedInt();
+            int time = previousTime + input.readSignedInt();
+            var detection = new Detection(
+                    input.readSignedInt(),
+                    input.readSignedInt(),
+                    input.readSignedInt(),
+                    input.readSignedInt(),
+                    input.readFloat(),
+                    frame,
+                    time,
+                    input.readProperties());
+            detection.setArtifactPath(input.readNullableString());
+            detection.setArtifactExtractionStatus(ARTIFACT_EXTRACTION_STATUSES[input.readByte()]);
+            detections.add(detection);
+            previousFrame = frame;
+            previousTime = time;
+        }
+
+        var track = new Track(jobId, mediaId, taskIndex, actionIndex, startFrame, stopFrame, startTime, stopTime,
+                              type, confidence, detections, trackProperties);
+        track.setArtifactExtractionTrackIndex(artifactExtractionTrackIndex);
+        return track;
+    }
+
+
+
+    private static final class Output {
+        private byte[] _buffer;
+
+        private int _position;
+
+        private final Map<String, Integer> _keyIndices = new HashMap<>();
+
+        Output(int initialCapacity) {
+            _buffer = new byte[initialCapacity];
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(_buffer, _position);
+        }
+
+        void writeByte(byte value) {
+            ensureCapacity(1);
+            _buffer[_position++] = value;
+        }
+
+        void writeUnsignedInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                _buffer[_position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            _buffer[_position++] = (byte) value;
+        }
+
+        void writeSignedInt(int value) {
+            writeUnsignedInt((value << 1) ^ (value >> 31));
+        }
+
+        void writeUnsignedLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                _buffer[_position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            _buffer[_position++] = (byte) value;
+        }
+
+        void writeFloat(float value) {
+            int bits = Float.floatToIntBits(value);
+            ensureCapacity(4);
+            _buffer[_position++] = (byte) (bits >>> 24);
+            _buffer[_position++] = (byte) (bits >>> 16);
+            _buffer[_position++] = (byte) (bits >>> 8);
+            _buffer[_position++] = (byte) bits;
+        }
+
+        void writeNullableString(String value) {
+            if (value == null) {
+                writeUnsignedInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeUnsignedInt(bytes.length + 1);
+            writeBytes(bytes);
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeUnsignedInt(bytes.length);
+            writeBytes(bytes);
+        }
+
+        void writeProperties(Map<String, String> properties) {
+            writeUnsignedInt(properties.size());
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                writeKey(entry.getKey());
+                writeString(entry.getValue());
+            }
+        }
+
+        private void writeKey(String key) {
+            Integer existingIndex = _keyIndices.get(key);
+            if (existingIndex != null) {
+                writeUnsignedInt(existingIndex + 1);
+                return;
+            }
+            writeUnsignedInt(0);
+            writeString(key);
+            _keyIndices.put(key, _keyIndices.size());
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, _buffer, _position, bytes.length);
+            _position += bytes.length;
+        }
+
+        private void ensureCapacity(int additionalBytes) {
+            int required = _position + additionalBytes;
+            if (required > _buffer.length) {
+                _buffer = Arrays.copyOf(_buffer, Math.max(required, _buffer.length * 2));
+            }
+        }
+    }
+
+
+
+    private static final class Input {
+        private final byte[] _buffer;
+
+        private int _position;
+
+        private final List<String> _keys = new ArrayList<>();
+
+        Input(byte[] buffer) {
+            _buffer = buffer;
+        }
+
+        byte readByte() {
+            return _buffer[_position++];
+        }
+
+        int readUnsignedInt() {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = _buffer[_position++];
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new WfmProcessingException("Failed to decode track because it contained a malformed integer.");
+        }
+
+        int readSignedInt() {
+            int value = readUnsignedInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readUnsignedLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = _buffer[_position++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new WfmProcessingException("Failed to decode track because it contained a malformed integer.");
+        }
+
+        float readFloat() {
+            int bits = (_buffer[_position] & 0xFF) << 24
+                    | (_buffer[_position + 1] & 0xFF) << 16
+                    | (_buffer[_position + 2] & 0xFF) << 8
+                    | (_buffer[_position + 3] & 0xFF);
+            _position += 4;
+            return Float.intBitsToFloat(bits);
+        }
+
+        String readNullableString() {
+            int lengthPlusOne = readUnsignedInt();
+            return lengthPlusOne == 0
+                    ? null
+                    : readString(lengthPlusOne - 1);
+        }
+
+        ImmutableSortedMap<String, String> readProperties() {
+            int size = readUnsignedInt();
+            if (size == 0) {
+                return ImmutableSortedMap.of();
+            }
+            var builder = ImmutableSortedMap.<String, String>naturalOrder();
+            for (int i = 0; i < size; i++) {
+                String key = readKey();
+                builder.put(key, readString(readUnsignedInt()));
+            }
+            return builder.build();
+        }
+
+        private String readKey() {
+            int reference = readUnsignedInt();
+            if (reference > 0) {
+                return _keys.get(reference - 1);
+            }
+            String key = readString(readUnsignedInt());
+            _keys.add(key);
+            return key;
+        }
+
+        private String readString(int length) {
+            if (_position + length > _buffer.length) {
+                throw new ArrayIndexOutOfBoundsException(_position + length);
+            }
+            String result = new String(_buffer, _position, length, StandardCharsets.UTF_8);
+            _position += length;
+            return result;
+        }
+    }
+}
@@ -52,7 +52,16 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the state of the batch jobs that are currently running.
+ *
+ * This class does not use a global lock. Jobs are stored in a concurrent map and the in-memory state of a single job
+ * is modified while holding that job's monitor. Tracks are stored in Redis and are accessed without holding any lock
+ * in this class, so that responses for different jobs, and for different media in the same job, can be processed in
+ * parallel.
+ */
 @Component
 @Singleton
 public class InProgressBatchJobsService {
@@ -63,7 +72,7 @@ public class InProgressBatchJobsService {
 
     private final Redis _redis;
 
-    private final Map<Long, BatchJobImpl> _jobs = new HashMap<>();
+    private final Map<Long, BatchJobImpl> _jobs = new ConcurrentHashMap<>();
 
 
     @Inject
@@ -86,10 +95,6 @@ public class InProgressBatchJobsService {
             Map<String, String> jobProperties,
             Map<String, ? extends Map<String, String>> algorithmProperties) {
 
-        if (_jobs.containsKey(jobId)) {
-            throw new IllegalArgumentException(String.format("Job with id %s already exists.", jobId));
-        }
-
         LOG.info("Initializing batch job {} which will run the \"{}\" pipeline", jobId, pipeline.getName());
         List<MediaImpl> mediaImpls = media.stream()
                 .map(MediaImpl::toMediaImpl)
@@ -107,7 +112,9 @@ public class InProgressBatchJobsService {
                 mediaImpls,
                 jobProperties,
                 algorithmProperties);
-        _jobs.put(jobId, job);
+        if (_jobs.putIfAbsent(jobId, job) != null) {
+            throw new IllegalArgumentException(String.format("Job with id %s already exists.", jobId));
+        }
 
         media.stream()
                 .filter(Media::isFailed)
@@ -117,7 +124,7 @@ public class InProgressBatchJobsService {
     }
 
 
-    public synchronized BatchJob getJob(long jobId) {
+    public BatchJob getJob(long jobId) {
         return getJobImpl(jobId);
     }
 
@@ -131,11 +138,13 @@ public class InProgressBatchJobsService {
     }
 
 
-    public synchronized void clearJob(long jobId) {
+    public void clearJob(long jobId) {
         LOG.info("Clearing all job information for job: {}", jobId);
-        BatchJobImpl job = getJobImpl(jobId);
+        BatchJobImpl job = _jobs.remove(jobId);
+        if (job == null) {
+            throw new WfmProcessingException("Unable to locate batch job with id: " + jobId);
+        }
         _redis.clearTracks(job);
-        _jobs.remove(jobId);
         for (Media media : job.getMedia()) {
             if (media.getUriScheme().isRemote()) {
                 try {
@@ -150,98 +159,119 @@ public class InProgressBatchJobsService {
         }
     }
 
-    public synchronized boolean containsJob(long jobId) {
+    public boolean containsJob(long jobId) {
         return _jobs.containsKey(jobId);
     }
 
-    public synchronized boolean cancelJob(long jobId) {
+    public boolean cancelJob(long jobId) {
         LOG.info("Marking job {} as cancelled.", jobId);
         getJobImpl(jobId).setCancelled(true);
         return true;
     }
 
-    public synchronized SortedSet<Track> getTracks(long jobId, long mediaId, int taskIndex, int actionIndex) {
+    public SortedSet<Track> getTracks(long jobId, long mediaId, int taskIndex, int actionIndex) {
         return _redis.getTracks(jobId, mediaId, taskIndex, actionIndex);
     }
 
 
-    public synchronized void addTrack(Track track) {
+    public void addTrack(Track track) {
         LOG.debug("Storing new track for job {}'s media {}.", track.getJobId(), track.getMediaId());
         _redis.addTrack(track);
     }
 
-    public synchronized void setTracks(long jobId, long mediaId, int taskIndex, int actionIndex,
+    public void addTracks(Collection<Track> tracks) {
+        if (tracks.isEmpty()) {
+            return;
+        }
+        Track firstTrack = tracks.iterator().next();
+        LOG.debug("Storing {} new tracks for job {}'s media {}.", tracks.size(), firstTrack.getJobId(),
+                  firstTrack.getMediaId());
+        _redis.addTracks(tracks);
+    }
+
+    public void setTracks(long jobId, long mediaId, int taskIndex, int actionIndex,
                                        Collection<Track> tracks) {
         LOG.info("Replacing tracks for job {}'s media {}", jobId, mediaId);
         _redis.setTracks(jobId, mediaId, taskIndex, actionIndex, tracks);
     }
 
 
-    public synchronized void addJobWarning(long jobId, IssueCodes code, String message) {
+    public void addJobWarning(long jobId, IssueCodes code, String message) {
         addWarning(jobId, 0, code, message);
     }
 
-    public synchronized void addWarning(long jobId, long mediaId, IssueCodes code, String message) {
+    public void addWarning(long jobId, long mediaId, IssueCodes code, String message) {
         addWarning(jobId, mediaId, code, message, IssueSources.WORKFLOW_MANAGER);
     }
 
-    public synchronized void addWarning(long jobId, long mediaId, IssueCodes code, String message,
-                                        IssueSources source) {
+    public void addWarning(long jobId, long mediaId, IssueCodes code, String message, IssueSources source) {
         var codeString = IssueCodes.toString(code);
         LOG.info("Adding the following warning to job {}'s media {}: {} - {}", jobId, mediaId, codeString, message);
 
-        getJobImpl(jobId).addWarning(mediaId, IssueSources.toString(source), codeString, message);
+        BatchJobImpl job = getJobImpl(jobId);
+        synchronized (job) {
+            job.addWarning(mediaId, IssueSources.toString(source), codeString, message);
+        }
     }
 
 
-    public synchronized void addJobError(long jobId, IssueCodes code, String message) {
+    public void addJobError(long jobId, IssueCodes code, String message) {
         addError(jobId, 0, code, message);
     }
 
-    public synchronized void addError(long jobId, long mediaId, IssueCodes code, String message) {
+    public void addError(long jobId, long mediaId, IssueCodes code, String message) {
         addError(jobId, mediaId, code, message, IssueSources.WORKFLOW_MANAGER);
     }
 
-    public synchronized void addError(long jobId, long mediaId, IssueCodes code, String message, IssueSources source) {
+    public void addError(long jobId, long mediaId, IssueCodes code, String message, IssueSources source) {
         var codeString = IssueCodes.toString(code);
 
         LOG.info("Adding the following error to job {}'s media {}: {} - {}", jobId, mediaId, codeString, message);
 
-        getJobImpl(jobId).addError(mediaId, IssueSources.toString(source), codeString, message);
+        BatchJobImpl job = getJobImpl(jobId);
+        synchronized (job) {
+            job.addError(mediaId, IssueSources.toString(source), codeString, message);
 
-        if (source != IssueSources.MARKUP && mediaId != 0) {
-            getMediaImpl(jobId, mediaId).setFailed(true);
+            if (source != IssueSources.MARKUP && mediaId != 0) {
+                getMediaImpl(job, mediaId).setFailed(true);
+            }
         }
     }
 
 
-    public synchronized void addDetectionProcessingError(DetectionProcessingError error) {
+    public void addDetectionProcessingError(DetectionProcessingError error) {
         LOG.info("Adding detection processing error for job {}'s media {}: {} - {}",
                  error.getJobId(), error.getMediaId(), error.getErrorCode(), error.getErrorMessage());
-        getJobImpl(error.getJobId()).addDetectionProcessingError(error);
-
-        var media = getMediaImpl(error.getJobId(), error.getMediaId());
-        media.setFailed(true);
+        BatchJobImpl job = getJobImpl(error.getJobId());
+        synchronized (job) {
+            job.addDetectionProcessingError(error);
+            getMediaImpl(job, error.getMediaId()).setFailed(true);
+        }
     }
 
 
-    public synchronized Multimap<Long, JsonIssueDetails> getMergedDetectionErrors(long jobId) {
-        return DetectionErrorUtil.getMergedDetectionErrors(getJob(jobId));
+    public Multimap<Long, JsonIssueDetails> getMergedDetectionErrors(long jobId) {
+        BatchJobImpl job = getJobImpl(jobId);
+        synchronized (job) {
+            return DetectionErrorUtil.getMergedDetectionErrors(job);
+        }
     }
 
 
-    public synchronized void setJobStatus(long jobId, BatchJobStatusType batchJobStatusType) {
+    public void setJobStatus(long jobId, BatchJobStatusType batchJobStatusType) {
         LOG.info("Setting status of job {} to {}", jobId, batchJobStatusType);
         getJobImpl(jobId).setStatus(batchJobStatusType);
     }
 
 
-    public synchronized void incrementTask(long jobId) {
+    public void incrementTask(long jobId) {
         var job = getJobImpl(jobId);
-        int currentTask = job.getCurrentTaskIndex();
-        int nextTask = currentTask + 1;
-        LOG.info("Changing job {}'s current task index from {} to {}", jobId, currentTask, nextTask);
-        job.setCurrentTaskIndex(nextTask);
+        synchronized (job) {
+            int currentTask = job.getCurrentTaskIndex();
+            int nextTask = currentTask + 1;
+            LOG.info("Changing job {}'s current task index from {} to {}", jobId, currentTask, nextTask);
+            job.setCurrentTaskIndex(nextTask);
+        }
     }
 
 
@@ -254,7 +284,7 @@ public class InProgressBatchJobsService {
     private static final String LOCAL_FILE_NOT_READABLE = "File is not readable";
 
 
-    public synchronized Media initMedia(String uriStr, Map<String, String> mediaSpecificProperties) {
+    public Media initMedia(String uriStr, Map<String, String> mediaSpecificProperties) {
         long mediaId = IdGenerator.next();
         LOG.info("Initializing media from {} with id {}", uriStr, mediaId);
 
@@ -301,21 +331,35 @@ public class InProgressBatchJobsService {
     }
 
 
-    public synchronized void addMediaInspectionInfo(
+    public void addMediaInspectionInfo(
             long jobId, long mediaId, String sha256, String mimeType, int length,
             Map<String, String> metadata) {
         LOG.info("Adding media inspections results to job {}'s media {}.", jobId, mediaId);
-        MediaImpl media = getMediaImpl(jobId, mediaId);
-        media.setSha256(sha256);
-        media.setType(mimeType);
-        media.setLength(length);
-        media.addMetadata(metadata);
+        BatchJobImpl job = getJobImpl(jobId);
+        synchronized (job) {
+            MediaImpl media = getMediaImpl(job, mediaId);
+            media.setSha256(sha256);
+            media.setType(mimeType);
+            media.setLength(length);
+            media.addMetadata(metadata);
+        }
+    }
+
+    public void addMediaIngestInfo(long jobId, long mediaId, String sha256, String mimeType) {
+        LOG.info("Adding media ingest results to job {}'s media {}.", jobId, mediaId);
+        BatchJobImpl job = getJobImpl(jobId);
+        synchronized (job) {
+            MediaImpl media = getMediaImpl(job, mediaId);
+            media.setSha256(sha256);
+            media.setType(mimeType);
+        }
     }
 
-    private MediaImpl getMediaImpl(long jobId, long mediaId) {
-        MediaImpl media = getJobImpl(jobId).getMedia(mediaId);
+    private static MediaImpl getMediaImpl(BatchJobImpl job, long mediaId) {
+        MediaImpl media = job.getMedia(mediaId);
         if (media == null) {
-            throw new IllegalArgumentException(String.format("Job %s does not have media with id %s", jobId, mediaId));
+            throw new IllegalArgumentException(String.format("Job %s does not have media with id %s",
+                                                             job.getId(), mediaId));
         }
         return media;
     }
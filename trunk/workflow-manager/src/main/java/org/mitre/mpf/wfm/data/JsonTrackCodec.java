@@ -0,0 +1,53 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.data;
+
+import org.mitre.mpf.wfm.data.entities.transients.Track;
+import org.mitre.mpf.wfm.util.JsonUtils;
+
+/**
+ * Stores tracks as smile binary JSON. This was the only format prior to the introduction of {@link BinaryTrackCodec}.
+ */
+public class JsonTrackCodec implements TrackCodec {
+
+    private final JsonUtils _jsonUtils;
+
+    public JsonTrackCodec(JsonUtils jsonUtils) {
+        _jsonUtils = jsonUtils;
+    }
+
+
+    @Override
+    public byte[] encode(Track track) {
+        return _jsonUtils.serialize(track);
+    }
+
+    @Override
+    public Track decode(byte[] bytes) {
+        return _jsonUtils.deserialize(bytes, Track.class);
+    }
+}
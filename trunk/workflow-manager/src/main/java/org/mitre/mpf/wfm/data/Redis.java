@@ -38,6 +38,8 @@ public interface Redis {
 
     void addTrack(Track track);
 
+    void addTracks(Collection<Track> tracks);
+
     void clearTracks(BatchJob job);
 
     SortedSet<Track> getTracks(long jobId, long mediaId, int taskIndex, int actionIndex);
@@ -26,23 +26,24 @@
 
 package org.mitre.mpf.wfm.data;
 
+import com.google.common.util.concurrent.Striped;
 import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
 import org.mitre.mpf.wfm.data.entities.transients.Track;
 import org.mitre.mpf.wfm.data.entities.persistent.Media;
+import org.mitre.mpf.wfm.enums.TrackCodecType;
 import org.mitre.mpf.wfm.util.JsonUtils;
+import org.mitre.mpf.wfm.util.PropertiesUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.BoundListOperations;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 
 import static java.util.stream.Collectors.toCollection;
 
@@ -58,6 +59,15 @@ public class RedisImpl implements Redis {
     @Autowired
     private JsonUtils jsonUtils;
 
+    @Autowired
+    private PropertiesUtil propertiesUtil;
+
+    private TrackCodec trackCodec;
+
+    // setTracks deletes the existing list before adding the new tracks, so these locks prevent getTracks from
+    // observing a partially replaced list. Striping allows operations on different lists to run in parallel.
+    private final Striped<ReadWriteLock> trackListLocks = Striped.readWriteLock(64);
+
 
     @PostConstruct
     private synchronized void init() {
@@ -66,34 +76,71 @@ public class RedisImpl implements Redis {
             redisConnection.flushAll();
             return null;
         });
+
+        // Redis was just flushed, so there are no tracks encoded with a different codec.
+        TrackCodecType codecType = propertiesUtil.getRedisTrackCodec();
+        log.info("Storing tracks in Redis using the {} track codec.", codecType);
+        trackCodec = codecType == TrackCodecType.JSON
+                ? new JsonTrackCodec(jsonUtils)
+                : new BinaryTrackCodec();
     }
 
 
     @Override
     public void addTrack(Track track) {
         redisTemplate.boundListOps(createTrackKey(track))
-                .rightPush(jsonUtils.serialize(track));
+                .rightPush(trackCodec.encode(track));
     }
 
     @Override
-    public synchronized void setTracks(long jobId, long mediaId, int taskIndex, int actionIndex,
-                                       Collection<Track> tracks) {
-        String key = createTrackKey(jobId, mediaId, taskIndex, actionIndex);
-        redisTemplate.delete(key);
-        BoundListOperations<String, Object> redisTracks = redisTemplate.boundListOps(key);
+    public void addTracks(Collection<Track> tracks) {
+        // The tracks from a single detection response all have the same key, so this will normally result in a
+        // single multi-value RPUSH.
+        Map<String, List<Object>> encodedTracksByKey = new HashMap<>();
         for (Track track : tracks) {
-            redisTracks.rightPush(jsonUtils.serialize(track));
+            encodedTracksByKey.computeIfAbsent(createTrackKey(track), k -> new ArrayList<>())
+                    .add(trackCodec.encode(track));
+        }
+        encodedTracksByKey.forEach((key, encodedTracks) ->
+                redisTemplate.boundListOps(key).rightPushAll(encodedTracks.toArray()));
+    }
+
+    @Override
+    public void setTracks(long jobId, long mediaId, int taskIndex, int actionIndex, Collection<Track> tracks) {
+        String key = createTrackKey(jobId, mediaId, taskIndex, actionIndex);
+        Object[] encodedTracks = tracks.stream()
+                .map(trackCodec::encode)
+                .toArray();
+
+        Lock lock = trackListLocks.get(key).writeLock();
+        lock.lock();
+        try {
+            redisTemplate.delete(key);
+            if (encodedTracks.length > 0) {
+                redisTemplate.boundListOps(key).rightPushAll(encodedTracks);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
 
     @Override
-    public synchronized SortedSet<Track> getTracks(long jobId, long mediaId, int taskIndex, int actionIndex) {
-        return redisTemplate
-                .boundListOps(createTrackKey(jobId, mediaId, taskIndex, actionIndex))
-                .range(0, -1)
-                .stream()
-                .map(o -> jsonUtils.deserialize((byte[]) o, Track.class))
+    public SortedSet<Track> getTracks(long jobId, long mediaId, int taskIndex, int actionIndex) {
+        String key = createTrackKey(jobId, mediaId, taskIndex, actionIndex);
+        List<Object> encodedTracks;
+        Lock lock = trackListLocks.get(key).readLock();
+        lock.lock();
+        try {
+            encodedTracks = redisTemplate.boundListOps(key).range(0, -1);
+        }
+        finally {
+            lock.unlock();
+        }
+
+        return encodedTracks.stream()
+                .map(o -> trackCodec.decode((byte[]) o))
                 .collect(toCollection(TreeSet::new));
     }
 
@@ -24,24 +24,16 @@
  * limitations under the License.                                             *
  ******************************************************************************/
 
-package org.mitre.mpf.nms;
+package org.mitre.mpf.wfm.data;
 
-import java.io.Serializable;
+import org.mitre.mpf.wfm.data.entities.transients.Track;
 
-public class ServiceStatusUpdate implements Serializable {
-    private ServiceDescriptor serviceDescriptor;
+/**
+ * Converts tracks to and from the byte arrays that are stored in Redis.
+ */
+public interface TrackCodec {
 
-    public ServiceStatusUpdate(ServiceDescriptor desc) {
-        this.serviceDescriptor = desc;
-    }
+    byte[] encode(Track track);
 
-    public ServiceDescriptor getServiceDescriptor() {
-        return serviceDescriptor;
-    }
-
-    public String getServiceName() {
-        return serviceDescriptor.getName();
-    }
-
-    public  NodeManagerConstants.States getLastKnownState() { return serviceDescriptor.getLastKnownState(); }
+    Track decode(byte[] bytes);
 }
@@ -27,15 +27,28 @@
 package org.mitre.mpf.wfm.data.access;
 
 import org.mitre.mpf.wfm.data.entities.persistent.JobRequest;
+import org.mitre.mpf.wfm.data.entities.persistent.JobRequestSummary;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface JobRequestDao extends JpaDao<JobRequest> {
 
     public void cancelJobsInNonTerminalState();
 
-    public List<JobRequest> findByPage(int pageSize, int offset, String searchTerm, String sortColumn,
-                                       String sortOrderDirection);
+    public List<JobRequestSummary> findAllSummaries();
+
+    public List<JobRequestSummary> findSummariesByIds(Collection<Long> ids);
+
+    public List<JobRequestSummary> findSummaryPage(int pageSize, int offset, String searchTerm, String sortColumn,
+                                                   String sortOrderDirection);
+
+    /**
+     * Gets the page of jobs that comes after afterJobId when sorting by id. Unlike {@link #findSummaryPage}, the
+     * database does not need to skip over the jobs on the earlier pages.
+     */
+    public List<JobRequestSummary> findSummaryPageAfter(long afterJobId, int pageSize, String searchTerm,
+                                                        String sortOrderDirection);
 
     public long countFiltered(String searchTerm);
 }
@@ -30,6 +30,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Query;
 import org.mitre.mpf.wfm.data.access.JobRequestDao;
 import org.mitre.mpf.wfm.data.entities.persistent.JobRequest;
+import org.mitre.mpf.wfm.data.entities.persistent.JobRequestSummary;
 import org.mitre.mpf.wfm.enums.BatchJobStatusType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,13 +38,36 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
 @Repository
 @Transactional(propagation = Propagation.REQUIRED)
 public class HibernateJobRequestDaoImpl extends AbstractHibernateDao<JobRequest> implements JobRequestDao {
     private static final Logger LOG = LoggerFactory.getLogger(HibernateJobRequestDaoImpl.class);
 
+    // Only selects the columns in JobRequestSummary so that the job blob is never loaded.
+    private static final String SELECT_SUMMARY = String.format(
+            "select new %s(id, pipeline, priority, status, timeReceived, timeCompleted, outputObjectPath)"
+                    + " from JobRequest",
+            JobRequestSummary.class.getName());
+
+    // The pipeline names that have been used in jobs. Searching for part of a pipeline name can not use an index,
+    // so the matching names are found here and then the jobs are looked up with "pipeline in (...)".
+    private final Set<String> _pipelineNames = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean _pipelineNamesLoaded;
+
     public HibernateJobRequestDaoImpl() { this.clazz = JobRequest.class; }
 
     @Override
@@ -61,17 +85,71 @@ public class HibernateJobRequestDaoImpl extends AbstractHibernateDao<JobRequest>
 
 
     @Override
-    public List<JobRequest> findByPage(int pageSize, int offset, String searchTerm, String sortColumn,
-                                       String sortOrderDirection) {
-        var orderByClause = String.format("order by %s %s", sortColumn, sortOrderDirection);
-        Query query;
-        if (StringUtils.isBlank(searchTerm)) {
-            query = getCurrentSession().createQuery("from JobRequest " + orderByClause);
+    public JobRequest persist(JobRequest jobRequest) {
+        JobRequest persisted = super.persist(jobRequest);
+        if (persisted.getPipeline() != null) {
+            _pipelineNames.add(persisted.getPipeline());
         }
-        else {
-            query = createSearchQuery(searchTerm, "", orderByClause);
+        return persisted;
+    }
+
+
+    @Override
+    public List<JobRequestSummary> findAllSummaries() {
+        return (List<JobRequestSummary>) getCurrentSession().createQuery(SELECT_SUMMARY).list();
+    }
+
+
+    @Override
+    public List<JobRequestSummary> findSummariesByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
         }
-        return (List<JobRequest>) query.setFirstResult(offset)
+        return (List<JobRequestSummary>) getCurrentSession()
+                .createQuery(SELECT_SUMMARY + " where id in (:ids)")
+                .setParameterList("ids", ids)
+                .list();
+    }
+
+
+    @Override
+    public List<JobRequestSummary> findSummaryPage(int pageSize, int offset, String searchTerm, String sortColumn,
+                                                   String sortOrderDirection) {
+        SearchFilter filter = createSearchFilter(searchTerm);
+        if (filter.matchesNothing()) {
+            return List.of();
+        }
+        // The id is added as a tie-breaker so that jobs do not move between pages when the sort column has
+        // duplicate values.
+        String orderByClause = sortColumn.equals("id")
+                ? String.format(" order by id %s", sortOrderDirection)
+                : String.format(" order by %s %s, id %s", sortColumn, sortOrderDirection, sortOrderDirection);
+
+        Query query = getCurrentSession().createQuery(
+                SELECT_SUMMARY + filter.createWhereClause() + orderByClause);
+        filter.setParameters(query);
+        return (List<JobRequestSummary>) query
+                .setFirstResult(offset)
+                .setMaxResults(pageSize)
+                .list();
+    }
+
+
+    @Override
+    public List<JobRequestSummary> findSummaryPageAfter(long afterJobId, int pageSize, String searchTerm,
+                                                        String sortOrderDirection) {
+        SearchFilter filter = createSearchFilter(searchTerm);
+        if (filter.matchesNothing()) {
+            return List.of();
+        }
+        boolean descending = sortOrderDirection.equals("desc");
+        Query query = getCurrentSession().createQuery(
+                SELECT_SUMMARY
+                        + filter.createWhereClause(descending ? "id < :afterJobId" : "id > :afterJobId")
+                        + " order by id " + (descending ? "desc" : "asc"));
+        filter.setParameters(query);
+        return (List<JobRequestSummary>) query
+                .setParameter("afterJobId", afterJobId)
                 .setMaxResults(pageSize)
                 .list();
     }
@@ -79,22 +157,153 @@ public class HibernateJobRequestDaoImpl extends AbstractHibernateDao<JobRequest>
 
     @Override
     public long countFiltered(String searchTerm) {
-        return (long) createSearchQuery(searchTerm, "select count(*)", "")
-                .list()
-                .get(0);
+        SearchFilter filter = createSearchFilter(searchTerm);
+        if (filter.matchesNothing()) {
+            return 0;
+        }
+        Query query = getCurrentSession().createQuery(
+                "select count(*) from JobRequest" + filter.createWhereClause());
+        filter.setParameters(query);
+        return (long) query.list().get(0);
     }
 
 
-    private Query createSearchQuery(String searchTerm, String selectClause, String orderByClause) {
-        return getCurrentSession().createQuery(
-                selectClause
-                        + " from JobRequest"
-                        + " where cast(id as string) like :searchTerm"
-                        + " or lower(pipeline) like :searchTerm"
-                        + " or lower(status) like :searchTerm"
-                        + " or to_char(timeReceived, 'YYYY-MM-DD HH24:MI:SS') like :searchTerm"
-                        + " or to_char(timeCompleted, 'YYYY-MM-DD HH24:MI:SS') like :searchTerm "
-                        + orderByClause)
-                .setString("searchTerm", '%' + searchTerm.toLowerCase() + '%');
+    // Each part of the search is converted to a condition on an indexed column, rather than searching for the term
+    // inside of every column converted to a string.
+    private SearchFilter createSearchFilter(String searchTerm) {
+        var filter = new SearchFilter();
+        if (StringUtils.isBlank(searchTerm)) {
+            return filter;
+        }
+        String lowerCaseTerm = searchTerm.trim().toLowerCase();
+        filter.setHasSearchTerm();
+
+        if (StringUtils.isNumeric(lowerCaseTerm) && lowerCaseTerm.length() < 19) {
+            filter.addCondition("id = :searchId", "searchId", Long.parseLong(lowerCaseTerm));
+        }
+
+        List<BatchJobStatusType> statuses = Arrays.stream(BatchJobStatusType.values())
+                .filter(s -> s.name().toLowerCase().contains(lowerCaseTerm))
+                .collect(toList());
+        if (!statuses.isEmpty()) {
+            filter.addCondition("status in (:searchStatuses)", "searchStatuses", statuses);
+        }
+
+        List<String> pipelines = getPipelineNames().stream()
+                .filter(p -> p.toLowerCase().contains(lowerCaseTerm))
+                .collect(toList());
+        if (!pipelines.isEmpty()) {
+            filter.addCondition("pipeline in (:searchPipelines)", "searchPipelines", pipelines);
+        }
+
+        getTimeRange(lowerCaseTerm).ifPresent(range -> {
+            filter.addCondition(
+                    "(timeReceived >= :searchTimeStart and timeReceived < :searchTimeEnd)"
+                            + " or (timeCompleted >= :searchTimeStart and timeCompleted < :searchTimeEnd)",
+                    "searchTimeStart", range[0]);
+            filter.addParameter("searchTimeEnd", range[1]);
+        });
+        return filter;
+    }
+
+
+    private Set<String> getPipelineNames() {
+        if (!_pipelineNamesLoaded) {
+            synchronized (_pipelineNames) {
+                if (!_pipelineNamesLoaded) {
+                    _pipelineNames.addAll((List<String>) getCurrentSession()
+                            .createQuery("select distinct pipeline from JobRequest where pipeline is not null")
+                            .list());
+                    _pipelineNamesLoaded = true;
+                }
+            }
+        }
+        return _pipelineNames;
+    }
+
+
+    private static final Pattern TIME_PREFIX_PATTERN
+            = Pattern.compile("\\d{4}(-\\d{2}(-\\d{2}( \\d{2}(:\\d{2}(:\\d{2})?)?)?)?)?");
+
+    private static final String TIME_TEMPLATE = "0000-01-01 00:00:00";
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final Map<Integer, ChronoUnit> TIME_PREFIX_UNITS = Map.of(
+            4, ChronoUnit.YEARS,
+            7, ChronoUnit.MONTHS,
+            10, ChronoUnit.DAYS,
+            13, ChronoUnit.HOURS,
+            16, ChronoUnit.MINUTES,
+            19, ChronoUnit.SECONDS);
+
+    // Converts a prefix of a time formatted like the job table (e.g. "2020-05" or "2020-05-04 13:2") to the range of
+    // times that start with that prefix.
+    private static Optional<Instant[]> getTimeRange(String searchTerm) {
+        if (!TIME_PREFIX_PATTERN.matcher(searchTerm).matches()) {
+            return Optional.empty();
+        }
+        try {
+            LocalDateTime start = LocalDateTime.parse(
+                    searchTerm + TIME_TEMPLATE.substring(searchTerm.length()), TIME_FORMAT);
+            LocalDateTime end = start.plus(1, TIME_PREFIX_UNITS.get(searchTerm.length()));
+            ZoneId zone = ZoneId.systemDefault();
+            return Optional.of(new Instant[] {
+                    start.atZone(zone).toInstant(), end.atZone(zone).toInstant() });
+        }
+        catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+
+
+    private static class SearchFilter {
+        private final List<String> _conditions = new ArrayList<>();
+
+        private final Map<String, Object> _parameters = new HashMap<>();
+
+        private boolean _hasSearchTerm;
+
+        public void setHasSearchTerm() {
+            _hasSearchTerm = true;
+        }
+
+        public void addCondition(String condition, String parameterName, Object parameterValue) {
+            _conditions.add(condition);
+            addParameter(parameterName, parameterValue);
+        }
+
+        public void addParameter(String name, Object value) {
+            _parameters.put(name, value);
+        }
+
+        // When a search term was provided, but it could not match any of the columns.
+        public boolean matchesNothing() {
+            return _hasSearchTerm && _conditions.isEmpty();
+        }
+
+        public String createWhereClause(String... requiredConditions) {
+            var allConditions = new ArrayList<>(Arrays.asList(requiredConditions));
+            if (!_conditions.isEmpty()) {
+                allConditions.add(_conditions.stream()
+                                          .map(c -> '(' + c + ')')
+                                          .collect(joining(" or ", "(", ")")));
+            }
+            return allConditions.isEmpty()
+                    ? ""
+                    : " where " + String.join(" and ", allConditions);
+        }
+
+        public void setParameters(Query query) {
+            _parameters.forEach((name, value) -> {
+                if (value instanceof Collection) {
+                    query.setParameterList(name, (Collection<?>) value);
+                }
+                else {
+                    query.setParameter(name, value);
+                }
+            });
+        }
     }
 }
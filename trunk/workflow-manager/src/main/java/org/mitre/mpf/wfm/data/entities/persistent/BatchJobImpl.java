@@ -47,7 +47,7 @@ public class BatchJobImpl implements BatchJob {
     public long getId() { return _id; }
 
 
-    private BatchJobStatusType _status = BatchJobStatusType.INITIALIZED;
+    private volatile BatchJobStatusType _status = BatchJobStatusType.INITIALIZED;
     @Override
     public BatchJobStatusType getStatus() { return _status; }
     public void setStatus(BatchJobStatusType status) { _status = status; }
@@ -58,7 +58,7 @@ public class BatchJobImpl implements BatchJob {
     public JobPipelineElements getPipelineElements() { return _pipelineElements; }
 
 
-    private int _currentTaskIndex = 0;
+    private volatile int _currentTaskIndex = 0;
     @Override
     public int getCurrentTaskIndex() { return _currentTaskIndex; }
     public void setCurrentTaskIndex(int currentTaskIndex) { _currentTaskIndex = currentTaskIndex; }
@@ -100,7 +100,7 @@ public class BatchJobImpl implements BatchJob {
     public ImmutableMap<String, String> getJobProperties() { return _jobProperties; }
 
 
-    private boolean _cancelled;
+    private volatile boolean _cancelled;
     @Override
     public boolean isCancelled() { return _cancelled; }
     public void setCancelled(boolean isCancelled) { _cancelled = isCancelled; }
@@ -36,6 +36,14 @@ import java.time.Instant;
  * persistent data store (as opposed to a transient data store).
  */
 @Entity
+// Each index ends with the id because job listings use the id to break ties when sorting. This lets the database
+// read a page of jobs directly from the index in the requested order.
+@Table(indexes = {
+        @Index(name = "JOB_REQUEST_TIME_RECEIVED_NDX", columnList = "timeReceived,id"),
+        @Index(name = "JOB_REQUEST_TIME_COMPLETED_NDX", columnList = "timeCompleted,id"),
+        @Index(name = "JOB_REQUEST_STATUS_NDX", columnList = "status,id"),
+        @Index(name = "JOB_REQUEST_PIPELINE_NDX", columnList = "pipeline,id"),
+        @Index(name = "JOB_REQUEST_PRIORITY_NDX", columnList = "priority,id")})
 public class JobRequest {
 
     /** The unique numeric identifier for this job.
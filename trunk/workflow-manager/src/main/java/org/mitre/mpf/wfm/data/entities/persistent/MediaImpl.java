@@ -67,7 +67,7 @@ public class MediaImpl implements Media {
 
 
     /** A flag indicating if the medium has encountered an error during processing. Will be false if no error occurred. */
-    private boolean _failed;
+    private volatile boolean _failed;
     @Override
     public boolean isFailed() { return _failed; }
     public void setFailed(boolean failed) { _failed = failed; }
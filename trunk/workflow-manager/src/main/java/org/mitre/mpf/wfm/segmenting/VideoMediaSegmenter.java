@@ -29,6 +29,7 @@ package org.mitre.mpf.wfm.segmenting;
 import org.apache.camel.Message;
 import org.apache.camel.impl.DefaultMessage;
 import org.mitre.mpf.wfm.buffers.DetectionProtobuf;
+import org.mitre.mpf.wfm.buffers.DetectionProtobuf.DetectionRequest;
 import org.mitre.mpf.wfm.buffers.DetectionProtobuf.DetectionRequest.VideoRequest;
 import org.mitre.mpf.wfm.camel.operations.detection.DetectionContext;
 import org.mitre.mpf.wfm.data.entities.transients.Detection;
@@ -50,22 +51,31 @@ public class VideoMediaSegmenter implements MediaSegmenter {
     @Override
     public List<Message> createDetectionRequestMessages(
             Media media, DetectionContext context) {
+        // The algorithm properties and media metadata are the same for every segment of a (media, action) pair,
+        // so they are only filtered and added once. Each segment's request is then created from the prototype,
+        // which shares the prototype's immutable property and metadata lists rather than copying them.
+        DetectionRequest prototype = MediaSegmenter.initializeRequest(media, context)
+                .setDataType(DetectionRequest.DataType.VIDEO)
+                .build();
+
         if (context.isFirstDetectionTask()) {
             return createTimePairMessages(
-                    media, context, Collections.singletonList(new TimePair(0, media.getLength() - 1)));
+                    media, context, prototype,
+                    Collections.singletonList(new TimePair(0, media.getLength() - 1)));
         }
         else if (MediaSegmenter.feedForwardIsEnabled(context)) {
-            return createFeedForwardMessages(media, context);
+            return createFeedForwardMessages(context, prototype);
         }
         else {
             List<TimePair> trackTimePairs = MediaSegmenter.createTimePairsForTracks(context.getPreviousTracks());
-            return createTimePairMessages(media, context, trackTimePairs);
+            return createTimePairMessages(media, context, prototype, trackTimePairs);
         }
     }
 
 
     private static List<Message> createTimePairMessages(
-            Media media, DetectionContext context, Collection<TimePair> trackTimePairs) {
+            Media media, DetectionContext context, DetectionRequest prototype,
+            Collection<TimePair> trackTimePairs) {
 
         List<TimePair> segments = MediaSegmenter.createSegments(
                 trackTimePairs,
@@ -87,19 +97,14 @@ public class VideoMediaSegmenter implements MediaSegmenter {
                     .setStopFrame(segment.getEndInclusive())
                     .build();
 
-            messages.add(createProtobufMessage(media, context, videoRequest));
+            messages.add(createProtobufMessage(prototype, videoRequest));
         }
         return messages;
     }
 
 
-    private static Message createProtobufMessage(
-            Media media,
-            DetectionContext context,
-            VideoRequest videoRequest) {
-
-        DetectionProtobuf.DetectionRequest detectionRequest = MediaSegmenter.initializeRequest(media, context)
-                .setDataType(DetectionProtobuf.DetectionRequest.DataType.VIDEO)
+    private static Message createProtobufMessage(DetectionRequest prototype, VideoRequest videoRequest) {
+        DetectionRequest detectionRequest = prototype.toBuilder()
                 .setVideoRequest(videoRequest)
                 .build();
 
@@ -109,7 +114,7 @@ public class VideoMediaSegmenter implements MediaSegmenter {
     }
 
 
-    private static List<Message> createFeedForwardMessages(Media media, DetectionContext context) {
+    private static List<Message> createFeedForwardMessages(DetectionContext context, DetectionRequest prototype) {
         int topConfidenceCount = getTopConfidenceCount(context);
 
         List<Message> messages = new ArrayList<>();
@@ -120,7 +125,7 @@ public class VideoMediaSegmenter implements MediaSegmenter {
             }
 
             VideoRequest videoRequest = createFeedForwardVideoRequest(track, topConfidenceCount);
-            messages.add(createProtobufMessage(media, context, videoRequest));
+            messages.add(createProtobufMessage(prototype, videoRequest));
         }
 
         return messages;
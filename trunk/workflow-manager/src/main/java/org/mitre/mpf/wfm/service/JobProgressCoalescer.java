@@ -0,0 +1,190 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
+import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
+import org.mitre.mpf.wfm.enums.BatchJobStatusType;
+import org.mitre.mpf.wfm.event.JobProgress;
+import org.mitre.mpf.wfm.util.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Limits how often job progress is broadcast. Aggregators record each response with
+ * {@link #recordSplitProgress(long, int, int)}, which only replaces the job's latest split progress. A background
+ * thread publishes the latest progress for each job that changed at most once every
+ * web.broadcast.job.status.interval milliseconds.
+ *
+ * Messages that must not be dropped, like the final 100% message, are sent immediately with
+ * {@link #broadcastNow(long, float, BatchJobStatusType, Instant)}. After that, no coalesced updates are published for
+ * the job, so a delayed update can not arrive after the final message.
+ */
+@Service
+public class JobProgressCoalescer implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JobProgressCoalescer.class);
+
+    private final InProgressBatchJobsService _inProgressJobs;
+
+    private final JobProgress _jobProgressStore;
+
+    private final JobStatusBroadcaster _jobStatusBroadcaster;
+
+    private final Map<Long, PendingProgress> _pendingProgress = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService _publishExecutor;
+
+
+    @Inject
+    JobProgressCoalescer(
+            PropertiesUtil propertiesUtil,
+            InProgressBatchJobsService inProgressJobs,
+            JobProgress jobProgressStore,
+            JobStatusBroadcaster jobStatusBroadcaster) {
+        _inProgressJobs = inProgressJobs;
+        _jobProgressStore = jobProgressStore;
+        _jobStatusBroadcaster = jobStatusBroadcaster;
+
+        _publishExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("job-progress-publisher").setDaemon(true).build());
+        long interval = propertiesUtil.getBroadcastJobStatusInterval();
+        _publishExecutor.scheduleWithFixedDelay(this::publishPendingUpdates, interval, interval,
+                                                TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Records that aggregatedCount out of splitSize responses for the job's current task have been received.
+     * The task index is stored with the counts, because the job may move on to the next task before the progress
+     * is published.
+     */
+    public void recordSplitProgress(long jobId, int aggregatedCount, int splitSize) {
+        int taskIndex = _inProgressJobs.getJob(jobId).getCurrentTaskIndex();
+        PendingProgress pending = _pendingProgress.computeIfAbsent(jobId, id -> new PendingProgress());
+        pending.latest.set(new SplitProgress(taskIndex, aggregatedCount, splitSize));
+        pending.changed.set(true);
+    }
+
+
+    /** Immediately broadcasts the job's status and stops publishing coalesced updates for the job. */
+    public void broadcastNow(long jobId, float progress, BatchJobStatusType status, Instant endDate) {
+        PendingProgress pending = _pendingProgress.computeIfAbsent(jobId, id -> new PendingProgress());
+        synchronized (pending) {
+            pending.finished = true;
+            pending.latest.set(null);
+            pending.changed.set(false);
+            _jobStatusBroadcaster.broadcast(jobId, progress, status, endDate);
+            _jobProgressStore.setJobProgress(jobId, progress);
+        }
+    }
+
+
+    public void removeJob(long jobId) {
+        _pendingProgress.remove(jobId);
+        _jobProgressStore.removeJob(jobId);
+    }
+
+
+    @Override
+    public void close() {
+        _publishExecutor.shutdownNow();
+    }
+
+
+    void publishPendingUpdates() {
+        for (Map.Entry<Long, PendingProgress> entry : _pendingProgress.entrySet()) {
+            long jobId = entry.getKey();
+            PendingProgress pending = entry.getValue();
+            if (!pending.changed.getAndSet(false)) {
+                continue;
+            }
+            try {
+                synchronized (pending) {
+                    SplitProgress latest = pending.latest.get();
+                    if (!pending.finished && latest != null) {
+                        publish(jobId, latest);
+                    }
+                }
+            }
+            catch (Exception e) {
+                // The job was most likely removed from the in-progress jobs after the response was recorded.
+                LOG.warn("Failed to publish the progress of job {}: {}", jobId, e.toString());
+                _pendingProgress.remove(jobId, pending);
+            }
+        }
+    }
+
+
+    private void publish(long jobId, SplitProgress latest) {
+        BatchJob job = _inProgressJobs.getJob(jobId);
+        int totalTasks = job.getPipelineElements().getTaskCount();
+        float progressInTask = latest.splitSize > 0 ? (float) latest.aggregatedCount / latest.splitSize : 0;
+        float jobProgress = (latest.taskIndex + progressInTask) / totalTasks * 100;
+
+        _jobStatusBroadcaster.broadcast(jobId, jobProgress, job.getStatus());
+        _jobProgressStore.setJobProgress(jobId, jobProgress);
+    }
+
+
+    private static class SplitProgress {
+        final int taskIndex;
+
+        final int aggregatedCount;
+
+        final int splitSize;
+
+        SplitProgress(int taskIndex, int aggregatedCount, int splitSize) {
+            this.taskIndex = taskIndex;
+            this.aggregatedCount = aggregatedCount;
+            this.splitSize = splitSize;
+        }
+    }
+
+
+    private static class PendingProgress {
+        // The task index and counts are replaced together, so they always describe the same response.
+        final AtomicReference<SplitProgress> latest = new AtomicReference<>();
+
+        final AtomicBoolean changed = new AtomicBoolean();
+
+        // Guarded by this.
+        boolean finished;
+    }
+}
@@ -39,9 +39,13 @@ import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 
 
 @Component
@@ -66,8 +70,21 @@ public class LocalStorageBackend implements StorageBackend {
 
     @Override
     public URI store(JsonOutputObject outputObject) throws IOException {
+        return store(outputObject, null);
+    }
+
+    /**
+     * Stores the output object the same way as {@link #store(JsonOutputObject)}, but also updates digest with the
+     * bytes as they are written, so that callers do not need to read the file back in to hash it.
+     * @param digest The digest to update, or null to only store the output object.
+     */
+    public URI store(JsonOutputObject outputObject, MessageDigest digest) throws IOException {
         Path outputPath = _propertiesUtil.createDetectionOutputObjectFile(outputObject.getJobId());
-        _objectMapper.writeValue(outputPath.toFile(), outputObject);
+        try (OutputStream out = digest == null
+                ? Files.newOutputStream(outputPath)
+                : new DigestOutputStream(Files.newOutputStream(outputPath), digest)) {
+            _objectMapper.writeValue(out, outputObject);
+        }
         return outputPath.toUri();
     }
 
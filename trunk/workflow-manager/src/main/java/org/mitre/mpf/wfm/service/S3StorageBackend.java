@@ -36,11 +36,15 @@ import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
-import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.*;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
+import com.google.common.collect.Tables;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.client.utils.URIBuilder;
@@ -55,11 +59,13 @@ import org.mitre.mpf.wfm.enums.IssueCodes;
 import org.mitre.mpf.wfm.enums.MpfConstants;
 import org.mitre.mpf.wfm.util.AggregateJobPropertiesUtil;
 import org.mitre.mpf.wfm.util.PropertiesUtil;
+import org.mitre.mpf.wfm.util.ThreadUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -67,13 +73,22 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 @Service
-public class S3StorageBackend implements StorageBackend {
+public class S3StorageBackend implements StorageBackend, AutoCloseable {
 
     private static final Logger LOG = LoggerFactory.getLogger(S3StorageBackend.class);
 
+    // Files up to this size are read in to memory once, and then the same bytes are both hashed and uploaded.
+    private static final int MAX_IN_MEMORY_UPLOAD_SIZE = 16 * 1024 * 1024;
+
     private final PropertiesUtil _propertiesUtil;
 
     private final LocalStorageBackend _localStorageBackend;
@@ -82,6 +97,15 @@ public class S3StorageBackend implements StorageBackend {
 
     private final AggregateJobPropertiesUtil _aggregateJobPropertiesUtil;
 
+    // Each AmazonS3 client has its own connection pool, so clients are reused for all requests that have the same
+    // endpoint, credentials, and retry count. Clients that have not been used in a while are removed from the cache,
+    // but they are not shut down because another thread may still be using them. They are garbage collected once
+    // the last request using them completes.
+    private final LoadingCache<ClientKey, AmazonS3> _clientCache = CacheBuilder.newBuilder()
+            .maximumSize(50)
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build(CacheLoader.from(S3StorageBackend::createS3Client));
+
     @Inject
     public S3StorageBackend(PropertiesUtil propertiesUtil,
                             LocalStorageBackend localStorageBackend,
@@ -101,8 +125,11 @@ public class S3StorageBackend implements StorageBackend {
 
     @Override
     public URI store(JsonOutputObject outputObject) throws StorageException, IOException {
-        URI localUri = _localStorageBackend.store(outputObject);
-        return putInS3IfAbsent(Paths.get(localUri), outputObject.getJobProperties()::get);
+        // The output object is hashed while it is being written, so the file only needs to be read for the upload.
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        URI localUri = _localStorageBackend.store(outputObject, digest);
+        return putInS3IfAbsent(Paths.get(localUri), Hex.encodeHexString(digest.digest()), null,
+                               outputObject.getJobProperties()::get);
     }
 
 
@@ -122,14 +149,27 @@ public class S3StorageBackend implements StorageBackend {
         Function<String, String> combinedProperties = _aggregateJobPropertiesUtil.getCombinedProperties(job, media);
 
         Table<Integer, Integer, URI> localResults = _localStorageBackend.storeArtifacts(request);
-        Table<Integer, Integer, URI> remoteResults = HashBasedTable.create();
-
-        try {
-            for (Table.Cell<Integer, Integer, URI> entry : localResults.cellSet()) {
-                URI remoteUri = putInS3IfAbsent(Paths.get(entry.getValue()), combinedProperties);
-                remoteResults.put(entry.getRowKey(), entry.getColumnKey(), remoteUri);
-            }
-        } catch (StorageException | IOException e) {
+        Table<Integer, Integer, URI> remoteResults = Tables.synchronizedTable(HashBasedTable.create());
+        var firstError = new AtomicReference<Exception>();
+
+        ThreadUtil.forEachInParallel(
+                localResults.cellSet(), _propertiesUtil.getS3UploadThreadCount(),
+                entry -> {
+                    if (firstError.get() != null) {
+                        // Once an upload fails, the remaining artifacts are stored locally.
+                        return;
+                    }
+                    try {
+                        URI remoteUri = putInS3IfAbsent(Paths.get(entry.getValue()), combinedProperties);
+                        remoteResults.put(entry.getRowKey(), entry.getColumnKey(), remoteUri);
+                    }
+                    catch (StorageException | IOException e) {
+                        firstError.compareAndSet(null, e);
+                    }
+                });
+
+        Exception e = firstError.get();
+        if (e != null) {
             LOG.error(String.format("An error occurred while uploading artifacts for job %d and media %d. "
                     + "They will be stored locally instead.", request.getJobId(), request.getMediaId()), e);
             _inProgressJobs.addWarning(request.getJobId(), request.getMediaId(), IssueCodes.REMOTE_STORAGE,
@@ -294,7 +334,20 @@ public class S3StorageBackend implements StorageBackend {
 
 
     private URI putInS3IfAbsent(Path path, Function<String, String> properties) throws IOException, StorageException {
-        String hash = hashExistingFile(path);
+        if (Files.size(path) <= MAX_IN_MEMORY_UPLOAD_SIZE && !useMultipartUpload(path)) {
+            byte[] content = Files.readAllBytes(path);
+            return putInS3IfAbsent(path, DigestUtils.sha256Hex(content), content, properties);
+        }
+        return putInS3IfAbsent(path, hashExistingFile(path), null, properties);
+    }
+
+
+    /**
+     * Uploads the file to S3 using its SHA-256 hash as the object key, unless the object already exists.
+     * When content is not null, it must contain the file's bytes, and it is uploaded instead of re-reading the file.
+     */
+    private URI putInS3IfAbsent(Path path, String hash, byte[] content, Function<String, String> properties)
+            throws IOException, StorageException {
         String objectName = getObjectName(hash);
         URI bucketUri = URI.create(properties.apply(MpfConstants.S3_RESULTS_BUCKET_PROPERTY));
         String resultsBucket = getResultsBucketName(bucketUri);
@@ -309,7 +362,21 @@ public class S3StorageBackend implements StorageBackend {
                          path, bucketUri, objectName);
             }
             else {
-                s3Client.putObject(resultsBucket, objectName, path.toFile());
+                if (content != null) {
+                    var metadata = new ObjectMetadata();
+                    metadata.setContentLength(content.length);
+                    var putRequest = new PutObjectRequest(
+                            resultsBucket, objectName, new ByteArrayInputStream(content), metadata);
+                    // Allows the SDK to reset the stream when retrying.
+                    putRequest.getRequestClientOptions().setReadLimit(content.length + 1);
+                    s3Client.putObject(putRequest);
+                }
+                else if (useMultipartUpload(path)) {
+                    multipartUpload(s3Client, resultsBucket, objectName, path);
+                }
+                else {
+                    s3Client.putObject(resultsBucket, objectName, path.toFile());
+                }
                 LOG.info("Successfully stored \"{}\" in S3 bucket \"{}\" with object key \"{}\".",
                          path, bucketUri, objectName);
             }
@@ -329,6 +396,56 @@ public class S3StorageBackend implements StorageBackend {
     }
 
 
+    private boolean useMultipartUpload(Path path) throws IOException {
+        long multipartThreshold = _propertiesUtil.getS3MultipartUploadThreshold();
+        return multipartThreshold > 0 && Files.size(path) >= multipartThreshold;
+    }
+
+
+    private void multipartUpload(AmazonS3 s3Client, String bucket, String objectName, Path path)
+            throws IOException {
+        long fileSize = Files.size(path);
+        long partSize = Math.max(1, _propertiesUtil.getS3MultipartUploadPartSize());
+        int partCount = (int) ((fileSize + partSize - 1) / partSize);
+
+        String uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, objectName))
+                .getUploadId();
+        LOG.info("Uploading \"{}\" to S3 object key \"{}\" in {} parts with upload id \"{}\".",
+                 path, objectName, partCount, uploadId);
+        try {
+            var partETags = Collections.synchronizedList(new ArrayList<PartETag>(partCount));
+            List<Long> partOffsets = LongStream.range(0, partCount)
+                    .mapToObj(i -> i * partSize)
+                    .collect(Collectors.toList());
+
+            ThreadUtil.forEachInParallel(
+                    partOffsets, _propertiesUtil.getS3UploadThreadCount(),
+                    offset -> partETags.add(s3Client.uploadPart(new UploadPartRequest()
+                            .withBucketName(bucket)
+                            .withKey(objectName)
+                            .withUploadId(uploadId)
+                            .withPartNumber((int) (offset / partSize) + 1)
+                            .withFile(path.toFile())
+                            .withFileOffset(offset)
+                            .withPartSize(Math.min(partSize, fileSize - offset)))
+                        .getPartETag()));
+
+            partETags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+            s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(
+                    bucket, objectName, uploadId, partETags));
+        }
+        catch (SdkClientException e) {
+            try {
+                s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, objectName, uploadId));
+            }
+            catch (SdkClientException abortException) {
+                e.addSuppressed(abortException);
+            }
+            throw e;
+        }
+    }
+
+
     private static String hashExistingFile(Path path) throws IOException {
         try (InputStream is = Files.newInputStream(path)) {
             return DigestUtils.sha256Hex(is);
@@ -348,22 +465,32 @@ public class S3StorageBackend implements StorageBackend {
         return getS3Client(endpoint, _propertiesUtil.getRemoteMediaDownloadRetries(), properties);
     }
 
-    private AmazonS3 getS3UploadClient(Function<String, String> properties) throws StorageException {
+    AmazonS3 getS3UploadClient(Function<String, String> properties) throws StorageException {
         String endpoint = getS3Endpoint(properties.apply(MpfConstants.S3_RESULTS_BUCKET_PROPERTY));
         return getS3Client(endpoint, _propertiesUtil.getHttpStorageUploadRetryCount(), properties);
 
     }
 
-    private static AmazonS3 getS3Client(String endpoint, int retryCount, Function<String, String> properties) {
-        AWSCredentials credentials = new BasicAWSCredentials(
+    private AmazonS3 getS3Client(String endpoint, int retryCount, Function<String, String> properties) {
+        return _clientCache.getUnchecked(new ClientKey(
+                endpoint,
                 properties.apply(MpfConstants.S3_ACCESS_KEY_PROPERTY),
-                properties.apply(MpfConstants.S3_SECRET_KEY_PROPERTY));
+                properties.apply(MpfConstants.S3_SECRET_KEY_PROPERTY),
+                retryCount));
+    }
+
+
+    private static AmazonS3 createS3Client(ClientKey key) {
+        AWSCredentials credentials = new BasicAWSCredentials(key.accessKey, key.secretKey);
 
         ClientConfiguration clientConfig = new ClientConfiguration();
-        clientConfig.setMaxErrorRetry(retryCount);
+        clientConfig.setMaxErrorRetry(key.retryCount);
+        // The idle connection reaper keeps a static reference to each client's connection pool until the client is
+        // shut down, which would prevent clients removed from _clientCache from being garbage collected.
+        clientConfig.setUseReaper(false);
 
         AwsClientBuilder.EndpointConfiguration endpointConfiguration = new AwsClientBuilder.EndpointConfiguration(
-                endpoint, Regions.US_EAST_1.name());
+                key.endpoint, Regions.US_EAST_1.name());
 
         return AmazonS3ClientBuilder
                 .standard()
@@ -411,4 +538,42 @@ public class S3StorageBackend implements StorageBackend {
                 : path.substring(1, slash2Pos);
     }
 
+
+    @Override
+    public void close() {
+        _clientCache.asMap().values().forEach(AmazonS3::shutdown);
+        _clientCache.invalidateAll();
+    }
+
+
+    private static final class ClientKey {
+        private final String endpoint;
+        private final String accessKey;
+        private final String secretKey;
+        private final int retryCount;
+
+        ClientKey(String endpoint, String accessKey, String secretKey, int retryCount) {
+            this.endpoint = endpoint;
+            this.accessKey = accessKey;
+            this.secretKey = secretKey;
+            this.retryCount = retryCount;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ClientKey)) {
+                return false;
+            }
+            var other = (ClientKey) obj;
+            return retryCount == other.retryCount
+                    && Objects.equals(endpoint, other.endpoint)
+                    && Objects.equals(accessKey, other.accessKey)
+                    && Objects.equals(secretKey, other.secretKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(endpoint, accessKey, secretKey, retryCount);
+        }
+    }
 }
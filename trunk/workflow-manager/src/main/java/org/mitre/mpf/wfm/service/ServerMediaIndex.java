@@ -0,0 +1,588 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.mitre.mpf.mvc.model.DirectoryTreeNode;
+import org.mitre.mpf.mvc.model.ServerMediaFile;
+import org.mitre.mpf.mvc.model.ServerMediaFilteredListing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * An in-memory index of the directories and file names under the server media root.
+ *
+ * Directories are listed one level at a time, either by the background scan started with {@link #start()} or when a
+ * request needs a directory that has not been listed yet. Once a directory has been listed, it is registered with a
+ * {@link WatchService} and kept up to date from the watch events, so later requests do not touch the file system.
+ * Only file names are stored. MIME types are detected the first time they are needed and then cached until the file
+ * changes. Real paths are only resolved for the files that are actually returned.
+ *
+ * The directory tree is built only from the directories that have already been listed, using the file counts computed
+ * on the scan thread, so getting the tree never waits for the file system. Directories that have not been listed or
+ * counted yet are marked as pending.
+ *
+ * Some file systems, like NFS mounts, do not report changes made by other hosts, and the number of directories that
+ * can be watched is limited by the OS. {@link #refresh()} and {@link #rescanDirectory(Path)} are used to pick up
+ * changes that the watch service missed.
+ */
+public class ServerMediaIndex implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ServerMediaIndex.class);
+
+    // Makes 'A' come before 'B', and 'A' come before 'a'.
+    private static final Comparator<String> NAME_ORDER
+            = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    private final Path _root;
+
+    private final Function<Path, String> _mimeTypeDetector;
+
+    private final Predicate<String> _isApprovedContentType;
+
+    private final Map<Path, DirectoryEntry> _directories = new ConcurrentHashMap<>();
+
+    private final Map<WatchKey, Path> _watchedDirectories = new ConcurrentHashMap<>();
+
+    private final WatchService _watchService;
+
+    private final ExecutorService _scanExecutor;
+
+    private final Thread _watchThread;
+
+    private volatile boolean _watchLimitReached;
+
+
+    public ServerMediaIndex(Path root, Function<Path, String> mimeTypeDetector,
+                            Predicate<String> isApprovedContentType) {
+        _root = root.toAbsolutePath().normalize();
+        _mimeTypeDetector = mimeTypeDetector;
+        _isApprovedContentType = isApprovedContentType;
+        _watchService = createWatchService(_root);
+        _scanExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("server-media-scanner").setDaemon(true).build());
+        _watchThread = new ThreadFactoryBuilder().setNameFormat("server-media-watcher").setDaemon(true).build()
+                .newThread(this::processWatchEvents);
+    }
+
+
+    /** Starts processing watch events and scanning the whole tree in the background. */
+    public void start() {
+        if (_watchService != null) {
+            _watchThread.start();
+        }
+        _scanExecutor.execute(() -> scanTree(_root, false));
+    }
+
+
+    /**
+     * Lists every directory again in the background. Directories that have not been listed yet are left to be listed
+     * when they are needed.
+     */
+    public void refresh() {
+        _scanExecutor.execute(() -> scanTree(_root, true));
+    }
+
+
+    @Override
+    public void close() {
+        _scanExecutor.shutdownNow();
+        _watchThread.interrupt();
+        if (_watchService != null) {
+            try {
+                _watchService.close();
+            }
+            catch (IOException e) {
+                LOG.warn("Failed to close the server media watch service.", e);
+            }
+        }
+    }
+
+
+    public DirectoryTreeNode getDirectoryTree(String uploadDir) {
+        // Only the root is listed here if the background scan has not reached it yet, so that the tree is not empty.
+        scanDirectory(_directories.computeIfAbsent(_root, DirectoryEntry::new), false);
+        return createTreeNode(_root, uploadDir);
+    }
+
+
+    /**
+     * Gets one page of the approved media files directly in the directory. Only the file names in the directory are
+     * examined to get the counts. {@link ServerMediaFile}s are only created for the files on the requested page.
+     */
+    public ServerMediaFilteredListing getFilesPage(Path directory, int draw, int start, int length, String search) {
+        Optional<DirectoryEntry> optEntry = getListedDirectory(directory);
+        if (optEntry.isEmpty()) {
+            return new ServerMediaFilteredListing(draw, 0, 0, List.of());
+        }
+        DirectoryEntry entry = optEntry.get();
+        String lowerCaseSearch = search == null || search.isEmpty() ? null : search.toLowerCase();
+
+        int matchCount = 0;
+        var pageFiles = new LinkedHashMap<String, String>();
+        synchronized (entry) {
+            for (Map.Entry<String, String> file : entry.files.entrySet()) {
+                String mimeType = getMimeType(entry, file);
+                if (!_isApprovedContentType.test(mimeType)) {
+                    continue;
+                }
+                if (lowerCaseSearch != null && !file.getKey().toLowerCase().contains(lowerCaseSearch)) {
+                    continue;
+                }
+                if (matchCount >= start && matchCount - start < length) {
+                    pageFiles.put(file.getKey(), mimeType);
+                }
+                matchCount++;
+            }
+        }
+
+        var mediaFiles = new ArrayList<ServerMediaFile>(pageFiles.size());
+        pageFiles.forEach((name, mimeType) -> createMediaFile(entry.path, name, mimeType).ifPresent(mediaFiles::add));
+        return new ServerMediaFilteredListing(draw, matchCount, matchCount, mediaFiles);
+    }
+
+
+    /** Gets all of the approved media files in the directory and, optionally, its subdirectories. */
+    public List<ServerMediaFile> getFiles(Path directory, boolean recurse) {
+        var mediaFiles = new ArrayList<ServerMediaFile>();
+        var toVisit = new ArrayDeque<Path>();
+        toVisit.add(directory);
+        while (!toVisit.isEmpty()) {
+            Optional<DirectoryEntry> optEntry = getListedDirectory(toVisit.removeFirst());
+            if (optEntry.isEmpty()) {
+                continue;
+            }
+            DirectoryEntry entry = optEntry.get();
+            var approvedFiles = new LinkedHashMap<String, String>();
+            synchronized (entry) {
+                for (Map.Entry<String, String> file : entry.files.entrySet()) {
+                    String mimeType = getMimeType(entry, file);
+                    if (_isApprovedContentType.test(mimeType)) {
+                        approvedFiles.put(file.getKey(), mimeType);
+                    }
+                }
+                if (recurse) {
+                    entry.subdirectories.forEach(name -> toVisit.add(entry.path.resolve(name)));
+                }
+            }
+            approvedFiles.forEach((name, mimeType) -> createMediaFile(entry.path, name, mimeType)
+                    .ifPresent(mediaFiles::add));
+        }
+        return mediaFiles;
+    }
+
+
+    /**
+     * Lists the directory again, and the directories under it when {@code recurse} is true, in the calling thread.
+     */
+    public void rescanDirectory(Path directory, boolean recurse) {
+        Path normalized = normalize(directory);
+        if (normalized.startsWith(_root)) {
+            if (recurse) {
+                scanTree(normalized, true);
+            }
+            else {
+                scanDirectory(_directories.computeIfAbsent(normalized, DirectoryEntry::new), true);
+            }
+        }
+    }
+
+
+    /**
+     * Adds a file that was just written by the workflow manager, so that it is listed right away rather than after
+     * the watch service reports it.
+     */
+    public void addFile(Path file) {
+        Path normalized = normalize(file);
+        DirectoryEntry entry = _directories.get(normalized.getParent());
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (entry.listed) {
+                entry.files.put(normalized.getFileName().toString(), null);
+                invalidateFileCount(entry);
+            }
+        }
+    }
+
+
+    /** Adds a directory that was just created by the workflow manager. */
+    public void addDirectory(Path directory) {
+        Path normalized = normalize(directory);
+        DirectoryEntry entry = _directories.get(normalized.getParent());
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (entry.listed) {
+                entry.subdirectories.add(normalized.getFileName().toString());
+            }
+        }
+    }
+
+
+    private DirectoryTreeNode createTreeNode(Path directory, String uploadDir) {
+        var node = new DirectoryTreeNode(directory.toFile());
+        node.setCanUpload(directory.toString().startsWith(uploadDir));
+
+        DirectoryEntry entry = _directories.get(directory);
+        List<String> subdirectories;
+        if (entry == null) {
+            node.setPending(true);
+            return node;
+        }
+        synchronized (entry) {
+            if (!entry.listed) {
+                node.setPending(true);
+                return node;
+            }
+            subdirectories = new ArrayList<>(entry.subdirectories);
+            node.setFileCount(Math.max(entry.approvedFileCount, 0));
+            node.setPending(entry.approvedFileCount < 0);
+        }
+
+        if (!subdirectories.isEmpty()) {
+            var children = new ArrayList<DirectoryTreeNode>(subdirectories.size());
+            for (String name : subdirectories) {
+                children.add(createTreeNode(directory.resolve(name), uploadDir));
+            }
+            // Leave nodes null so that a + isn't shown for this node in the directory tree.
+            node.setNodes(children);
+        }
+        return node;
+    }
+
+
+    private Optional<DirectoryEntry> getListedDirectory(Path directory) {
+        Path normalized = normalize(directory);
+        if (!normalized.startsWith(_root)) {
+            return Optional.empty();
+        }
+        DirectoryEntry entry = _directories.computeIfAbsent(normalized, DirectoryEntry::new);
+        scanDirectory(entry, false);
+        return Optional.of(entry);
+    }
+
+
+    private void scanTree(Path directory, boolean relist) {
+        var toVisit = new ArrayDeque<Path>();
+        toVisit.add(directory);
+        while (!toVisit.isEmpty() && !Thread.currentThread().isInterrupted()) {
+            DirectoryEntry entry = _directories.computeIfAbsent(toVisit.removeFirst(), DirectoryEntry::new);
+            scanDirectory(entry, relist);
+            synchronized (entry) {
+                entry.subdirectories.forEach(name -> toVisit.add(entry.path.resolve(name)));
+            }
+        }
+    }
+
+
+    private void scanDirectory(DirectoryEntry entry, boolean relist) {
+        synchronized (entry) {
+            if (entry.listed && !relist) {
+                return;
+            }
+            // Start watching before listing so that changes made while the directory is being listed are not missed.
+            watch(entry);
+
+            var subdirectories = new TreeSet<>(NAME_ORDER);
+            var files = new TreeMap<String, String>(NAME_ORDER);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(entry.path)) {
+                for (Path child : stream) {
+                    String name = child.getFileName().toString();
+                    if (Files.isDirectory(child)) {
+                        if (!isSymbolicLinkCycle(child)) {
+                            subdirectories.add(name);
+                        }
+                    }
+                    else if (Files.isRegularFile(child)) {
+                        // Keep the MIME types that were already detected.
+                        files.put(name, entry.files.get(name));
+                    }
+                }
+            }
+            catch (IOException e) {
+                LOG.error("Error listing directory {}: {}", entry.path, e.getMessage());
+            }
+
+            for (String name : entry.subdirectories) {
+                if (!subdirectories.contains(name)) {
+                    removeTree(entry.path.resolve(name));
+                }
+            }
+            entry.subdirectories = subdirectories;
+            entry.files = files;
+            entry.listed = true;
+            invalidateFileCount(entry);
+        }
+    }
+
+
+    private void watch(DirectoryEntry entry) {
+        if (_watchService == null || entry.watchKey != null || _watchLimitReached) {
+            return;
+        }
+        try {
+            entry.watchKey = entry.path.register(_watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            _watchedDirectories.put(entry.watchKey, entry.path);
+        }
+        catch (NoSuchFileException e) {
+            // The directory does not exist, so listing it will fail too.
+        }
+        catch (IOException e) {
+            _watchLimitReached = true;
+            LOG.warn("Unable to watch {} for changes, so no more server media directories will be watched. " +
+                             "Use the refresh button to see changes to the unwatched directories: {}",
+                     entry.path, e.getMessage());
+        }
+    }
+
+
+    // Symbolic links to one of the link's own ancestors are skipped to prevent infinite loops. It is okay for two
+    // separate branches of the tree to link to the same directory.
+    private boolean isSymbolicLinkCycle(Path directory) {
+        if (!Files.isSymbolicLink(directory)) {
+            return false;
+        }
+        try {
+            Path realPath = directory.toRealPath();
+            for (Path ancestor = directory.getParent(); ancestor != null && ancestor.startsWith(_root);
+                     ancestor = ancestor.getParent()) {
+                if (realPath.equals(ancestor.toRealPath())) {
+                    LOG.warn("Omitting symbolically linked directory that links to its own ancestor: {} --> {}",
+                             directory, realPath);
+                    return true;
+                }
+            }
+            return false;
+        }
+        catch (IOException e) {
+            LOG.error("Error determining real path: {}", e.getMessage());
+            return true;
+        }
+    }
+
+
+    private void removeTree(Path directory) {
+        DirectoryEntry entry = _directories.remove(directory);
+        if (entry == null) {
+            return;
+        }
+        List<String> subdirectories;
+        synchronized (entry) {
+            if (entry.watchKey != null) {
+                entry.watchKey.cancel();
+                _watchedDirectories.remove(entry.watchKey);
+            }
+            subdirectories = new ArrayList<>(entry.subdirectories);
+        }
+        for (String name : subdirectories) {
+            removeTree(directory.resolve(name));
+        }
+    }
+
+
+    private void processWatchEvents() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = _watchService.take();
+            }
+            catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path directory = _watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (directory != null) {
+                    try {
+                        handleWatchEvent(directory, event);
+                    }
+                    catch (Exception e) {
+                        LOG.error("Failed to update the server media index for a change to " + directory, e);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                // The directory was deleted or is no longer accessible.
+                _watchedDirectories.remove(key);
+            }
+        }
+    }
+
+
+    private void handleWatchEvent(Path directory, WatchEvent<?> event) {
+        DirectoryEntry entry = _directories.get(directory);
+        if (entry == null) {
+            return;
+        }
+        if (event.kind() == OVERFLOW) {
+            scanDirectory(entry, true);
+            return;
+        }
+
+        String name = event.context().toString();
+        Path child = directory.resolve(name);
+        synchronized (entry) {
+            if (event.kind() == ENTRY_CREATE) {
+                if (Files.isDirectory(child)) {
+                    if (!isSymbolicLinkCycle(child)) {
+                        entry.subdirectories.add(name);
+                    }
+                }
+                else if (Files.isRegularFile(child)) {
+                    entry.files.put(name, null);
+                }
+            }
+            else if (event.kind() == ENTRY_DELETE) {
+                entry.files.remove(name);
+                if (entry.subdirectories.remove(name)) {
+                    removeTree(child);
+                }
+            }
+            else if (event.kind() == ENTRY_MODIFY && entry.files.containsKey(name)) {
+                // Detect the MIME type again the next time it is needed.
+                entry.files.put(name, null);
+            }
+            invalidateFileCount(entry);
+        }
+    }
+
+
+    // Must be called while holding the entry's lock.
+    private String getMimeType(DirectoryEntry entry, Map.Entry<String, String> file) {
+        String mimeType = file.getValue();
+        if (mimeType == null) {
+            mimeType = _mimeTypeDetector.apply(entry.path.resolve(file.getKey()));
+            file.setValue(mimeType);
+        }
+        return mimeType;
+    }
+
+
+    // Must be called while holding the entry's lock. The count is recomputed on the scan thread, because detecting
+    // the MIME types of a large directory is too slow to do while building the directory tree.
+    private void invalidateFileCount(DirectoryEntry entry) {
+        entry.approvedFileCount = -1;
+        if (entry.fileCountScheduled) {
+            return;
+        }
+        try {
+            _scanExecutor.execute(() -> countApprovedFiles(entry));
+            entry.fileCountScheduled = true;
+        }
+        catch (RejectedExecutionException e) {
+            // The index was closed.
+        }
+    }
+
+
+    private void countApprovedFiles(DirectoryEntry entry) {
+        synchronized (entry) {
+            entry.fileCountScheduled = false;
+            if (entry.approvedFileCount >= 0) {
+                return;
+            }
+            int count = 0;
+            for (Map.Entry<String, String> file : entry.files.entrySet()) {
+                if (_isApprovedContentType.test(getMimeType(entry, file))) {
+                    count++;
+                }
+            }
+            entry.approvedFileCount = count;
+        }
+    }
+
+
+    private static Optional<ServerMediaFile> createMediaFile(Path directory, String name, String mimeType) {
+        try {
+            // The file uses the real path so that symbolic links are resolved, but the directory is the path
+            // through the tree.
+            Path realPath = directory.resolve(name).toRealPath();
+            return Optional.of(new ServerMediaFile(realPath.toFile(), directory.toFile(), mimeType));
+        }
+        catch (IOException e) {
+            LOG.error("Error determining real path: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+
+    private static WatchService createWatchService(Path root) {
+        try {
+            return root.getFileSystem().newWatchService();
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            LOG.warn("Changes to the server media directory will only be seen after a refresh because a watch " +
+                             "service could not be created: {}", e.toString());
+            return null;
+        }
+    }
+
+
+
+    private static class DirectoryEntry {
+        final Path path;
+
+        // The fields below are guarded by this.
+        boolean listed;
+
+        NavigableSet<String> subdirectories = new TreeSet<>(NAME_ORDER);
+
+        // File name -> MIME type, or null when the MIME type has not been detected yet.
+        NavigableMap<String, String> files = new TreeMap<>(NAME_ORDER);
+
+        // -1 when the files have not been counted since the directory last changed.
+        int approvedFileCount = -1;
+
+        boolean fileCountScheduled;
+
+        WatchKey watchKey;
+
+        DirectoryEntry(Path path) {
+            this.path = path;
+        }
+    }
+}
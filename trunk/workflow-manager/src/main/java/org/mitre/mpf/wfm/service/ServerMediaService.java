@@ -28,25 +28,28 @@ package org.mitre.mpf.wfm.service;
 
 import org.mitre.mpf.mvc.model.DirectoryTreeNode;
 import org.mitre.mpf.mvc.model.ServerMediaFile;
+import org.mitre.mpf.mvc.model.ServerMediaFilteredListing;
 
-import javax.servlet.ServletContext;
 import java.io.File;
 import java.util.List;
 
 public interface ServerMediaService {
 
-	// NOTE: Since all users have access to the same directory structure, it is optimal to cache directory and
-	// file information at the application level (as opposed to the session level).
-	public static final String CACHED_DIRECTORY_STRUCTURE_PREFIX = "DirectoryStructure:";
-	public static final String CACHED_FILES_PREFIX = "Files:";
+	// NOTE: Since all users have access to the same directory structure, the directory and file information is
+	// indexed once at the application level (as opposed to the session level).
 
-	public DirectoryTreeNode getAllDirectories(String nodePath, ServletContext context, boolean useCache, String uploadDir);
+	public void startIndexing();
 
-	public List<ServerMediaFile> getFiles(DirectoryTreeNode node, ServletContext context, boolean useCache, boolean recurse);
+	public DirectoryTreeNode getAllDirectories(boolean useCache);
 
-	public List<ServerMediaFile> getFiles(String dirPath, ServletContext context, boolean useCache, boolean recurse);
+	public List<ServerMediaFile> getFiles(String dirPath, boolean useCache, boolean recurse);
 
-	public void addFilesToCache(String dirPath, List<File> files, ServletContext context);
+	public ServerMediaFilteredListing getFilesPage(String dirPath, int draw, int start, int length, String search,
+	                                               boolean useCache);
 
-	public void addFileToCache(String dirPath, File file, ServletContext context);
-}
\ No newline at end of file
+	public void addFiles(List<File> files);
+
+	public void addFile(File file);
+
+	public void addDirectory(File directory);
+}
@@ -28,25 +28,20 @@ package org.mitre.mpf.wfm.service;
 
 import org.mitre.mpf.mvc.model.DirectoryTreeNode;
 import org.mitre.mpf.mvc.model.ServerMediaFile;
-import org.mitre.mpf.mvc.model.ServerMediaListing;
+import org.mitre.mpf.mvc.model.ServerMediaFilteredListing;
 import org.mitre.mpf.wfm.util.IoUtils;
 import org.mitre.mpf.wfm.util.PropertiesUtil;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import javax.servlet.ServletContext;
+import javax.annotation.PostConstruct;
 import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 
 @Service
-public class ServerMediaServiceImpl implements ServerMediaService {
-
-	private static final Logger log = LoggerFactory.getLogger(ServerMediaServiceImpl.class);
+public class ServerMediaServiceImpl implements ServerMediaService, AutoCloseable {
 
 	@Autowired
 	private PropertiesUtil propertiesUtil;
@@ -54,115 +49,66 @@ public class ServerMediaServiceImpl implements ServerMediaService {
 	@Autowired
 	private IoUtils ioUtils;
 
-	public DirectoryTreeNode getAllDirectories(String nodePath, ServletContext context, boolean useCache, String uploadDir){
-		// attempt to get attribute from application scope
-		String attributeName = CACHED_DIRECTORY_STRUCTURE_PREFIX + nodePath;
+	private ServerMediaIndex index;
 
-		if(context.getAttribute(attributeName) != null && useCache){
-			log.debug("Using cached directory structure: " + nodePath);
-			return (DirectoryTreeNode)context.getAttribute(attributeName);
-		}
+	@PostConstruct
+	public void init() {
+		index = new ServerMediaIndex(Paths.get(propertiesUtil.getServerMediaTreeRoot()),
+		                             p -> ioUtils.getMimeType(p.toString()),
+		                             ioUtils::isApprovedContentType);
+	}
 
-		// update cache
-		DirectoryTreeNode node = DirectoryTreeNode.fillDirectoryTree(new DirectoryTreeNode(new File(nodePath)), new ArrayList<DirectoryTreeNode>(), uploadDir);
-		context.setAttribute(attributeName, node);
+	@Override
+	public void close() {
+		index.close();
+	}
 
-		return node;
+	@Override
+	public void startIndexing() {
+		index.start();
 	}
 
-	public List<ServerMediaFile> getFiles(DirectoryTreeNode node, ServletContext context, boolean useCache, boolean recurse) {
-		List<ServerMediaFile> mediaFiles = new ArrayList<>();
-		File dir = new File(node.getFullPath());
-
-		// attempt to get attribute from application scope
-		String attributeName = CACHED_FILES_PREFIX + node.getFullPath();
-
-		if (context.getAttribute(attributeName) != null && useCache){
-			log.debug("Using cached file listing: " + node.getFullPath());
-			ServerMediaListing listing = (ServerMediaListing)context.getAttribute(attributeName);
-			mediaFiles.addAll(listing.getData());
-		} else {
-			File[] tmpFiles = dir.listFiles(File::isFile);
-
-			List<File> files = new ArrayList<>(); // use real paths
-			List<File> parents = new ArrayList<>(); // use absolute paths
-			for (int i = 0; i < tmpFiles.length; i++) {
-				try {
-					files.add(tmpFiles[i].toPath().toRealPath().toFile()); // resolve symbolic links
-					parents.add(tmpFiles[i].getParentFile());
-				} catch (IOException e) {
-					log.error("Error determining real path: " + e.getMessage());
-				}
-			}
-
-			// filter by approved list of content type
-			List<File> filesFiltered = new ArrayList<>();
-			List<File> parentsFiltered = new ArrayList<>();
-			for (int i = 0; i < files.size(); i++) {
-				if (ioUtils.isApprovedFile(files.get(i))) {
-					filesFiltered.add(files.get(i));
-					parentsFiltered.add(parents.get(i));
-				}
-			}
-			files = filesFiltered;
-			parents = parentsFiltered;
-
-			// build output
-			for (int i = 0; i < files.size(); i++) {
-				// file should have real path, parent should have absolute path
-				mediaFiles.add(new ServerMediaFile(files.get(i), parents.get(i), ioUtils.getMimeType(files.get(i).getAbsolutePath())));
-			}
-
-			// update cache
-			ServerMediaListing listing = new ServerMediaListing(mediaFiles);
-			context.setAttribute(attributeName, listing);
+	@Override
+	public DirectoryTreeNode getAllDirectories(boolean useCache) {
+		if (!useCache) {
+			// The index is kept up to date by watching the file system, so a full rescan is only needed to pick up
+			// changes the watch service can not see. Do it in the background so that the tree is returned right away.
+			index.refresh();
 		}
+		return index.getDirectoryTree(propertiesUtil.getRemoteMediaDirectory().getAbsolutePath());
+	}
 
-		// recurse
-		if (recurse && node.getNodes() != null) {
-			for (DirectoryTreeNode subnode : node.getNodes()) {
-				mediaFiles.addAll(getFiles(subnode, context, useCache, recurse));
-			}
+	@Override
+	public List<ServerMediaFile> getFiles(String dirPath, boolean useCache, boolean recurse) {
+		Path dir = Paths.get(dirPath);
+		if (!useCache) {
+			index.rescanDirectory(dir, recurse);
 		}
+		return index.getFiles(dir, recurse);
+	}
 
-		return mediaFiles;
+	@Override
+	public ServerMediaFilteredListing getFilesPage(String dirPath, int draw, int start, int length, String search,
+	                                               boolean useCache) {
+		Path dir = Paths.get(dirPath);
+		if (!useCache) {
+			index.rescanDirectory(dir, false);
+		}
+		return index.getFilesPage(dir, draw, start, length, search);
 	}
 
-	public List<ServerMediaFile> getFiles(String dirPath, ServletContext context, boolean useCache, boolean recurse) {
-		DirectoryTreeNode node = getAllDirectories(propertiesUtil.getServerMediaTreeRoot(), context,
-				useCache, propertiesUtil.getRemoteMediaDirectory().getAbsolutePath());
-		node = DirectoryTreeNode.find(node, dirPath);
-		return getFiles(node, context, useCache, recurse);
+	@Override
+	public void addFiles(List<File> files) {
+		files.forEach(this::addFile);
 	}
 
-	public void addFilesToCache(String dirPath, List<File> files, ServletContext context) {
-		if (files.isEmpty()) return;
-
-		// attempt to get attribute from application scope
-		String attributeName = CACHED_FILES_PREFIX + dirPath;
-
-		// update cache if it exists; else do nothing
-		if (context.getAttribute(attributeName) != null){
-			ServerMediaListing oldListing = (ServerMediaListing)context.getAttribute(attributeName);
-			List<ServerMediaFile> mediaFiles = new ArrayList<>(oldListing.getData());
-
-			for (File file : files) {
-				try {
-					File realFile = file.toPath().toRealPath().toFile(); // use real path
-					File parent = file.getParentFile(); // use absolute path
-					mediaFiles.add(new ServerMediaFile(realFile, parent, ioUtils.getMimeType(realFile.getAbsolutePath())));
-				} catch (IOException e) {
-					log.error("Error determining real path: " + e.getMessage());
-				}
-			}
-
-			// update cache
-			ServerMediaListing newListing = new ServerMediaListing(mediaFiles);
-			context.setAttribute(attributeName, newListing);
-		}
+	@Override
+	public void addFile(File file) {
+		index.addFile(file.toPath());
 	}
 
-	public void addFileToCache(String dirPath, File file, ServletContext context) {
-		addFilesToCache(dirPath, Arrays.asList(file), context);
+	@Override
+	public void addDirectory(File directory) {
+		index.addDirectory(directory.toPath());
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,453 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append-only file that records the callbacks that have not been delivered yet, so that they can be sent after the
+ * Workflow Manager restarts.
+ *
+ * Each record is written as [length][CRC32][type][id][payload]. A single writer thread drains every record that has
+ * been queued since its last write, writes them together, and then forces them to disk once, so many concurrent
+ * callbacks share one fsync. When the journal is opened, records are read until the end of the file or until the
+ * first record that was only partially written or fails its checksum. The file is rewritten so that it only contains
+ * the undelivered callbacks when it is opened and whenever delivered callbacks make up most of the file.
+ */
+public class CallbackJournal implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CallbackJournal.class);
+
+    public static final String FILE_NAME = "callbacks.journal";
+
+    private static final byte ADD_RECORD = 1;
+
+    private static final byte REMOVE_RECORD = 2;
+
+    // length + crc
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    // type + id
+    private static final int MIN_RECORD_BODY_SIZE = 9;
+
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 1000;
+
+    private static final PendingWrite CLOSE_MARKER = new PendingWrite(-1, null, false);
+
+
+    private final Path _journalPath;
+
+    private final AtomicLong _nextId;
+
+    private final BlockingQueue<PendingWrite> _writeQueue = new LinkedBlockingQueue<>();
+
+    private final Thread _writerThread;
+
+    private boolean _closed;
+
+    // Only accessed from the writer thread after the constructor returns.
+    private FileChannel _channel;
+
+    // Only accessed from the writer thread after the constructor returns.
+    private final Map<Long, byte[]> _liveRecords = new LinkedHashMap<>();
+
+    // Only accessed from the writer thread after the constructor returns.
+    private int _recordCount;
+
+    // Only accessed from the writer thread.
+    private boolean _compactionRequired;
+
+    private Map<Long, CallbackRequest> _replayedCallbacks;
+
+
+    public CallbackJournal(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        _journalPath = directory.resolve(FILE_NAME);
+
+        _replayedCallbacks = readJournal();
+        _nextId = new AtomicLong(_liveRecords.keySet().stream().mapToLong(id -> id + 1).max().orElse(1));
+        compact();
+        if (!_replayedCallbacks.isEmpty()) {
+            LOG.info("Found {} undelivered callback(s) in {}.", _replayedCallbacks.size(), _journalPath);
+        }
+
+        _writerThread = new Thread(this::runWriter, "callback-journal-writer");
+        _writerThread.setDaemon(true);
+        _writerThread.start();
+    }
+
+
+    /**
+     * Returns the callbacks that were still pending when the journal was last closed. Each callback is only returned
+     * once, so the caller is responsible for eventually calling {@link #remove(long)} with each of the ids.
+     */
+    public synchronized Map<Long, CallbackRequest> takeReplayedCallbacks() {
+        var result = _replayedCallbacks;
+        _replayedCallbacks = Map.of();
+        return result;
+    }
+
+
+    /**
+     * Adds a callback to the journal.
+     * @return A future that completes with the callback's journal id once the callback has been forced to disk.
+     */
+    public CompletableFuture<Long> add(CallbackRequest request) {
+        long id = _nextId.getAndIncrement();
+        var write = new PendingWrite(id, encodeAdd(id, request), true);
+        enqueue(write);
+        return write.future.thenApply(x -> id);
+    }
+
+
+    /**
+     * Records that a callback has either been delivered or will never be delivered. This is not forced to disk, so
+     * if the process crashes shortly after, the callback may be sent again after a restart.
+     */
+    public void remove(long id) {
+        var write = new PendingWrite(id, encodeRemove(id), false);
+        enqueue(write);
+        write.future.exceptionally(e -> {
+            LOG.warn("Failed to remove callback {} from {}: {}", id, _journalPath, e.getMessage());
+            return null;
+        });
+    }
+
+
+    private synchronized void enqueue(PendingWrite write) {
+        if (_closed) {
+            write.future.completeExceptionally(new IllegalStateException("The callback journal is closed."));
+        }
+        else {
+            _writeQueue.add(write);
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            _writeQueue.add(CLOSE_MARKER);
+        }
+        try {
+            _writerThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private void runWriter() {
+        var batch = new ArrayList<PendingWrite>();
+        boolean done = false;
+        while (!done) {
+            batch.clear();
+            try {
+                batch.add(_writeQueue.take());
+            }
+            catch (InterruptedException e) {
+                break;
+            }
+            _writeQueue.drainTo(batch);
+            done = batch.remove(CLOSE_MARKER);
+
+            try {
+                writeBatch(batch);
+                batch.forEach(w -> w.future.complete(null));
+            }
+            catch (Exception e) {
+                LOG.error("Failed to write to " + _journalPath, e);
+                batch.forEach(w -> w.future.completeExceptionally(e));
+            }
+
+            if (_recordCount > MIN_RECORDS_BEFORE_COMPACTION && _recordCount > 2 * _liveRecords.size()) {
+                try {
+                    compact();
+                }
+                catch (IOException e) {
+                    _compactionRequired = true;
+                    LOG.error("Failed to compact " + _journalPath, e);
+                }
+            }
+        }
+
+        try {
+            _channel.close();
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to close " + _journalPath, e);
+        }
+    }
+
+
+    private void writeBatch(List<PendingWrite> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (_compactionRequired) {
+            compact();
+        }
+
+        var buffers = new ByteBuffer[batch.size()];
+        boolean containsAdd = false;
+        for (int i = 0; i < batch.size(); i++) {
+            PendingWrite write = batch.get(i);
+            buffers[i] = ByteBuffer.wrap(write.record);
+            containsAdd |= write.isAdd;
+        }
+
+        long batchStart = _channel.size();
+        try {
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                _channel.write(buffers);
+            }
+            if (containsAdd) {
+                _channel.force(false);
+            }
+        }
+        catch (IOException e) {
+            discardFailedBatch(batchStart);
+            throw e;
+        }
+
+        // Only update the live records once the batch is on disk, so that a failed add is never written by a
+        // later compaction.
+        for (PendingWrite write : batch) {
+            if (write.isAdd) {
+                _liveRecords.put(write.id, write.record);
+            }
+            else {
+                _liveRecords.remove(write.id);
+            }
+        }
+        _recordCount += batch.size();
+    }
+
+
+    // When a batch fails part way through, a partially written record may be left at the end of the file. Since
+    // readJournal stops at the first bad record, every record appended after it would be lost on restart.
+    private void discardFailedBatch(long batchStart) {
+        try {
+            _channel.truncate(batchStart);
+            return;
+        }
+        catch (IOException e) {
+            LOG.warn(String.format("Failed to truncate %s to %s bytes. It will be compacted instead.",
+                                   _journalPath, batchStart), e);
+        }
+        try {
+            compact();
+        }
+        catch (IOException e) {
+            // Try again before the next batch is written.
+            _compactionRequired = true;
+            LOG.error("Failed to compact " + _journalPath, e);
+        }
+    }
+
+
+    // Rewrites the journal so that it only contains the callbacks that have not been removed.
+    private void compact() throws IOException {
+        Path tempPath = _journalPath.resolveSibling(FILE_NAME + ".tmp");
+        try (var tempChannel = FileChannel.open(tempPath, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            for (byte[] record : _liveRecords.values()) {
+                var buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    tempChannel.write(buffer);
+                }
+            }
+            tempChannel.force(true);
+        }
+
+        if (_channel != null) {
+            _channel.close();
+        }
+        Files.move(tempPath, _journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        _channel = FileChannel.open(_journalPath, WRITE, APPEND);
+        _recordCount = _liveRecords.size();
+        _compactionRequired = false;
+    }
+
+
+    private Map<Long, CallbackRequest> readJournal() throws IOException {
+        if (!Files.exists(_journalPath)) {
+            return Map.of();
+        }
+        var buffer = ByteBuffer.wrap(Files.readAllBytes(_journalPath));
+        var crc = new CRC32();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int recordStart = buffer.position();
+            int length = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+            if (length < MIN_RECORD_BODY_SIZE || length > buffer.remaining()) {
+                LOG.warn("Ignoring partially written record at position {} in {}.", recordStart, _journalPath);
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            if ((int) crc.getValue() != expectedCrc) {
+                LOG.warn("Ignoring the contents of {} after position {} because the record there is corrupt.",
+                         _journalPath, recordStart);
+                break;
+            }
+
+            byte type = buffer.get();
+            long id = buffer.getLong();
+            int payloadEnd = recordStart + RECORD_HEADER_SIZE + length;
+            if (type == ADD_RECORD) {
+                _liveRecords.put(id, Arrays.copyOfRange(buffer.array(), recordStart, payloadEnd));
+            }
+            else {
+                _liveRecords.remove(id);
+            }
+            buffer.position(payloadEnd);
+        }
+
+        var result = new LinkedHashMap<Long, CallbackRequest>();
+        for (var iter = _liveRecords.entrySet().iterator(); iter.hasNext(); ) {
+            var entry = iter.next();
+            try {
+                result.put(entry.getKey(), decodeAdd(entry.getValue()));
+            }
+            catch (BufferUnderflowException | IllegalArgumentException e) {
+                LOG.warn("Discarding undecodable callback {} in {}.", entry.getKey(), _journalPath);
+                iter.remove();
+            }
+        }
+        return result;
+    }
+
+
+    private static byte[] encodeAdd(long id, CallbackRequest request) {
+        try {
+            var bytesOut = new ByteArrayOutputStream();
+            var dataOut = new DataOutputStream(bytesOut);
+            dataOut.writeUTF(request.getMethod());
+            dataOut.writeUTF(request.getUri().toASCIIString());
+            byte[] body = request.getBody().orElse(null);
+            if (body == null) {
+                dataOut.writeInt(-1);
+            }
+            else {
+                dataOut.writeInt(body.length);
+                dataOut.write(body);
+            }
+            return encodeRecord(ADD_RECORD, id, bytesOut.toByteArray());
+        }
+        catch (IOException e) {
+            // ByteArrayOutputStream doesn't actually throw.
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static byte[] encodeRemove(long id) {
+        return encodeRecord(REMOVE_RECORD, id, new byte[0]);
+    }
+
+
+    private static byte[] encodeRecord(byte type, long id, byte[] payload) {
+        int length = MIN_RECORD_BODY_SIZE + payload.length;
+        var buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        buffer.putInt(length);
+        buffer.putInt(0); // Placeholder for CRC.
+        buffer.put(type);
+        buffer.putLong(id);
+        buffer.put(payload);
+
+        var crc = new CRC32();
+        crc.update(buffer.array(), RECORD_HEADER_SIZE, length);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer.array();
+    }
+
+
+    private static CallbackRequest decodeAdd(byte[] record) {
+        var buffer = ByteBuffer.wrap(record);
+        buffer.position(RECORD_HEADER_SIZE + MIN_RECORD_BODY_SIZE);
+        String method = readUtf(buffer);
+        URI uri = URI.create(readUtf(buffer));
+        int bodyLength = buffer.getInt();
+        byte[] body = null;
+        if (bodyLength >= 0) {
+            body = new byte[bodyLength];
+            buffer.get(body);
+        }
+        return CallbackRequest.create(method, uri, body);
+    }
+
+
+    // Reads strings written with DataOutputStream.writeUTF. The modified UTF-8 that it writes is the same as
+    // standard UTF-8 for ASCII strings, which is all that is written here.
+    private static String readUtf(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+
+    private static class PendingWrite {
+        final long id;
+        final byte[] record;
+        final boolean isAdd;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingWrite(long id, byte[] record, boolean isAdd) {
+            this.id = id;
+            this.record = record;
+            this.isAdd = isAdd;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.util;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers callbacks with a bounded number of requests in flight.
+ *
+ * Callbacks wait in a queue for their host until both the host and the outbox as a whole have a free slot. Hosts
+ * with queued callbacks take turns, so a slow receiver only delays its own callbacks. Failed attempts are retried
+ * with exponential backoff, and the slot is released while waiting to retry.
+ *
+ * Durable callbacks are written to a {@link CallbackJournal} before the first attempt and are removed once they are
+ * delivered or out of attempts. Callbacks still in the journal when the outbox is opened again can be resent using
+ * {@link #resendPending(int)}. Health reports are not durable. Only the most recent health report for a URI and set of
+ * jobs is kept while waiting for a slot, since each report supersedes the previous one.
+ *
+ * Once the outbox is closed, callbacks that have not been delivered complete with a {@link CancellationException}.
+ * Durable callbacks stay in the journal, so they will be resent after a restart.
+ */
+public class CallbackOutbox implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CallbackOutbox.class);
+
+    private final HttpAsyncClient _httpClient;
+
+    private final CallbackJournal _journal;
+
+    private final int _maxInFlightPerHost;
+
+    private final int _maxInFlightTotal;
+
+    private final RequestConfig _durableRequestConfig;
+
+    private final long _initialRetryDelayMs;
+
+    private final long _maxRetryDelayMs;
+
+    private final Map<HttpHost, HostQueue> _hostQueues = new HashMap<>();
+
+    // Hosts that have a queued callback and a free slot, in the order they will be serviced.
+    private final Deque<HostQueue> _readyHosts = new ArrayDeque<>();
+
+    // (URI, key passed to sendLatestOnly) -> Queued delivery
+    private final Map<List<Object>, Delivery> _queuedLatestOnly = new HashMap<>();
+
+    private int _inFlightTotal;
+
+    private volatile boolean _closed;
+
+
+    public CallbackOutbox(HttpAsyncClient httpClient, CallbackJournal journal,
+                          int maxInFlightPerHost, int maxInFlightTotal, RequestConfig durableRequestConfig,
+                          long initialRetryDelayMs, long maxRetryDelayMs) {
+        _httpClient = httpClient;
+        _journal = journal;
+        _maxInFlightPerHost = Math.max(1, maxInFlightPerHost);
+        _maxInFlightTotal = Math.max(1, maxInFlightTotal);
+        _durableRequestConfig = durableRequestConfig;
+        _initialRetryDelayMs = initialRetryDelayMs;
+        _maxRetryDelayMs = maxRetryDelayMs;
+    }
+
+
+    /**
+     * Sends a callback that must survive a restart.
+     * @return A future that completes with the first 2xx response, or with the last response once all the attempts
+     *         have been used. It completes exceptionally if the last attempt did not get a response.
+     */
+    public CompletableFuture<HttpResponse> send(CallbackRequest request, int retries) {
+        var future = ThreadUtil.<HttpResponse>newFuture();
+        _journal.add(request).whenComplete((journalId, err) -> {
+            if (err != null) {
+                LOG.warn(String.format(
+                        "Failed to store the %s callback to %s. It will still be sent, but it will not be resent " +
+                                "if the Workflow Manager restarts before it is delivered.",
+                        request.getMethod(), request.getUri()), err);
+            }
+            Long storedId = err == null ? journalId : null;
+            enqueue(new Delivery(request, storedId, retries + 1, null, _durableRequestConfig, future));
+        });
+        return future;
+    }
+
+
+    /**
+     * Makes a single attempt to send a callback that is replaced by the next callback to the same URI with an equal
+     * key. If there is already such a callback waiting for a slot, its content is replaced with the new request.
+     * @param supersedeKey Identifies what the callback describes, so that callbacks to the same URI about different
+     *                     things do not replace each other. For health reports, this is the set of job ids.
+     */
+    public CompletableFuture<HttpResponse> sendLatestOnly(CallbackRequest request, Object supersedeKey) {
+        List<Object> latestOnlyKey = List.of(request.getUri(), supersedeKey);
+        synchronized (this) {
+            Delivery queued = _queuedLatestOnly.get(latestOnlyKey);
+            if (queued != null) {
+                queued.request = request;
+                return queued.future;
+            }
+        }
+        var delivery = new Delivery(request, null, 1, latestOnlyKey, null, ThreadUtil.newFuture());
+        enqueue(delivery);
+        return delivery.future;
+    }
+
+
+    /**
+     * Sends the callbacks that were still in the journal when it was opened.
+     * @return The number of callbacks that will be resent.
+     */
+    public int resendPending(int retries) {
+        Map<Long, CallbackRequest> pending = _journal.takeReplayedCallbacks();
+        for (var entry : pending.entrySet()) {
+            CallbackRequest request = entry.getValue();
+            LOG.info("Resending {} callback to {} that was not delivered before the last shutdown.",
+                     request.getMethod(), request.getUri());
+            var future = ThreadUtil.<HttpResponse>newFuture();
+            future.whenComplete((resp, err) -> {
+                if (err != null) {
+                    LOG.error(String.format("Failed to resend %s callback to %s.",
+                                            request.getMethod(), request.getUri()), err);
+                }
+                else {
+                    LOG.info("Resent {} callback to {}. Response: {}",
+                             request.getMethod(), request.getUri(), resp.getStatusLine());
+                }
+            });
+            enqueue(new Delivery(request, entry.getKey(), retries + 1, null, _durableRequestConfig, future));
+        }
+        return pending.size();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        // Callbacks that are still pending stay in the journal, so they will be resent after a restart.
+        var queued = new ArrayList<Delivery>();
+        synchronized (this) {
+            _closed = true;
+            _hostQueues.values().forEach(hq -> queued.addAll(hq.queued));
+            _hostQueues.values().forEach(hq -> hq.queued.clear());
+            _readyHosts.clear();
+            _queuedLatestOnly.clear();
+        }
+        queued.forEach(CallbackOutbox::cancelAfterClose);
+        _journal.close();
+    }
+
+
+    private void enqueue(Delivery delivery) {
+        if (addToQueue(delivery)) {
+            dispatch();
+        }
+        else {
+            cancelAfterClose(delivery);
+        }
+    }
+
+
+    // Returns false when the outbox has been closed.
+    private synchronized boolean addToQueue(Delivery delivery) {
+        if (_closed) {
+            return false;
+        }
+        HostQueue hostQueue = _hostQueues.computeIfAbsent(delivery.host, h -> new HostQueue());
+        hostQueue.queued.add(delivery);
+        if (delivery.latestOnlyKey != null) {
+            _queuedLatestOnly.put(delivery.latestOnlyKey, delivery);
+        }
+        markReadyIfPossible(hostQueue);
+        return true;
+    }
+
+
+    private static void cancelAfterClose(Delivery delivery) {
+        String message = delivery.journalId == null
+                ? "The callback outbox was closed before the callback was delivered."
+                : "The callback outbox was closed before the callback was delivered. The callback remains in " +
+                        "the journal and will be resent after a restart.";
+        delivery.future.completeExceptionally(new CancellationException(message));
+    }
+
+
+    private void dispatch() {
+        var toStart = new ArrayList<Delivery>();
+        synchronized (this) {
+            while (_inFlightTotal < _maxInFlightTotal && !_readyHosts.isEmpty()) {
+                HostQueue hostQueue = _readyHosts.poll();
+                hostQueue.isReady = false;
+                Delivery delivery = hostQueue.queued.poll();
+                hostQueue.inFlight++;
+                _inFlightTotal++;
+                if (delivery.latestOnlyKey != null) {
+                    _queuedLatestOnly.remove(delivery.latestOnlyKey, delivery);
+                }
+                toStart.add(delivery);
+                // Goes to the back of the line so other hosts get a turn.
+                markReadyIfPossible(hostQueue);
+            }
+        }
+        toStart.forEach(this::startAttempt);
+    }
+
+
+    private void markReadyIfPossible(HostQueue hostQueue) {
+        if (!hostQueue.isReady && !hostQueue.queued.isEmpty() && hostQueue.inFlight < _maxInFlightPerHost) {
+            hostQueue.isReady = true;
+            _readyHosts.add(hostQueue);
+        }
+    }
+
+
+    private synchronized void releaseSlot(Delivery delivery) {
+        HostQueue hostQueue = _hostQueues.get(delivery.host);
+        hostQueue.inFlight--;
+        _inFlightTotal--;
+        if (hostQueue.inFlight == 0 && hostQueue.queued.isEmpty()) {
+            _hostQueues.remove(delivery.host);
+        }
+        else {
+            markReadyIfPossible(hostQueue);
+        }
+    }
+
+
+    private void startAttempt(Delivery delivery) {
+        delivery.attempts++;
+        CallbackRequest request = delivery.request;
+        if (delivery.latestOnlyKey == null) {
+            LOG.info("Starting {} callback to {}.", request.getMethod(), request.getUri());
+        }
+        try {
+            _httpClient.execute(request.toHttpRequest(delivery.requestConfig), new FutureCallback<>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    int statusCode = response.getStatusLine().getStatusCode();
+                    if ((statusCode >= 200 && statusCode <= 299) || !delivery.hasAttemptsRemaining()) {
+                        finish(delivery, response, null);
+                        return;
+                    }
+                    long delay = getRetryDelay(delivery);
+                    LOG.warn("The remote server responded with a non-200 status code of {}. There are {} " +
+                                     "attempts remaining and the next attempt will begin in {} ms.",
+                             statusCode, delivery.getAttemptsRemaining(), delay);
+                    scheduleRetry(delivery, delay);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    handleFailure(delivery, ex);
+                }
+
+                @Override
+                public void cancelled() {
+                    finish(delivery, null, new CancellationException());
+                }
+            });
+        }
+        catch (Exception e) {
+            handleFailure(delivery, e);
+        }
+    }
+
+
+    private void handleFailure(Delivery delivery, Exception ex) {
+        CallbackRequest request = delivery.request;
+        if (!delivery.hasAttemptsRemaining()) {
+            // Latest only callbacks are best effort, so the caller decides how to report the failure.
+            if (delivery.latestOnlyKey == null) {
+                LOG.error(String.format("Failed to issue %s callback to '%s'. All retry attempts exhausted.",
+                                        request.getMethod(), request.getUri()), ex);
+            }
+            finish(delivery, null, ex);
+            return;
+        }
+        long delay = getRetryDelay(delivery);
+        LOG.error(String.format(
+                "Failed to issue %s callback to '%s'. There are %s attempts remaining and " +
+                        "the next attempt will begin in %s ms.",
+                request.getMethod(), request.getUri(), delivery.getAttemptsRemaining(), delay), ex);
+        scheduleRetry(delivery, delay);
+    }
+
+
+    private long getRetryDelay(Delivery delivery) {
+        int exponent = Math.min(delivery.attempts - 1, 30);
+        return Math.min(_initialRetryDelayMs << exponent, _maxRetryDelayMs);
+    }
+
+
+    private void scheduleRetry(Delivery delivery, long delayMs) {
+        releaseSlot(delivery);
+        dispatch();
+        ThreadUtil.delayedExecutor(delayMs, TimeUnit.MILLISECONDS)
+                .execute(() -> enqueue(delivery));
+    }
+
+
+    private void finish(Delivery delivery, HttpResponse response, Throwable error) {
+        releaseSlot(delivery);
+        if (delivery.journalId != null) {
+            _journal.remove(delivery.journalId);
+        }
+        if (error == null) {
+            delivery.future.complete(response);
+        }
+        else {
+            delivery.future.completeExceptionally(error);
+        }
+        dispatch();
+    }
+
+
+
+    private static class HostQueue {
+        final Deque<Delivery> queued = new ArrayDeque<>();
+        int inFlight;
+        boolean isReady;
+    }
+
+
+    private static class Delivery {
+        // Only replaced for latest only deliveries while they are still queued.
+        CallbackRequest request;
+        final HttpHost host;
+        final Long journalId;
+        final int maxAttempts;
+        // Null for durable deliveries.
+        final List<Object> latestOnlyKey;
+        final RequestConfig requestConfig;
+        final CompletableFuture<HttpResponse> future;
+        int attempts;
+
+        Delivery(CallbackRequest request, Long journalId, int maxAttempts, List<Object> latestOnlyKey,
+                 RequestConfig requestConfig, CompletableFuture<HttpResponse> future) {
+            this.request = request;
+            this.host = URIUtils.extractHost(request.getUri());
+            this.journalId = journalId;
+            this.maxAttempts = maxAttempts;
+            this.latestOnlyKey = latestOnlyKey;
+            this.requestConfig = requestConfig;
+            this.future = future;
+        }
+
+        boolean hasAttemptsRemaining() {
+            return attempts < maxAttempts;
+        }
+
+        int getAttemptsRemaining() {
+            return maxAttempts - attempts;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.util;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+import java.net.URI;
+import java.util.Optional;
+
+/**
+ * A callback that has been fully rendered, so that it can be stored in the {@link CallbackJournal} and sent again
+ * without access to the job that produced it.
+ */
+public class CallbackRequest {
+
+    private final String _method;
+
+    private final URI _uri;
+
+    // Only present for POST requests. Always JSON.
+    private final byte[] _body;
+
+
+    private CallbackRequest(String method, URI uri, byte[] body) {
+        _method = method;
+        _uri = uri;
+        _body = body;
+    }
+
+    public static CallbackRequest get(URI uri) {
+        return new CallbackRequest("GET", uri, null);
+    }
+
+    public static CallbackRequest post(URI uri, byte[] jsonBody) {
+        return new CallbackRequest("POST", uri, jsonBody);
+    }
+
+    public static CallbackRequest create(String method, URI uri, byte[] body) {
+        switch (method) {
+            case "GET":
+                return get(uri);
+            case "POST":
+                return post(uri, body == null ? new byte[0] : body);
+            default:
+                throw new IllegalArgumentException("Unsupported callback method: " + method);
+        }
+    }
+
+
+    public String getMethod() {
+        return _method;
+    }
+
+    public URI getUri() {
+        return _uri;
+    }
+
+    public Optional<byte[]> getBody() {
+        return Optional.ofNullable(_body);
+    }
+
+
+    public HttpUriRequest toHttpRequest(RequestConfig requestConfig) {
+        HttpRequestBase request;
+        if (_body == null) {
+            request = new HttpGet(_uri);
+        }
+        else {
+            var post = new HttpPost(_uri);
+            post.setEntity(new ByteArrayEntity(_body, ContentType.APPLICATION_JSON));
+            request = post;
+        }
+        if (requestConfig != null) {
+            request.setConfig(requestConfig);
+        }
+        return request;
+    }
+}
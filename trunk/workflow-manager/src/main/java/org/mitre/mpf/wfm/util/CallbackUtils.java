@@ -27,17 +27,13 @@
 package org.mitre.mpf.wfm.util;
 
 import org.apache.http.HttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.concurrent.FutureCallback;
-import org.apache.http.entity.EntityTemplate;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
 import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
 import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
 import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.nio.reactor.ConnectingIOReactor;
-import org.apache.http.nio.reactor.IOReactorException;
 import org.mitre.mpf.interop.JsonHealthReportCollection;
 import org.mitre.mpf.interop.JsonSegmentSummaryReport;
 import org.mitre.mpf.wfm.WfmProcessingException;
@@ -49,11 +45,13 @@ import org.springframework.stereotype.Component;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
+import java.net.URI;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletionException;
 
 import static java.util.stream.Collectors.toList;
 
@@ -61,21 +59,27 @@ import static java.util.stream.Collectors.toList;
 @Component
 public class CallbackUtils implements AutoCloseable {
 
-    private static final int MAX_CONNECTIONS_PER_ROUTE = 10;
-    private static final int MAX_CONNECTIONS_TOTAL = 100;
-
     private static final int SOCKET_TIMEOUT_MILLISEC = 5000;
 
+    private static final long INITIAL_RETRY_DELAY_MILLISEC = 100;
+
+    private static final long MAX_RETRY_DELAY_MILLISEC = 30_000;
+
     private static final Logger log = LoggerFactory.getLogger(CallbackUtils.class);
 
     private final JsonUtils jsonUtils;
 
+    private final PropertiesUtil propertiesUtil;
+
     private final CloseableHttpAsyncClient httpAsyncClient;
 
+    private final CallbackOutbox callbackOutbox;
+
 
     @Inject
-    CallbackUtils(JsonUtils jsonUtils) throws IOReactorException {
+    CallbackUtils(JsonUtils jsonUtils, PropertiesUtil propertiesUtil) throws IOException {
         this.jsonUtils = jsonUtils;
+        this.propertiesUtil = propertiesUtil;
 
         IOReactorConfig ioConfig = IOReactorConfig.custom()
                 // the default connect timeout value for non-blocking connection requests.
@@ -85,18 +89,32 @@ public class CallbackUtils implements AutoCloseable {
 
         ConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(ioConfig);
 
+        // The outbox never has more requests in flight than these limits, so requests never wait in the
+        // connection pool's queue.
+        int maxPerHost = propertiesUtil.getHttpCallbackConcurrencyPerHost();
+        int maxTotal = propertiesUtil.getHttpCallbackConcurrencyTotal();
         PoolingNHttpClientConnectionManager cm = new PoolingNHttpClientConnectionManager(ioReactor);
-        cm.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE); // default is 2
-        cm.setMaxTotal(MAX_CONNECTIONS_TOTAL); // default is 20
-
+        cm.setDefaultMaxPerRoute(maxPerHost); // default is 2
+        cm.setMaxTotal(maxTotal); // default is 20
 
         httpAsyncClient = HttpAsyncClients.custom().setConnectionManager(cm).build();
         httpAsyncClient.start();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setSocketTimeout(propertiesUtil.getHttpCallbackTimeoutMs())
+                .setConnectTimeout(propertiesUtil.getHttpCallbackTimeoutMs())
+                .build();
+
+        var journal = new CallbackJournal(propertiesUtil.getCallbackOutboxDirectory().toPath());
+        callbackOutbox = new CallbackOutbox(httpAsyncClient, journal, maxPerHost, maxTotal, requestConfig,
+                                            INITIAL_RETRY_DELAY_MILLISEC, MAX_RETRY_DELAY_MILLISEC);
+        callbackOutbox.resendPending(propertiesUtil.getHttpCallbackRetryCount());
     }
 
 
     @Override
     public void close() throws IOException {
+        callbackOutbox.close();
         httpAsyncClient.close();
     }
 
@@ -117,9 +135,14 @@ public class CallbackUtils implements AutoCloseable {
                 .collect(toList());
         try {
             JsonHealthReportCollection jsonBody = new JsonHealthReportCollection(Instant.now(), reports);
+            var request = CallbackRequest.post(URI.create(callbackUri), jsonUtils.serializeAsText(jsonBody));
 
-            sendPostCallback(jsonBody, callbackUri, jobIds, "health report(s)");
-        } catch (WfmProcessingException e) {
+            log.debug("Starting POST of health report(s) callback to {} for job ids {}.", callbackUri, jobIds);
+            // A health report replaces the previous one for the same jobs, so they are neither stored nor retried.
+            callbackOutbox.sendLatestOnly(request, Set.copyOf(jobIds))
+                    .whenComplete((response, error) -> logStreamingCallbackResult(
+                            "health report(s)", callbackUri, jobIds, response, error));
+        } catch (WfmProcessingException | IllegalArgumentException e) {
             log.error(String.format("Error sending health report(s) for job ids %s to %s.", jobIds, callbackUri), e);
         }
     }
@@ -127,146 +150,52 @@ public class CallbackUtils implements AutoCloseable {
 
     // Send the summary report to the URI identified by callbackUri, using the HTTP POST method.
     public void sendSummaryReportCallback(JsonSegmentSummaryReport summaryReport, String callbackUri) {
-        sendPostCallback(summaryReport, callbackUri, Collections.singletonList(summaryReport.getJobId()),
-                         "summary report");
-    }
-
-
-    public CompletableFuture<HttpResponse> executeRequest(HttpUriRequest request) {
-        var future = ThreadUtil.<HttpResponse>newFuture();
-
-        httpAsyncClient.execute(request, new FutureCallback<>() {
-            @Override
-            public void completed(HttpResponse result) {
-                future.complete(result);
-            }
-
-            @Override
-            public void failed(Exception ex) {
-                future.completeExceptionally(ex);
-            }
-
-            @Override
-            public void cancelled() {
-                future.cancel(true);
-            }
-        });
-        return future;
-    }
-
-
-    public CompletableFuture<HttpResponse> executeRequest(HttpUriRequest request, int retries) {
-        return executeRequest(request, retries, 100, ThreadUtil.newFuture());
+        List<Long> jobIds = Collections.singletonList(summaryReport.getJobId());
+        log.debug("Starting POST of summary report callback to {} for job ids {}.", callbackUri, jobIds);
+        try {
+            // Summary reports are only sent once per segment, so they go through the journal and are retried.
+            var request = CallbackRequest.post(URI.create(callbackUri), jsonUtils.serializeAsText(summaryReport));
+            callbackOutbox.send(request, propertiesUtil.getHttpCallbackRetryCount())
+                    .whenComplete((response, error) -> logStreamingCallbackResult(
+                            "summary report", callbackUri, jobIds, response, error));
+        } catch (WfmProcessingException | IllegalArgumentException e) {
+            log.error(String.format("Error sending summary report callback to %s for job ids %s.",
+                                    callbackUri, jobIds), e);
+        }
     }
 
 
-    private CompletableFuture<HttpResponse> executeRequest(
-            HttpUriRequest request, int retries, long delayMs,
-            CompletableFuture<HttpResponse> future) {
-
-        log.info("Starting {} callback to {}.", request.getMethod(), request.getURI());
-        long nextDelay = Math.min(delayMs * 2, 30_000);
-
-        httpAsyncClient.execute(request, new FutureCallback<>() {
-            @Override
-            public void completed(HttpResponse response) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                if ((statusCode >= 200 && statusCode <= 299) || retries <= 0) {
-                    future.complete(response);
-                    return;
-                }
-
-                log.warn("The remote server responded with a non-200 status code of {}. There are {} attempts " +
-                                 "remaining and the next attempt will begin in {} ms.",
-                         statusCode, retries, nextDelay);
-                scheduleRetry();
-            }
-
-            @Override
-            public void failed(Exception ex) {
-                if (retries <= 0) {
-                    log.error(String.format(
-                            "Failed to issue %s callback to '%s'. All retry attempts exhausted.",
-                            request.getMethod(), request.getURI()), ex);
-                    future.completeExceptionally(ex);
-                    return;
-                }
-
-                log.error(String.format(
-                        "Failed to issue %s callback to '%s'. There are %s attempts remaining and " +
-                                "the next attempt will begin in %s ms.",
-                        request.getMethod(), request.getURI(), retries, nextDelay), ex);
-                scheduleRetry();
-            }
-
-            private void scheduleRetry() {
-                ThreadUtil.runAsync(
-                        nextDelay, TimeUnit.MILLISECONDS,
-                        () -> executeRequest(request, retries - 1, nextDelay, future));
-            }
-
-            @Override
-            public void cancelled() {
-                future.cancel(true);
-            }
-        });
-
-        return future;
+    /**
+     * Sends a job callback through the callback journal, so it will be resent if the Workflow Manager restarts before
+     * the callback is delivered.
+     * @return A future that completes with the first 2xx response, or with the last response once all the retries
+     *         have been used.
+     */
+    public CompletableFuture<HttpResponse> sendCallback(CallbackRequest request) {
+        return callbackOutbox.send(request, propertiesUtil.getHttpCallbackRetryCount());
     }
 
 
-    // TODO: Implement sendGetCallback
-
-    private void sendPostCallback(Object json, String callbackUri, List<Long> jobIds, String callbackType) {
-        HttpPost post = new HttpPost(callbackUri);
-        post.addHeader("Content-Type", "application/json");
-
-        log.debug("Starting POST of {} callback to {} for job ids {}.", callbackType, callbackUri, jobIds);
-        try {
-
-            /*
-             * Don't do this:
-             * post.setEntity(new StringEntity(jsonUtils.serializeAsTextString(json)));
-             *
-             * That results in pre-buffering the content, which is unnecessary and may take a non-trivial amount of
-             * time and memory depending on the amount of data. The Jackson JSON parser is fast, but JSON serialization
-             * can still be an expensive operation.
-             *
-             * Instead, the line in use below utilizes a ContentProducer to produce the content on demand,
-             * which allows the JSON serialization to be performed when the HttpPost is executed by the HttpAsyncClient
-             * in a separate thread.
-             *
-             * See https://wiki.apache.org/HttpComponents/HttpEntity#EntityTemplate
-             */
-            post.setEntity(new EntityTemplate((outputStream) -> jsonUtils.serialize(json, outputStream)));
-
-            httpAsyncClient.execute(post, new FutureCallback<HttpResponse>() {
-                public void completed(final HttpResponse response) {
-                    log.info("Sent {} callback to {} for job ids {}. Response: {}",
-                             callbackType, callbackUri, jobIds, response);
-
-                }
-                public void failed(final Exception e) {
-                    // We make a best effort attempt to send the callback, but an HTTP connection failure,
-                    // or failure to get an HTTP response is not critical, so just log a warning.
-                    // Also, don't bother logging the stack trace. That adds clutter.
-                    if (e instanceof SocketTimeoutException) {
-                        // The message for a SocketTimeoutException is "null", so let's be more descriptive.
-                        log.warn("Sent {} callback to {} for job ids {}. Receiver did not respond.",
-                                 callbackType, callbackUri, jobIds);
-                    } else {
-                        log.warn("Error sending {} callback to {} for job ids {}: {}",
-                                 callbackType, callbackUri, jobIds, e.getMessage());
-                    }
-                }
-                public void cancelled() {
-                    log.warn("Cancelled sending {} callback to {} for job ids {}.",
-                             callbackType, callbackUri, jobIds);
-                }
-            });
-        } catch (WfmProcessingException | IllegalArgumentException e) {
-            log.error(String.format("Error sending %s callback to %s for job ids %s.",
-                                    callbackType, callbackUri, jobIds), e);
-       }
+    private static void logStreamingCallbackResult(String callbackType, String callbackUri, List<Long> jobIds,
+                                                   HttpResponse response, Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error == null) {
+            log.info("Sent {} callback to {} for job ids {}. Response: {}",
+                     callbackType, callbackUri, jobIds, response);
+        }
+        // We make a best effort attempt to send the callback, but an HTTP connection failure,
+        // or failure to get an HTTP response is not critical, so just log a warning.
+        // Also, don't bother logging the stack trace. That adds clutter.
+        else if (error instanceof SocketTimeoutException) {
+            // The message for a SocketTimeoutException is "null", so let's be more descriptive.
+            log.warn("Sent {} callback to {} for job ids {}. Receiver did not respond.",
+                     callbackType, callbackUri, jobIds);
+        }
+        else {
+            log.warn("Error sending {} callback to {} for job ids {}: {}",
+                     callbackType, callbackUri, jobIds, error.getMessage());
+        }
     }
 }
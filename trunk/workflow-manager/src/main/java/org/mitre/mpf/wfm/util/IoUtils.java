@@ -101,6 +101,16 @@ public class IoUtils {
         return tikaInstance.detect(bytes);
     }
 
+    /**
+     * Gets the MIME type using the first bytes of a file and the file's name, without opening the file.
+     * @param header The beginning of the file. See {@link MediaIngestStream#HEADER_SIZE}.
+     * @param fileName
+     * @return
+     */
+    public String getMimeType(byte[] header, String fileName) {
+        return tikaInstance.detect(header, fileName);
+    }
+
     /**
      * Gets the MIME type associated with the file.
      * @param file
@@ -26,80 +26,284 @@
 
 package org.mitre.mpf.wfm.util;
 
+import org.apache.activemq.broker.jmx.QueueViewMBean;
 import org.apache.camel.CamelContext;
 import org.apache.camel.ExchangePattern;
+import org.apache.camel.Header;
 import org.apache.camel.LoggingLevel;
-import org.apache.camel.Route;
 import org.apache.camel.builder.RouteBuilder;
 import org.mitre.mpf.rest.api.pipelines.ActionType;
 import org.mitre.mpf.rest.api.pipelines.Algorithm;
 import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
 import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
 import org.mitre.mpf.wfm.enums.MpfEndpoints;
+import org.mitre.mpf.wfm.enums.MpfHeaders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.List;
+import javax.inject.Inject;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerInvocationHandler;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-@Component
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Handles moving the work for cancelled jobs off of the component request queues.
+ *
+ * Cancelled job ids are kept in a single shared set rather than creating a selector consumer per job per algorithm.
+ * Requests for a cancelled job that have not been sent yet are redirected by {@link #getRecipientQueue} in the job
+ * router route. Requests that were already queued are moved to the cancellation queues with one broker operation
+ * per request queue regardless of how many jobs were cancelled. When JMX is enabled, the matching messages are moved
+ * by the broker. Otherwise, each request queue gets one selector route that matches all of its cancelled jobs.
+ */
+@Component(JmsUtils.REF)
 public class JmsUtils {
+    public static final String REF = "jmsUtils";
+
     private static final Logger LOG = LoggerFactory.getLogger(JmsUtils.class);
 
-    @Autowired
-    private InProgressBatchJobsService _inProgressBatchJobs;
+    private final PropertiesUtil _propertiesUtil;
 
-    @Autowired
-    private CamelContext _camelContext;
+    private final InProgressBatchJobsService _inProgressBatchJobs;
 
+    private final CamelContext _camelContext;
 
-    public void cancel(final long jobId) throws Exception {
-        _camelContext.addRoutes(new RouteBuilder() {
-            @Override
-            public void configure() {
-                BatchJob job = _inProgressBatchJobs.getJob(jobId);
-
-                for (Algorithm algorithm : job.getPipelineElements().getAlgorithms()) {
-                    String routeName = createCancellationRouteName(jobId, algorithm.getActionType().name(),
-                                                                   algorithm.getName(), "REQUEST");
-                    String routeUri = String.format("jms:MPF.%s_%s_REQUEST?selector=JobId%%3D%d",
-                                                    algorithm.getActionType().name(), algorithm.getName(), jobId);
-                    LOG.debug("Creating route {} with URI {}.", routeName, routeUri);
-                    from(routeUri)
-                            .routeId(routeName)
-                            .setExchangePattern(ExchangePattern.InOnly)
-                            .log(LoggingLevel.DEBUG, "Cancelling a message for ${headers.JobId}...")
-                            .to(cancellationEndpointForActionType(algorithm.getActionType()));
-                }
+    private final Set<Long> _cancelledJobIds = ConcurrentHashMap.newKeySet();
+
+    // Maps a request queue name (e.g. MPF.DETECTION_OCV_FACE_REQUEST) to the ids of the cancelled jobs that
+    // have used it.
+    private final Map<String, Set<Long>> _cancelledJobsByQueue = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean _drainPending = new AtomicBoolean();
+
+    private JMXConnector _jmxConnector;
+
+    // Maps a request queue name to the selector used by its cancellation route. Only used when JMX is disabled.
+    private final Map<String, String> _cancellationRouteSelectors = new HashMap<>();
+
+
+    @Inject
+    public JmsUtils(PropertiesUtil propertiesUtil, InProgressBatchJobsService inProgressBatchJobs,
+                    CamelContext camelContext) {
+        _propertiesUtil = propertiesUtil;
+        _inProgressBatchJobs = inProgressBatchJobs;
+        _camelContext = camelContext;
+    }
+
+
+    public void cancel(long jobId) {
+        _cancelledJobIds.add(jobId);
+        BatchJob job = _inProgressBatchJobs.getJob(jobId);
+        for (Algorithm algorithm : job.getPipelineElements().getAlgorithms()) {
+            if (cancellationQueueForActionType(algorithm.getActionType()) == null) {
+                continue;
             }
-        });
+            String queueName = createRequestQueueName(algorithm.getActionType(), algorithm.getName());
+            _cancelledJobsByQueue.computeIfAbsent(queueName, k -> ConcurrentHashMap.newKeySet())
+                    .add(jobId);
+        }
+
+        scheduleDrain();
+    }
+
+
+    /**
+     * Called by the job router route once all of a task's work units have been sent. A work unit that the route
+     * sent to a request queue just before the job was cancelled can reach the broker after the drain started by
+     * {@link #cancel(long)}, so the request queues are drained again once the split is complete.
+     */
+    public void drainIfCancelled(@Header(MpfHeaders.JOB_ID) long jobId) {
+        if (_cancelledJobIds.contains(jobId)) {
+            scheduleDrain();
+        }
     }
 
+
+    private void scheduleDrain() {
+        // When many jobs are cancelled at once, only one drain will be queued and it will handle all of them.
+        if (_drainPending.compareAndSet(false, true)) {
+            ThreadUtil.runAsync(this::drainCancelledRequests)
+                    .whenComplete((x, err) -> {
+                        if (err != null) {
+                            LOG.warn("Failed to move the pending work for cancelled jobs to the cancellation queues.",
+                                     err);
+                        }
+                    });
+        }
+    }
+
+
+    public boolean isCancelled(long jobId) {
+        return _cancelledJobIds.contains(jobId);
+    }
+
+
     /**
-     * When a job completes, any cancellation routes associated with the Job should also be stopped and deleted.
+     * When a job completes, there will be no more messages for it so it no longer needs to be tracked.
      * @param jobId
-     * @throws Exception
      */
-    public synchronized void destroyCancellationRoutes(final long jobId) throws Exception {
-        _camelContext.addRoutes(new RouteBuilder() {
-            @Override
-            public void configure() throws Exception {
-                List<Route> routes = new ArrayList<>(_camelContext.getRoutes());
-
-                for(Route route : routes) {
-                    if(route.getId().startsWith(createCancellationRouteName(jobId))) {
-                        LOG.debug("Destroying Route: {}", route.getId());
-                        _camelContext.stopRoute(route.getId());
-                        _camelContext.removeRoute(route.getId());
+    public void removeCancelledJob(long jobId) {
+        if (_cancelledJobIds.remove(jobId)) {
+            _cancelledJobsByQueue.values().forEach(ids -> ids.remove(jobId));
+            if (!_propertiesUtil.isAmqBrokerEnabled()) {
+                // Remove the job from the cancellation routes' selectors.
+                scheduleDrain();
+            }
+        }
+    }
+
+
+    /**
+     * Used by the job router route to determine where a work unit should be sent. When the job has been cancelled,
+     * the work unit is sent directly to the cancellation queue instead of the component's request queue.
+     */
+    public String getRecipientQueue(@Header(MpfHeaders.JOB_ID) long jobId,
+                                    @Header(MpfHeaders.RECIPIENT_QUEUE) String recipientQueue) {
+        if (!_cancelledJobIds.contains(jobId)) {
+            return recipientQueue;
+        }
+        String cancellationQueue = cancellationQueueForRequestQueue(toQueueName(recipientQueue));
+        LOG.debug("[Job {}|*|*] Sending work unit to {} instead of {} because the job was cancelled.",
+                  jobId, cancellationQueue, recipientQueue);
+        return cancellationQueue;
+    }
+
+
+    synchronized void drainCancelledRequests() throws Exception {
+        _drainPending.set(false);
+        boolean useJmx = _propertiesUtil.isAmqBrokerEnabled();
+        for (Map.Entry<String, Set<Long>> entry : _cancelledJobsByQueue.entrySet()) {
+            String queueName = entry.getKey();
+            String cancellationQueue = cancellationQueueForRequestQueue(queueName);
+            try {
+                if (useJmx) {
+                    if (entry.getValue().isEmpty()) {
+                        continue;
                     }
+                    int count = moveUsingJmx(queueName, createSelector(entry.getValue()), cancellationQueue);
+                    if (count > 0) {
+                        LOG.debug("Moved {} messages from {} to {} for cancelled jobs.",
+                                  count, queueName, cancellationQueue);
+                    }
+                }
+                else {
+                    updateCancellationRoute(queueName, entry.getValue(), cancellationQueue);
                 }
             }
+            catch (Exception e) {
+                LOG.warn(String.format("Failed to move messages for cancelled jobs from %s to %s.",
+                                       queueName, cancellationQueue), e);
+            }
+        }
+    }
+
+
+    private int moveUsingJmx(String queueName, String selector, String cancellationEndpoint) throws Exception {
+        var queueObjectName = new ObjectName(
+                "org.apache.activemq:type=Broker,brokerName=localhost,destinationType=Queue,destinationName="
+                        + queueName);
+        MBeanServerConnection connection = getBrokerConnection();
+        if (!connection.isRegistered(queueObjectName)) {
+            return 0;
+        }
+        var queueMbean = MBeanServerInvocationHandler.newProxyInstance(
+                connection, queueObjectName, QueueViewMBean.class, true);
+        return queueMbean.moveMatchingMessagesTo(selector, toQueueName(cancellationEndpoint));
+    }
+
+
+    private synchronized MBeanServerConnection getBrokerConnection() throws IOException {
+        if (_jmxConnector != null) {
+            try {
+                return _jmxConnector.getMBeanServerConnection();
+            }
+            catch (IOException e) {
+                LOG.warn("Lost the JMX connection to ActiveMQ. Reconnecting...", e);
+                _jmxConnector = null;
+            }
+        }
+        Map<String, Object> environment = Map.of(
+                JMXConnector.CREDENTIALS,
+                new String[]{_propertiesUtil.getAmqBrokerAdminUsername(), _propertiesUtil.getAmqBrokerAdminPassword()});
+        _jmxConnector = JMXConnectorFactory.connect(new JMXServiceURL(_propertiesUtil.getAmqBrokerJmxUri()),
+                                                    environment);
+        return _jmxConnector.getMBeanServerConnection();
+    }
+
+
+    // Only used when JMX is disabled. A single selector route per request queue handles every cancelled job. Since
+    // the route keeps consuming until the cancelled jobs complete, it also moves requests that are redelivered or
+    // that reach the queue after the job was cancelled. The route is replaced whenever the set of cancelled jobs
+    // using the queue changes.
+    private void updateCancellationRoute(String queueName, Set<Long> jobIds, String cancellationEndpoint)
+            throws Exception {
+        String selector = jobIds.isEmpty() ? null : createSelector(jobIds);
+        String currentSelector = _cancellationRouteSelectors.get(queueName);
+        if (Objects.equals(selector, currentSelector)) {
+            return;
+        }
+
+        String routeId = "CANCEL " + queueName;
+        if (currentSelector != null) {
+            LOG.debug("Removing route {} with selector: {}", routeId, currentSelector);
+            _camelContext.stopRoute(routeId);
+            _camelContext.removeRoute(routeId);
+            _cancellationRouteSelectors.remove(queueName);
+        }
+        if (selector == null) {
+            return;
+        }
+
+        String uri = String.format("jms:%s?selector=%s", queueName,
+                                   URLEncoder.encode(selector, StandardCharsets.UTF_8));
+        LOG.debug("Creating route {} with URI {}.", routeId, uri);
+        _camelContext.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                from(uri)
+                        .routeId(routeId)
+                        .setExchangePattern(ExchangePattern.InOnly)
+                        .log(LoggingLevel.DEBUG, "Cancelling a message for ${headers.JobId}...")
+                        .to(cancellationEndpoint);
+            }
         });
+        _cancellationRouteSelectors.put(queueName, selector);
+    }
+
+
+    private static String createSelector(Set<Long> jobIds) {
+        // JMS selectors only support IN with string literals, and the JobId header is numeric.
+        return jobIds.stream()
+                .map(id -> MpfHeaders.JOB_ID + '=' + id)
+                .collect(joining(" OR "));
+    }
+
+
+    private static String createRequestQueueName(ActionType actionType, String algorithmName) {
+        return String.format("MPF.%s_%s_REQUEST", actionType.name(), algorithmName);
+    }
+
+
+    private static String toQueueName(String endpoint) {
+        return endpoint.substring(endpoint.indexOf(':') + 1);
     }
 
-    private static String cancellationEndpointForActionType(ActionType actionType) {
+
+    private static String cancellationQueueForActionType(ActionType actionType) {
         switch (actionType) {
             case DETECTION:
                 return MpfEndpoints.CANCELLED_DETECTIONS;
@@ -111,15 +315,9 @@ public class JmsUtils {
     }
 
 
-
-    private static String createCancellationRouteName(long jobId, String... params) {
-        // The brackets are used to avoid collisions between "CANCEL 1" and "CANCEL 100" when there are no params
-        // provided. This disambiguation is necessary because the destroyCancellationRoutes method destroys any route
-        // with a name like CANCEL [1] without concerning itself with the remainder of the route name.
-        var prefix = String.format("CANCEL [%s]", jobId);
-        if (params == null || params.length == 0) {
-            return prefix;
-        }
-        return prefix + ' ' + String.join(" ", params);
+    private static String cancellationQueueForRequestQueue(String queueName) {
+        return queueName.startsWith("MPF." + ActionType.MARKUP.name() + '_')
+                ? MpfEndpoints.CANCELLED_MARKUPS
+                : MpfEndpoints.CANCELLED_DETECTIONS;
     }
 }
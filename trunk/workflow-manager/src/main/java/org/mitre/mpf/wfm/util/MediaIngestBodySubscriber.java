@@ -0,0 +1,241 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.util;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes an HTTP response body to a file as it arrives, while computing its SHA-256 hash and keeping a copy of the
+ * first {@link MediaIngestStream#HEADER_SIZE} bytes. This is the non-blocking equivalent of {@link MediaIngestStream}
+ * for use with {@link java.net.http.HttpClient}. The body completes with this subscriber once the whole response
+ * has been written. If no data arrives for longer than the idle timeout, the subscription is cancelled and the body
+ * fails with an {@link HttpTimeoutException}.
+ */
+public class MediaIngestBodySubscriber implements HttpResponse.BodySubscriber<MediaIngestBodySubscriber> {
+
+    private final Path _destination;
+
+    private final long _idleTimeoutNanos;
+
+    private final CompletableFuture<MediaIngestBodySubscriber> _result = new CompletableFuture<>();
+
+    private final MessageDigest _digest = DigestUtils.getSha256Digest();
+
+    private final byte[] _header = new byte[MediaIngestStream.HEADER_SIZE];
+
+    // Whichever thread moves the state to DONE is the only one that closes the channel and completes _result.
+    // The idle check only does so when it moves the state from ACTIVE to DONE, so it never closes the channel
+    // while onNext is writing to it.
+    private final AtomicReference<State> _state = new AtomicReference<>(State.ACTIVE);
+
+    private int _headerLength;
+
+    private String _sha256;
+
+    private volatile FileChannel _channel;
+
+    private volatile Flow.Subscription _subscription;
+
+    private volatile long _lastActivityNanos;
+
+
+    public MediaIngestBodySubscriber(Path destination, Duration idleTimeout) {
+        _destination = destination;
+        _idleTimeoutNanos = idleTimeout.toNanos();
+    }
+
+
+    public String getSha256() {
+        return _sha256;
+    }
+
+    public byte[] getHeader() {
+        return Arrays.copyOf(_header, _headerLength);
+    }
+
+
+    @Override
+    public CompletionStage<MediaIngestBodySubscriber> getBody() {
+        return _result;
+    }
+
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        _subscription = subscription;
+        try {
+            Path parent = _destination.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            _channel = FileChannel.open(_destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                        StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        catch (IOException e) {
+            if (_state.compareAndSet(State.ACTIVE, State.DONE)) {
+                subscription.cancel();
+                completeExceptionally(e);
+            }
+            return;
+        }
+        _lastActivityNanos = System.nanoTime();
+        scheduleIdleCheck(_idleTimeoutNanos);
+        subscription.request(1);
+    }
+
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        if (!_state.compareAndSet(State.ACTIVE, State.WRITING)) {
+            // The download already timed out.
+            return;
+        }
+        _lastActivityNanos = System.nanoTime();
+        try {
+            for (ByteBuffer buffer : buffers) {
+                update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    _channel.write(buffer);
+                }
+            }
+        }
+        catch (IOException e) {
+            // Only this thread changes the state while it is WRITING.
+            _state.set(State.DONE);
+            _subscription.cancel();
+            completeExceptionally(e);
+            return;
+        }
+        _state.set(State.ACTIVE);
+        _subscription.request(1);
+    }
+
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (_state.compareAndSet(State.ACTIVE, State.DONE)) {
+            completeExceptionally(throwable);
+        }
+    }
+
+
+    @Override
+    public void onComplete() {
+        if (!_state.compareAndSet(State.ACTIVE, State.DONE)) {
+            return;
+        }
+        try {
+            _channel.close();
+        }
+        catch (IOException e) {
+            _result.completeExceptionally(e);
+            return;
+        }
+        _sha256 = Hex.encodeHexString(_digest.digest());
+        _result.complete(this);
+    }
+
+
+    // A single check is rescheduled for as long as data keeps arriving, rather than creating a timer per buffer.
+    private void scheduleIdleCheck(long delayNanos) {
+        ThreadUtil.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+            State state = _state.get();
+            if (state == State.DONE) {
+                return;
+            }
+            long idleNanos = System.nanoTime() - _lastActivityNanos;
+            if (state == State.WRITING) {
+                // Data is still being received, but writing it to disk is taking a while.
+                scheduleIdleCheck(_idleTimeoutNanos);
+                return;
+            }
+            if (idleNanos < _idleTimeoutNanos) {
+                scheduleIdleCheck(_idleTimeoutNanos - idleNanos);
+                return;
+            }
+            if (!_state.compareAndSet(State.ACTIVE, State.DONE)) {
+                // onNext, onError, or onComplete was called after the state was checked.
+                scheduleIdleCheck(_idleTimeoutNanos);
+                return;
+            }
+            _subscription.cancel();
+            completeExceptionally(new HttpTimeoutException(String.format(
+                    "No data was received for %s ms while downloading to \"%s\".",
+                    TimeUnit.NANOSECONDS.toMillis(idleNanos), _destination)));
+        });
+    }
+
+
+    private void update(ByteBuffer buffer) {
+        int headerBytes = Math.min(buffer.remaining(), _header.length - _headerLength);
+        if (headerBytes > 0) {
+            buffer.duplicate().get(_header, _headerLength, headerBytes);
+            _headerLength += headerBytes;
+        }
+        _digest.update(buffer);
+    }
+
+
+    private void completeExceptionally(Throwable error) {
+        FileChannel channel = _channel;
+        if (channel != null) {
+            try {
+                channel.close();
+            }
+            catch (IOException ignored) {
+                // The download already failed, so the original error is more useful.
+            }
+        }
+        _result.completeExceptionally(error);
+    }
+
+
+    private enum State {
+        ACTIVE,
+        WRITING,
+        DONE
+    }
+}
@@ -0,0 +1,162 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.util;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Computes the SHA-256 hash of the media and keeps a copy of the first bytes of the media while it is being read.
+ * This allows media inspection to get the hash and the MIME type without reading the media again.
+ */
+public class MediaIngestStream extends FilterInputStream {
+
+    // Tika never looks beyond the first 64 KiB when detecting a MIME type from magic bytes.
+    public static final int HEADER_SIZE = 64 * 1024;
+
+    private static final int FILE_READ_BUFFER_SIZE = 1024 * 1024;
+
+    private final MessageDigest _digest = DigestUtils.getSha256Digest();
+
+    private final byte[] _header = new byte[HEADER_SIZE];
+
+    private int _headerLength;
+
+    private String _sha256;
+
+
+    public MediaIngestStream(InputStream inputStream) {
+        super(inputStream);
+    }
+
+
+    /**
+     * Reads the whole file once using a large buffer.
+     * @return A stream that has been read to the end, so that its hash and header are available.
+     */
+    public static MediaIngestStream readFile(Path path) throws IOException {
+        try (var ingestStream = new MediaIngestStream(Files.newInputStream(path))) {
+            ingestStream.copyTo(OutputStream.nullOutputStream());
+            return ingestStream;
+        }
+    }
+
+
+    /**
+     * Copies the rest of the stream to out. This uses a larger buffer than {@link InputStream#transferTo}.
+     */
+    public long copyTo(OutputStream out) throws IOException {
+        byte[] buffer = new byte[FILE_READ_BUFFER_SIZE];
+        long total = 0;
+        int count;
+        while ((count = read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, count);
+            total += count;
+        }
+        return total;
+    }
+
+
+    /** Must only be called after the stream has been read to the end. */
+    public String getSha256() {
+        if (_sha256 == null) {
+            _sha256 = Hex.encodeHexString(_digest.digest());
+        }
+        return _sha256;
+    }
+
+    public byte[] getHeader() {
+        return Arrays.copyOf(_header, _headerLength);
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            update(new byte[] { (byte) b }, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = super.read(b, off, len);
+        if (count > 0) {
+            update(b, off, count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes still need to be hashed, so they are read instead.
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long remaining = n;
+        while (remaining > 0) {
+            int count = read(buffer, 0, (int) Math.min(remaining, buffer.length));
+            if (count == -1) {
+                break;
+            }
+            remaining -= count;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+
+    private void update(byte[] bytes, int offset, int length) {
+        _digest.update(bytes, offset, length);
+        int headerBytes = Math.min(length, HEADER_SIZE - _headerLength);
+        if (headerBytes > 0) {
+            System.arraycopy(bytes, offset, _header, _headerLength, headerBytes);
+            _headerLength += headerBytes;
+        }
+    }
+}
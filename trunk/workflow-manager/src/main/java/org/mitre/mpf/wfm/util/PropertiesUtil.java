@@ -41,6 +41,7 @@ import org.mitre.mpf.wfm.WfmProcessingException;
 import org.mitre.mpf.wfm.data.entities.persistent.SystemPropertiesSnapshot;
 import org.mitre.mpf.wfm.enums.ArtifactExtractionPolicy;
 import org.mitre.mpf.wfm.enums.EnvVar;
+import org.mitre.mpf.wfm.enums.TrackCodecType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -125,6 +126,8 @@ public class PropertiesUtil {
         markupDirectory = createOrFail(share, "markup", permissions);
         outputObjectsDirectory = createOrFail(share, "output-objects", permissions);
         remoteMediaDirectory = createOrFail(share, "remote-media", permissions);
+        mediaInspectionCacheDirectory = createOrFail(share, "media-inspection-cache", permissions);
+        callbackOutboxDirectory = createOrFail(share, "callback-outbox", permissions);
         temporaryMediaDirectory = createOrClear(share, "tmp", permissions);
         uploadedComponentsDirectory = createOrFail(share, getComponentUploadDirName(), permissions);
         createOrFail(getPluginDeploymentPath(), "",
@@ -146,6 +149,8 @@ public class PropertiesUtil {
         log.debug("Markup Directory = {}", markupDirectory);
         log.debug("Output Objects Directory = {}", outputObjectsDirectory);
         log.debug("Remote Media Directory = {}", remoteMediaDirectory);
+        log.debug("Media Inspection Cache Directory = {}", mediaInspectionCacheDirectory);
+        log.debug("Callback Outbox Directory = {}", callbackOutboxDirectory);
         log.debug("Temporary Media Directory = {}", temporaryMediaDirectory);
         log.debug("Uploaded Components Directory = {}", uploadedComponentsDirectory);
     }
@@ -369,6 +374,12 @@ public class PropertiesUtil {
     private File remoteMediaDirectory;
     public File getRemoteMediaDirectory() { return remoteMediaDirectory; }
 
+    private File mediaInspectionCacheDirectory;
+    public File getMediaInspectionCacheDirectory() { return mediaInspectionCacheDirectory; }
+
+    private File callbackOutboxDirectory;
+    public File getCallbackOutboxDirectory() { return callbackOutboxDirectory; }
+
     private File temporaryMediaDirectory;
     public File getTemporaryMediaDirectory() { return temporaryMediaDirectory; }
 
@@ -407,6 +418,10 @@ public class PropertiesUtil {
         return mpfPropertiesConfig.getInt("detection.sampling.interval");
     }
 
+    public int getTrackProcessingThreadCount() {
+        return Math.max(1, mpfPropertiesConfig.getInt("detection.track.processing.thread.count"));
+    }
+
     //
     // JMS configuration
     //
@@ -415,6 +430,22 @@ public class PropertiesUtil {
         return mpfPropertiesConfig.getInt("jms.priority");
     }
 
+    //
+    // Database configuration
+    //
+
+    public boolean isPersistedJobCompressionEnabled() {
+        return mpfPropertiesConfig.getBoolean("persistence.job.compression.enabled");
+    }
+
+    //
+    // Redis configuration
+    //
+
+    public TrackCodecType getRedisTrackCodec() {
+        return mpfPropertiesConfig.get(TrackCodecType.class, "redis.track.codec");
+    }
+
     //
     // Pipeline configuration
     //
@@ -577,6 +608,10 @@ public class PropertiesUtil {
         return mpfPropertiesConfig.getBoolean("web.broadcast.job.status.enabled");
     }
 
+    public long getBroadcastJobStatusInterval() {
+        return Math.max(1, mpfPropertiesConfig.getLong("web.broadcast.job.status.interval"));
+    }
+
     //
     // Version information
     //
@@ -660,6 +695,38 @@ public class PropertiesUtil {
         return mpfPropertiesConfig.getInt("remote.media.download.sleep");
     }
 
+    public int getRemoteMediaDownloadThreadCount() {
+        return Math.max(1, mpfPropertiesConfig.getInt("remote.media.download.thread.count"));
+    }
+
+    public int getRemoteMediaDownloadHostLimit() {
+        return Math.max(1, mpfPropertiesConfig.getInt("remote.media.download.host.limit"));
+    }
+
+    public int getRemoteMediaDownloadMaxInProgress() {
+        return Math.max(1, mpfPropertiesConfig.getInt("remote.media.download.max.in.progress"));
+    }
+
+    public int getRemoteMediaDownloadConnectTimeout() {
+        return Math.max(1, mpfPropertiesConfig.getInt("remote.media.download.connect.timeout"));
+    }
+
+    public int getRemoteMediaDownloadReadTimeout() {
+        return Math.max(1, mpfPropertiesConfig.getInt("remote.media.download.read.timeout"));
+    }
+
+    public int getMediaInspectionThreadCount() {
+        return Math.max(1, mpfPropertiesConfig.getInt("media.inspection.thread.count"));
+    }
+
+    public int getMediaInspectionMaxInProgress() {
+        return Math.max(1, mpfPropertiesConfig.getInt("media.inspection.max.in.progress"));
+    }
+
+    public int getMediaInspectionCacheSize() {
+        return mpfPropertiesConfig.getInt("media.inspection.cache.size");
+    }
+
     //
     // Node management settings
     //
@@ -720,6 +787,18 @@ public class PropertiesUtil {
         return mpfPropertiesConfig.getInt("http.object.storage.upload.retry.count");
     }
 
+    public int getS3UploadThreadCount() {
+        return Math.max(1, mpfPropertiesConfig.getInt("s3.upload.thread.count"));
+    }
+
+    public long getS3MultipartUploadThreshold() {
+        return mpfPropertiesConfig.getLong("s3.multipart.upload.threshold");
+    }
+
+    public long getS3MultipartUploadPartSize() {
+        return mpfPropertiesConfig.getLong("s3.multipart.upload.part.size");
+    }
+
     public Resource getWorkflowPropertiesFile() {
         return appContext.getResource(mpfPropertiesConfig.getString("workflow.properties.file"));
     }
@@ -735,5 +814,13 @@ public class PropertiesUtil {
     public int getHttpCallbackRetryCount() {
         return mpfPropertiesConfig.getInt("http.callback.retries");
     }
+
+    public int getHttpCallbackConcurrencyPerHost() {
+        return Math.max(1, mpfPropertiesConfig.getInt("http.callback.concurrency.per.host"));
+    }
+
+    public int getHttpCallbackConcurrencyTotal() {
+        return Math.max(1, mpfPropertiesConfig.getInt("http.callback.concurrency.total"));
+    }
 }
 
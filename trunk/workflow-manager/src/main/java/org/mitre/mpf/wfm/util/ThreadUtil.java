@@ -27,7 +27,10 @@
 
 package org.mitre.mpf.wfm.util;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 
 public class ThreadUtil {
 
@@ -96,6 +99,55 @@ public class ThreadUtil {
     }
 
 
+    /**
+     * Calls action on each item using at most threadCount threads. When there is only one thread or one item, the
+     * items are processed on the calling thread. Returns once all of the items have been processed. If action throws
+     * an exception, the remaining items are skipped and the exception is re-thrown on the calling thread.
+     */
+    public static <T> void forEachInParallel(Collection<T> items, int threadCount, Consumer<? super T> action) {
+        if (threadCount <= 1 || items.size() <= 1) {
+            items.forEach(action);
+            return;
+        }
+
+        var remainingItems = new ConcurrentLinkedQueue<T>(items);
+        Runnable worker = () -> {
+            try {
+                T item;
+                while ((item = remainingItems.poll()) != null) {
+                    action.accept(item);
+                }
+            }
+            catch (RuntimeException | Error e) {
+                remainingItems.clear();
+                throw e;
+            }
+        };
+
+        int workerCount = Math.min(threadCount, items.size());
+        var futures = new ArrayList<CompletableFuture<Void>>(workerCount);
+        for (int i = 0; i < workerCount - 1; i++) {
+            futures.add(runAsync(worker::run));
+        }
+        // The calling thread would otherwise just be waiting, so it also processes items.
+        futures.add(CompletableFuture.runAsync(worker, Runnable::run));
+
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+        catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+
     @FunctionalInterface
     public interface ThrowingRunnable {
         public void run() throws Exception;
@@ -763,6 +763,17 @@ AppServices.service('LogService', function ($http) {
         return promise;
     }
 
+    this.getLogPage = function (params) {
+        var promise = $http({
+            url: "adminLogsPage",
+            method: "GET",
+            params: params
+        }).then(function (response) {
+            return response.data;
+        });
+        return promise;
+    }
+
 });
 
 AppServices.factory('httpInterceptor',
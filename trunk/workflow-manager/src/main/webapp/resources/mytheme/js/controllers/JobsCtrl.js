@@ -37,6 +37,8 @@ var JobsCtrl = function ($scope, $log, $interval, ServerSidePush, JobsService, N
     var markupTableData = [];
     var updateConfig = { broadcastEnabled: true, pollingInterval: -1, poller: null };
     var tableLastUpdate = moment();
+    // The request and last job id of the page that is currently displayed. See getAfterJobId.
+    var currentPage = null;
 
     var init = function () {
         scheduleUpdates();
@@ -44,6 +46,28 @@ var JobsCtrl = function ($scope, $log, $interval, ServerSidePush, JobsService, N
     };
 
 
+    // When sorting by job id, the next page is requested as the jobs after the last job on the current page rather
+    // than by offset, so the server does not have to skip over all of the earlier jobs. Reloading a page reuses the
+    // job id that was used to get that page.
+    var getAfterJobId = function (d) {
+        if (!currentPage || d.order[0].column != 0) {
+            return null;
+        }
+        var prev = currentPage.request;
+        if (prev.order[0].column != 0 || prev.order[0].dir != d.order[0].dir || prev.search != d.search
+                || prev.length != d.length) {
+            return null;
+        }
+        if (d.start == prev.start) {
+            return prev.afterJobId;
+        }
+        if (d.start == prev.start + prev.length) {
+            return currentPage.lastJobId;
+        }
+        return null;
+    };
+
+
     var buildJobTable = function () {
         if (jobTable != null) {
             jobTable.clear();
@@ -60,6 +84,17 @@ var JobsCtrl = function ($scope, $log, $interval, ServerSidePush, JobsService, N
                     type: "POST",
                     data: function (d) {//extra params
                         d.search = d.search.value;
+                        var afterJobId = getAfterJobId(d);
+                        if (afterJobId != null) {
+                            d.afterJobId = afterJobId;
+                        }
+                        currentPage = {request: d, lastJobId: null};
+                    },
+                    dataSrc: function (json) {
+                        if (currentPage && json.data.length > 0) {
+                            currentPage.lastJobId = json.data[json.data.length - 1].jobId;
+                        }
+                        return json.data;
                     }
                 },
                 language: {
@@ -84,32 +84,27 @@
                         treeDirs = serverDirs;
                         selectedNode = {text: "None", nodeId: 0};
 
-                        // need to map all the directories
+                        // need to map all the directories, the server includes the file count for each one
                         directoryMap = {};
                         traverseNode(dirs, function (anode) {
                             directoryMap[anode.fullPath] = {
-                                "total": 0,
+                                "total": anode.fileCount || 0,
                                 "selected": 0,
                                 "checked": false,
                                 "checkable": false
                             };
+                            // the server has not listed this directory, or counted its files, yet
+                            if (anode.pending) {
+                                anode.tags = ["scanning"];
+                            }
                         });
 
                         maxFileUploadCnt = max;
                         buildDropzone();
 
-                        MediaService.getAllFiles(dirs.fullPath, useCache).then(function (nodeData) {
-                            $.each(nodeData.data, function (idx, anode) {
-                                // need to update counts
-                                if (anode.directory) {
-                                    directoryMap[anode.directory].total += 1;
-                                }
-                            });
-
-                            renderTree();
-                            if (funct) funct();
-                            $("#fileListWrap").css('visibility','show');
-                        });
+                        renderTree();
+                        if (funct) funct();
+                        $("#fileListWrap").css('visibility','show');
                     });
                 });
 
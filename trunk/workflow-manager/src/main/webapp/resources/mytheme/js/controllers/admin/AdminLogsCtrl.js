@@ -68,6 +68,12 @@ var AdminLogsCtrl = function ( $scope, $log, $http, $interval, $timeout, LogServ
     var lastLineLevel = null; // log level of last line read from file
     var cycleId = 0; // increment each time the user switches to new search criteria (log file, log level, etc.)
 
+    // used to page backward from the first line in the text area when only the end of the log was initially read
+    var indexId = null; // id of the server side index that issued firstLine
+    var firstLine = null; // line number of the first line in the text area
+    $scope.canLoadEarlierLines = false;
+    $scope.loadingEarlierLines = false;
+
     $scope.truncModeEnabled = false;
 
     $scope.alertType="alert-info";
@@ -232,6 +238,53 @@ var AdminLogsCtrl = function ( $scope, $log, $http, $interval, $timeout, LogServ
         });
     };
 
+    $scope.loadEarlierLines = function () {
+        var remainingChars = maxChars - $("#logText").val().length;
+        if (!indexId || remainingChars <= 0 || $scope.loadingEarlierLines) {
+            return;
+        }
+        var requestCycleId = cycleId;
+        var params = {
+            nodeSelection: nodeSelection,
+            logSelection: logSelection,
+            logLevelSelection: logLevelSelection,
+            maxLines: maxLines,
+            maxChars: remainingChars,
+            indexId: indexId,
+            beforeLine: firstLine
+        };
+        $scope.loadingEarlierLines = true;
+        LogService.getLogPage(params).then(function (data) {
+            $scope.loadingEarlierLines = false;
+            if (requestCycleId != cycleId) {
+                return; // the user switched to new search criteria while the request was in progress
+            }
+            if (data.logExists !== true) {
+                setEarlierLinesIndex(null, null, false);
+            } else if (data.indexReset) {
+                // the log was rotated or truncated, so the line numbers no longer match the text area
+                prepareNewCycle();
+                updateLogTail();
+            } else {
+                prependLogText(data.text);
+                setEarlierLinesIndex(data.indexId, data.firstLine, data.hasEarlierLines);
+            }
+            if (!$scope.$$phase) $scope.$apply();
+        }, function () {
+            $scope.loadingEarlierLines = false;
+        });
+    };
+
+    var setEarlierLinesIndex = function (newIndexId, newFirstLine, hasEarlierLines) {
+        indexId = hasEarlierLines ? newIndexId : null;
+        firstLine = hasEarlierLines ? newFirstLine : null;
+        updateCanLoadEarlierLines();
+    };
+
+    var updateCanLoadEarlierLines = function () {
+        $scope.canLoadEarlierLines = !!indexId && $("#logText").val().length < maxChars;
+    };
+
     var updateTime = function () {
         timeFetched = moment(); // get current time from moment library; result is an instance of moment (the js lib object)
         if(logSelection) {
@@ -260,6 +313,9 @@ var AdminLogsCtrl = function ( $scope, $log, $http, $interval, $timeout, LogServ
                 if (response.skippedAhead) {
                     enableTruncMode(true);
                 }
+                if (response.indexId) {
+                    setEarlierLinesIndex(response.indexId, response.firstLine, response.skippedAhead);
+                }
                 appendLogText(response.text);
             } else {
                 if (!$("#logText").val()) {
@@ -296,9 +352,12 @@ var AdminLogsCtrl = function ( $scope, $log, $http, $interval, $timeout, LogServ
                 }
                 allText = allText.substring(startIndex, allText.length); // truncate starting chars
                 enableTruncMode(true);
+                // the first line in the text area is no longer firstLine, so earlier lines can't be added
+                setEarlierLinesIndex(null, null, false);
             }
 
             $("#logText").val(allText); // append
+            updateCanLoadEarlierLines();
 
             //store the log text if it exists
             LogService.lastAllLogText = allText;
@@ -309,6 +368,22 @@ var AdminLogsCtrl = function ( $scope, $log, $http, $interval, $timeout, LogServ
         }
     }
 
+    var prependLogText = function (newText) {
+        if(newText && newText.length > 0) {
+            var oldText = $("#logText").val();
+            var scrollFromBottom = $("#logText")[0].scrollHeight - $("#logText").scrollTop();
+
+            var allText = oldText ? newText + '\n' + oldText : newText;
+            $("#logText").val(allText); // prepend
+
+            //store the log text if it exists
+            LogService.lastAllLogText = allText;
+
+            // keep the lines that were being viewed in place
+            $("#logText").scrollTop($("#logText")[0].scrollHeight - scrollFromBottom);
+        }
+    }
+
     var enableTruncMode = function (enable) {
         $scope.truncModeEnabled = enable;
         configureLogTextAreaHeight();
@@ -318,6 +393,7 @@ var AdminLogsCtrl = function ( $scope, $log, $http, $interval, $timeout, LogServ
         lastChecked = -1;
         lastPosition = -1;
         lastLineLevel = null;
+        setEarlierLinesIndex(null, null, false);
 
         $("#logText").val(""); // clear
         $scope.logPlaceholder = "Please wait. This may take a minute or two for large files ...";
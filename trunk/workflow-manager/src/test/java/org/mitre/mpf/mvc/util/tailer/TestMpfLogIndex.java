@@ -0,0 +1,276 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.mvc.util.tailer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestMpfLogIndex {
+
+    private static final MpfLogLevel[] LEVELS = { MpfLogLevel.DEBUG, MpfLogLevel.INFO, MpfLogLevel.WARN };
+
+    @Rule
+    public TemporaryFolder _tempFolder = new TemporaryFolder();
+
+    private Path _logFile;
+
+    @Before
+    public void init() {
+        _logFile = _tempFolder.getRoot().toPath().resolve("workflow-manager.log");
+    }
+
+
+    @Test
+    public void readsEndOfLargeFileWithoutIndexingAllOfIt() throws IOException {
+        // About 50 MB
+        writeLogEntries(_logFile, 0, 400_000, false);
+        List<String> allLines = readAllLines(_logFile);
+
+        var index = new MpfLogIndex(_logFile);
+        MpfLogIndex.Page page = index.readLastLines(1000, Integer.MAX_VALUE, MpfLogLevel.ALL);
+
+        assertEquals(allLines.subList(allLines.size() - 1000, allLines.size()), page.getLines());
+        assertTrue(page.hasEarlierLines());
+        assertEquals(-1000, page.getFirstLine());
+        assertEquals(Files.size(_logFile), page.getEndPosition());
+        assertEquals(MpfLogLevel.ERROR, page.getLastLineLevel());
+        assertTrue(index.getIndexedLineCount() < 10_000);
+    }
+
+
+    @Test
+    public void pagingBackwardReturnsWholeFile() throws IOException {
+        writeLogEntries(_logFile, 0, 20_000, false);
+        List<String> allLines = readAllLines(_logFile);
+
+        var index = new MpfLogIndex(_logFile, 4096, 100);
+        List<String> pagedLines = readAllPagesBackward(index, 777, MpfLogLevel.ALL);
+
+        assertEquals(allLines, pagedLines);
+        assertEquals(allLines.size(), index.getIndexedLineCount());
+        // Only every 100th line is recorded.
+        assertTrue(index.getCheckpointCount() <= allLines.size() / 100 + 2);
+    }
+
+
+    @Test
+    public void pagingBackwardWithFilterMatchesForwardTailer() throws IOException {
+        writeLogEntries(_logFile, 0, 20_000, false);
+
+        for (MpfLogLevel level : List.of(MpfLogLevel.INFO, MpfLogLevel.WARN, MpfLogLevel.ERROR)) {
+            var index = new MpfLogIndex(_logFile, 4096, 100);
+            List<String> pagedLines = readAllPagesBackward(index, 500, level);
+            assertEquals(readFilteredLines(_logFile, level), pagedLines);
+        }
+    }
+
+
+    @Test
+    public void rereadingIndexedPageDoesNotRescan() throws IOException {
+        writeLogEntries(_logFile, 0, 20_000, false);
+        var index = new MpfLogIndex(_logFile, 4096, 100);
+
+        MpfLogIndex.Page last = index.readLastLines(500, Integer.MAX_VALUE, MpfLogLevel.ALL);
+        MpfLogIndex.Page previous = index.readLinesBefore(
+                last.getIndexId(), last.getFirstLine(), 500, Integer.MAX_VALUE, MpfLogLevel.ALL).orElseThrow();
+        long indexedLineCount = index.getIndexedLineCount();
+
+        MpfLogIndex.Page previousAgain = index.readLinesBefore(
+                last.getIndexId(), last.getFirstLine(), 500, Integer.MAX_VALUE, MpfLogLevel.ALL).orElseThrow();
+
+        assertEquals(previous.getLines(), previousAgain.getLines());
+        assertEquals(previous.getFirstLine(), previousAgain.getFirstLine());
+        assertEquals(indexedLineCount, index.getIndexedLineCount());
+    }
+
+
+    @Test
+    public void stopsReadingAfterMaxChars() throws IOException {
+        writeLogEntries(_logFile, 0, 20_000, false);
+        var index = new MpfLogIndex(_logFile, 4096, 100);
+
+        MpfLogIndex.Page page = index.readLastLines(Integer.MAX_VALUE, 10_000, MpfLogLevel.ALL);
+
+        int charCount = page.getLines().stream().mapToInt(l -> l.length() + 1).sum();
+        assertTrue(charCount >= 10_000);
+        assertTrue(page.hasEarlierLines());
+        assertTrue(index.getIndexedLineCount() < 20_000);
+    }
+
+
+    @Test
+    public void excludesPartialLastLine() throws IOException {
+        writeLogEntries(_logFile, 0, 100, false);
+        long completeLength = Files.size(_logFile);
+        Files.writeString(_logFile, "2020-01-01 00:00:00,000 INFO [main] partial",
+                          StandardOpenOption.APPEND);
+
+        var index = new MpfLogIndex(_logFile, 4096, 100);
+        MpfLogIndex.Page page = index.readLastLines(10, Integer.MAX_VALUE, MpfLogLevel.ALL);
+
+        assertEquals(completeLength, page.getEndPosition());
+        assertFalse(page.getLines().get(page.getLines().size() - 1).contains("partial"));
+    }
+
+
+    @Test
+    public void keepsLineNumbersWhenFileGrows() throws IOException {
+        writeLogEntries(_logFile, 0, 5_000, false);
+        var index = new MpfLogIndex(_logFile, 4096, 100);
+        MpfLogIndex.Page last = index.readLastLines(500, Integer.MAX_VALUE, MpfLogLevel.ALL);
+        MpfLogIndex.Page previous = index.readLinesBefore(
+                last.getIndexId(), last.getFirstLine(), 500, Integer.MAX_VALUE, MpfLogLevel.ALL).orElseThrow();
+
+        writeLogEntries(_logFile, 5_000, 100, true);
+        List<String> allLines = readAllLines(_logFile);
+
+        MpfLogIndex.Page previousAfterAppend = index.readLinesBefore(
+                last.getIndexId(), last.getFirstLine(), 500, Integer.MAX_VALUE, MpfLogLevel.ALL).orElseThrow();
+        assertEquals(previous.getLines(), previousAfterAppend.getLines());
+
+        MpfLogIndex.Page newLast = index.readLastLines(10, Integer.MAX_VALUE, MpfLogLevel.ALL);
+        assertEquals(last.getIndexId(), newLast.getIndexId());
+        assertEquals(allLines.subList(allLines.size() - 10, allLines.size()), newLast.getLines());
+        assertEquals(Files.size(_logFile), newLast.getEndPosition());
+    }
+
+
+    @Test
+    public void rebuildsIndexWhenFileIsRotated() throws IOException {
+        writeLogEntries(_logFile, 0, 5_000, false);
+        var index = new MpfLogIndex(_logFile, 4096, 100);
+        MpfLogIndex.Page last = index.readLastLines(500, Integer.MAX_VALUE, MpfLogLevel.ALL);
+
+        // Rename the old file and start a new one, the way a rolling file appender does.
+        Files.move(_logFile, _logFile.resolveSibling("workflow-manager.2020-01-01.log"));
+        writeLogEntries(_logFile, 1_000_000, 50, false);
+        assertIndexWasRebuilt(index, last);
+    }
+
+
+    @Test
+    public void rebuildsIndexWhenFileIsTruncated() throws IOException {
+        writeLogEntries(_logFile, 0, 5_000, false);
+        var index = new MpfLogIndex(_logFile, 4096, 100);
+        MpfLogIndex.Page last = index.readLastLines(500, Integer.MAX_VALUE, MpfLogLevel.ALL);
+
+        Files.write(_logFile, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+        writeLogEntries(_logFile, 1_000_000, 50, true);
+        assertIndexWasRebuilt(index, last);
+    }
+
+
+    @Test
+    public void rebuildsIndexWhenFileIsOverwrittenWithMoreContent() throws IOException {
+        writeLogEntries(_logFile, 0, 5_000, false);
+        var index = new MpfLogIndex(_logFile, 4096, 100);
+        MpfLogIndex.Page last = index.readLastLines(500, Integer.MAX_VALUE, MpfLogLevel.ALL);
+
+        Files.write(_logFile, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+        // Only slightly longer than before, so only the fingerprint can tell that the content changed.
+        writeLogEntries(_logFile, 1_000_000, 5_100, true);
+        assertIndexWasRebuilt(index, last);
+    }
+
+
+    private void assertIndexWasRebuilt(MpfLogIndex index, MpfLogIndex.Page oldPage) throws IOException {
+        assertTrue(index.readLinesBefore(oldPage.getIndexId(), oldPage.getFirstLine(), 500, Integer.MAX_VALUE,
+                                         MpfLogLevel.ALL).isEmpty());
+
+        List<String> allLines = readAllLines(_logFile);
+        MpfLogIndex.Page newPage = index.readLastLines(100, Integer.MAX_VALUE, MpfLogLevel.ALL);
+        assertNotEquals(oldPage.getIndexId(), newPage.getIndexId());
+        assertEquals(allLines.subList(Math.max(0, allLines.size() - 100), allLines.size()), newPage.getLines());
+        assertEquals(Files.size(_logFile), newPage.getEndPosition());
+    }
+
+
+    private static List<String> readAllPagesBackward(MpfLogIndex index, int pageSize, MpfLogLevel level)
+            throws IOException {
+        var pages = new ArrayList<List<String>>();
+        MpfLogIndex.Page page = index.readLastLines(pageSize, Integer.MAX_VALUE, level);
+        pages.add(page.getLines());
+        while (page.hasEarlierLines()) {
+            page = index.readLinesBefore(page.getIndexId(), page.getFirstLine(), pageSize, Integer.MAX_VALUE, level)
+                    .orElseThrow();
+            pages.add(page.getLines());
+        }
+        Collections.reverse(pages);
+        var lines = new ArrayList<String>();
+        pages.forEach(lines::addAll);
+        return lines;
+    }
+
+
+    private static List<String> readFilteredLines(Path logFile, MpfLogLevel level) throws IOException {
+        var listener = new FilteredMpfLogTailerListener(level);
+        readAllLines(logFile).forEach(listener::handle);
+        return listener.purgeLines();
+    }
+
+
+    private static List<String> readAllLines(Path logFile) throws IOException {
+        return Files.readAllLines(logFile, StandardCharsets.ISO_8859_1);
+    }
+
+
+    // Every 10th entry is an error with a stack trace, so some lines do not start with a log level.
+    private static void writeLogEntries(Path logFile, int firstEntry, int entryCount, boolean append)
+            throws IOException {
+        var options = append
+                ? new StandardOpenOption[] { StandardOpenOption.CREATE, StandardOpenOption.APPEND }
+                : new StandardOpenOption[] { StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING };
+        try (BufferedWriter writer = Files.newBufferedWriter(logFile, StandardCharsets.ISO_8859_1, options)) {
+            for (int i = firstEntry; i < firstEntry + entryCount; i++) {
+                boolean isError = i % 10 == 9;
+                MpfLogLevel level = isError ? MpfLogLevel.ERROR : LEVELS[i % LEVELS.length];
+                writer.write(String.format(
+                        "2020-01-01 %02d:%02d:%02d,%03d %s [main] o.m.m.w.SomeClass - Message number %d%n",
+                        (i / 3_600_000) % 24, (i / 60_000) % 60, (i / 1000) % 60, i % 1000, level, i));
+                if (isError) {
+                    writer.write("java.lang.IllegalStateException: Something went wrong\r\n");
+                    writer.write("\tat org.mitre.mpf.wfm.SomeClass.someMethod(SomeClass.java:" + i + ")\n");
+                    writer.write("\tat org.mitre.mpf.wfm.OtherClass.otherMethod(OtherClass.java:42)\n");
+                }
+            }
+        }
+    }
+}
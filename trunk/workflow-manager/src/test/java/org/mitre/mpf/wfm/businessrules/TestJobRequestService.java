@@ -36,6 +36,7 @@ import org.mitre.mpf.rest.api.JobCreationRequest;
 import org.mitre.mpf.rest.api.pipelines.*;
 import org.mitre.mpf.wfm.businessrules.impl.JobRequestServiceImpl;
 import org.mitre.mpf.wfm.camel.routes.MediaRetrieverRouteBuilder;
+import org.mitre.mpf.wfm.data.BatchJobBlobCodec;
 import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
 import org.mitre.mpf.wfm.data.access.JobRequestDao;
 import org.mitre.mpf.wfm.data.access.MarkupResultDao;
@@ -73,6 +74,8 @@ public class TestJobRequestService {
 
     private final JsonUtils _jsonUtils = new JsonUtils(ObjectMapperFactory.customObjectMapper());
 
+    private final BatchJobBlobCodec _batchJobBlobCodec = new BatchJobBlobCodec(_mockPropertiesUtil, _jsonUtils);
+
     private final JmsUtils _mockJmsUtils = mock(JmsUtils.class);
 
     private final InProgressBatchJobsService _inProgressJobs = new InProgressBatchJobsService(_mockPropertiesUtil,
@@ -89,7 +92,7 @@ public class TestJobRequestService {
 
     private final JobRequestService _jobRequestService
             = new JobRequestServiceImpl(_mockPropertiesUtil, _aggregateJobPropertiesUtil, _mockPipelineService,
-                                        _jsonUtils, _mockJmsUtils, _inProgressJobs, _mockJobRequestDao,
+                                        _batchJobBlobCodec, _mockJmsUtils, _inProgressJobs, _mockJobRequestDao,
                                         _mockMarkupResultDao, _mockJobStatusBroadcaster, _mockProduceTemplate);
 
     @Rule
@@ -99,6 +102,8 @@ public class TestJobRequestService {
     public void init() throws IOException {
         when(_mockPropertiesUtil.getTemporaryMediaDirectory())
                 .thenReturn(_temporaryFolder.newFolder("temp-media"));
+        when(_mockPropertiesUtil.isPersistedJobCompressionEnabled())
+                .thenReturn(true);
     }
 
 
@@ -189,7 +194,7 @@ public class TestJobRequestService {
 
 
         BatchJob job = _inProgressJobs.getJob(123);
-        assertArrayEquals(jobRequestEntity.getJob(), _jsonUtils.serialize(job));
+        assertArrayEquals(jobRequestEntity.getJob(), _batchJobBlobCodec.encode(job));
 
         assertEquals(123, job.getId());
         assertEquals(jobCreationRequest.getExternalId(), job.getExternalId().get());
@@ -251,7 +256,7 @@ public class TestJobRequestService {
         };
 
         existingJobRequestEntity.setStatus(BatchJobStatusType.COMPLETE);
-        existingJobRequestEntity.setJob(_jsonUtils.serialize(originalJob));
+        existingJobRequestEntity.setJob(_batchJobBlobCodec.encode(originalJob));
 
         when(_mockJobRequestDao.findById(321))
                 .thenReturn(existingJobRequestEntity);
@@ -312,7 +317,7 @@ public class TestJobRequestService {
 
 
         BatchJob newJob = _inProgressJobs.getJob(321);
-        assertArrayEquals(newJobRequestEntity.getJob(), _jsonUtils.serialize(newJob));
+        assertArrayEquals(newJobRequestEntity.getJob(), _batchJobBlobCodec.encode(newJob));
         assertEquals(BatchJobStatusType.IN_PROGRESS, newJobRequestEntity.getStatus());
 
         assertEquals(BatchJobStatusType.IN_PROGRESS, newJob.getStatus());
@@ -386,6 +391,6 @@ public class TestJobRequestService {
 
         JobRequest persistedRequest = persistedRequestCaptor.getValue();
         assertEquals(BatchJobStatusType.CANCELLING, persistedRequest.getStatus());
-        assertArrayEquals(persistedRequest.getJob(), _jsonUtils.serialize(job));
+        assertArrayEquals(persistedRequest.getJob(), _batchJobBlobCodec.encode(job));
     }
 }
@@ -0,0 +1,116 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camel;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableSortedMap;
+import org.junit.Test;
+import org.mitre.mpf.interop.*;
+import org.mitre.mpf.wfm.util.ObjectMapperFactory;
+
+import java.time.Instant;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestStreamingJsonOutputObject {
+
+    private final ObjectMapper _objectMapper = ObjectMapperFactory.customObjectMapper();
+
+
+    @Test
+    public void serializedFormMatchesRegularOutputObject() throws Exception {
+        var regularOutputObject = new JsonOutputObject(
+                123, "object-id", new JsonPipeline("PIPELINE", "description"), 4, "site", "external-id",
+                Instant.ofEpochMilli(1000), Instant.ofEpochMilli(2000), "COMPLETE");
+
+        // Uses the actions and tracks from regularOutputObject.
+        var streamingOutputObject = new StreamingJsonOutputObject(
+                123, "object-id", new JsonPipeline("PIPELINE", "description"), 4, "site", "external-id",
+                Instant.ofEpochMilli(1000), Instant.ofEpochMilli(2000), "COMPLETE",
+                (media, type, source) -> regularOutputObject.getMedia().stream()
+                        .filter(m -> m.getMediaId() == media.getMediaId())
+                        .flatMap(m -> m.getTypes().get(type).stream())
+                        .filter(a -> a.getSource().equals(source))
+                        .flatMap(a -> a.getTracks().stream())
+                        .iterator());
+
+        for (JsonOutputObject outputObject : List.of(regularOutputObject, streamingOutputObject)) {
+            outputObject.getJobProperties().put("JOB_PROP", "value");
+            outputObject.getAlgorithmProperties().put("ALGO", Map.of("ALGO_PROP", "value"));
+            outputObject.addWarnings(1, List.of(new JsonIssueDetails("WFM", "WARNING_CODE", "warning")));
+            outputObject.addErrors(2, List.of(new JsonIssueDetails("WFM", "ERROR_CODE", "error")));
+
+            outputObject.getMedia().add(createMedia(1, "/media/b.mp4",
+                                                    outputObject == regularOutputObject));
+            outputObject.getMedia().add(createMedia(2, "/media/a.mp4",
+                                                    outputObject == regularOutputObject));
+        }
+
+        String expected = _objectMapper.writeValueAsString(regularOutputObject);
+        String actual = _objectMapper.writeValueAsString(streamingOutputObject);
+        assertTrue(expected.contains("\"tracks\""));
+        assertEquals(expected, actual);
+    }
+
+
+    private static JsonMediaOutputObject createMedia(long mediaId, String path, boolean includeTracks) {
+        var media = new JsonMediaOutputObject(mediaId, path, "video/mp4", 100, "sha" + mediaId, "COMPLETE");
+        media.getMediaMetadata().put("FPS", "30");
+        media.getMediaProperties().put("MEDIA_PROP", "value");
+        media.setMarkupResult(new JsonMarkupOutputObject(mediaId, "/markup/" + mediaId, "COMPLETE", null));
+        media.getDetectionProcessingErrors().computeIfAbsent("+#ACTION2", k -> new TreeSet<>())
+                .add(new JsonDetectionProcessingError(0, 10, 0, 300, "ERROR_CODE", "message"));
+
+        addAction(media, "FACE", "+#ACTION1", includeTracks ? 3 : 0, mediaId);
+        addAction(media, "FACE", "+#ACTION1#ACTION2", includeTracks ? 2 : 0, mediaId);
+        addAction(media, "CLASS", "+#ACTION1", includeTracks ? 1 : 0, mediaId);
+        addAction(media, JsonActionOutputObject.NO_TRACKS_TYPE, "+#ACTION1#ACTION2#ACTION3", 0, mediaId);
+        return media;
+    }
+
+
+    private static void addAction(JsonMediaOutputObject media, String type, String source, int trackCount,
+                                  long seed) {
+        var action = new JsonActionOutputObject(source);
+        var random = new Random(seed + trackCount);
+        for (int i = 0; i < trackCount; i++) {
+            var detections = new ArrayList<JsonDetectionOutputObject>();
+            for (int frame = i * 10; frame < i * 10 + 3; frame++) {
+                detections.add(new JsonDetectionOutputObject(
+                        random.nextInt(100), random.nextInt(100), 10, 20, random.nextFloat(),
+                        ImmutableSortedMap.of("PROP", "value" + frame), frame, frame * 33L, "NOT_ATTEMPTED",
+                        null));
+            }
+            action.getTracks().add(new JsonTrackOutputObject(
+                    "track" + i, i * 10, i * 10 + 2, i * 330, i * 330 + 66, type, source,
+                    random.nextFloat(), Map.of("TRACK_PROP", "value"), detections.get(1), detections));
+        }
+        media.getTypes().computeIfAbsent(type, k -> new TreeSet<>()).add(action);
+    }
+}
@@ -0,0 +1,250 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camel;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.impl.DefaultMessage;
+import org.junit.Test;
+import org.mitre.mpf.wfm.enums.MpfHeaders;
+import org.mitre.mpf.wfm.service.JobProgressCoalescer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+import static org.mockito.AdditionalMatchers.lt;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TestWfmSplitter {
+
+    private final LazySplitSizes _lazySplitSizes = new LazySplitSizes();
+
+    @Test
+    public void setsSplitSizeOnAllMessagesWhenSplitIsCollection() {
+        var splitter = new TestSplitter(() -> createMessages(3).iterator());
+        splitter.returnCollection = true;
+
+        List<Message> messages = ImmutableList.copyOf(splitter.split(createExchange()));
+
+        assertEquals(3, messages.size());
+        for (Message message : messages) {
+            assertEquals(3, (int) message.getHeader(MpfHeaders.SPLIT_SIZE, Integer.class));
+            assertEquals(5L, (long) message.getHeader(MpfHeaders.JOB_ID, Long.class));
+        }
+        assertSameCorrelationId(messages);
+    }
+
+
+    @Test
+    public void createsMessagesLazily() {
+        var createdCount = new int[1];
+        // This is how DetectionTaskSplitter creates the messages for one piece of media at a time.
+        var splitter = new TestSplitter(() -> Iterators.concat(Iterators.transform(
+                IntStream.range(0, 4).iterator(),
+                i -> {
+                    createdCount[0]++;
+                    return createMessages(1).iterator();
+                })));
+
+        Iterator<Message> messageIter = splitter.split(createExchange());
+        // The first message is created to determine whether or not the split is empty.
+        assertEquals(1, createdCount[0]);
+
+        var messages = new ArrayList<Message>();
+        messages.add(messageIter.next());
+        // Creating the next message is how the splitter determines whether or not the previous one was the last.
+        assertEquals(2, createdCount[0]);
+        assertEquals(WfmSplitter.UNKNOWN_SPLIT_SIZE,
+                     (int) messages.get(0).getHeader(MpfHeaders.SPLIT_SIZE, Integer.class));
+
+        messageIter.forEachRemaining(messages::add);
+        assertEquals(4, createdCount[0]);
+        assertEquals(4, messages.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(WfmSplitter.UNKNOWN_SPLIT_SIZE,
+                         (int) messages.get(i).getHeader(MpfHeaders.SPLIT_SIZE, Integer.class));
+        }
+        assertEquals(4, (int) messages.get(3).getHeader(MpfHeaders.SPLIT_SIZE, Integer.class));
+        assertSameCorrelationId(messages);
+    }
+
+
+    @Test
+    public void producesEmptySplitMessageWhenNoMessagesCreated() {
+        var splitter = new TestSplitter(() -> List.<Message>of().iterator());
+
+        List<Message> messages = ImmutableList.copyOf(splitter.split(createExchange()));
+
+        assertEquals(1, messages.size());
+        Message message = messages.get(0);
+        assertTrue(message.getHeader(MpfHeaders.EMPTY_SPLIT, Boolean.class));
+        assertFalse(message.getHeader(MpfHeaders.SPLITTING_ERROR, Boolean.class));
+        assertEquals(1, (int) message.getHeader(MpfHeaders.SPLIT_SIZE, Integer.class));
+    }
+
+
+    @Test
+    public void aggregatorCompletesWhenLastMessageRespondsFirst() {
+        var splitter = new TestSplitter(() -> createMessages(3).iterator());
+        List<Message> messages = ImmutableList.copyOf(splitter.split(createExchange()));
+
+        // Deliver the response to the last message first.
+        List<Message> responses = List.of(messages.get(2), messages.get(0), messages.get(1));
+        List<Boolean> completed = aggregate(responses);
+        assertEquals(List.of(false, false, true), completed);
+    }
+
+
+    @Test
+    public void aggregatorCompletesWhenLastMessageRespondsLast() {
+        var splitter = new TestSplitter(() -> createMessages(3).iterator());
+        List<Message> messages = ImmutableList.copyOf(splitter.split(createExchange()));
+
+        List<Boolean> completed = aggregate(messages);
+        assertEquals(List.of(false, false, true), completed);
+    }
+
+
+    @Test
+    public void reportsProgressBeforeLastMessageResponds() {
+        var splitter = new TestSplitter(() -> createMessages(4).iterator());
+        Iterator<Message> messageIter = splitter.split(createExchange());
+        var mockCoalescer = mock(JobProgressCoalescer.class);
+        var aggregator = new BroadcastEnabledStringCountBasedWfmAggregator();
+        ReflectionTestUtils.setField(aggregator, "jobProgressCoalescer", mockCoalescer);
+        ReflectionTestUtils.setField(aggregator, "lazySplitSizes", _lazySplitSizes);
+
+        // Responses arrive while the split is still being created. Only 3 messages are known to exist.
+        Message message1 = messageIter.next();
+        Message message2 = messageIter.next();
+        Exchange aggregated = aggregateOne(aggregator, null, message1);
+        verify(mockCoalescer).recordSplitProgress(5, 1, 3);
+        aggregated = aggregateOne(aggregator, aggregated, message2);
+        verify(mockCoalescer).recordSplitProgress(5, 2, 3);
+
+        Message message3 = messageIter.next();
+        Message message4 = messageIter.next();
+        assertFalse(messageIter.hasNext());
+
+        // The split is finished, so the actual size is used even though the last message has not responded.
+        aggregated = aggregateOne(aggregator, aggregated, message3);
+        verify(mockCoalescer).recordSplitProgress(5, 3, 4);
+        assertEquals(4, (int) aggregated.getIn().getHeader(MpfHeaders.SPLIT_SIZE, Integer.class));
+        assertNull(aggregated.getIn().getHeader(MpfHeaders.SPLIT_COMPLETED));
+
+        aggregated = aggregateOne(aggregator, aggregated, message4);
+        verify(mockCoalescer).recordSplitProgress(5, 4, 4);
+        assertTrue(aggregated.getIn().getHeader(MpfHeaders.SPLIT_COMPLETED, Boolean.class));
+        verify(mockCoalescer, never()).recordSplitProgress(anyLong(), anyInt(), lt(0));
+    }
+
+
+    private List<Boolean> aggregate(List<Message> responses) {
+        var aggregator = new CountBasedWfmAggregator<>(Object.class);
+        ReflectionTestUtils.setField(aggregator, "lazySplitSizes", _lazySplitSizes);
+        var results = new ArrayList<Boolean>();
+        Exchange aggregated = null;
+        for (Message response : responses) {
+            aggregated = aggregateOne(aggregator, aggregated, response);
+            results.add(Boolean.TRUE.equals(aggregated.getIn().getHeader(MpfHeaders.SPLIT_COMPLETED)));
+        }
+        return results;
+    }
+
+
+    private static Exchange aggregateOne(CountBasedWfmAggregator<?> aggregator, Exchange aggregated,
+                                         Message response) {
+        var context = new DefaultCamelContext();
+        var newExchange = new DefaultExchange(context);
+        newExchange.getIn().setHeaders(response.getHeaders());
+        Exchange result = aggregator.aggregate(aggregated, newExchange);
+
+        // Camel's aggregator moves the out message to the in message before the next aggregation.
+        var next = new DefaultExchange(context);
+        next.getIn().setHeaders(result.getOut().getHeaders());
+        return next;
+    }
+
+
+    private static void assertSameCorrelationId(List<Message> messages) {
+        long distinctIds = messages.stream()
+                .map(m -> m.getHeader(MpfHeaders.CORRELATION_ID))
+                .distinct()
+                .count();
+        assertEquals(1, distinctIds);
+        assertNotNull(messages.get(0).getHeader(MpfHeaders.CORRELATION_ID));
+    }
+
+
+    private static List<Message> createMessages(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> (Message) new DefaultMessage())
+                .collect(toList());
+    }
+
+
+    private static Exchange createExchange() {
+        var exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(MpfHeaders.JOB_ID, 5L);
+        exchange.getIn().setHeader(MpfHeaders.JMS_PRIORITY, 4);
+        return exchange;
+    }
+
+
+    private class TestSplitter extends WfmSplitter {
+        private final Iterable<Message> _messages;
+
+        boolean returnCollection;
+
+        TestSplitter(Iterable<Message> messages) {
+            _messages = messages;
+            ReflectionTestUtils.setField(this, "lazySplitSizes", _lazySplitSizes);
+        }
+
+        @Override
+        protected Iterable<Message> wfmSplit(Exchange exchange) {
+            return returnCollection
+                    ? ImmutableList.copyOf(_messages)
+                    : _messages;
+        }
+
+        @Override
+        protected String getSplitterName() {
+            return "TestSplitter";
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camel.operations.detection.trackmerging;
+
+import com.google.common.collect.ImmutableSortedMap;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import org.mitre.mpf.wfm.data.entities.transients.Detection;
+import org.mitre.mpf.wfm.data.entities.transients.Track;
+
+import java.awt.*;
+import java.util.List;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestTrackMerger {
+
+    @Test
+    public void producesSameResultAsPreviousAlgorithm() {
+        var random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            var tracks = createTracks(random, 1 + random.nextInt(300), 2000);
+            var plan = new TrackMergingPlan(true, random.nextInt(12), 1, random.nextDouble() * 0.6);
+
+            var expected = new TreeSet<>(legacyCombine(tracks, plan));
+            var actual = TrackMerger.merge(tracks, plan);
+
+            assertEquals("Different result for " + plan, List.copyOf(expected), List.copyOf(actual));
+        }
+    }
+
+
+    @Test
+    public void mergesChainOfAdjacentTracks() {
+        var track1 = createTrack("FACE", 0, 9, null, Map.of("A", "1"));
+        var track2 = createTrack("FACE", 10, 19, null, Map.of("A", "2"));
+        var track3 = createTrack("FACE", 20, 29, null, Map.of("A", "3", "B", "4"));
+
+        var merged = TrackMerger.merge(new TreeSet<>(List.of(track1, track2, track3)),
+                                       new TrackMergingPlan(true, 0, 1, 0.5));
+
+        assertEquals(1, merged.size());
+        Track track = merged.first();
+        assertEquals(0, track.getStartOffsetFrameInclusive());
+        assertEquals(29, track.getEndOffsetFrameInclusive());
+        assertEquals(30, track.getDetections().size());
+        assertEquals(ImmutableSortedMap.of("A", "1; 2; 3", "B", "4"), track.getTrackProperties());
+    }
+
+
+    @Test
+    public void onlyMergesTracksWithinGap() {
+        var track1 = createTrack("FACE", 0, 9, null, Map.of());
+        var track2 = createTrack("FACE", 13, 19, null, Map.of());
+        var tracks = new TreeSet<>(List.of(track1, track2));
+
+        assertEquals(2, TrackMerger.merge(tracks, new TrackMergingPlan(true, 4, 1, 0.5)).size());
+        assertEquals(1, TrackMerger.merge(tracks, new TrackMergingPlan(true, 5, 1, 0.5)).size());
+    }
+
+
+    @Test
+    public void onlyMergesClassTracksWithSameClassification() {
+        var car = createTrack("CLASS", 0, 9, "car", Map.of());
+        var truck = createTrack("CLASS", 10, 19, "truck", Map.of());
+        var otherCar = createTrack("CLASS", 12, 19, "CAR", Map.of());
+        var face = createTrack("FACE", 10, 19, null, Map.of());
+
+        var merged = TrackMerger.merge(new TreeSet<>(List.of(car, truck, otherCar, face)),
+                                       new TrackMergingPlan(true, 5, 1, 0.5));
+
+        assertEquals(3, merged.size());
+        assertTrue(merged.contains(truck));
+        assertTrue(merged.contains(face));
+        assertTrue(merged.contains(TrackMergingProcessor.merge(car, otherCar)));
+    }
+
+
+    @Test
+    public void returnsTracksUnchangedWhenNoneCanBeMerged() {
+        var track1 = createTrack("FACE", 0, 9, null, Map.of());
+        var track2 = createTrack("FACE", 20, 29, null, Map.of());
+        var tracks = new TreeSet<>(List.of(track1, track2));
+
+        var merged = TrackMerger.merge(tracks, new TrackMergingPlan(true, 2, 1, 0.5));
+
+        assertEquals(tracks, merged);
+        assertSame(track1, merged.first());
+        assertSame(track2, merged.last());
+    }
+
+
+
+    private static Track createTrack(String type, int start, int end, String classification,
+                                     Map<String, String> properties) {
+        var detections = new ArrayList<Detection>();
+        Map<String, String> detectionProperties = classification == null
+                ? Map.of()
+                : Map.of("CLASSIFICATION", classification);
+        for (int frame = start; frame <= end; frame++) {
+            detections.add(new Detection(10, 10, 100, 100, 0.5f, frame, frame * 10, detectionProperties));
+        }
+        return new Track(1, 1, 0, 0, start, end, start * 10, end * 10, type, 0.5f, detections, properties);
+    }
+
+
+    /**
+     * Creates tracks that are similar enough that many of them can be merged. Tracks are spread across a few types
+     * and classifications, and are positioned so that only some of the tracks overlap.
+     */
+    static SortedSet<Track> createTracks(Random random, int trackCount, int frameCount) {
+        String[] types = { "FACE", "CLASS", "PERSON" };
+        String[] classifications = { "car", "CAR", "truck", "person" };
+        var tracks = new TreeSet<Track>();
+        for (int i = 0; i < trackCount; i++) {
+            String type = types[random.nextInt(types.length)];
+            int start = random.nextInt(frameCount);
+            int end = start + random.nextInt(20);
+            int x = 20 * random.nextInt(4);
+            int y = 20 * random.nextInt(4);
+            String classification = classifications[random.nextInt(classifications.length)];
+
+            var detections = new ArrayList<Detection>();
+            for (int frame = start; frame <= end; frame += 1 + random.nextInt(3)) {
+                var detectionProperties = "CLASS".equals(type)
+                        ? ImmutableSortedMap.of("CLASSIFICATION", classification)
+                        : ImmutableSortedMap.<String, String>of();
+                detections.add(new Detection(x + random.nextInt(5), y + random.nextInt(5),
+                                             80 + random.nextInt(10), 80 + random.nextInt(10),
+                                             random.nextFloat(), frame, frame * 33, detectionProperties));
+            }
+            var trackProperties = ImmutableSortedMap.of(
+                    "SOURCE", "segment" + (start / 100),
+                    "TRACK_ID", String.valueOf(random.nextInt(3)));
+            tracks.add(new Track(1, 2, 0, 0, start, end, start * 33, end * 33, type, random.nextFloat(),
+                                 detections, trackProperties));
+        }
+        return tracks;
+    }
+
+
+    /**
+     * The track merging algorithm that was used prior to the introduction of {@link TrackMerger}. It is kept here
+     * to verify that {@link TrackMerger} produces the same results.
+     */
+    static Set<Track> legacyCombine(SortedSet<Track> sourceTracks, TrackMergingPlan plan) {
+        if (sourceTracks.isEmpty()) {
+            return sourceTracks;
+        }
+
+        List<Track> tracks = new LinkedList<>(sourceTracks);
+        List<Track> mergedTracks = new LinkedList<>();
+
+        while (tracks.size() > 0) {
+            Track merged = tracks.remove(0);
+            boolean performedMerge = false;
+            Track trackToRemove = null;
+
+            for (Track candidate : tracks) {
+                if (legacyCanMerge(merged, candidate, plan)) {
+                    tracks.add(0, TrackMergingProcessor.merge(merged, candidate));
+                    performedMerge = true;
+                    trackToRemove = candidate;
+                    break;
+                }
+            }
+
+            if (performedMerge) {
+                tracks.remove(trackToRemove);
+            } else {
+                mergedTracks.add(merged);
+            }
+        }
+        return new HashSet<>(mergedTracks);
+    }
+
+
+    private static boolean legacyCanMerge(Track track1, Track track2, TrackMergingPlan plan) {
+        return StringUtils.equalsIgnoreCase(track1.getType(), track2.getType())
+                && legacyIsEligibleForMerge(track1, track2)
+                && legacyIsWithinGap(track1, track2, plan.getMinGapBetweenTracks())
+                && legacyIntersects(track1, track2, plan.getMinTrackOverlap());
+    }
+
+    private static boolean legacyIsEligibleForMerge(Track track1, Track track2) {
+        if (track1.getType().toUpperCase().equals("CLASS")) {
+            if (track1.getDetections().isEmpty() || track2.getDetections().isEmpty()) {
+                return false;
+            }
+            String class1 = track1.getDetections().last().getDetectionProperties().get("CLASSIFICATION");
+            String class2 = track2.getDetections().first().getDetectionProperties().get("CLASSIFICATION");
+            return StringUtils.equalsIgnoreCase(class1, class2);
+        }
+        return true;
+    }
+
+    private static boolean legacyIsWithinGap(Track track1, Track track2, double minGapBetweenTracks) {
+        if (track1.getEndOffsetFrameInclusive() + 1 == track2.getStartOffsetFrameInclusive()) {
+            return true;
+        }
+        return (track1.getEndOffsetFrameInclusive() < track2.getStartOffsetFrameInclusive()) &&
+                (minGapBetweenTracks - 1 >= track2.getStartOffsetFrameInclusive() - track1.getEndOffsetFrameInclusive());
+    }
+
+    private static boolean legacyIntersects(Track track1, Track track2, double minTrackOverlap) {
+        Detection track1End = track1.getDetections().last();
+        Detection track2Start = track2.getDetections().first();
+
+        Rectangle rectangle1 = new Rectangle(track1End.getX(), track1End.getY(), track1End.getWidth(), track1End.getHeight());
+        Rectangle rectangle2 = new Rectangle(track2Start.getX(), track2Start.getY(), track2Start.getWidth(), track2Start.getHeight());
+
+        if (rectangle1.getWidth() == 0 || rectangle2.getWidth() == 0 || rectangle1.getHeight() == 0 || rectangle2.getHeight() == 0) {
+            return false;
+        }
+
+        Rectangle intersection = rectangle1.intersection(rectangle2);
+        if (intersection.isEmpty()) {
+            return 0 >= minTrackOverlap;
+        }
+
+        double intersectArea = intersection.getHeight() * intersection.getWidth();
+        double unionArea = (rectangle2.getHeight() * rectangle2.getWidth()) + (rectangle1.getHeight() * rectangle1.getWidth()) - intersectArea;
+        return intersectArea / unionArea >= minTrackOverlap;
+    }
+}
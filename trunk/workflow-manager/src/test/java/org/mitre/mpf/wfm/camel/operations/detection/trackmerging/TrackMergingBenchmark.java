@@ -0,0 +1,96 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camel.operations.detection.trackmerging;
+
+import org.mitre.mpf.wfm.data.entities.transients.Track;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link TrackMerger} with the track merging algorithm that it replaced. Before measuring, the setup
+ * verifies that both algorithms produce identical tracks for the generated input. This is not run as part of the
+ * unit tests. To run it, execute the main method from an IDE or run:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.mitre.mpf.wfm.camel.operations.detection.trackmerging.TrackMergingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackMergingBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    public int trackCount;
+
+    private final TrackMergingPlan _plan = new TrackMergingPlan(true, 10, 1, 0.2);
+
+    private SortedSet<Track> _tracks;
+
+
+    @Setup
+    public void setup() {
+        // Keep the density of tracks per frame constant so the number of merges grows with the track count.
+        _tracks = TestTrackMerger.createTracks(new Random(42), trackCount, trackCount * 4);
+
+        var expected = List.copyOf(new TreeSet<>(TestTrackMerger.legacyCombine(_tracks, _plan)));
+        var actual = List.copyOf(TrackMerger.merge(_tracks, _plan));
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException(
+                    "TrackMerger produced different tracks than the previous algorithm for " + trackCount + " tracks.");
+        }
+        System.out.printf("%nMerged %s tracks down to %s tracks.%n", _tracks.size(), actual.size());
+    }
+
+
+    @Benchmark
+    public Set<Track> previousAlgorithm() {
+        return TestTrackMerger.legacyCombine(_tracks, _plan);
+    }
+
+    @Benchmark
+    public Set<Track> trackMerger() {
+        return TrackMerger.merge(_tracks, _plan);
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(TrackMergingBenchmark.class.getSimpleName())
+                           .build())
+                .run();
+    }
+}
@@ -52,6 +52,7 @@ import org.mockito.*;
 
 import java.net.URI;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -211,7 +212,7 @@ public class TestDetectionResponseProcessor {
         verify(inProgressJobs, never())
                 .addJobWarning(eq(JOB_ID), any(), any());
         verify(inProgressJobs, times(1))
-                .addTrack(track(JOB_ID, 5));
+                .addTracks(singleTrack(JOB_ID, 5));
     }
 
     @Test
@@ -388,14 +389,18 @@ public class TestDetectionResponseProcessor {
         });
     }
 
-    private static Track track(long jobId, int startFrame) {
+    private static Collection<Track> singleTrack(long jobId, int startFrame) {
         return ArgumentMatchers.argThat(new ArgumentMatcher<>() {
             public String toString() {
-                return "Track { jobId = " + jobId + ", startFrame = " + startFrame + " }";
+                return "[Track { jobId = " + jobId + ", startFrame = " + startFrame + " }]";
             }
 
-            public boolean matches(Track obj) {
-                return jobId == obj.getJobId() && startFrame == obj.getStartOffsetFrameInclusive();
+            public boolean matches(Collection<Track> tracks) {
+                if (tracks.size() != 1) {
+                    return false;
+                }
+                Track track = tracks.iterator().next();
+                return jobId == track.getJobId() && startFrame == track.getStartOffsetFrameInclusive();
             }
         });
     }
@@ -26,6 +26,7 @@
 
 package org.mitre.mpf.wfm.camelOps;
 
+import com.google.common.collect.ImmutableList;
 import org.apache.camel.Message;
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.junit.Assert;
@@ -142,7 +143,7 @@ public class TestDetectionTaskSplitter {
                 Collections.emptyMap(),
                 Collections.emptyMap());
 
-        List<Message> responseList = detectionSplitter.performSplit(testJob, task);
+        List<Message> responseList = ImmutableList.copyOf(detectionSplitter.performSplit(testJob, task));
         Assert.assertTrue(responseList.isEmpty());
     }
 
@@ -160,8 +161,8 @@ public class TestDetectionTaskSplitter {
         BatchJob testJob = createSimpleJobForTest(Map.of(), Map.of(), Map.of(),
                                                   "/samples/new_face_video.avi", mimeType);
 
-        List<Message> responseList = detectionSplitter.performSplit(
-                testJob, testJob.getPipelineElements().getTask(0));
+        List<Message> responseList = ImmutableList.copyOf(detectionSplitter.performSplit(
+                testJob, testJob.getPipelineElements().getTask(0)));
 
         assertFalse(responseList.isEmpty());
 
@@ -185,8 +186,8 @@ public class TestDetectionTaskSplitter {
         actionProperties.put(MpfConstants.TARGET_SEGMENT_LENGTH_PROPERTY, "25");
         BatchJob testJob = createSimpleJobForTest(actionProperties, jobProperties, Collections.emptyMap(),
                                                       "/samples/new_face_video.avi", "video/avi");
-        List<Message> responseList = detectionSplitter.performSplit(
-                testJob, testJob.getPipelineElements().getTask(0));
+        List<Message> responseList = ImmutableList.copyOf(detectionSplitter.performSplit(
+                testJob, testJob.getPipelineElements().getTask(0)));
 
         Assert.assertEquals(12, responseList.size());
         Message message = responseList.get(0);
@@ -222,8 +223,8 @@ public class TestDetectionTaskSplitter {
         BatchJob testJob = createSimpleJobForTest(
                 Collections.emptyMap(), jobProperties, mediaProperties,
                 "/samples/new_face_video.avi", "video/avi");
-        List<Message> responseList = detectionSplitter.performSplit(
-                testJob, testJob.getPipelineElements().getTask(0));
+        List<Message> responseList = ImmutableList.copyOf(detectionSplitter.performSplit(
+                testJob, testJob.getPipelineElements().getTask(0)));
 
         Assert.assertEquals(12, responseList.size());
         Message message = responseList.get(0);
@@ -360,8 +361,8 @@ public class TestDetectionTaskSplitter {
     private void assertProtobufHasExpectedProperties(
             String propertyName, String propertyValue, Map<String, String> expectedProperties, BatchJob testJob) {
 
-        List<Message> responseList = detectionSplitter.performSplit(
-                testJob, testJob.getPipelineElements().getTask(0));
+        List<Message> responseList = ImmutableList.copyOf(detectionSplitter.performSplit(
+                testJob, testJob.getPipelineElements().getTask(0)));
 
         Assert.assertEquals(1, responseList.size());
         Message message = responseList.get(0);
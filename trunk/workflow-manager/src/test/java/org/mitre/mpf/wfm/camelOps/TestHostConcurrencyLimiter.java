@@ -0,0 +1,117 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camelOps;
+
+import org.junit.Test;
+import org.mitre.mpf.wfm.camel.operations.mediaretrieval.HostConcurrencyLimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.*;
+
+public class TestHostConcurrencyLimiter {
+
+    // Run queued tasks on the calling thread so the tests are deterministic.
+    private final HostConcurrencyLimiter _limiter = new HostConcurrencyLimiter(2, Runnable::run);
+
+
+    @Test
+    public void queuesTasksWhenHostIsAtLimit() {
+        List<CompletableFuture<String>> taskFutures = new ArrayList<>();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            var taskFuture = new CompletableFuture<String>();
+            taskFutures.add(taskFuture);
+            results.add(_limiter.submit("host1", () -> taskFuture));
+        }
+        assertEquals(2, _limiter.getRunningCount("host1"));
+        assertEquals(2, _limiter.getPendingCount("host1"));
+
+        taskFutures.get(0).complete("result0");
+        assertEquals("result0", results.get(0).join());
+        assertEquals(2, _limiter.getRunningCount("host1"));
+        assertEquals(1, _limiter.getPendingCount("host1"));
+
+        taskFutures.get(1).complete("result1");
+        taskFutures.get(2).complete("result2");
+        taskFutures.get(3).complete("result3");
+        for (int i = 0; i < 4; i++) {
+            assertEquals("result" + i, results.get(i).join());
+        }
+        assertEquals(0, _limiter.getRunningCount("host1"));
+        assertEquals(0, _limiter.getPendingCount("host1"));
+    }
+
+
+    @Test
+    public void slowHostDoesNotDelayOtherHosts() {
+        var slowTask = new CompletableFuture<String>();
+        _limiter.submit("slow", () -> slowTask);
+        _limiter.submit("slow", () -> slowTask);
+        var queuedSlowResult = _limiter.submit("slow", () -> CompletableFuture.completedFuture("slow"));
+
+        var fastResult = _limiter.submit("fast", () -> CompletableFuture.completedFuture("fast"));
+
+        assertEquals("fast", fastResult.join());
+        assertFalse(queuedSlowResult.isDone());
+
+        slowTask.complete("done");
+        assertEquals("slow", queuedSlowResult.join());
+    }
+
+
+    @Test
+    public void failedTasksReleaseTheHost() {
+        var failedResult = _limiter.submit("host1", () -> {
+            throw new IllegalStateException("intentional");
+        });
+        var failedFuture = _limiter.submit(
+                "host1", () -> CompletableFuture.failedFuture(new IllegalStateException("intentional")));
+
+        assertTrue(failedResult.isCompletedExceptionally());
+        assertTrue(failedFuture.isCompletedExceptionally());
+        try {
+            failedFuture.join();
+            fail("Expected CompletionException");
+        }
+        catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(0, _limiter.getRunningCount("host1"));
+
+        assertEquals("ok", _limiter.submit("host1", () -> CompletableFuture.completedFuture("ok")).join());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidLimit() {
+        new HostConcurrencyLimiter(0, Runnable::run);
+    }
+}
@@ -0,0 +1,251 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camelOps;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mitre.mpf.wfm.camel.operations.mediainspection.MediaInspectionCache;
+import org.mitre.mpf.wfm.util.ObjectMapperFactory;
+import org.mitre.mpf.wfm.util.PropertiesUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestMediaInspectionCache {
+
+    @Rule
+    public TemporaryFolder _tempFolder = new TemporaryFolder();
+
+    private final PropertiesUtil _mockPropertiesUtil = mock(PropertiesUtil.class);
+
+    private final ObjectMapper _objectMapper = ObjectMapperFactory.customObjectMapper();
+
+    private Path _cacheDir;
+
+    @Before
+    public void init() throws IOException {
+        _cacheDir = _tempFolder.newFolder("media-inspection-cache").toPath();
+        when(_mockPropertiesUtil.getMediaInspectionCacheDirectory())
+                .thenReturn(_cacheDir.toFile());
+        when(_mockPropertiesUtil.getMediaInspectionCacheSize())
+                .thenReturn(4);
+    }
+
+
+    @Test
+    public void canGetBySha256() throws IOException {
+        var cache = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+        cache.put(null, createEntry("sha1", 10));
+
+        var entry = cache.getBySha256("sha1", "video/mp4").orElseThrow();
+        assertEquals(10, entry.getLength());
+        assertEquals("sha1", entry.getSha256());
+        assertEquals(Map.of("FRAME_COUNT", "10", "FPS", "29.97"), entry.getMetadata());
+
+        assertTrue(cache.getBySha256("sha2", "video/mp4").isEmpty());
+        // The MIME type is part of the inspection result, so a different MIME type can not use the cached result.
+        assertTrue(cache.getBySha256("sha1", "image/gif").isEmpty());
+    }
+
+
+    @Test
+    public void canGetByFile() throws IOException {
+        var cache = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+        Path mediaFile = _tempFolder.newFile("media.mp4").toPath();
+        Files.writeString(mediaFile, "original content");
+
+        assertTrue(cache.getByFile(mediaFile).isEmpty());
+        cache.put(mediaFile, createEntry("sha1", 10));
+        assertEquals(10, cache.getByFile(mediaFile).orElseThrow().getLength());
+
+        Files.writeString(mediaFile, "modified content that is longer");
+        assertTrue(cache.getByFile(mediaFile).isEmpty());
+        // The entry stored under the hash is still available.
+        assertTrue(cache.getBySha256("sha1", "video/mp4").isPresent());
+    }
+
+
+    @Test
+    public void tracksHitsAndMisses() throws IOException {
+        var cache = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+        long initialHits = cache.getHitCount();
+        long initialMisses = cache.getMissCount();
+
+        cache.put(null, createEntry("sha1", 10));
+        cache.getBySha256("sha1", "video/mp4");
+        cache.getBySha256("sha1", "video/mp4");
+        cache.getBySha256("sha2", "video/mp4");
+
+        assertEquals(2, cache.getHitCount() - initialHits);
+        assertEquals(1, cache.getMissCount() - initialMisses);
+
+        // A different MIME type is a miss.
+        cache.getBySha256("sha1", "image/gif");
+        assertEquals(2, cache.getHitCount() - initialHits);
+        assertEquals(2, cache.getMissCount() - initialMisses);
+    }
+
+
+    @Test
+    public void countsOneMissWhenLocalFileIsNotCached() throws IOException {
+        var cache = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+        Path mediaFile = _tempFolder.newFile("media.mp4").toPath();
+        long initialHits = cache.getHitCount();
+        long initialMisses = cache.getMissCount();
+
+        assertTrue(cache.getByFile(mediaFile).isEmpty());
+        assertTrue(cache.getBySha256("sha1", "video/mp4").isEmpty());
+        assertEquals(0, cache.getHitCount() - initialHits);
+        assertEquals(1, cache.getMissCount() - initialMisses);
+
+        cache.put(mediaFile, createEntry("sha1", 10));
+        assertTrue(cache.getByFile(mediaFile).isPresent());
+        assertEquals(1, cache.getHitCount() - initialHits);
+        assertEquals(1, cache.getMissCount() - initialMisses);
+    }
+
+
+    @Test
+    public void fileIndexDoesNotCountTowardsSize() throws IOException {
+        var cache = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+        var mediaFiles = new ArrayList<Path>();
+        for (int i = 1; i <= 4; i++) {
+            Path mediaFile = _tempFolder.newFile("media" + i + ".mp4").toPath();
+            mediaFiles.add(mediaFile);
+            cache.put(mediaFile, createEntry("sha" + i, i));
+        }
+
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, cache.getByFile(mediaFiles.get(i - 1)).orElseThrow().getLength());
+        }
+        assertEquals(8, countEntryFiles());
+
+        // The file index entry is removed along with the result it refers to.
+        cache.put(null, createEntry("sha5", 5));
+        assertTrue(cache.getByFile(mediaFiles.get(0)).isEmpty());
+        assertTrue(cache.getBySha256("sha1", "video/mp4").isEmpty());
+        assertEquals(7, countEntryFiles());
+    }
+
+
+    @Test
+    public void fileIndexPersistsAcrossInstances() throws IOException {
+        var cache = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+        Path mediaFile = _tempFolder.newFile("media.mp4").toPath();
+        cache.put(mediaFile, createEntry("sha1", 10));
+
+        var cache2 = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+        assertEquals(10, cache2.getByFile(mediaFile).orElseThrow().getLength());
+    }
+
+
+    @Test
+    public void evictsLeastRecentlyUsedEntry() throws IOException {
+        var cache = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+        for (int i = 1; i <= 4; i++) {
+            cache.put(null, createEntry("sha" + i, i));
+        }
+        // Make sha1 the most recently used entry, so sha2 will be evicted next.
+        assertTrue(cache.getBySha256("sha1", "video/mp4").isPresent());
+
+        cache.put(null, createEntry("sha5", 5));
+
+        assertTrue(cache.getBySha256("sha2", "video/mp4").isEmpty());
+        for (String sha : new String[] {"sha1", "sha3", "sha4", "sha5"}) {
+            assertTrue(cache.getBySha256(sha, "video/mp4").isPresent());
+        }
+        assertEquals(4, countEntryFiles());
+    }
+
+
+    @Test
+    public void entriesPersistAcrossInstances() throws IOException {
+        var cache = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+        cache.put(null, createEntry("sha1", 10));
+
+        var cache2 = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+        assertEquals(10, cache2.getBySha256("sha1", "video/mp4").orElseThrow().getLength());
+    }
+
+
+    @Test
+    public void evictsOldestEntriesOnStartupWhenSizeReduced() throws IOException {
+        var cache = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+        for (int i = 1; i <= 4; i++) {
+            cache.put(null, createEntry("sha" + i, i));
+            // Make sure each entry has a distinct modification time.
+            Files.setLastModifiedTime(_cacheDir.resolve("sha-sha" + i + ".json"), FileTime.fromMillis(i * 1000));
+        }
+
+        when(_mockPropertiesUtil.getMediaInspectionCacheSize())
+                .thenReturn(2);
+        var cache2 = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+
+        assertEquals(2, countEntryFiles());
+        assertTrue(cache2.getBySha256("sha1", "video/mp4").isEmpty());
+        assertTrue(cache2.getBySha256("sha2", "video/mp4").isEmpty());
+        assertTrue(cache2.getBySha256("sha3", "video/mp4").isPresent());
+        assertTrue(cache2.getBySha256("sha4", "video/mp4").isPresent());
+    }
+
+
+    @Test
+    public void doesNothingWhenDisabled() throws IOException {
+        when(_mockPropertiesUtil.getMediaInspectionCacheSize())
+                .thenReturn(0);
+        var cache = new MediaInspectionCache(_mockPropertiesUtil, _objectMapper);
+        cache.put(null, createEntry("sha1", 10));
+
+        assertTrue(cache.getBySha256("sha1", "video/mp4").isEmpty());
+        assertEquals(0, countEntryFiles());
+    }
+
+
+    private static MediaInspectionCache.Entry createEntry(String sha, int frameCount) {
+        return new MediaInspectionCache.Entry(
+                sha, "video/mp4", frameCount,
+                Map.of("FRAME_COUNT", String.valueOf(frameCount), "FPS", "29.97"));
+    }
+
+
+    private long countEntryFiles() throws IOException {
+        try (var files = Files.list(_cacheDir)) {
+            return files.count();
+        }
+    }
+}
@@ -30,7 +30,9 @@ import org.apache.camel.Exchange;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mitre.mpf.test.TestUtil;
+import org.mitre.mpf.wfm.camel.operations.mediainspection.MediaInspectionCache;
 import org.mitre.mpf.wfm.camel.operations.mediainspection.MediaInspectionProcessor;
+import org.mitre.mpf.wfm.camel.operations.mediainspection.MediaMetadataReader;
 import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
 import org.mitre.mpf.wfm.data.entities.persistent.MediaImpl;
 import org.mitre.mpf.wfm.enums.BatchJobStatusType;
@@ -39,12 +41,15 @@ import org.mitre.mpf.wfm.enums.MpfHeaders;
 import org.mitre.mpf.wfm.enums.UriScheme;
 import org.mitre.mpf.wfm.util.IoUtils;
 import org.mitre.mpf.wfm.util.JniLoader;
+import org.mitre.mpf.wfm.util.PropertiesUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
@@ -57,8 +62,20 @@ public class TestMediaInspectionProcessor {
 
     private final InProgressBatchJobsService mockInProgressJobs = mock(InProgressBatchJobsService.class);
 
+    private final MediaInspectionCache mockInspectionCache = mock(MediaInspectionCache.class);
+
     private final MediaInspectionProcessor mediaInspectionProcessor
-            = new MediaInspectionProcessor(mockInProgressJobs, new IoUtils());
+            = new MediaInspectionProcessor(mockInProgressJobs, new IoUtils(), mockInspectionCache,
+                                           new MediaMetadataReader(), createMockPropertiesUtil());
+
+    private static PropertiesUtil createMockPropertiesUtil() {
+        var mockPropertiesUtil = mock(PropertiesUtil.class);
+        when(mockPropertiesUtil.getMediaInspectionThreadCount())
+                .thenReturn(2);
+        when(mockPropertiesUtil.getMediaInspectionMaxInProgress())
+                .thenReturn(4);
+        return mockPropertiesUtil;
+    }
 
 
     private static final AtomicInteger SEQUENCE = new AtomicInteger();
@@ -224,6 +241,50 @@ public class TestMediaInspectionProcessor {
 	}
 
 
+    @Test
+    public void usesCachedInspectionResults() {
+        long jobId = next();
+        long mediaId = next();
+
+        URI mediaUri = TestUtil.findFile("/samples/video_01.mp4");
+        MediaImpl media = new MediaImpl(
+                mediaId, mediaUri.toString(), UriScheme.get(mediaUri), Paths.get(mediaUri), Collections.emptyMap(),
+                null);
+        var cached = new MediaInspectionCache.Entry("cached-sha", "video/mp4", 123,
+                                                    Map.of("FRAME_COUNT", "123", "FPS", "30"));
+        when(mockInspectionCache.getByFile(Paths.get(mediaUri)))
+                .thenReturn(Optional.of(cached));
+
+        Exchange exchange = setupExchange(jobId, media);
+        mediaInspectionProcessor.process(exchange);
+
+        verify(mockInProgressJobs)
+                .addMediaInspectionInfo(jobId, mediaId, "cached-sha", "video/mp4", 123,
+                                        Map.of("FRAME_COUNT", "123", "FPS", "30"));
+        verify(mockInspectionCache, never())
+                .put(any(), any());
+        verifyNoJobOrMediaError();
+    }
+
+
+    @Test
+    public void cachesSuccessfulInspection() {
+        long jobId = next();
+        long mediaId = next();
+
+        URI mediaUri = TestUtil.findFile("/samples/meds1.jpg");
+        MediaImpl media = new MediaImpl(
+                mediaId, mediaUri.toString(), UriScheme.get(mediaUri), Paths.get(mediaUri), Collections.emptyMap(),
+                null);
+        Exchange exchange = setupExchange(jobId, media);
+        mediaInspectionProcessor.process(exchange);
+
+        verify(mockInspectionCache)
+                .put(eq(Paths.get(mediaUri)), argThat(e -> e.getLength() == 1
+                        && e.getSha256().equals("c067e7eed23a0fe022140c30dbfa993ae720309d6567a803d111ecec739a6713")));
+    }
+
+
 	private void verifyNoJobOrMediaError() {
 	    verify(mockInProgressJobs, never())
                 .addError(anyLong(), anyLong(), any(), any());
@@ -26,6 +26,7 @@
 
 package org.mitre.mpf.wfm.camelOps;
 
+import com.google.common.collect.ImmutableList;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.impl.DefaultMessage;
@@ -98,7 +99,7 @@ public class TestMediaInspectionSplitter {
         when(mockInProgressJobs.getJob(jobId))
                 .thenReturn(testJob);
 
-        List<Message> responseList = mediaInspectionSplitter.split(exchange);
+        List<Message> responseList = ImmutableList.copyOf(mediaInspectionSplitter.split(exchange));
         assertEquals(1, responseList.size());
         Message response = responseList.get(0);
         assertEquals(jobId, (long) response.getHeader(MpfHeaders.JOB_ID, Long.class));
@@ -0,0 +1,115 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.camelOps;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mitre.mpf.test.TestUtil;
+import org.mitre.mpf.wfm.camel.operations.mediainspection.MediaMetadataReader;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class TestMediaMetadataReader {
+
+    @Rule
+    public TemporaryFolder _tempFolder = new TemporaryFolder();
+
+
+    @Test
+    public void canReadJpegDimensionsFromHeader() throws IOException {
+        Path path = Paths.get(TestUtil.findFile("/samples/meds1.jpg"));
+        BufferedImage image = ImageIO.read(path.toFile());
+
+        Dimension dimensions = MediaMetadataReader.readImageDimensions(path).orElseThrow();
+        assertEquals(image.getWidth(), dimensions.width);
+        assertEquals(image.getHeight(), dimensions.height);
+    }
+
+
+    @Test
+    public void canReadPngDimensionsFromHeader() throws IOException {
+        Path path = _tempFolder.newFile("test.png").toPath();
+        ImageIO.write(new BufferedImage(37, 19, BufferedImage.TYPE_INT_RGB), "png", path.toFile());
+
+        Dimension dimensions = MediaMetadataReader.readImageDimensions(path).orElseThrow();
+        assertEquals(new Dimension(37, 19), dimensions);
+    }
+
+
+    @Test
+    public void returnsEmptyWhenFormatNotSupported() throws IOException {
+        Path path = _tempFolder.newFile("test.txt").toPath();
+        Files.writeString(path, "This is not an image.");
+
+        assertTrue(MediaMetadataReader.readImageDimensions(path).isEmpty());
+    }
+
+
+    @Test
+    public void onlyUsesTikaForFormatsWithExifOrientation() {
+        assertTrue(MediaMetadataReader.mayContainExifOrientation("image/jpeg"));
+        assertTrue(MediaMetadataReader.mayContainExifOrientation("image/TIFF"));
+        assertFalse(MediaMetadataReader.mayContainExifOrientation("image/png"));
+        assertFalse(MediaMetadataReader.mayContainExifOrientation("image/bmp"));
+        assertFalse(MediaMetadataReader.mayContainExifOrientation(null));
+    }
+
+
+    @Test
+    public void sharedReaderCanBeUsedConcurrently() {
+        var metadataReader = new MediaMetadataReader();
+        Path path = Paths.get(TestUtil.findFile("/samples/meds-aa-S001-01-exif-rotation.jpg"));
+
+        List<CompletableFuture<String>> futures = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return metadataReader.readTikaMetadata(path, "image/jpeg").get("tiff:Orientation");
+                    }
+                    catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }))
+                .collect(Collectors.toList());
+
+        for (CompletableFuture<String> future : futures) {
+            assertEquals("5", future.join());
+        }
+    }
+}
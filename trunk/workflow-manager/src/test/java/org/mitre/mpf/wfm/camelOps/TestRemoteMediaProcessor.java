@@ -33,6 +33,7 @@ import org.apache.camel.Message;
 import org.apache.camel.impl.DefaultMessage;
 import org.junit.*;
 import org.junit.rules.TemporaryFolder;
+import org.mitre.mpf.test.TestUtil;
 import org.mitre.mpf.wfm.camel.operations.mediaretrieval.RemoteMediaProcessor;
 import org.mitre.mpf.wfm.camel.operations.mediaretrieval.RemoteMediaSplitter;
 import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
@@ -43,7 +44,9 @@ import org.mitre.mpf.wfm.enums.IssueCodes;
 import org.mitre.mpf.wfm.enums.MpfHeaders;
 import org.mitre.mpf.wfm.enums.UriScheme;
 import org.mitre.mpf.wfm.util.AggregateJobPropertiesUtil;
+import org.mitre.mpf.wfm.util.IoUtils;
 import org.mitre.mpf.wfm.util.PropertiesUtil;
+import org.mitre.mpf.wfm.util.ThreadUtil;
 import org.mitre.mpf.wfm.service.WorkflowPropertyService;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
@@ -51,14 +54,25 @@ import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 import static org.mitre.mpf.test.TestUtil.nonBlank;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -86,6 +100,8 @@ public class TestRemoteMediaProcessor {
     @BeforeClass
     public static void initClass() {
         setHttpProxies();
+        // The download idle timeout is scheduled on the ThreadUtil thread pool, which other tests shut down.
+        ThreadUtil.start();
     }
 
     private static void setHttpProxies() {
@@ -120,9 +136,31 @@ public class TestRemoteMediaProcessor {
         when(_mockPropertiesUtil.getRemoteMediaDownloadSleep())
                 .thenReturn(200);
 
+        when(_mockPropertiesUtil.getRemoteMediaDownloadThreadCount())
+                .thenReturn(4);
+
+        when(_mockPropertiesUtil.getRemoteMediaDownloadHostLimit())
+                .thenReturn(2);
+
+        when(_mockPropertiesUtil.getRemoteMediaDownloadMaxInProgress())
+                .thenReturn(10);
+
+        when(_mockPropertiesUtil.getRemoteMediaDownloadConnectTimeout())
+                .thenReturn(30_000);
+
+        when(_mockPropertiesUtil.getRemoteMediaDownloadReadTimeout())
+                .thenReturn(60_000);
+
         _remoteMediaProcessor = new RemoteMediaProcessor(
                 _mockInProgressJobs, null, _mockPropertiesUtil,
-                new AggregateJobPropertiesUtil(_mockPropertiesUtil, mock(WorkflowPropertyService.class)));
+                new AggregateJobPropertiesUtil(_mockPropertiesUtil, mock(WorkflowPropertyService.class)),
+                new IoUtils());
+    }
+
+
+    @After
+    public void cleanup() {
+        _remoteMediaProcessor.close();
     }
 
 
@@ -150,6 +188,240 @@ public class TestRemoteMediaProcessor {
     }
 
 
+    @Test(timeout = 5 * MINUTES)
+    public void hashesAndDetectsMimeTypeWhileDownloading() throws Exception {
+        long jobId = 654;
+        long mediaId = 987;
+        Path samplePath = Paths.get(TestUtil.findFile("/samples/video_01.mp4"));
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/video_01.mp4", httpExchange -> {
+            httpExchange.sendResponseHeaders(200, Files.size(samplePath));
+            try (OutputStream out = httpExchange.getResponseBody()) {
+                Files.copy(samplePath, out);
+            }
+        });
+        server.start();
+        try {
+            String uri = "http://localhost:" + server.getAddress().getPort() + "/video_01.mp4";
+            Path localPath = _tempFolder.newFolder().toPath().resolve("video_01.mp4");
+            MediaImpl media = new MediaImpl(mediaId, uri, UriScheme.HTTP, localPath, Collections.emptyMap(), null);
+
+            Exchange exchange = setupExchange(jobId, media);
+            _remoteMediaProcessor.process(exchange);
+
+            assertFalse(media.isFailed());
+            assertArrayEquals(Files.readAllBytes(samplePath), Files.readAllBytes(localPath));
+            verify(_mockInProgressJobs)
+                    .addMediaIngestInfo(jobId, mediaId,
+                                        "5eacf0a11d51413300ee0f4719b7ac7b52b47310a49320703c1d2639ebbc9fea",
+                                        "video/mp4");
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+
+
+    @Test(timeout = 5 * MINUTES)
+    public void limitsConcurrentDownloadsFromSameHost() throws Exception {
+        var activeRequests = new AtomicInteger();
+        var maxActiveRequests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", httpExchange -> {
+            maxActiveRequests.accumulateAndGet(activeRequests.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(200);
+                byte[] body = "content".getBytes(StandardCharsets.UTF_8);
+                httpExchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = httpExchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                activeRequests.decrementAndGet();
+            }
+        });
+        server.start();
+        try {
+            int mediaCount = 6;
+            var callbacksDone = new CountDownLatch(mediaCount);
+            var medias = new ArrayList<MediaImpl>();
+            for (int i = 0; i < mediaCount; i++) {
+                String uri = "http://localhost:" + server.getAddress().getPort() + "/media" + i;
+                var media = new MediaImpl(i, uri, UriScheme.HTTP, _tempFolder.newFile().toPath(),
+                                          Collections.emptyMap(), null);
+                medias.add(media);
+                Exchange exchange = setupExchange(100 + i, media);
+                boolean completedSynchronously = _remoteMediaProcessor.process(
+                        exchange, doneSync -> callbacksDone.countDown());
+                assertFalse(completedSynchronously);
+            }
+
+            assertTrue(callbacksDone.await(30, TimeUnit.SECONDS));
+            assertEquals(2, maxActiveRequests.get());
+            for (MediaImpl media : medias) {
+                assertFalse(media.isFailed());
+                assertEquals("content", Files.readString(media.getLocalPath()));
+            }
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+
+
+    @Test(timeout = 5 * MINUTES)
+    public void retriesWithoutBlockingCaller() throws Exception {
+        long jobId = 741;
+        long mediaId = 852;
+        var requestCount = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/media.txt", httpExchange -> {
+            if (requestCount.incrementAndGet() < 3) {
+                httpExchange.sendResponseHeaders(503, -1);
+                httpExchange.close();
+                return;
+            }
+            byte[] body = "content".getBytes(StandardCharsets.UTF_8);
+            httpExchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = httpExchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            String uri = "http://localhost:" + server.getAddress().getPort() + "/media.txt";
+            MediaImpl media = new MediaImpl(mediaId, uri, UriScheme.HTTP, _tempFolder.newFile().toPath(),
+                                            Collections.emptyMap(), null);
+            Exchange exchange = setupExchange(jobId, media);
+
+            var callbackDone = new CountDownLatch(1);
+            boolean completedSynchronously = _remoteMediaProcessor.process(
+                    exchange, doneSync -> callbackDone.countDown());
+            assertFalse(completedSynchronously);
+
+            assertTrue(callbackDone.await(30, TimeUnit.SECONDS));
+            assertEquals(3, requestCount.get());
+            assertFalse(media.isFailed());
+            assertEquals(mediaId, exchange.getOut().getHeader(MpfHeaders.MEDIA_ID));
+            verify(_mockInProgressJobs)
+                    .addMediaIngestInfo(eq(jobId), eq(mediaId), nonBlank(), eq("text/plain"));
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+
+
+    @Test(timeout = 5 * MINUTES)
+    public void retriesWhenServerStopsSendingBody() throws Exception {
+        when(_mockPropertiesUtil.getRemoteMediaDownloadReadTimeout())
+                .thenReturn(500);
+        var requestCount = new AtomicInteger();
+        var releaseStalledRequest = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/media.txt", httpExchange -> {
+            byte[] body = "content".getBytes(StandardCharsets.UTF_8);
+            httpExchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = httpExchange.getResponseBody()) {
+                if (requestCount.incrementAndGet() == 1) {
+                    out.write(body, 0, 2);
+                    out.flush();
+                    releaseStalledRequest.await();
+                    return;
+                }
+                out.write(body);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        try {
+            String uri = "http://localhost:" + server.getAddress().getPort() + "/media.txt";
+            MediaImpl media = new MediaImpl(963, uri, UriScheme.HTTP, _tempFolder.newFile().toPath(),
+                                            Collections.emptyMap(), null);
+            Exchange exchange = setupExchange(147, media);
+
+            var callbackDone = new CountDownLatch(1);
+            _remoteMediaProcessor.process(exchange, doneSync -> callbackDone.countDown());
+
+            assertTrue(callbackDone.await(30, TimeUnit.SECONDS));
+            assertEquals(2, requestCount.get());
+            assertFalse(media.isFailed());
+            assertEquals("content", Files.readString(media.getLocalPath()));
+        }
+        finally {
+            releaseStalledRequest.countDown();
+            server.stop(0);
+        }
+    }
+
+
+    @Test(timeout = 5 * MINUTES)
+    public void waitsForInProgressMessageBeforeAcceptingAnother() throws Exception {
+        when(_mockPropertiesUtil.getRemoteMediaDownloadMaxInProgress())
+                .thenReturn(1);
+        _remoteMediaProcessor.close();
+        _remoteMediaProcessor = new RemoteMediaProcessor(
+                _mockInProgressJobs, null, _mockPropertiesUtil,
+                new AggregateJobPropertiesUtil(_mockPropertiesUtil, mock(WorkflowPropertyService.class)),
+                new IoUtils());
+
+        var releaseFirstRequest = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", httpExchange -> {
+            try {
+                releaseFirstRequest.await();
+                byte[] body = "content".getBytes(StandardCharsets.UTF_8);
+                httpExchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = httpExchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        try {
+            String uriPrefix = "http://localhost:" + server.getAddress().getPort() + "/media";
+            var firstMedia = new MediaImpl(1, uriPrefix + 1, UriScheme.HTTP, _tempFolder.newFile().toPath(),
+                                           Collections.emptyMap(), null);
+            var secondMedia = new MediaImpl(2, uriPrefix + 2, UriScheme.HTTP, _tempFolder.newFile().toPath(),
+                                            Collections.emptyMap(), null);
+            var callbacksDone = new CountDownLatch(2);
+            _remoteMediaProcessor.process(setupExchange(258, firstMedia), doneSync -> callbacksDone.countDown());
+
+            var secondProcessReturned = new CountDownLatch(1);
+            var secondExchange = setupExchange(369, secondMedia);
+            Executors.newSingleThreadExecutor().execute(() -> {
+                _remoteMediaProcessor.process(secondExchange, doneSync -> callbacksDone.countDown());
+                secondProcessReturned.countDown();
+            });
+            assertFalse("The second message must wait for the first one to complete.",
+                        secondProcessReturned.await(500, TimeUnit.MILLISECONDS));
+
+            releaseFirstRequest.countDown();
+            assertTrue(secondProcessReturned.await(30, TimeUnit.SECONDS));
+            assertTrue(callbacksDone.await(30, TimeUnit.SECONDS));
+            assertFalse(firstMedia.isFailed());
+            assertFalse(secondMedia.isFailed());
+        }
+        finally {
+            releaseFirstRequest.countDown();
+            server.stop(0);
+        }
+    }
+
+
     @Test(timeout = 5 * MINUTES)
     public void testInvalidRetrieveRequest() throws Exception {
         LOG.info("Starting invalid image retrieval request.");
@@ -204,7 +476,7 @@ public class TestRemoteMediaProcessor {
         when(exchange.getIn())
                 .thenReturn(inMessage);
 
-        List<Message> messages = _remoteMediaSplitter.split(exchange);
+        List<Message> messages = ImmutableList.copyOf(_remoteMediaSplitter.split(exchange));
 
         int targetMessageCount = 1;
         assertEquals(String.format("The splitter must return %d message. Actual: %d.",
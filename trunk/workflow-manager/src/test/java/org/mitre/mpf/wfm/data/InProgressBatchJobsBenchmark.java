@@ -0,0 +1,162 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.data;
+
+import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
+import org.mitre.mpf.wfm.data.entities.persistent.JobPipelineElements;
+import org.mitre.mpf.wfm.data.entities.persistent.SystemPropertiesSnapshot;
+import org.mitre.mpf.wfm.data.entities.transients.Track;
+import org.mitre.mpf.wfm.enums.BatchJobStatusType;
+import org.mitre.mpf.wfm.enums.IssueCodes;
+import org.mitre.mpf.wfm.util.PropertiesUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures the throughput of {@link InProgressBatchJobsService} when many threads are processing responses for
+ * different jobs at the same time. Redis is replaced with a stub that sleeps to simulate a network round trip.
+ * The GLOBAL_LOCK mode wraps each response in a single shared monitor, which is how the service used to behave when
+ * every method was synchronized.
+ *
+ * This is not run as part of the unit tests. To run it, execute the main method from an IDE or run:
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.mitre.mpf.wfm.data.InProgressBatchJobsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class InProgressBatchJobsBenchmark {
+
+    private static final long REDIS_ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final int JOB_COUNT = 64;
+
+    @Param({"GLOBAL_LOCK", "PER_JOB"})
+    public String lockMode;
+
+    private final Object _globalLock = new Object();
+
+    private InProgressBatchJobsService _inProgressJobs;
+
+
+    @Setup
+    public void setup() {
+        _inProgressJobs = new InProgressBatchJobsService(mock(PropertiesUtil.class), new SimulatedRedis());
+        for (long jobId = 1; jobId <= JOB_COUNT; jobId++) {
+            _inProgressJobs.addJob(jobId, null, mock(SystemPropertiesSnapshot.class),
+                                   mock(JobPipelineElements.class), 4, false, null, null, List.of(),
+                                   Map.of(), Map.of());
+            _inProgressJobs.setJobStatus(jobId, BatchJobStatusType.IN_PROGRESS);
+        }
+    }
+
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private static final AtomicLong NEXT_JOB_ID = new AtomicLong(1);
+
+        long jobId;
+
+        List<Track> tracks;
+
+        @Setup
+        public void setup() {
+            jobId = (NEXT_JOB_ID.getAndIncrement() % JOB_COUNT) + 1;
+            tracks = List.of(new Track(jobId, 1, 0, 0, 0, 10, 0, 330, "FACE", 0.5f, List.of(), Map.of()));
+        }
+    }
+
+
+    @Benchmark
+    public int processResponse(ThreadState threadState) {
+        if (lockMode.equals("GLOBAL_LOCK")) {
+            synchronized (_globalLock) {
+                return doProcessResponse(threadState);
+            }
+        }
+        return doProcessResponse(threadState);
+    }
+
+
+    private int doProcessResponse(ThreadState threadState) {
+        BatchJob job = _inProgressJobs.getJob(threadState.jobId);
+        _inProgressJobs.addTracks(threadState.tracks);
+        _inProgressJobs.addWarning(threadState.jobId, 0, IssueCodes.OTHER, "warning");
+        return _inProgressJobs.getTracks(job.getId(), 1, 0, 0).size();
+    }
+
+
+    private static class SimulatedRedis implements Redis {
+        @Override
+        public void addTrack(Track track) {
+            LockSupport.parkNanos(REDIS_ROUND_TRIP_NANOS);
+        }
+
+        @Override
+        public void addTracks(Collection<Track> tracks) {
+            LockSupport.parkNanos(REDIS_ROUND_TRIP_NANOS);
+        }
+
+        @Override
+        public void clearTracks(BatchJob job) {
+            LockSupport.parkNanos(REDIS_ROUND_TRIP_NANOS);
+        }
+
+        @Override
+        public SortedSet<Track> getTracks(long jobId, long mediaId, int taskIndex, int actionIndex) {
+            LockSupport.parkNanos(REDIS_ROUND_TRIP_NANOS);
+            return new TreeSet<>();
+        }
+
+        @Override
+        public void setTracks(long jobId, long mediaId, int taskIndex, int actionIndex,
+                              Collection<Track> tracks) {
+            LockSupport.parkNanos(REDIS_ROUND_TRIP_NANOS);
+        }
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(InProgressBatchJobsBenchmark.class.getSimpleName())
+                           .build())
+                .run();
+    }
+}
@@ -0,0 +1,136 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.data;
+
+import org.junit.Test;
+import org.mitre.mpf.rest.api.pipelines.*;
+import org.mitre.mpf.test.TestUtil;
+import org.mitre.mpf.wfm.WfmProcessingException;
+import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
+import org.mitre.mpf.wfm.data.entities.persistent.BatchJobImpl;
+import org.mitre.mpf.wfm.data.entities.persistent.JobPipelineElements;
+import org.mitre.mpf.wfm.data.entities.persistent.MediaImpl;
+import org.mitre.mpf.wfm.data.entities.persistent.SystemPropertiesSnapshot;
+import org.mitre.mpf.wfm.enums.UriScheme;
+import org.mitre.mpf.wfm.util.JsonUtils;
+import org.mitre.mpf.wfm.util.ObjectMapperFactory;
+import org.mitre.mpf.wfm.util.PropertiesUtil;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestBatchJobBlobCodec {
+
+    private final JsonUtils _jsonUtils = new JsonUtils(ObjectMapperFactory.customObjectMapper());
+
+    private final PropertiesUtil _mockPropertiesUtil = mock(PropertiesUtil.class);
+
+    private final BatchJobBlobCodec _codec = new BatchJobBlobCodec(_mockPropertiesUtil, _jsonUtils);
+
+
+    @Test
+    public void canRoundTripCompressedJob() {
+        when(_mockPropertiesUtil.isPersistedJobCompressionEnabled())
+                .thenReturn(true);
+        var job = createJob();
+
+        byte[] encoded = _codec.encode(job);
+        assertTrue(BatchJobBlobCodec.isCompressed(encoded));
+        assertTrue(encoded.length < _jsonUtils.serialize(job).length);
+
+        assertSameJob(job, _codec.decode(encoded));
+    }
+
+
+    @Test
+    public void canRoundTripUncompressedJob() {
+        var job = createJob();
+
+        byte[] encoded = _codec.encode(job);
+        assertFalse(BatchJobBlobCodec.isCompressed(encoded));
+        assertArrayEquals(_jsonUtils.serialize(job), encoded);
+
+        assertSameJob(job, _codec.decode(encoded));
+    }
+
+
+    @Test
+    public void canDecodeJobStoredBeforeCompressionWasEnabled() {
+        var job = createJob();
+        byte[] legacyBlob = _jsonUtils.serialize(job);
+
+        when(_mockPropertiesUtil.isPersistedJobCompressionEnabled())
+                .thenReturn(true);
+        assertSameJob(job, _codec.decode(legacyBlob));
+    }
+
+
+    @Test
+    public void throwsWhenCompressedJobIsTruncated() {
+        when(_mockPropertiesUtil.isPersistedJobCompressionEnabled())
+                .thenReturn(true);
+        byte[] encoded = _codec.encode(createJob());
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length / 2);
+
+        TestUtil.assertThrows(WfmProcessingException.class, () -> _codec.decode(truncated));
+    }
+
+
+    private void assertSameJob(BatchJob expected, BatchJob actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getJobProperties(), actual.getJobProperties());
+        assertEquals(expected.getMedia().iterator().next().getUri(), actual.getMedia().iterator().next().getUri());
+        assertArrayEquals(_jsonUtils.serialize(expected), _jsonUtils.serialize(actual));
+    }
+
+
+    private static BatchJob createJob() {
+        var algorithm = new Algorithm("TEST ALGO", "desc", ActionType.DETECTION,
+                                      new Algorithm.Requires(List.of()),
+                                      new Algorithm.Provides(List.of(), List.of()),
+                                      true, true);
+        var action = new Action("TEST ACTION", "descr", algorithm.getName(), List.of());
+        var task = new Task("Test Task", "desc", List.of(action.getName()));
+        var pipeline = new Pipeline("TEST PIPELINE", "desc", List.of(task.getName()));
+        var pipelineElements = new JobPipelineElements(pipeline, List.of(task), List.of(action),
+                                                       List.of(algorithm));
+
+        return new BatchJobImpl(
+                123, "external_id", new SystemPropertiesSnapshot(Map.of("my.property", "5")), pipelineElements,
+                4, true, "http://callback", "POST",
+                List.of(new MediaImpl(456, "http://media.mp4", UriScheme.HTTP, Path.of("temp"),
+                                      Map.of("media_prop", "media_val"), null)),
+                Map.of("job_prop", "job_val"),
+                Map.of("TEST ALGO", Map.of("algo_prop", "algo_val")));
+    }
+}
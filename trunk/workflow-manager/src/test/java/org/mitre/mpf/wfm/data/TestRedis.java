@@ -200,6 +200,18 @@ public class TestRedis {
     }
 
 
+    @Test
+    public void canAddMultipleTracksAtOnce() {
+        _redis.addTracks(List.of(_currentTracks.first(), _differentJobTrack, _currentTracks.last()));
+        _redis.addTracks(List.of());
+
+        assertEquals(_currentTracks, _redis.getTracks(TEST_JOB_ID, TEST_MEDIA_ID, 0, 0));
+        assertEquals(Collections.singleton(_differentJobTrack),
+                     _redis.getTracks(_differentJobTrack.getJobId(), _differentJobTrack.getMediaId(),
+                                      _differentJobTrack.getTaskIndex(), _differentJobTrack.getActionIndex()));
+    }
+
+
     @Test
     public void canHandleMissingTrackList() {
         SortedSet<Track> retrievedTracks = _redis.getTracks(TEST_JOB_ID, TEST_MEDIA_ID, 0, 0);
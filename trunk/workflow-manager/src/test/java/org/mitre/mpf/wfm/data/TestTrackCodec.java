@@ -0,0 +1,144 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.data;
+
+import com.google.common.collect.ImmutableSortedMap;
+import org.junit.Test;
+import org.mitre.mpf.test.TestUtil;
+import org.mitre.mpf.wfm.WfmProcessingException;
+import org.mitre.mpf.wfm.data.entities.transients.Detection;
+import org.mitre.mpf.wfm.data.entities.transients.Track;
+import org.mitre.mpf.wfm.enums.ArtifactExtractionStatus;
+import org.mitre.mpf.wfm.util.JsonUtils;
+import org.mitre.mpf.wfm.util.ObjectMapperFactory;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TestTrackCodec {
+
+    private final JsonUtils _jsonUtils = new JsonUtils(ObjectMapperFactory.customObjectMapper());
+
+
+    @Test
+    public void binaryCodecCanRoundTripTrack() {
+        verifyRoundTrip(new BinaryTrackCodec(), createTrack());
+    }
+
+    @Test
+    public void jsonCodecCanRoundTripTrack() {
+        verifyRoundTrip(new JsonTrackCodec(_jsonUtils), createTrack());
+    }
+
+
+    @Test
+    public void binaryCodecCanRoundTripTrackWithoutDetections() {
+        var track = new Track(1, 2, 0, 0, 0, 0, 0, 0, null, -1, List.of(), Map.of());
+        verifyRoundTrip(new BinaryTrackCodec(), track);
+    }
+
+
+    @Test
+    public void binaryCodecCanDecodeTrackFromOtherCodec() {
+        var track = createTrack();
+        var jsonCodec = new JsonTrackCodec(_jsonUtils);
+        var binaryCodec = new BinaryTrackCodec();
+
+        Track fromJson = jsonCodec.decode(jsonCodec.encode(track));
+        verifyRoundTrip(binaryCodec, fromJson);
+        assertEquals(track, binaryCodec.decode(binaryCodec.encode(fromJson)));
+    }
+
+
+    @Test
+    public void binaryCodecIsSmallerThanJson() {
+        var track = createTrack();
+        int binarySize = new BinaryTrackCodec().encode(track).length;
+        int jsonSize = new JsonTrackCodec(_jsonUtils).encode(track).length;
+        assertTrue(String.format("Expected binary size of %s to be less than JSON size of %s.", binarySize, jsonSize),
+                   binarySize < jsonSize);
+    }
+
+
+    @Test
+    public void binaryCodecRejectsUnknownVersion() {
+        byte[] encoded = new BinaryTrackCodec().encode(createTrack());
+        encoded[0] = 99;
+        TestUtil.assertThrows(WfmProcessingException.class, () -> new BinaryTrackCodec().decode(encoded));
+    }
+
+
+    @Test
+    public void binaryCodecRejectsTruncatedInput() {
+        byte[] encoded = new BinaryTrackCodec().encode(createTrack());
+        byte[] truncated = new byte[encoded.length / 2];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        TestUtil.assertThrows(WfmProcessingException.class, () -> new BinaryTrackCodec().decode(truncated));
+    }
+
+
+    private static void verifyRoundTrip(TrackCodec codec, Track track) {
+        Track decoded = codec.decode(codec.encode(track));
+
+        assertEquals(track, decoded);
+        assertEquals(track.getExemplar(), decoded.getExemplar());
+        assertEquals(track.getArtifactExtractionTrackIndex(), decoded.getArtifactExtractionTrackIndex());
+
+        assertEquals(track.getDetections().size(), decoded.getDetections().size());
+        Iterator<Detection> decodedIter = decoded.getDetections().iterator();
+        for (Detection detection : track.getDetections()) {
+            Detection decodedDetection = decodedIter.next();
+            assertEquals(detection, decodedDetection);
+            assertEquals(detection.getArtifactPath(), decodedDetection.getArtifactPath());
+            assertEquals(detection.getArtifactExtractionStatus(), decodedDetection.getArtifactExtractionStatus());
+        }
+    }
+
+
+    private static Track createTrack() {
+        var detection1 = new Detection(-5, 10, 30, 40, 0.25f, 100, 3336, Map.of());
+
+        var detection2 = new Detection(7, 8, 9, 10, 0.9f, 102, 3403,
+                                       ImmutableSortedMap.of("CLASSIFICATION", "car", "TEXT", "é漢字"));
+        detection2.setArtifactPath("file:///tmp/artifact.png");
+        detection2.setArtifactExtractionStatus(ArtifactExtractionStatus.COMPLETED);
+
+        var detection3 = new Detection(Integer.MAX_VALUE, Integer.MIN_VALUE, 1, 1, 0.5f, 150, 5005,
+                                       ImmutableSortedMap.of("CLASSIFICATION", "truck"));
+        detection3.setArtifactExtractionStatus(ArtifactExtractionStatus.FAILED);
+
+        var track = new Track(
+                Long.MAX_VALUE - 1, 1234567890123L, 2, 1, 100, 150, 3336, 5005, "vehicle", 0.9f,
+                List.of(detection3, detection1, detection2),
+                ImmutableSortedMap.of("CLASSIFICATION", "car", "ROTATION", "90.0"));
+        track.setArtifactExtractionTrackIndex(3);
+        return track;
+    }
+}
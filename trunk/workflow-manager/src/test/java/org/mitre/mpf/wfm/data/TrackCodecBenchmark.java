@@ -0,0 +1,124 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.data;
+
+import com.google.common.collect.ImmutableSortedMap;
+import org.mitre.mpf.wfm.data.entities.transients.Detection;
+import org.mitre.mpf.wfm.data.entities.transients.Track;
+import org.mitre.mpf.wfm.util.JsonUtils;
+import org.mitre.mpf.wfm.util.ObjectMapperFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link JsonTrackCodec} with {@link BinaryTrackCodec}. This is not run as part of the unit tests.
+ * To run it, execute the main method from an IDE or run:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.mitre.mpf.wfm.data.TrackCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackCodecBenchmark {
+
+    @Param({"10", "1000"})
+    public int detectionsPerTrack;
+
+    private final TrackCodec _jsonCodec = new JsonTrackCodec(
+            new JsonUtils(ObjectMapperFactory.customObjectMapper()));
+
+    private final TrackCodec _binaryCodec = new BinaryTrackCodec();
+
+    private Track _track;
+
+    private byte[] _jsonEncoded;
+
+    private byte[] _binaryEncoded;
+
+
+    @Setup
+    public void setup() {
+        _track = createTrack(detectionsPerTrack);
+        _jsonEncoded = _jsonCodec.encode(_track);
+        _binaryEncoded = _binaryCodec.encode(_track);
+        System.out.printf("%nEncoded size with %s detections: JSON = %s bytes, binary = %s bytes%n",
+                          detectionsPerTrack, _jsonEncoded.length, _binaryEncoded.length);
+    }
+
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return _jsonCodec.encode(_track);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return _binaryCodec.encode(_track);
+    }
+
+    @Benchmark
+    public Track jsonDecode() {
+        return _jsonCodec.decode(_jsonEncoded);
+    }
+
+    @Benchmark
+    public Track binaryDecode() {
+        return _binaryCodec.decode(_binaryEncoded);
+    }
+
+
+    private static Track createTrack(int detectionCount) {
+        var random = new Random(42);
+        var detections = new ArrayList<Detection>(detectionCount);
+        for (int i = 0; i < detectionCount; i++) {
+            detections.add(new Detection(
+                    random.nextInt(1920), random.nextInt(1080), 50 + random.nextInt(200), 50 + random.nextInt(200),
+                    random.nextFloat(), i, i * 33,
+                    ImmutableSortedMap.of("CLASSIFICATION", "vehicle",
+                                          "CLASSIFICATION CONFIDENCE LIST", String.valueOf(random.nextFloat()),
+                                          "ROTATION", String.valueOf(random.nextInt(360)))));
+        }
+        return new Track(12345, 67890, 0, 0, 0, detectionCount - 1, 0, (detectionCount - 1) * 33, "CLASS",
+                         0.9f, detections, ImmutableSortedMap.of("CLASSIFICATION", "vehicle"));
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(TrackCodecBenchmark.class.getSimpleName())
+                           .build())
+                .run();
+    }
+}
@@ -0,0 +1,207 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.data.access.hibernate;
+
+import org.apache.commons.io.FileUtils;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.mitre.mpf.wfm.data.entities.persistent.JobRequest;
+import org.mitre.mpf.wfm.data.entities.persistent.JobRequestSummary;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading the job table from full {@link JobRequest} entities, the way it was done before
+ * {@link JobRequestSummary} was added, with the summary and keyset queries. The jobs are stored in an H2 database
+ * running in PostgreSQL mode. This is not run as part of the unit tests.
+ * To run it, execute the main method from an IDE or run:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.mitre.mpf.wfm.data.access.hibernate.JobListingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JobListingBenchmark {
+
+    private static final int JOB_COUNT = 200_000;
+
+    // A serialized BatchJob is usually at least a few kilobytes.
+    private static final int JOB_BLOB_SIZE = 2048;
+
+    private static final int PAGE_SIZE = 25;
+
+    private static final int DEEP_PAGE_OFFSET = JOB_COUNT / 2;
+
+    private static final String STATUS_SEARCH = "error";
+
+    private static final String TIME_SEARCH = "2020-01-05";
+
+    private Path _databaseDir;
+
+    private JobRequestTestDatabase _database;
+
+    private HibernateJobRequestDaoImpl _dao;
+
+
+    @Setup
+    public void setup() throws IOException {
+        _databaseDir = Files.createTempDirectory("job-listing-benchmark");
+        // The page store is used because it inserts LOBs much faster than H2's default MVStore. Result reuse is
+        // disabled because otherwise H2 just returns the previous result when the same query is run repeatedly.
+        _database = new JobRequestTestDatabase(
+                "jdbc:h2:" + _databaseDir.resolve("jobs") + ";MV_STORE=FALSE;OPTIMIZE_REUSE_RESULTS=0");
+        _database.insertJobs(JOB_COUNT, JOB_BLOB_SIZE);
+        // PostgreSQL can read the primary key index backwards for "order by id desc", but H2 needs a separate
+        // descending index to avoid sorting the whole table.
+        _database.inTransaction(s -> s.createNativeQuery("create index job_request_id_desc on job_request (id desc)")
+                .executeUpdate());
+        _dao = _database.getDao();
+    }
+
+
+    @TearDown
+    public void tearDown() throws IOException {
+        _database.close();
+        FileUtils.deleteDirectory(_databaseDir.toFile());
+    }
+
+
+    @Benchmark
+    public List<JobRequest> entityFirstPage() {
+        return _database.inTransaction(s -> findEntityPage(s, PAGE_SIZE, 0));
+    }
+
+    @Benchmark
+    public List<JobRequestSummary> summaryFirstPage() {
+        return _database.inTransaction(s -> _dao.findSummaryPage(PAGE_SIZE, 0, "", "id", "desc"));
+    }
+
+
+    @Benchmark
+    public List<JobRequest> entityDeepPage() {
+        return _database.inTransaction(s -> findEntityPage(s, PAGE_SIZE, DEEP_PAGE_OFFSET));
+    }
+
+    @Benchmark
+    public List<JobRequestSummary> summaryDeepPage() {
+        return _database.inTransaction(s -> _dao.findSummaryPage(PAGE_SIZE, DEEP_PAGE_OFFSET, "", "id", "desc"));
+    }
+
+    @Benchmark
+    public List<JobRequestSummary> summaryDeepPageAfterJobId() {
+        // The last job on the previous page when sorting by id descending.
+        long afterJobId = JOB_COUNT - DEEP_PAGE_OFFSET + 1;
+        return _database.inTransaction(s -> _dao.findSummaryPageAfter(afterJobId, PAGE_SIZE, "", "desc"));
+    }
+
+
+    @Benchmark
+    public long entityStatusSearch() {
+        return entitySearch(STATUS_SEARCH);
+    }
+
+    @Benchmark
+    public long summaryStatusSearch() {
+        return summarySearch(STATUS_SEARCH);
+    }
+
+
+    @Benchmark
+    public long entityTimeSearch() {
+        return entitySearch(TIME_SEARCH);
+    }
+
+    @Benchmark
+    public long summaryTimeSearch() {
+        return summarySearch(TIME_SEARCH);
+    }
+
+
+    // Loads a page of results and the count like JobController does.
+    private long summarySearch(String searchTerm) {
+        return _database.inTransaction(
+                s -> _dao.findSummaryPage(PAGE_SIZE, 0, searchTerm, "id", "desc").size()
+                        + _dao.countFiltered(searchTerm));
+    }
+
+    private long entitySearch(String searchTerm) {
+        return _database.inTransaction(
+                s -> findEntitySearchPage(s, searchTerm).size() + countEntitySearch(s, searchTerm));
+    }
+
+
+    // The queries below are how HibernateJobRequestDaoImpl found jobs before JobRequestSummary was added.
+
+    private static List<JobRequest> findEntityPage(Session session, int pageSize, int offset) {
+        return (List<JobRequest>) session.createQuery("from JobRequest order by id desc")
+                .setFirstResult(offset)
+                .setMaxResults(pageSize)
+                .list();
+    }
+
+    private static List<JobRequest> findEntitySearchPage(Session session, String searchTerm) {
+        return (List<JobRequest>) createEntitySearchQuery(session, searchTerm, "", " order by id desc")
+                .setMaxResults(PAGE_SIZE)
+                .list();
+    }
+
+    private static long countEntitySearch(Session session, String searchTerm) {
+        return (long) createEntitySearchQuery(session, searchTerm, "select count(*)", "").list().get(0);
+    }
+
+    private static Query<?> createEntitySearchQuery(Session session, String searchTerm, String selectClause,
+                                                    String orderByClause) {
+        return session.createQuery(
+                selectClause
+                        + " from JobRequest"
+                        + " where cast(id as string) like :searchTerm"
+                        + " or lower(pipeline) like :searchTerm"
+                        + " or lower(status) like :searchTerm"
+                        + " or to_char(timeReceived, 'YYYY-MM-DD HH24:MI:SS') like :searchTerm"
+                        + " or to_char(timeCompleted, 'YYYY-MM-DD HH24:MI:SS') like :searchTerm "
+                        + orderByClause)
+                .setParameter("searchTerm", '%' + searchTerm.toLowerCase() + '%');
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(JobListingBenchmark.class.getSimpleName())
+                           .build())
+                .run();
+    }
+}
@@ -0,0 +1,168 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.data.access.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cache.internal.NoCachingRegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.mitre.mpf.wfm.data.ImprovedNamingStrategy;
+import org.mitre.mpf.wfm.data.entities.persistent.JobRequest;
+import org.mitre.mpf.wfm.enums.BatchJobStatusType;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Creates a {@link HibernateJobRequestDaoImpl} backed by an embedded H2 database running in PostgreSQL mode, so that
+ * the queries can be tested without a PostgreSQL server.
+ */
+public class JobRequestTestDatabase implements AutoCloseable {
+
+    public static final List<String> PIPELINES = List.of(
+            "OCV FACE DETECTION PIPELINE", "OCV PERSON DETECTION PIPELINE", "DARKNET TINY YOLO OBJECT DETECTION PIPELINE",
+            "TESSERACT OCR TEXT DETECTION PIPELINE", "SPHINX SPEECH DETECTION PIPELINE", "MOG MOTION DETECTION PIPELINE",
+            "OALPR LICENSE PLATE TEXT DETECTION PIPELINE", "KEYWORD TAGGING PIPELINE");
+
+    public static final Instant FIRST_JOB_TIME = Instant.parse("2020-01-01T00:00:00Z");
+
+    public static final int SECONDS_BETWEEN_JOBS = 37;
+
+    private final StandardServiceRegistry _registry;
+
+    private final SessionFactory _sessionFactory;
+
+    private final HibernateJobRequestDaoImpl _dao = new HibernateJobRequestDaoImpl();
+
+
+    /**
+     * @param jdbcUrl Something like "jdbc:h2:mem:jobs" for a small in-memory database or
+     *                "jdbc:h2:/tmp/jobs" for a larger database stored on disk.
+     */
+    public JobRequestTestDatabase(String jdbcUrl) {
+        _registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.URL, jdbcUrl + ";MODE=PostgreSQL")
+                .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "create")
+                .applySetting(AvailableSettings.CURRENT_SESSION_CONTEXT_CLASS, "thread")
+                .applySetting(AvailableSettings.CACHE_REGION_FACTORY, NoCachingRegionFactory.class.getName())
+                .build();
+        _sessionFactory = new MetadataSources(_registry)
+                .addAnnotatedClass(JobRequest.class)
+                .addAnnotatedClass(InstantAttributeConverter.class)
+                .getMetadataBuilder()
+                .applyPhysicalNamingStrategy(new ImprovedNamingStrategy())
+                .build()
+                .buildSessionFactory();
+        _dao.setSessionFactory(_sessionFactory);
+    }
+
+
+    public HibernateJobRequestDaoImpl getDao() {
+        return _dao;
+    }
+
+
+    public <T> T inTransaction(Function<Session, T> action) {
+        Session session = _sessionFactory.getCurrentSession();
+        session.beginTransaction();
+        try {
+            T result = action.apply(session);
+            session.getTransaction().commit();
+            return result;
+        }
+        catch (RuntimeException e) {
+            session.getTransaction().rollback();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Inserts jobs with ids 1 through jobCount. Job i is received {@link #SECONDS_BETWEEN_JOBS} seconds after job
+     * i - 1. The other columns are chosen pseudo-randomly.
+     */
+    public void insertJobs(int jobCount, int jobBlobSize) {
+        var random = new Random(42);
+        byte[] jobBlob = new byte[jobBlobSize];
+        random.nextBytes(jobBlob);
+        BatchJobStatusType[] statuses = BatchJobStatusType.values();
+
+        inTransaction(session -> session.doReturningWork(connection -> {
+            String sql = "insert into job_request (id, time_received, time_completed, priority, status, job,"
+                    + " output_object_path, pipeline, output_object_version) values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int id = 1; id <= jobCount; id++) {
+                    Instant timeReceived = FIRST_JOB_TIME.plusSeconds((long) (id - 1) * SECONDS_BETWEEN_JOBS);
+                    // Most jobs complete successfully.
+                    BatchJobStatusType status = random.nextInt(4) == 0
+                            ? statuses[random.nextInt(statuses.length)]
+                            : BatchJobStatusType.COMPLETE;
+
+                    statement.setLong(1, id);
+                    statement.setTimestamp(2, Timestamp.from(timeReceived));
+                    statement.setTimestamp(3, status.isTerminal()
+                            ? Timestamp.from(timeReceived.plusSeconds(random.nextInt(3600)))
+                            : null);
+                    statement.setInt(4, random.nextInt(10));
+                    statement.setString(5, status.name());
+                    statement.setBytes(6, jobBlob);
+                    statement.setString(7, status.isTerminal()
+                            ? "file:///opt/mpf/share/output-objects/" + id + "/detection.json"
+                            : null);
+                    statement.setString(8, PIPELINES.get(random.nextInt(PIPELINES.size())));
+                    statement.setString(9, "4.1");
+                    statement.addBatch();
+                    if (id % 1000 == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+            }
+            try (var statement = connection.createStatement()) {
+                // So that jobs created through Hibernate get ids after the inserted jobs.
+                statement.execute("alter sequence hibernate_sequence restart with " + (jobCount + 1));
+            }
+            return null;
+        }));
+    }
+
+
+    @Override
+    public void close() {
+        _sessionFactory.close();
+        StandardServiceRegistryBuilder.destroy(_registry);
+    }
+}
@@ -0,0 +1,236 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.data.access.hibernate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mitre.mpf.wfm.data.entities.persistent.JobRequest;
+import org.mitre.mpf.wfm.data.entities.persistent.JobRequestSummary;
+import org.mitre.mpf.wfm.enums.BatchJobStatusType;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+public class TestHibernateJobRequestDao {
+
+    private static final int JOB_COUNT = 2000;
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    private JobRequestTestDatabase _database;
+
+    private HibernateJobRequestDaoImpl _dao;
+
+    private List<JobRequest> _allJobs;
+
+
+    @Before
+    public void init() {
+        _database = new JobRequestTestDatabase("jdbc:h2:mem:" + UUID.randomUUID());
+        _database.insertJobs(JOB_COUNT, 64);
+        _dao = _database.getDao();
+        _allJobs = _database.inTransaction(s -> _dao.findAll());
+        assertEquals(JOB_COUNT, _allJobs.size());
+    }
+
+    @After
+    public void cleanup() {
+        _database.close();
+    }
+
+
+    @Test
+    public void summariesMatchEntities() {
+        List<JobRequestSummary> summaries = _database.inTransaction(s -> _dao.findAllSummaries());
+        assertEquals(JOB_COUNT, summaries.size());
+
+        var summariesById = new HashMap<Long, JobRequestSummary>();
+        summaries.forEach(s -> summariesById.put(s.getId(), s));
+        for (JobRequest job : _allJobs) {
+            JobRequestSummary summary = summariesById.get(job.getId());
+            assertEquals(job.getPipeline(), summary.getPipeline());
+            assertEquals(job.getPriority(), summary.getPriority());
+            assertEquals(job.getStatus(), summary.getStatus());
+            assertEquals(job.getTimeReceived(), summary.getTimeReceived());
+            assertEquals(job.getTimeCompleted(), summary.getTimeCompleted());
+            assertEquals(job.getOutputObjectPath(), summary.getOutputObjectPath());
+        }
+
+        List<JobRequestSummary> byIds = _database.inTransaction(
+                s -> _dao.findSummariesByIds(List.of(5L, 17L, JOB_COUNT + 100L)));
+        assertEquals(Set.of(5L, 17L), byIds.stream().map(JobRequestSummary::getId).collect(Collectors.toSet()));
+        assertTrue(_database.inTransaction(s -> _dao.findSummariesByIds(List.of())).isEmpty());
+    }
+
+
+    @Test
+    public void pagesAreSortedWithIdTieBreaker() {
+        Comparator<JobRequest> byPriority = Comparator.comparingInt(JobRequest::getPriority)
+                .thenComparingLong(JobRequest::getId);
+        List<Long> expected = _allJobs.stream()
+                .sorted(byPriority.reversed())
+                .skip(300)
+                .limit(25)
+                .map(JobRequest::getId)
+                .collect(toList());
+
+        List<JobRequestSummary> page = _database.inTransaction(
+                s -> _dao.findSummaryPage(25, 300, "", "priority", "desc"));
+        assertEquals(expected, getIds(page));
+
+        List<JobRequestSummary> idPage = _database.inTransaction(
+                s -> _dao.findSummaryPage(10, 0, null, "id", "asc"));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), getIds(idPage));
+    }
+
+
+    @Test
+    public void keysetPagesMatchOffsetPages() {
+        assertKeysetPagingMatchesOffsetPaging("", "desc");
+        assertKeysetPagingMatchesOffsetPaging("", "asc");
+        assertKeysetPagingMatchesOffsetPaging("warnings", "desc");
+        assertKeysetPagingMatchesOffsetPaging("face", "asc");
+    }
+
+
+    @Test
+    public void canSearchByStatus() {
+        assertSearchMatches("error", j -> j.getStatus().name().toLowerCase().contains("error"));
+        assertSearchMatches("Complete", j -> j.getStatus().name().contains("COMPLETE"));
+    }
+
+
+    @Test
+    public void canSearchByPipeline() {
+        assertSearchMatches("detection pipeline", j -> j.getPipeline().contains("DETECTION PIPELINE"));
+        assertSearchMatches("TAGGING", j -> j.getPipeline().contains("TAGGING"));
+    }
+
+
+    @Test
+    public void canSearchById() {
+        assertSearchMatches("1234", j -> j.getId() == 1234);
+        assertSearchMatches(" 7 ", j -> j.getId() == 7);
+    }
+
+
+    @Test
+    public void canSearchByTimePrefix() {
+        Instant sampleTime = _allJobs.get(1500).getTimeReceived();
+        for (int length : new int[] { 7, 10, 13, 16, 19 }) {
+            String prefix = TIME_FORMAT.format(sampleTime).substring(0, length);
+            assertSearchMatches(prefix, j -> formatStartsWith(j.getTimeReceived(), prefix)
+                    || formatStartsWith(j.getTimeCompleted(), prefix));
+        }
+        assertSearchMatches("2019-12", j -> false);
+        assertSearchMatches("2020-13", j -> false);
+    }
+
+
+    @Test
+    public void returnsNothingWhenSearchDoesNotMatchAnyColumn() {
+        assertSearchMatches("no such job", j -> false);
+    }
+
+
+    @Test
+    public void newPipelinesAreSearchable() {
+        // Loads the pipeline names.
+        assertSearchMatches("new pipeline", j -> false);
+
+        var jobRequest = new JobRequest();
+        jobRequest.setPipeline("MY NEW PIPELINE");
+        jobRequest.setStatus(BatchJobStatusType.INITIALIZED);
+        jobRequest.setTimeReceived(Instant.now());
+        long newId = _database.inTransaction(s -> _dao.persist(jobRequest)).getId();
+
+        List<JobRequestSummary> results = _database.inTransaction(
+                s -> _dao.findSummaryPage(10, 0, "new pipeline", "id", "desc"));
+        assertEquals(List.of(newId), getIds(results));
+    }
+
+
+    private void assertSearchMatches(String searchTerm, Predicate<JobRequest> isMatch) {
+        List<Long> expected = _allJobs.stream()
+                .filter(isMatch)
+                .map(JobRequest::getId)
+                .sorted(Comparator.reverseOrder())
+                .collect(toList());
+
+        assertEquals(expected.size(), (long) _database.inTransaction(s -> _dao.countFiltered(searchTerm)));
+        List<JobRequestSummary> results = _database.inTransaction(
+                s -> _dao.findSummaryPage(JOB_COUNT, 0, searchTerm, "id", "desc"));
+        assertEquals(expected, getIds(results));
+    }
+
+
+    private void assertKeysetPagingMatchesOffsetPaging(String searchTerm, String direction) {
+        int pageSize = 75;
+        var offsetIds = new ArrayList<Long>();
+        var keysetIds = new ArrayList<Long>();
+        Long afterJobId = null;
+        for (int offset = 0; ; offset += pageSize) {
+            int currentOffset = offset;
+            Long currentAfter = afterJobId;
+            List<JobRequestSummary> offsetPage = _database.inTransaction(
+                    s -> _dao.findSummaryPage(pageSize, currentOffset, searchTerm, "id", direction));
+            List<JobRequestSummary> keysetPage = _database.inTransaction(
+                    s -> currentAfter == null
+                            ? _dao.findSummaryPage(pageSize, 0, searchTerm, "id", direction)
+                            : _dao.findSummaryPageAfter(currentAfter, pageSize, searchTerm, direction));
+            offsetIds.addAll(getIds(offsetPage));
+            keysetIds.addAll(getIds(keysetPage));
+            if (keysetPage.isEmpty()) {
+                break;
+            }
+            afterJobId = keysetPage.get(keysetPage.size() - 1).getId();
+        }
+        assertFalse(keysetIds.isEmpty());
+        assertEquals(offsetIds, keysetIds);
+        assertEquals(_database.inTransaction(s -> _dao.countFiltered(searchTerm)).longValue(),
+                     searchTerm.isEmpty() ? JOB_COUNT : keysetIds.size());
+        assertEquals(keysetIds.size(), new HashSet<>(keysetIds).size());
+    }
+
+
+    private static List<Long> getIds(List<JobRequestSummary> summaries) {
+        return summaries.stream().map(JobRequestSummary::getId).collect(toList());
+    }
+
+    private static boolean formatStartsWith(Instant time, String prefix) {
+        return time != null && TIME_FORMAT.format(time).startsWith(prefix);
+    }
+}
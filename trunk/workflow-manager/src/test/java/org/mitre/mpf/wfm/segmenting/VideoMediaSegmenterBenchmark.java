@@ -0,0 +1,164 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.segmenting;
+
+import org.apache.camel.Message;
+import org.mitre.mpf.wfm.buffers.AlgorithmPropertyProtocolBuffer.AlgorithmProperty;
+import org.mitre.mpf.wfm.buffers.DetectionProtobuf.DetectionRequest;
+import org.mitre.mpf.wfm.buffers.DetectionProtobuf.DetectionRequest.VideoRequest;
+import org.mitre.mpf.wfm.camel.operations.detection.DetectionContext;
+import org.mitre.mpf.wfm.data.entities.persistent.Media;
+import org.mitre.mpf.wfm.data.entities.persistent.MediaImpl;
+import org.mitre.mpf.wfm.enums.UriScheme;
+import org.mitre.mpf.wfm.util.TimePair;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building every video segment's request from scratch with building the segment requests from a shared
+ * prototype, as {@link VideoMediaSegmenter} does. The default media is a 3 hour, 30 FPS video split in to 100 frame
+ * segments. This is not run as part of the unit tests. To run it, execute the main method from an IDE or run:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.mitre.mpf.wfm.segmenting.VideoMediaSegmenterBenchmark
+ * Add "-prof gc" to the JMH arguments to also report the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VideoMediaSegmenterBenchmark {
+
+    @Param({"30"})
+    public int algorithmPropertyCount;
+
+    @Param({"324000"})
+    public int frameCount;
+
+    private final VideoMediaSegmenter _segmenter = new VideoMediaSegmenter();
+
+    private Media _media;
+
+    private DetectionContext _context;
+
+
+    @Setup
+    public void setup() {
+        _media = createMedia(frameCount);
+        _context = createContext(algorithmPropertyCount);
+
+        List<DetectionRequest> expected = perSegmentRequests();
+        List<Message> actual = _segmenter.createDetectionRequestMessages(_media, _context);
+        if (actual.size() != expected.size()) {
+            throw new IllegalStateException("The two approaches produced a different number of segments.");
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!expected.get(i).equals(actual.get(i).getBody(DetectionRequest.class))) {
+                throw new IllegalStateException("The two approaches produced different requests for segment " + i);
+            }
+        }
+        System.out.printf("%nCreated %s segments.%n", expected.size());
+    }
+
+
+    @Benchmark
+    public List<DetectionRequest> perSegmentRequests() {
+        List<TimePair> segments = MediaSegmenter.createSegments(
+                Collections.singletonList(new TimePair(0, _media.getLength() - 1)),
+                _context.getSegmentingPlan().getTargetSegmentLength(),
+                _context.getSegmentingPlan().getMinSegmentLength(),
+                _context.getSegmentingPlan().getMinGapBetweenSegments());
+
+        List<DetectionRequest> requests = new ArrayList<>(segments.size());
+        for (TimePair segment : segments) {
+            VideoRequest videoRequest = VideoRequest.newBuilder()
+                    .setStartFrame(segment.getStartInclusive())
+                    .setStopFrame(segment.getEndInclusive())
+                    .build();
+            requests.add(MediaSegmenter.initializeRequest(_media, _context)
+                                 .setDataType(DetectionRequest.DataType.VIDEO)
+                                 .setVideoRequest(videoRequest)
+                                 .build());
+        }
+        return requests;
+    }
+
+
+    @Benchmark
+    public List<Message> sharedPrototype() {
+        return _segmenter.createDetectionRequestMessages(_media, _context);
+    }
+
+
+    private static Media createMedia(int frameCount) {
+        URI mediaUri = URI.create("file:///example.avi");
+        MediaImpl media = new MediaImpl(
+                1, mediaUri.toString(), UriScheme.get(mediaUri), Paths.get(mediaUri), Collections.emptyMap(),
+                null);
+        media.setLength(frameCount);
+        media.addMetadata("FPS", "30");
+        media.addMetadata("FRAME_WIDTH", "1920");
+        media.addMetadata("FRAME_HEIGHT", "1080");
+        media.addMetadata("ROTATION", "0");
+        media.addMetadata("DURATION", String.valueOf(frameCount * 1000L / 30));
+        return media;
+    }
+
+
+    private static DetectionContext createContext(int algorithmPropertyCount) {
+        List<AlgorithmProperty> algorithmProperties = new ArrayList<>(algorithmPropertyCount + 1);
+        for (int i = 0; i < algorithmPropertyCount; i++) {
+            algorithmProperties.add(AlgorithmProperty.newBuilder()
+                                            .setPropertyName("PROPERTY_NAME_" + i)
+                                            .setPropertyValue("property value " + i)
+                                            .build());
+        }
+        algorithmProperties.add(AlgorithmProperty.newBuilder()
+                                        .setPropertyName(MediaSegmenter.FEED_FORWARD_TYPE)
+                                        .setPropertyValue("NONE")
+                                        .build());
+        return new DetectionContext(1, 0, "TASK_NAME", 0, "ACTION_NAME", true, algorithmProperties,
+                                    Collections.emptySet(), new SegmentingPlan(100, 1, 1, 1));
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(VideoMediaSegmenterBenchmark.class.getSimpleName())
+                           .build())
+                .run();
+    }
+}
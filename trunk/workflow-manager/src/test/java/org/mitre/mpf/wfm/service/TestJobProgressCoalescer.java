@@ -0,0 +1,208 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mitre.mpf.wfm.WfmProcessingException;
+import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
+import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
+import org.mitre.mpf.wfm.data.entities.persistent.JobPipelineElements;
+import org.mitre.mpf.wfm.enums.BatchJobStatusType;
+import org.mitre.mpf.wfm.event.JobProgress;
+import org.mitre.mpf.wfm.util.PropertiesUtil;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Instant;
+
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class TestJobProgressCoalescer {
+
+    private static final long JOB_ID = 123;
+
+    @Mock
+    private PropertiesUtil _mockPropertiesUtil;
+
+    @Mock
+    private InProgressBatchJobsService _mockInProgressJobs;
+
+    @Mock
+    private JobProgress _mockJobProgressStore;
+
+    @Mock
+    private JobStatusBroadcaster _mockJobStatusBroadcaster;
+
+    private JobProgressCoalescer _jobProgressCoalescer;
+
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        // Use a long interval so that the tests control when updates are published.
+        when(_mockPropertiesUtil.getBroadcastJobStatusInterval())
+                .thenReturn(60_000L);
+
+        var pipelineElements = mock(JobPipelineElements.class);
+        when(pipelineElements.getTaskCount())
+                .thenReturn(2);
+        var job = mock(BatchJob.class);
+        when(job.getPipelineElements())
+                .thenReturn(pipelineElements);
+        when(job.getCurrentTaskIndex())
+                .thenReturn(1);
+        when(job.getStatus())
+                .thenReturn(BatchJobStatusType.IN_PROGRESS);
+        when(_mockInProgressJobs.getJob(JOB_ID))
+                .thenReturn(job);
+
+        _jobProgressCoalescer = new JobProgressCoalescer(
+                _mockPropertiesUtil, _mockInProgressJobs, _mockJobProgressStore, _mockJobStatusBroadcaster);
+    }
+
+    @After
+    public void cleanup() {
+        _jobProgressCoalescer.close();
+    }
+
+
+    @Test
+    public void publishesOnlyLatestProgress() {
+        _jobProgressCoalescer.recordSplitProgress(JOB_ID, 1, 4);
+        _jobProgressCoalescer.recordSplitProgress(JOB_ID, 2, 4);
+        _jobProgressCoalescer.recordSplitProgress(JOB_ID, 3, 4);
+        _jobProgressCoalescer.publishPendingUpdates();
+
+        // One of two tasks is complete and 3/4 of the second task is complete.
+        verify(_mockJobStatusBroadcaster)
+                .broadcast(JOB_ID, 87.5f, BatchJobStatusType.IN_PROGRESS);
+        verify(_mockJobProgressStore)
+                .setJobProgress(JOB_ID, 87.5f);
+        // The job is looked up once per recorded response and once when publishing.
+        verify(_mockInProgressJobs, times(4))
+                .getJob(JOB_ID);
+    }
+
+
+    @Test
+    public void doesNotPublishWhenNothingChanged() {
+        _jobProgressCoalescer.recordSplitProgress(JOB_ID, 1, 4);
+        _jobProgressCoalescer.publishPendingUpdates();
+        _jobProgressCoalescer.publishPendingUpdates();
+
+        verify(_mockJobStatusBroadcaster, times(1))
+                .broadcast(anyLong(), anyDouble(), any(BatchJobStatusType.class));
+    }
+
+
+    @Test
+    public void doesNotPublishAfterImmediateBroadcast() {
+        _jobProgressCoalescer.recordSplitProgress(JOB_ID, 3, 4);
+        var endDate = Instant.now();
+        _jobProgressCoalescer.broadcastNow(JOB_ID, 100, BatchJobStatusType.COMPLETE, endDate);
+        _jobProgressCoalescer.recordSplitProgress(JOB_ID, 4, 4);
+        _jobProgressCoalescer.publishPendingUpdates();
+
+        verify(_mockJobStatusBroadcaster)
+                .broadcast(JOB_ID, 100, BatchJobStatusType.COMPLETE, endDate);
+        verify(_mockJobStatusBroadcaster, never())
+                .broadcast(anyLong(), anyDouble(), any(BatchJobStatusType.class));
+        verify(_mockJobProgressStore)
+                .setJobProgress(JOB_ID, 100);
+        verifyNoMoreInteractions(_mockJobProgressStore);
+    }
+
+
+    @Test
+    public void forgetsJobWhenItCanNotBeFound() {
+        _jobProgressCoalescer.recordSplitProgress(JOB_ID, 1, 4);
+        when(_mockInProgressJobs.getJob(JOB_ID))
+                .thenThrow(WfmProcessingException.class);
+        _jobProgressCoalescer.publishPendingUpdates();
+        verify(_mockInProgressJobs, times(2))
+                .getJob(JOB_ID);
+
+        // Nothing was recorded for the job after it was removed, so the job should not be looked up again.
+        _jobProgressCoalescer.publishPendingUpdates();
+        verify(_mockInProgressJobs, times(2))
+                .getJob(JOB_ID);
+        verifyZeroInteractions(_mockJobStatusBroadcaster);
+    }
+
+
+    @Test
+    public void usesTaskIndexFromWhenProgressWasRecorded() {
+        var job = _mockInProgressJobs.getJob(JOB_ID);
+        when(job.getCurrentTaskIndex())
+                .thenReturn(0);
+        _jobProgressCoalescer.recordSplitProgress(JOB_ID, 4, 4);
+
+        // The first task ends before the progress is published.
+        when(job.getCurrentTaskIndex())
+                .thenReturn(1);
+        _jobProgressCoalescer.publishPendingUpdates();
+
+        verify(_mockJobStatusBroadcaster)
+                .broadcast(JOB_ID, 50f, BatchJobStatusType.IN_PROGRESS);
+        verify(_mockJobProgressStore)
+                .setJobProgress(JOB_ID, 50f);
+    }
+
+
+    @Test
+    public void immediateBroadcastClearsPendingProgress() {
+        _jobProgressCoalescer.recordSplitProgress(JOB_ID, 4, 4);
+        var endDate = Instant.now();
+        _jobProgressCoalescer.broadcastNow(JOB_ID, 99, BatchJobStatusType.BUILDING_OUTPUT_OBJECT, endDate);
+        _jobProgressCoalescer.publishPendingUpdates();
+
+        verify(_mockJobStatusBroadcaster)
+                .broadcast(JOB_ID, 99, BatchJobStatusType.BUILDING_OUTPUT_OBJECT, endDate);
+        verify(_mockJobStatusBroadcaster, never())
+                .broadcast(anyLong(), anyDouble(), any(BatchJobStatusType.class));
+        // The pending progress was cleared, so publishing does not look up the job again.
+        verify(_mockInProgressJobs, times(1))
+                .getJob(JOB_ID);
+    }
+
+
+    @Test
+    public void removeJobClearsProgress() {
+        _jobProgressCoalescer.recordSplitProgress(JOB_ID, 1, 4);
+        _jobProgressCoalescer.removeJob(JOB_ID);
+        _jobProgressCoalescer.publishPendingUpdates();
+
+        verify(_mockJobProgressStore)
+                .removeJob(JOB_ID);
+        verifyZeroInteractions(_mockJobStatusBroadcaster);
+    }
+}
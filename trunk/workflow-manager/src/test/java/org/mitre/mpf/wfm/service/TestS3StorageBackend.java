@@ -27,14 +27,17 @@
 
 package org.mitre.mpf.wfm.service;
 
+import com.amazonaws.services.s3.AmazonS3;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Table;
 import com.google.common.io.ByteStreams;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.*;
 import org.junit.rules.TemporaryFolder;
 import org.mitre.mpf.interop.JsonOutputObject;
+import org.mitre.mpf.interop.JsonPipeline;
 import org.mitre.mpf.rest.api.pipelines.*;
 import org.mitre.mpf.test.TestUtil;
 import org.mitre.mpf.wfm.camel.operations.detection.artifactextraction.ArtifactExtractionRequest;
@@ -45,17 +48,25 @@ import org.mitre.mpf.wfm.data.entities.persistent.Media;
 import org.mitre.mpf.wfm.data.entities.persistent.JobPipelineElements;
 import org.mitre.mpf.wfm.enums.MpfConstants;
 import org.mitre.mpf.wfm.util.AggregateJobPropertiesUtil;
+import org.mitre.mpf.wfm.util.ObjectMapperFactory;
 import org.mitre.mpf.wfm.util.PropertiesUtil;
+import org.mitre.mpf.wfm.util.ThreadUtil;
+import spark.Request;
 import spark.Spark;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.IntUnaryOperator;
 
@@ -97,9 +108,26 @@ public class TestS3StorageBackend {
 
     private static final AtomicInteger REQUESTED_PUT_FAILURES = new AtomicInteger(0);
 
+    // Accepts uploads with any object key, including multipart uploads.
+    private static final String MULTIPART_BUCKET = "MULTIPART_BUCKET";
+
+    private static final Map<Integer, byte[]> UPLOADED_PARTS = new ConcurrentHashMap<>();
+
+    private static final Collection<String> COMPLETED_UPLOADS = Collections.synchronizedList(new ArrayList<>());
+
+    private static final Collection<String> ABORTED_UPLOADS = Collections.synchronizedList(new ArrayList<>());
+
+    private static final AtomicInteger CONCURRENT_PUTS = new AtomicInteger(0);
+
+    private static final AtomicInteger MAX_CONCURRENT_PUTS = new AtomicInteger(0);
+
+    private static final AtomicInteger REQUESTED_PART_FAILURES = new AtomicInteger(0);
+
     @BeforeClass
     public static void initClass() {
         startSpark();
+        // Multipart uploads run on the ThreadUtil thread pool, which other tests shut down.
+        ThreadUtil.start();
     }
 
     @AfterClass
@@ -113,6 +141,11 @@ public class TestS3StorageBackend {
         GET_COUNT.set(0);
         REQUESTED_GET_FAILURES.set(0);
         REQUESTED_PUT_FAILURES.set(0);
+        UPLOADED_PARTS.clear();
+        COMPLETED_UPLOADS.clear();
+        ABORTED_UPLOADS.clear();
+        MAX_CONCURRENT_PUTS.set(0);
+        REQUESTED_PART_FAILURES.set(0);
     }
 
     private static Map<String, String> getS3Properties() {
@@ -304,8 +337,7 @@ public class TestS3StorageBackend {
             when(outputObject.getJobProperties())
                     .thenReturn(s3Properties);
 
-            when(_mockLocalStorageBackend.store(outputObject))
-                    .thenReturn(filePath.toUri());
+            mockLocalStore(outputObject, filePath);
 
             _s3StorageBackend.store(outputObject);
             fail("Expected StorageException");
@@ -346,6 +378,10 @@ public class TestS3StorageBackend {
 
 
     private ArtifactExtractionRequest createArtifactExtractionRequest() {
+        return createArtifactExtractionRequest(RESULTS_BUCKET);
+    }
+
+    private ArtifactExtractionRequest createArtifactExtractionRequest(String resultsBucket) {
         long jobId = 1243;
         long mediaId = 432;
 
@@ -362,7 +398,7 @@ public class TestS3StorageBackend {
 
         when(media.getMediaSpecificProperties())
                 .thenReturn(ImmutableMap.of(
-                        MpfConstants.S3_RESULTS_BUCKET_PROPERTY, S3_HOST + RESULTS_BUCKET,
+                        MpfConstants.S3_RESULTS_BUCKET_PROPERTY, S3_HOST + resultsBucket,
                         MpfConstants.S3_SECRET_KEY_PROPERTY, "<SECRET_KEY>"
                 ));
 
@@ -455,8 +491,7 @@ public class TestS3StorageBackend {
         when(outputObject.getJobProperties())
                 .thenReturn(getS3Properties());
 
-        when(_mockLocalStorageBackend.store(outputObject))
-                .thenReturn(filePath.toUri());
+        mockLocalStore(outputObject, filePath);
 
         URI remoteUri = _s3StorageBackend.store(outputObject);
         assertEquals(EXPECTED_URI, remoteUri);
@@ -476,8 +511,7 @@ public class TestS3StorageBackend {
         when(outputObject.getJobProperties())
                 .thenReturn(s3Properties);
 
-        when(_mockLocalStorageBackend.store(outputObject))
-                .thenReturn(filePath.toUri());
+        mockLocalStore(outputObject, filePath);
 
         URI remoteUri = _s3StorageBackend.store(outputObject);
         assertEquals(URI.create(S3_HOST + BUCKET_WITH_EXISTING_OBJECT + '/' + EXPECTED_OBJECT_KEY), remoteUri);
@@ -496,8 +530,7 @@ public class TestS3StorageBackend {
         when(outputObject.getJobProperties())
                 .thenReturn(s3Properties);
 
-        when(_mockLocalStorageBackend.store(outputObject))
-                .thenReturn(filePath.toUri());
+        mockLocalStore(outputObject, filePath);
 
         try {
             _s3StorageBackend.store(outputObject);
@@ -524,8 +557,7 @@ public class TestS3StorageBackend {
         when(outputObject.getJobProperties())
                 .thenReturn(s3Properties);
 
-        when(_mockLocalStorageBackend.store(outputObject))
-                .thenReturn(filePath.toUri());
+        mockLocalStore(outputObject, filePath);
 
         try {
             _s3StorageBackend.store(outputObject);
@@ -554,8 +586,7 @@ public class TestS3StorageBackend {
         when(outputObject.getJobProperties())
                 .thenReturn(getS3Properties());
 
-        when(_mockLocalStorageBackend.store(outputObject))
-                .thenReturn(filePath.toUri());
+        mockLocalStore(outputObject, filePath);
 
         URI remoteUri = _s3StorageBackend.store(outputObject);
         assertEquals(EXPECTED_URI, remoteUri);
@@ -669,6 +700,153 @@ public class TestS3StorageBackend {
     }
 
 
+    @Test
+    public void reusesClientsWithSameEndpointAndCredentials() throws StorageException {
+        Map<String, String> s3Properties = getS3Properties();
+        AmazonS3 client = _s3StorageBackend.getS3UploadClient(s3Properties::get);
+        assertSame(client, _s3StorageBackend.getS3UploadClient(getS3Properties()::get));
+
+        s3Properties.put(MpfConstants.S3_SECRET_KEY_PROPERTY, "<OTHER_SECRET_KEY>");
+        assertNotSame(client, _s3StorageBackend.getS3UploadClient(s3Properties::get));
+
+        s3Properties = getS3Properties();
+        s3Properties.put(MpfConstants.S3_RESULTS_BUCKET_PROPERTY, "http://localhost:5001/" + RESULTS_BUCKET);
+        assertNotSame(client, _s3StorageBackend.getS3UploadClient(s3Properties::get));
+    }
+
+
+    @Test
+    public void canStoreArtifactsInParallel() throws IOException, StorageException {
+        int threadCount = 4;
+        when(_mockPropertiesUtil.getS3UploadThreadCount())
+                .thenReturn(threadCount);
+
+        ArtifactExtractionRequest request = createArtifactExtractionRequest(MULTIPART_BUCKET);
+
+        var localArtifacts = new ImmutableTable.Builder<Integer, Integer, URI>();
+        var expectedObjects = new HashSet<String>();
+        for (int i = 0; i < 20; i++) {
+            Path path = _tempFolder.newFile().toPath();
+            Files.writeString(path, "artifact " + i);
+            localArtifacts.put(i, 0, path.toUri());
+            expectedObjects.add(MULTIPART_BUCKET + '/' + getObjectKey(path));
+        }
+        when(_mockLocalStorageBackend.storeArtifacts(request))
+                .thenReturn(localArtifacts.build());
+
+        Table<Integer, Integer, URI> results = _s3StorageBackend.storeArtifacts(request);
+
+        assertEquals(20, results.size());
+        assertTrue(results.values().stream()
+                           .allMatch(uri -> uri.toString().startsWith(S3_HOST + MULTIPART_BUCKET + '/')));
+        assertEquals(expectedObjects, new HashSet<>(OBJECTS_POSTED));
+        assertTrue(MAX_CONCURRENT_PUTS.get() > 1);
+        assertTrue(MAX_CONCURRENT_PUTS.get() <= threadCount);
+        verify(_mockInProgressJobs, never())
+                .addWarning(anyLong(), anyLong(), any(), any());
+    }
+
+
+    @Test
+    public void canDoMultipartUpload() throws IOException, StorageException {
+        int partSize = 100_000;
+        when(_mockPropertiesUtil.getS3MultipartUploadThreshold())
+                .thenReturn((long) partSize);
+        when(_mockPropertiesUtil.getS3MultipartUploadPartSize())
+                .thenReturn((long) partSize);
+        when(_mockPropertiesUtil.getS3UploadThreadCount())
+                .thenReturn(2);
+
+        Path filePath = getTestFileCopy();
+        byte[] fileContent = Files.readAllBytes(filePath);
+
+        Map<String, String> s3Properties = getS3Properties();
+        s3Properties.put(MpfConstants.S3_RESULTS_BUCKET_PROPERTY, S3_HOST + MULTIPART_BUCKET);
+        JsonOutputObject outputObject = mock(JsonOutputObject.class);
+        when(outputObject.getJobProperties())
+                .thenReturn(s3Properties);
+        mockLocalStore(outputObject, filePath);
+
+        URI remoteUri = _s3StorageBackend.store(outputObject);
+
+        assertEquals(URI.create(S3_HOST + MULTIPART_BUCKET + '/' + EXPECTED_OBJECT_KEY), remoteUri);
+        assertFalse(Files.exists(filePath));
+        // The whole file was sent in parts, rather than with a single PUT.
+        assertTrue(OBJECTS_POSTED.isEmpty());
+        assertEquals(List.of(MULTIPART_BUCKET + '/' + EXPECTED_OBJECT_KEY), COMPLETED_UPLOADS);
+
+        int expectedPartCount = (fileContent.length + partSize - 1) / partSize;
+        assertEquals(expectedPartCount, UPLOADED_PARTS.size());
+        var uploadedContent = new ByteArrayOutputStream();
+        for (int i = 1; i <= expectedPartCount; i++) {
+            uploadedContent.write(UPLOADED_PARTS.get(i));
+        }
+        assertArrayEquals(fileContent, uploadedContent.toByteArray());
+    }
+
+
+    @Test
+    public void abortsMultipartUploadWhenPartFails() throws IOException {
+        REQUESTED_PART_FAILURES.set(Integer.MAX_VALUE);
+        when(_mockPropertiesUtil.getS3MultipartUploadThreshold())
+                .thenReturn(1L);
+        when(_mockPropertiesUtil.getS3MultipartUploadPartSize())
+                .thenReturn(100_000L);
+
+        Path filePath = getTestFileCopy();
+        Map<String, String> s3Properties = getS3Properties();
+        s3Properties.put(MpfConstants.S3_RESULTS_BUCKET_PROPERTY, S3_HOST + MULTIPART_BUCKET);
+        JsonOutputObject outputObject = mock(JsonOutputObject.class);
+        when(outputObject.getJobProperties())
+                .thenReturn(s3Properties);
+        mockLocalStore(outputObject, filePath);
+
+        TestUtil.assertThrows(StorageException.class, () -> _s3StorageBackend.store(outputObject));
+
+        assertTrue(Files.exists(filePath));
+        assertTrue(COMPLETED_UPLOADS.isEmpty());
+        assertEquals(List.of(MULTIPART_BUCKET + '/' + EXPECTED_OBJECT_KEY), ABORTED_UPLOADS);
+    }
+
+
+    @Test
+    public void localStorageHashesOutputObjectWhileWriting() throws IOException {
+        Path outputPath = _tempFolder.newFile("output.json").toPath();
+        when(_mockPropertiesUtil.createDetectionOutputObjectFile(123))
+                .thenReturn(outputPath);
+        var localStorageBackend = new LocalStorageBackend(_mockPropertiesUtil,
+                                                          ObjectMapperFactory.customObjectMapper());
+        var outputObject = new JsonOutputObject(
+                123, "object-id", new JsonPipeline("PIPELINE", "description"), 4, "site", "external-id",
+                Instant.ofEpochMilli(1000), Instant.ofEpochMilli(2000), "COMPLETE");
+
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        URI storedUri = localStorageBackend.store(outputObject, digest);
+
+        assertEquals(outputPath.toUri(), storedUri);
+        assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(outputPath)), Hex.encodeHexString(digest.digest()));
+    }
+
+
+    private void mockLocalStore(JsonOutputObject outputObject, Path filePath) throws IOException {
+        when(_mockLocalStorageBackend.store(eq(outputObject), any()))
+                .thenAnswer(inv -> {
+                    MessageDigest digest = inv.getArgument(1);
+                    digest.update(Files.readAllBytes(filePath));
+                    return filePath.toUri();
+                });
+    }
+
+
+    private static String getObjectKey(Path path) throws IOException {
+        String hash;
+        try (InputStream is = Files.newInputStream(path)) {
+            hash = DigestUtils.sha256Hex(is);
+        }
+        return hash.substring(0, 2) + '/' + hash.substring(2, 4) + '/' + hash;
+    }
+
+
     private static void startSpark() {
         Spark.port(5000);
         IntUnaryOperator decrementUntilZero = i -> Math.max(i - 1, 0);
@@ -705,10 +883,56 @@ public class TestS3StorageBackend {
             return "";
         });
 
+        Spark.post("/:bucket/*", (req, resp) -> {
+            String bucket = req.params(":bucket");
+            String key = req.splat()[0];
+            if (req.queryParams().contains("uploads")) {
+                return "<InitiateMultipartUploadResult><Bucket>" + bucket + "</Bucket><Key>" + key
+                        + "</Key><UploadId>TEST_UPLOAD_ID</UploadId></InitiateMultipartUploadResult>";
+            }
+            try (InputStream is = req.raw().getInputStream()) {
+                ByteStreams.exhaust(is);
+            }
+            COMPLETED_UPLOADS.add(bucket + '/' + key);
+            return "<CompleteMultipartUploadResult><Bucket>" + bucket + "</Bucket><Key>" + key
+                    + "</Key><ETag>\"abc-1\"</ETag></CompleteMultipartUploadResult>";
+        });
+
+        Spark.delete("/:bucket/*", (req, resp) -> {
+            ABORTED_UPLOADS.add(req.params(":bucket") + '/' + req.splat()[0]);
+            Spark.halt(204);
+            return "";
+        });
+
         Spark.put("/:bucket/*", (req, resp) -> {
             String bucket = req.params(":bucket");
             String key = req.splat()[0];
+
+            if (req.queryParams("partNumber") != null) {
+                if (REQUESTED_PART_FAILURES.getAndUpdate(decrementUntilZero) > 0) {
+                    Spark.halt(500);
+                }
+                byte[] part = readBody(req);
+                UPLOADED_PARTS.put(Integer.parseInt(req.queryParams("partNumber")), part);
+                resp.header("ETag", '"' + DigestUtils.md5Hex(part) + '"');
+                return "";
+            }
+
             OBJECTS_POSTED.add(bucket + '/' + key);
+            if (MULTIPART_BUCKET.equals(bucket)) {
+                int concurrentPuts = CONCURRENT_PUTS.incrementAndGet();
+                MAX_CONCURRENT_PUTS.accumulateAndGet(concurrentPuts, Math::max);
+                try {
+                    byte[] content = readBody(req);
+                    // Give the other upload threads a chance to start their requests.
+                    Thread.sleep(50);
+                    resp.header("ETag", '"' + DigestUtils.md5Hex(content) + '"');
+                    return "";
+                }
+                finally {
+                    CONCURRENT_PUTS.decrementAndGet();
+                }
+            }
 
             if (REQUESTED_PUT_FAILURES.getAndUpdate(decrementUntilZero) > 0
                     || !RESULTS_BUCKET.equals(bucket)
@@ -723,4 +947,40 @@ public class TestS3StorageBackend {
 
         Spark.awaitInitialization();
     }
+
+
+    // When not using HTTPS, the S3 client sends the content using "aws-chunked" encoding, where each chunk is
+    // preceded by a line containing the chunk's size and signature.
+    private static byte[] readBody(Request request) throws IOException {
+        byte[] body;
+        try (InputStream is = request.raw().getInputStream()) {
+            body = ByteStreams.toByteArray(is);
+        }
+        if (!"STREAMING-AWS4-HMAC-SHA256-PAYLOAD".equals(request.headers("x-amz-content-sha256"))) {
+            return body;
+        }
+
+        var decoded = new ByteArrayOutputStream();
+        int position = 0;
+        while (true) {
+            int lineEnd = indexOfCrLf(body, position);
+            String header = new String(body, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int chunkSize = Integer.parseInt(header.split(";", 2)[0], 16);
+            if (chunkSize == 0) {
+                return decoded.toByteArray();
+            }
+            int chunkStart = lineEnd + 2;
+            decoded.write(body, chunkStart, chunkSize);
+            position = chunkStart + chunkSize + 2;
+        }
+    }
+
+    private static int indexOfCrLf(byte[] bytes, int start) {
+        for (int i = start; i < bytes.length - 1; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n') {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Missing chunk header.");
+    }
 }
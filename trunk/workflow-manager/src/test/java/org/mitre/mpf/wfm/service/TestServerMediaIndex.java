@@ -0,0 +1,319 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mitre.mpf.mvc.model.DirectoryTreeNode;
+import org.mitre.mpf.mvc.model.ServerMediaFile;
+import org.mitre.mpf.mvc.model.ServerMediaFilteredListing;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.Assert.*;
+
+public class TestServerMediaIndex {
+
+    @Rule
+    public TemporaryFolder _tempFolder = new TemporaryFolder();
+
+    private final AtomicInteger _mimeTypeDetectionCount = new AtomicInteger();
+
+    private final Set<Thread> _detectionThreads = ConcurrentHashMap.newKeySet();
+
+    private Path _root;
+
+    private ServerMediaIndex _index;
+
+
+    @Before
+    public void init() throws IOException {
+        _root = _tempFolder.getRoot().toPath().toRealPath();
+        _index = new ServerMediaIndex(_root, this::getMimeType, TestServerMediaIndex::isApprovedContentType);
+    }
+
+    @After
+    public void cleanup() {
+        _index.close();
+    }
+
+
+    @Test
+    public void matchesFullListingOfLargeTree() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 20; j++) {
+                Path dir = Files.createDirectories(_root.resolve("dir" + i).resolve("sub" + j));
+                for (int k = 0; k < 60; k++) {
+                    Files.createFile(dir.resolve("video" + k + ".mp4"));
+                    Files.createFile(dir.resolve("notes" + k + ".txt"));
+                }
+            }
+            Files.createFile(_root.resolve("dir" + i).resolve("image.jpg"));
+        }
+
+        Set<String> expected;
+        try (Stream<Path> paths = Files.walk(_root)) {
+            expected = paths.filter(Files::isRegularFile)
+                    .filter(p -> isApprovedContentType(getMimeType(p)))
+                    .map(Path::toString)
+                    .collect(toSet());
+        }
+        assertEquals(24_020, expected.size());
+
+        List<ServerMediaFile> indexedFiles = _index.getFiles(_root, true);
+        assertEquals(expected.size(), indexedFiles.size());
+        assertEquals(expected, indexedFiles.stream().map(ServerMediaFile::getFullPath).collect(toSet()));
+
+        // The file counts are computed on the scan thread.
+        waitFor(() -> !hasPendingNode(_index.getDirectoryTree(_root.toString())));
+        DirectoryTreeNode tree = _index.getDirectoryTree(_root.resolve("dir3").toString());
+        assertEquals(0, tree.getFileCount());
+        assertEquals(20, tree.getNodes().size());
+        assertFalse(tree.isCanUpload());
+
+        DirectoryTreeNode dir3 = DirectoryTreeNode.find(tree, _root.resolve("dir3").toString());
+        assertEquals(1, dir3.getFileCount());
+        assertTrue(dir3.isCanUpload());
+
+        DirectoryTreeNode leaf = DirectoryTreeNode.find(tree, _root.resolve("dir3/sub7").toString());
+        assertEquals(60, leaf.getFileCount());
+        assertTrue(leaf.isCanUpload());
+        assertNull(leaf.getNodes());
+    }
+
+
+    @Test
+    public void detectsEachMimeTypeOnce() throws IOException {
+        for (int i = 0; i < 500; i++) {
+            Files.createFile(_root.resolve("video" + i + ".mp4"));
+        }
+
+        ServerMediaFilteredListing page = _index.getFilesPage(_root, 1, 0, 10, null);
+        assertEquals(10, page.getData().size());
+        assertEquals(500, page.getRecordsTotal());
+        assertEquals(500, _mimeTypeDetectionCount.get());
+
+        _index.getFilesPage(_root, 2, 490, 10, null);
+        _index.getDirectoryTree(_root.toString());
+        _index.getFiles(_root, false);
+        assertEquals(500, _mimeTypeDetectionCount.get());
+    }
+
+
+    @Test
+    public void pagesAreSortedAndFiltered() throws IOException {
+        for (String name : List.of("b.mp4", "a.mp4", "B.mp4", "A.mp4", "c.jpg", "ab.mp4", "ignored.txt")) {
+            Files.createFile(_root.resolve(name));
+        }
+
+        ServerMediaFilteredListing firstPage = _index.getFilesPage(_root, 5, 0, 4, null);
+        assertEquals(5, firstPage.getDraw());
+        assertEquals(6, firstPage.getRecordsTotal());
+        assertEquals(6, firstPage.getRecordsFiltered());
+        assertEquals(List.of("A.mp4", "a.mp4", "ab.mp4", "B.mp4"), getNames(firstPage));
+
+        ServerMediaFilteredListing lastPage = _index.getFilesPage(_root, 6, 4, 4, "");
+        assertEquals(List.of("b.mp4", "c.jpg"), getNames(lastPage));
+
+        ServerMediaFilteredListing searchPage = _index.getFilesPage(_root, 7, 0, 10, "A");
+        assertEquals(3, searchPage.getRecordsTotal());
+        assertEquals(List.of("A.mp4", "a.mp4", "ab.mp4"), getNames(searchPage));
+
+        ServerMediaFilteredListing pastEnd = _index.getFilesPage(_root, 8, 20, 10, null);
+        assertEquals(6, pastEnd.getRecordsTotal());
+        assertTrue(pastEnd.getData().isEmpty());
+
+        ServerMediaFile file = firstPage.getData().get(0);
+        assertEquals(_root.toString(), file.getDirectory());
+        assertEquals("video/mp4", file.getContentType());
+    }
+
+
+    @Test
+    public void watchServiceUpdatesIndex() throws Exception {
+        Path subdir = Files.createDirectories(_root.resolve("subdir"));
+        Files.createFile(subdir.resolve("existing.mp4"));
+        _index.start();
+        assertEquals(1, _index.getFiles(_root, true).size());
+
+        Files.createFile(subdir.resolve("new.mp4"));
+        Path newDir = Files.createDirectory(_root.resolve("newdir"));
+        waitFor(() -> _index.getFiles(_root, true).size() == 2);
+        waitFor(() -> _index.getDirectoryTree(_root.toString()).getNodes().size() == 2);
+
+        Files.createFile(newDir.resolve("nested.jpg"));
+        waitFor(() -> _index.getFiles(_root, true).size() == 3);
+
+        Files.delete(subdir.resolve("existing.mp4"));
+        Files.delete(subdir.resolve("new.mp4"));
+        Files.delete(subdir);
+        waitFor(() -> _index.getDirectoryTree(_root.toString()).getNodes().size() == 1);
+        assertEquals(List.of(newDir.resolve("nested.jpg").toString()),
+                     _index.getFiles(_root, true).stream().map(ServerMediaFile::getFullPath).collect(toList()));
+    }
+
+
+    @Test
+    public void rescanFindsChangesWithoutWatchService() throws IOException {
+        Files.createFile(_root.resolve("first.mp4"));
+        assertEquals(1, _index.getFiles(_root, false).size());
+
+        // start() was not called, so nothing processes the watch events.
+        Files.createFile(_root.resolve("second.mp4"));
+        Files.createDirectory(_root.resolve("subdir"));
+        Files.createFile(_root.resolve("subdir/third.mp4"));
+        assertEquals(1, _index.getFiles(_root, true).size());
+
+        _index.rescanDirectory(_root, false);
+        assertEquals(3, _index.getFiles(_root, true).size());
+    }
+
+
+    @Test
+    public void addedFilesAreListedImmediately() throws IOException {
+        assertTrue(_index.getFiles(_root, false).isEmpty());
+
+        Path uploadDir = Files.createDirectory(_root.resolve("uploads"));
+        _index.addDirectory(uploadDir);
+        Path uploaded = Files.createFile(uploadDir.resolve("uploaded.mp4"));
+        _index.addFile(uploaded);
+
+        assertEquals(1, _index.getDirectoryTree(uploadDir.toString()).getNodes().size());
+        assertEquals(List.of(uploaded.toString()),
+                     _index.getFiles(_root, true).stream().map(ServerMediaFile::getFullPath).collect(toList()));
+    }
+
+
+    @Test
+    public void skipsSymbolicLinksToAncestors() throws Exception {
+        Path dirA = Files.createDirectories(_root.resolve("a"));
+        Files.createFile(dirA.resolve("file.mp4"));
+        Files.createSymbolicLink(dirA.resolve("loop"), _root);
+        // A link to a directory that is not an ancestor is followed.
+        Files.createSymbolicLink(_root.resolve("b"), dirA);
+
+        List<ServerMediaFile> files = _index.getFiles(_root, true);
+        assertEquals(2, files.size());
+        assertTrue(files.stream().allMatch(f -> f.getFullPath().equals(dirA.resolve("file.mp4").toString())));
+        assertEquals(Set.of(dirA.toString(), _root.resolve("b").toString()),
+                     files.stream().map(ServerMediaFile::getDirectory).collect(toSet()));
+
+        waitFor(() -> !hasPendingNode(_index.getDirectoryTree(_root.toString())));
+        DirectoryTreeNode linkedNode = DirectoryTreeNode.find(_index.getDirectoryTree(_root.toString()),
+                                                              _root.resolve("b").toString());
+        assertEquals(1, linkedNode.getFileCount());
+        assertNull(linkedNode.getNodes());
+    }
+
+
+    @Test
+    public void treeOnlyIncludesListedDirectories() throws Exception {
+        Path subdir = Files.createDirectories(_root.resolve("subdir/nested"));
+        Files.createFile(_root.resolve("root.mp4"));
+        Files.createFile(subdir.resolve("nested.mp4"));
+        _detectionThreads.clear();
+
+        DirectoryTreeNode tree = _index.getDirectoryTree(_root.toString());
+        DirectoryTreeNode subdirNode = DirectoryTreeNode.find(tree, _root.resolve("subdir").toString());
+        assertTrue(subdirNode.isPending());
+        assertNull(subdirNode.getNodes());
+
+        // The root's files are counted on the scan thread rather than the request thread.
+        waitFor(() -> !_index.getDirectoryTree(_root.toString()).isPending());
+        assertEquals(1, _index.getDirectoryTree(_root.toString()).getFileCount());
+        assertFalse(_detectionThreads.contains(Thread.currentThread()));
+
+        _index.start();
+        waitFor(() -> !hasPendingNode(_index.getDirectoryTree(_root.toString())));
+        DirectoryTreeNode nestedNode = DirectoryTreeNode.find(_index.getDirectoryTree(_root.toString()),
+                                                              subdir.toString());
+        assertEquals(1, nestedNode.getFileCount());
+        assertFalse(_detectionThreads.contains(Thread.currentThread()));
+    }
+
+
+    @Test
+    public void ignoresPathsOutsideRoot() throws IOException {
+        Path outside = _tempFolder.newFolder("outside").toPath().toRealPath();
+        Files.createFile(outside.resolve("file.mp4"));
+        _index.close();
+        _index = new ServerMediaIndex(_root.resolve("inside"), this::getMimeType,
+                                      TestServerMediaIndex::isApprovedContentType);
+        Files.createDirectory(_root.resolve("inside"));
+
+        assertTrue(_index.getFiles(outside, true).isEmpty());
+        assertTrue(_index.getFiles(_root.resolve("inside/../outside"), true).isEmpty());
+        assertEquals(0, _index.getFilesPage(outside, 1, 0, 10, null).getRecordsTotal());
+    }
+
+
+    private String getMimeType(Path path) {
+        _mimeTypeDetectionCount.incrementAndGet();
+        _detectionThreads.add(Thread.currentThread());
+        String name = path.getFileName().toString();
+        if (name.endsWith(".mp4")) {
+            return "video/mp4";
+        }
+        if (name.endsWith(".jpg")) {
+            return "image/jpeg";
+        }
+        return "text/plain";
+    }
+
+    private static boolean isApprovedContentType(String mimeType) {
+        return mimeType.startsWith("video") || mimeType.startsWith("image");
+    }
+
+    private static List<String> getNames(ServerMediaFilteredListing listing) {
+        return listing.getData().stream().map(ServerMediaFile::getName).collect(toList());
+    }
+
+    private static boolean hasPendingNode(DirectoryTreeNode node) {
+        return node.isPending()
+                || (node.getNodes() != null && node.getNodes().stream().anyMatch(TestServerMediaIndex::hasPendingNode));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for the index to be updated.", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.util;
+
+import org.apache.camel.ExchangePattern;
+import org.apache.camel.Route;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.stub.StubComponent;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.mitre.mpf.rest.api.pipelines.*;
+import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
+import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
+import org.mitre.mpf.wfm.data.entities.persistent.JobPipelineElements;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares cancelling many jobs at once using {@link JmsUtils} with the previous approach of adding a selector route
+ * per algorithm for each cancelled job and then scanning every route to remove them when the jobs complete. The jms
+ * component is replaced with a stub, so this measures the work done by the WFM rather than by ActiveMQ. With a real
+ * broker, each of the previous routes was also a separate selector consumer on a component's request queue. This is
+ * not run as part of the unit tests. To run it, execute the main method from an IDE or run:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.mitre.mpf.wfm.util.JmsCancellationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JmsCancellationBenchmark {
+
+    private static final int ALGORITHM_COUNT = 3;
+
+    @Param({"10", "50", "100"})
+    public int jobCount;
+
+    private DefaultCamelContext _camelContext;
+
+    private JmsUtils _jmsUtils;
+
+    private List<BatchJob> _jobs;
+
+
+    @Setup
+    public void setup() throws Exception {
+        ThreadUtil.start();
+        _camelContext = new DefaultCamelContext();
+        _camelContext.addComponent("jms", new StubComponent());
+        _camelContext.start();
+
+        var mockPropertiesUtil = mock(PropertiesUtil.class);
+        var mockInProgressJobs = mock(InProgressBatchJobsService.class);
+        _jmsUtils = new JmsUtils(mockPropertiesUtil, mockInProgressJobs, _camelContext);
+
+        var pipelineElements = createPipelineElements();
+        _jobs = IntStream.rangeClosed(1, jobCount)
+                .mapToObj(jobId -> {
+                    var job = mock(BatchJob.class);
+                    when(job.getId())
+                            .thenReturn((long) jobId);
+                    when(job.getPipelineElements())
+                            .thenReturn(pipelineElements);
+                    when(mockInProgressJobs.getJob(jobId))
+                            .thenReturn(job);
+                    return job;
+                })
+                .collect(toList());
+    }
+
+
+    @TearDown
+    public void tearDown() throws Exception {
+        _camelContext.stop();
+        ThreadUtil.shutdown();
+    }
+
+
+    @Benchmark
+    public int perJobRoutes() throws Exception {
+        for (BatchJob job : _jobs) {
+            addCancellationRoutes(job);
+        }
+        int routeCount = _camelContext.getRoutes().size();
+        for (BatchJob job : _jobs) {
+            destroyCancellationRoutes(job.getId());
+        }
+        return routeCount;
+    }
+
+
+    @Benchmark
+    public boolean sharedCancelledJobSet() throws Exception {
+        for (BatchJob job : _jobs) {
+            _jmsUtils.cancel(job.getId());
+        }
+        _jmsUtils.drainCancelledRequests();
+        boolean lastCancelled = _jmsUtils.isCancelled(jobCount);
+        for (BatchJob job : _jobs) {
+            _jmsUtils.removeCancelledJob(job.getId());
+        }
+        return lastCancelled;
+    }
+
+
+    // The cancellation routes as they were created prior to the introduction of the shared cancelled job set.
+    private void addCancellationRoutes(BatchJob job) throws Exception {
+        _camelContext.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                for (Algorithm algorithm : job.getPipelineElements().getAlgorithms()) {
+                    String routeName = String.format("CANCEL [%s] %s %s REQUEST", job.getId(),
+                                                     algorithm.getActionType().name(), algorithm.getName());
+                    String routeUri = String.format("jms:MPF.%s_%s_REQUEST?selector=JobId%%3D%d",
+                                                    algorithm.getActionType().name(), algorithm.getName(),
+                                                    job.getId());
+                    from(routeUri)
+                            .routeId(routeName)
+                            .setExchangePattern(ExchangePattern.InOnly)
+                            .to("jms:MPF.CANCELLED_DETECTIONS");
+                }
+            }
+        });
+    }
+
+
+    private void destroyCancellationRoutes(long jobId) throws Exception {
+        String prefix = String.format("CANCEL [%s]", jobId);
+        for (Route route : new ArrayList<>(_camelContext.getRoutes())) {
+            if (route.getId().startsWith(prefix)) {
+                _camelContext.stopRoute(route.getId());
+                _camelContext.removeRoute(route.getId());
+            }
+        }
+    }
+
+
+    private static JobPipelineElements createPipelineElements() {
+        var algorithms = new ArrayList<Algorithm>();
+        var actions = new ArrayList<Action>();
+        for (int i = 0; i < ALGORITHM_COUNT; i++) {
+            var algorithm = new Algorithm("ALGO" + i, "desc", ActionType.DETECTION,
+                                          new Algorithm.Requires(List.of()),
+                                          new Algorithm.Provides(List.of(), List.of()),
+                                          true, true);
+            algorithms.add(algorithm);
+            actions.add(new Action("ACTION" + i, "desc", algorithm.getName(), List.of()));
+        }
+        var tasks = actions.stream()
+                .map(a -> new Task("TASK " + a.getName(), "desc", List.of(a.getName())))
+                .collect(toList());
+        var pipeline = new Pipeline("PIPELINE", "desc", tasks.stream().map(Task::getName).collect(toList()));
+        return new JobPipelineElements(pipeline, tasks, actions, algorithms);
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(JmsCancellationBenchmark.class.getSimpleName())
+                           .build())
+                .run();
+    }
+}
@@ -0,0 +1,336 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.util;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import spark.Spark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class TestCallbackOutbox {
+
+    private static final int PORT = 5001;
+
+    private static final URI CALLBACK_URI = URI.create("http://127.0.0.1:" + PORT + "/callback");
+
+    private static final AtomicInteger FAILURES_REMAINING = new AtomicInteger();
+
+    private static final AtomicInteger CALLBACK_COUNT = new AtomicInteger();
+
+    private static final BlockingQueue<String> RECEIVED_BODIES = new LinkedBlockingQueue<>();
+
+    private static final Map<String, AtomicInteger> IN_FLIGHT_BY_HOST = new ConcurrentHashMap<>();
+
+    private static final Map<String, AtomicInteger> MAX_IN_FLIGHT_BY_HOST = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger IN_FLIGHT_TOTAL = new AtomicInteger();
+
+    private static final AtomicInteger MAX_IN_FLIGHT_TOTAL = new AtomicInteger();
+
+    private static CloseableHttpAsyncClient _httpClient;
+
+    @Rule
+    public TemporaryFolder _tempFolder = new TemporaryFolder();
+
+    private Path _journalDir;
+
+    private CallbackOutbox _outbox;
+
+
+    @BeforeClass
+    public static void initClass() {
+        Spark.port(PORT);
+        Spark.post("/callback", (req, resp) -> {
+            CALLBACK_COUNT.incrementAndGet();
+            if (FAILURES_REMAINING.getAndDecrement() > 0) {
+                Spark.halt(500);
+            }
+            RECEIVED_BODIES.add(req.body());
+            return "";
+        });
+        Spark.get("/slow", (req, resp) -> {
+            var hostInFlight = IN_FLIGHT_BY_HOST.computeIfAbsent(req.host(), h -> new AtomicInteger());
+            MAX_IN_FLIGHT_BY_HOST.computeIfAbsent(req.host(), h -> new AtomicInteger())
+                    .accumulateAndGet(hostInFlight.incrementAndGet(), Math::max);
+            MAX_IN_FLIGHT_TOTAL.accumulateAndGet(IN_FLIGHT_TOTAL.incrementAndGet(), Math::max);
+            Thread.sleep(200);
+            hostInFlight.decrementAndGet();
+            IN_FLIGHT_TOTAL.decrementAndGet();
+            return "";
+        });
+        Spark.awaitInitialization();
+        ThreadUtil.start();
+
+        _httpClient = HttpAsyncClients.custom()
+                .setMaxConnPerRoute(20)
+                .setMaxConnTotal(40)
+                .build();
+        _httpClient.start();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        _httpClient.close();
+        Spark.stop();
+        ThreadUtil.shutdown();
+    }
+
+
+    @Before
+    public void init() throws IOException {
+        FAILURES_REMAINING.set(0);
+        CALLBACK_COUNT.set(0);
+        RECEIVED_BODIES.clear();
+        IN_FLIGHT_BY_HOST.clear();
+        MAX_IN_FLIGHT_BY_HOST.clear();
+        IN_FLIGHT_TOTAL.set(0);
+        MAX_IN_FLIGHT_TOTAL.set(0);
+        _journalDir = _tempFolder.newFolder("callback-outbox").toPath();
+        _outbox = createOutbox(10, 10, 10);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        _outbox.close();
+    }
+
+
+    private CallbackOutbox createOutbox(int maxPerHost, int maxTotal, long retryDelayMs) throws IOException {
+        return new CallbackOutbox(_httpClient, new CallbackJournal(_journalDir), maxPerHost, maxTotal, null,
+                                  retryDelayMs, retryDelayMs * 4);
+    }
+
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for condition.", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+
+    private static CallbackRequest post(String body) {
+        return CallbackRequest.post(CALLBACK_URI, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    @Test
+    public void retriesUntilSuccessful() throws Exception {
+        FAILURES_REMAINING.set(2);
+
+        HttpResponse response = _outbox.send(post("hello"), 3).get(10, TimeUnit.SECONDS);
+
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertEquals(3, CALLBACK_COUNT.get());
+        assertEquals(List.of("hello"), new ArrayList<>(RECEIVED_BODIES));
+
+        _outbox.close();
+        _outbox = createOutbox(10, 10, 10);
+        assertEquals("Delivered callbacks should be removed from the journal.", 0, _outbox.resendPending(3));
+    }
+
+
+    @Test
+    public void returnsLastResponseWhenOutOfRetries() throws Exception {
+        FAILURES_REMAINING.set(Integer.MAX_VALUE);
+
+        HttpResponse response = _outbox.send(post("hello"), 2).get(10, TimeUnit.SECONDS);
+
+        assertEquals(500, response.getStatusLine().getStatusCode());
+        assertEquals(3, CALLBACK_COUNT.get());
+
+        _outbox.close();
+        _outbox = createOutbox(10, 10, 10);
+        assertEquals("Abandoned callbacks should be removed from the journal.", 0, _outbox.resendPending(3));
+    }
+
+
+    @Test
+    public void failsWhenReceiverIsUnreachable() throws Exception {
+        var request = CallbackRequest.get(URI.create("http://127.0.0.1:1/callback"));
+        try {
+            _outbox.send(request, 1).get(10, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+
+    @Test
+    public void resendsPendingCallbacksAfterRestart() throws Exception {
+        FAILURES_REMAINING.set(Integer.MAX_VALUE);
+        _outbox.close();
+        _outbox = createOutbox(10, 10, 60_000);
+
+        var future = _outbox.send(post("survives restart"), 5);
+        awaitCondition(() -> CALLBACK_COUNT.get() == 1);
+        // Simulates the Workflow Manager stopping while waiting to retry.
+        _outbox.close();
+        assertFalse(future.isDone());
+
+        FAILURES_REMAINING.set(0);
+        _outbox = createOutbox(10, 10, 10);
+        assertEquals(1, _outbox.resendPending(5));
+        assertEquals("survives restart", RECEIVED_BODIES.poll(10, TimeUnit.SECONDS));
+    }
+
+
+    @Test
+    public void ignoresPartiallyWrittenRecord() throws Exception {
+        try (var journal = new CallbackJournal(_journalDir)) {
+            journal.add(post("first")).get();
+            journal.add(post("second")).get();
+        }
+        Path journalPath = _journalDir.resolve(CallbackJournal.FILE_NAME);
+        long size = Files.size(journalPath);
+        try (var channel = Files.newByteChannel(journalPath, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        try (var journal = new CallbackJournal(_journalDir)) {
+            var replayed = journal.takeReplayedCallbacks();
+            assertEquals(1, replayed.size());
+            CallbackRequest request = replayed.values().iterator().next();
+            assertEquals("POST", request.getMethod());
+            assertEquals(CALLBACK_URI, request.getUri());
+            assertEquals("first", new String(request.getBody().orElseThrow(), StandardCharsets.UTF_8));
+
+            // The journal should still be usable after discarding the partial record.
+            journal.add(post("third")).get();
+        }
+
+        try (var journal = new CallbackJournal(_journalDir)) {
+            assertEquals(2, journal.takeReplayedCallbacks().size());
+        }
+    }
+
+
+    @Test
+    public void limitsConcurrencyPerHostAndTotal() throws Exception {
+        _outbox.close();
+        _outbox = createOutbox(2, 3, 10);
+
+        var futures = new ArrayList<CompletableFuture<HttpResponse>>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(_outbox.send(CallbackRequest.get(URI.create("http://127.0.0.1:" + PORT + "/slow")), 0));
+        }
+        for (int i = 0; i < 3; i++) {
+            futures.add(_outbox.send(CallbackRequest.get(URI.create("http://localhost:" + PORT + "/slow")), 0));
+        }
+        for (var future : futures) {
+            assertEquals(200, future.get(10, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+        }
+
+        assertTrue(MAX_IN_FLIGHT_BY_HOST.get("127.0.0.1:" + PORT).get() <= 2);
+        assertTrue(MAX_IN_FLIGHT_BY_HOST.get("localhost:" + PORT).get() <= 2);
+        // Reaching the total limit requires requests to both hosts to be in flight at the same time.
+        assertEquals(3, MAX_IN_FLIGHT_TOTAL.get());
+    }
+
+
+    @Test
+    public void onlySendsLatestQueuedHealthReport() throws Exception {
+        _outbox.close();
+        _outbox = createOutbox(1, 1, 10);
+
+        // Occupies the only slot, so the health reports have to wait.
+        var slowFuture = _outbox.send(CallbackRequest.get(URI.create("http://127.0.0.1:" + PORT + "/slow")), 0);
+        awaitCondition(() -> IN_FLIGHT_TOTAL.get() == 1);
+
+        var future1 = _outbox.sendLatestOnly(post("report 1"), Set.of(1L));
+        var future2 = _outbox.sendLatestOnly(post("report 2"), Set.of(1L));
+        var future3 = _outbox.sendLatestOnly(post("report 3"), Set.of(1L));
+
+        assertEquals(200, slowFuture.get(10, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+        assertEquals(200, future3.get(10, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+        assertSame(future1, future2);
+        assertSame(future2, future3);
+        assertEquals(List.of("report 3"), new ArrayList<>(RECEIVED_BODIES));
+    }
+
+
+    @Test
+    public void keepsLatestHealthReportForEachSetOfJobs() throws Exception {
+        _outbox.close();
+        _outbox = createOutbox(1, 1, 10);
+
+        // Occupies the only slot, so the health reports have to wait.
+        var slowFuture = _outbox.send(CallbackRequest.get(URI.create("http://127.0.0.1:" + PORT + "/slow")), 0);
+        awaitCondition(() -> IN_FLIGHT_TOTAL.get() == 1);
+
+        var job1Future = _outbox.sendLatestOnly(post("job 1 report 1"), Set.of(1L));
+        var job2Future = _outbox.sendLatestOnly(post("job 2 report 1"), Set.of(2L));
+        var job1LatestFuture = _outbox.sendLatestOnly(post("job 1 report 2"), Set.of(1L));
+
+        assertEquals(200, slowFuture.get(10, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+        assertEquals(200, job1LatestFuture.get(10, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+        assertEquals(200, job2Future.get(10, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+        assertSame(job1Future, job1LatestFuture);
+        assertNotSame(job1Future, job2Future);
+        assertEquals(Set.of("job 1 report 2", "job 2 report 1"), new HashSet<>(RECEIVED_BODIES));
+    }
+
+
+    @Test
+    public void cancelsCallbacksSentAfterClose() throws Exception {
+        _outbox.close();
+
+        CompletableFuture<HttpResponse> durableFuture = _outbox.send(post("after close"), 3);
+        CompletableFuture<HttpResponse> latestOnlyFuture = _outbox.sendLatestOnly(post("after close"), Set.of(1L));
+        for (var future : List.of(durableFuture, latestOnlyFuture)) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("Expected CancellationException");
+            }
+            catch (CancellationException expected) {
+            }
+        }
+        assertEquals(0, CALLBACK_COUNT.get());
+    }
+}
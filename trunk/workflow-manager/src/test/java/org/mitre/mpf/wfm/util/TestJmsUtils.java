@@ -0,0 +1,286 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.util;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.camel.component.ActiveMQComponent;
+import org.apache.camel.CamelContext;
+import org.apache.camel.ConsumerTemplate;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.Route;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mitre.mpf.rest.api.pipelines.*;
+import org.mitre.mpf.wfm.data.InProgressBatchJobsService;
+import org.mitre.mpf.wfm.data.entities.persistent.BatchJob;
+import org.mitre.mpf.wfm.data.entities.persistent.JobPipelineElements;
+import org.mitre.mpf.wfm.enums.MpfEndpoints;
+import org.mitre.mpf.wfm.enums.MpfHeaders;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestJmsUtils {
+
+    private static final String DETECTION_REQUEST_QUEUE = "jms:MPF.DETECTION_TEST_REQUEST";
+
+    private static final String MARKUP_REQUEST_QUEUE = "jms:MPF.MARKUP_TEST_MARKUP_REQUEST";
+
+    private static final String DETECTION_ROUTE_ID = "CANCEL MPF.DETECTION_TEST_REQUEST";
+
+    private static final String MARKUP_ROUTE_ID = "CANCEL MPF.MARKUP_TEST_MARKUP_REQUEST";
+
+    private final PropertiesUtil _mockPropertiesUtil = mock(PropertiesUtil.class);
+
+    private final InProgressBatchJobsService _mockInProgressJobs = mock(InProgressBatchJobsService.class);
+
+    private final CamelContext _mockCamelContext = mock(CamelContext.class);
+
+    private final JmsUtils _jmsUtils = new JmsUtils(_mockPropertiesUtil, _mockInProgressJobs, _mockCamelContext);
+
+    // Only used by the tests that run against an embedded broker.
+    private BrokerService _broker;
+
+    private DefaultCamelContext _brokerCamelContext;
+
+    private ConsumerTemplate _brokerConsumerTemplate;
+
+    private ProducerTemplate _brokerProducerTemplate;
+
+
+    @BeforeClass
+    public static void initClass() {
+        // Cancelled requests are drained on the ThreadUtil thread pool, which other tests shut down.
+        ThreadUtil.start();
+    }
+
+
+    @Before
+    public void init() {
+        var pipelineElements = createPipelineElements();
+        for (long jobId = 1; jobId <= 3; jobId++) {
+            var job = mock(BatchJob.class);
+            when(job.getId())
+                    .thenReturn(jobId);
+            when(job.getPipelineElements())
+                    .thenReturn(pipelineElements);
+            when(_mockInProgressJobs.getJob(jobId))
+                    .thenReturn(job);
+        }
+    }
+
+
+    @Test
+    public void doesNotRedirectWorkForActiveJobs() {
+        String recipientQueue = "jms:MPF.DETECTION_TEST_REQUEST";
+        assertFalse(_jmsUtils.isCancelled(1));
+        assertEquals(recipientQueue, _jmsUtils.getRecipientQueue(1, recipientQueue));
+    }
+
+
+    @Test
+    public void redirectsWorkForCancelledJobs() {
+        _jmsUtils.cancel(1);
+
+        assertTrue(_jmsUtils.isCancelled(1));
+        assertEquals(MpfEndpoints.CANCELLED_DETECTIONS,
+                     _jmsUtils.getRecipientQueue(1, "jms:MPF.DETECTION_TEST_REQUEST"));
+        assertEquals(MpfEndpoints.CANCELLED_MARKUPS,
+                     _jmsUtils.getRecipientQueue(1, "jms:MPF.MARKUP_TEST_MARKUP_REQUEST"));
+
+        assertEquals("jms:MPF.DETECTION_TEST_REQUEST",
+                     _jmsUtils.getRecipientQueue(2, "jms:MPF.DETECTION_TEST_REQUEST"));
+    }
+
+
+    @Test
+    public void stopsTrackingJobOnceItCompletes() {
+        _jmsUtils.cancel(1);
+        _jmsUtils.removeCancelledJob(1);
+
+        assertFalse(_jmsUtils.isCancelled(1));
+        assertEquals("jms:MPF.DETECTION_TEST_REQUEST",
+                     _jmsUtils.getRecipientQueue(1, "jms:MPF.DETECTION_TEST_REQUEST"));
+    }
+
+
+    @Test
+    public void movesQueuedAndLateRequestsForCancelledJobs() throws Exception {
+        var jmsUtils = startBroker();
+        sendRequest(DETECTION_REQUEST_QUEUE, 1);
+        sendRequest(DETECTION_REQUEST_QUEUE, 2);
+        sendRequest(DETECTION_REQUEST_QUEUE, 1);
+
+        jmsUtils.cancel(1);
+        assertEquals(1, receiveJobId(MpfEndpoints.CANCELLED_DETECTIONS));
+        assertEquals(1, receiveJobId(MpfEndpoints.CANCELLED_DETECTIONS));
+
+        // A request that reaches the queue after the job was cancelled.
+        sendRequest(DETECTION_REQUEST_QUEUE, 1);
+        assertEquals(1, receiveJobId(MpfEndpoints.CANCELLED_DETECTIONS));
+
+        assertNull(_brokerConsumerTemplate.receive(MpfEndpoints.CANCELLED_DETECTIONS, 500));
+        assertEquals(2, receiveJobId(DETECTION_REQUEST_QUEUE));
+    }
+
+
+    @Test
+    public void usesOneSelectorRoutePerQueueForAllCancelledJobs() throws Exception {
+        var jmsUtils = startBroker();
+        jmsUtils.cancel(1);
+        jmsUtils.cancel(2);
+        jmsUtils.cancel(3);
+        waitForRoute(DETECTION_ROUTE_ID, uri -> uri.contains("JobId%3D1") && uri.contains("JobId%3D2")
+                && uri.contains("JobId%3D3"));
+        waitForRoute(MARKUP_ROUTE_ID, uri -> uri.contains("JobId%3D3"));
+
+        sendRequest(DETECTION_REQUEST_QUEUE, 2);
+        sendRequest(MARKUP_REQUEST_QUEUE, 3);
+        assertEquals(2, receiveJobId(MpfEndpoints.CANCELLED_DETECTIONS));
+        assertEquals(3, receiveJobId(MpfEndpoints.CANCELLED_MARKUPS));
+
+        long cancellationRouteCount = _brokerCamelContext.getRoutes().stream()
+                .filter(r -> r.getId().startsWith("CANCEL "))
+                .count();
+        assertEquals(2, cancellationRouteCount);
+    }
+
+
+    @Test
+    public void stopsMovingRequestsOnceCancelledJobCompletes() throws Exception {
+        var jmsUtils = startBroker();
+        jmsUtils.cancel(1);
+        jmsUtils.cancel(2);
+        waitForRoute(DETECTION_ROUTE_ID, uri -> uri.contains("JobId%3D2"));
+
+        jmsUtils.removeCancelledJob(2);
+        waitForRoute(DETECTION_ROUTE_ID, uri -> !uri.contains("JobId%3D2"));
+
+        sendRequest(DETECTION_REQUEST_QUEUE, 2);
+        assertEquals(2, receiveJobId(DETECTION_REQUEST_QUEUE));
+
+        jmsUtils.removeCancelledJob(1);
+        waitForRouteRemoval(DETECTION_ROUTE_ID);
+        sendRequest(DETECTION_REQUEST_QUEUE, 1);
+        assertEquals(1, receiveJobId(DETECTION_REQUEST_QUEUE));
+    }
+
+
+    private JmsUtils startBroker() throws Exception {
+        _broker = new BrokerService();
+        _broker.setBrokerName("TestJmsUtils");
+        _broker.setPersistent(false);
+        _broker.setUseJmx(false);
+        _broker.start();
+        _broker.waitUntilStarted();
+
+        _brokerCamelContext = new DefaultCamelContext();
+        _brokerCamelContext.addComponent(
+                "jms", ActiveMQComponent.activeMQComponent("vm://TestJmsUtils?create=false"));
+        _brokerCamelContext.start();
+        _brokerConsumerTemplate = _brokerCamelContext.createConsumerTemplate();
+        _brokerProducerTemplate = _brokerCamelContext.createProducerTemplate();
+        return new JmsUtils(_mockPropertiesUtil, _mockInProgressJobs, _brokerCamelContext);
+    }
+
+
+    @After
+    public void stopBroker() throws Exception {
+        if (_brokerCamelContext != null) {
+            _brokerCamelContext.stop();
+        }
+        if (_broker != null) {
+            _broker.stop();
+            _broker.waitUntilStopped();
+        }
+    }
+
+
+    private void sendRequest(String queue, long jobId) {
+        _brokerProducerTemplate.sendBodyAndHeader(queue, "job " + jobId, MpfHeaders.JOB_ID, jobId);
+    }
+
+
+    private long receiveJobId(String queue) {
+        Exchange exchange = _brokerConsumerTemplate.receive(queue, 5000);
+        assertNotNull("Did not receive a message from " + queue, exchange);
+        return exchange.getIn().getHeader(MpfHeaders.JOB_ID, Long.class);
+    }
+
+
+    // Cancellation routes are created and removed asynchronously.
+    private void waitForRoute(String routeId, Predicate<String> uriPredicate) throws InterruptedException {
+        waitFor(routeId, () -> {
+            Route route = _brokerCamelContext.getRoute(routeId);
+            return route != null && uriPredicate.test(route.getEndpoint().getEndpointUri());
+        });
+    }
+
+
+    private void waitForRouteRemoval(String routeId) throws InterruptedException {
+        waitFor(routeId, () -> _brokerCamelContext.getRoute(routeId) == null);
+    }
+
+
+    private static void waitFor(String routeId, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for route " + routeId, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+
+    private static JobPipelineElements createPipelineElements() {
+        var detectionAlgo = new Algorithm("TEST", "desc", ActionType.DETECTION,
+                                          new Algorithm.Requires(List.of()),
+                                          new Algorithm.Provides(List.of(), List.of()),
+                                          true, true);
+        var markupAlgo = new Algorithm("TEST_MARKUP", "desc", ActionType.MARKUP,
+                                       new Algorithm.Requires(List.of()),
+                                       new Algorithm.Provides(List.of(), List.of()),
+                                       true, true);
+        var detectionAction = new Action("TEST ACTION", "desc", detectionAlgo.getName(), List.of());
+        var markupAction = new Action("TEST MARKUP ACTION", "desc", markupAlgo.getName(), List.of());
+        var detectionTask = new Task("TEST TASK", "desc", List.of(detectionAction.getName()));
+        var markupTask = new Task("TEST MARKUP TASK", "desc", List.of(markupAction.getName()));
+        var pipeline = new Pipeline("TEST PIPELINE", "desc",
+                                    List.of(detectionTask.getName(), markupTask.getName()));
+        return new JobPipelineElements(pipeline, List.of(detectionTask, markupTask),
+                                       List.of(detectionAction, markupAction),
+                                       List.of(detectionAlgo, markupAlgo));
+    }
+}
@@ -0,0 +1,113 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TestMediaIngestBodySubscriber {
+
+    @Rule
+    public TemporaryFolder _tempFolder = new TemporaryFolder();
+
+
+    @BeforeClass
+    public static void initClass() {
+        // The idle timeout is checked on the ThreadUtil thread pool, which other tests shut down.
+        ThreadUtil.start();
+    }
+
+
+    @Test
+    public void writesBodyToFile() throws Exception {
+        var destination = _tempFolder.getRoot().toPath().resolve("subdir/media.txt");
+        var subscriber = new MediaIngestBodySubscriber(destination, Duration.ofMinutes(1));
+        var subscription = mock(Flow.Subscription.class);
+
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(List.of(ByteBuffer.wrap("hello ".getBytes()), ByteBuffer.wrap("world".getBytes())));
+        subscriber.onComplete();
+
+        var body = subscriber.getBody().toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertSame(subscriber, body);
+        assertEquals("hello world", Files.readString(destination));
+        assertEquals(DigestUtils.sha256Hex("hello world"), subscriber.getSha256());
+        assertArrayEquals("hello world".getBytes(), subscriber.getHeader());
+        verify(subscription, times(2))
+                .request(1);
+        verify(subscription, never())
+                .cancel();
+    }
+
+
+    @Test
+    public void ignoresSignalsAfterIdleTimeout() throws Exception {
+        var destination = _tempFolder.getRoot().toPath().resolve("media.txt");
+        var subscriber = new MediaIngestBodySubscriber(destination, Duration.ofMillis(50));
+        var subscription = mock(Flow.Subscription.class);
+
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(List.of(ByteBuffer.wrap("hello".getBytes())));
+        try {
+            subscriber.getBody().toCompletableFuture().get(5, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HttpTimeoutException);
+        }
+        verify(subscription)
+                .cancel();
+
+        // Signals that were already in flight when the subscription was cancelled must not write to the closed
+        // channel or replace the timeout error.
+        subscriber.onNext(List.of(ByteBuffer.wrap(" world".getBytes())));
+        subscriber.onError(new IllegalStateException("late error"));
+        subscriber.onComplete();
+
+        assertEquals("hello", Files.readString(destination));
+        assertNull(subscriber.getSha256());
+        verify(subscription, times(2))
+                .request(1);
+        verify(subscription)
+                .cancel();
+    }
+}
@@ -0,0 +1,91 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+import org.mitre.mpf.test.TestUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestMediaIngestStream {
+
+    private final IoUtils _ioUtils = new IoUtils();
+
+
+    @Test
+    public void hashesAndCapturesHeaderWhileCopying() throws IOException {
+        byte[] content = new byte[3 * MediaIngestStream.HEADER_SIZE + 17];
+        new Random(42).nextBytes(content);
+
+        var out = new ByteArrayOutputStream();
+        var ingestStream = new MediaIngestStream(new ByteArrayInputStream(content));
+        assertEquals(content.length, ingestStream.copyTo(out));
+
+        assertArrayEquals(content, out.toByteArray());
+        assertEquals(DigestUtils.sha256Hex(content), ingestStream.getSha256());
+        assertEquals(DigestUtils.sha256Hex(content), ingestStream.getSha256());
+        assertArrayEquals(Arrays.copyOf(content, MediaIngestStream.HEADER_SIZE), ingestStream.getHeader());
+    }
+
+
+    @Test
+    public void hashesSkippedAndSingleByteReads() throws IOException {
+        byte[] content = "hello world".getBytes();
+        var ingestStream = new MediaIngestStream(new ByteArrayInputStream(content));
+        assertEquals('h', ingestStream.read());
+        assertEquals(4, ingestStream.skip(4));
+        ingestStream.copyTo(new ByteArrayOutputStream());
+
+        assertEquals(DigestUtils.sha256Hex(content), ingestStream.getSha256());
+        assertArrayEquals(content, ingestStream.getHeader());
+    }
+
+
+    @Test
+    public void detectsSameMimeTypeAsFullFile() throws IOException {
+        String[] samples = { "/samples/meds1.jpg", "/samples/video_01.mp4", "/samples/green.wav",
+                "/samples/mpeg_vid.mpg", "/samples/five-second-marathon-clip.mkv" };
+        for (String sample : samples) {
+            Path path = Paths.get(TestUtil.findFile(sample));
+            MediaIngestStream ingestStream = MediaIngestStream.readFile(path);
+
+            assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(path)), ingestStream.getSha256());
+            assertEquals(sample, _ioUtils.getMimeType(path),
+                         _ioUtils.getMimeType(ingestStream.getHeader(), path.getFileName().toString()));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/******************************************************************************
+ * NOTICE                                                                     *
+ *                                                                            *
+ * This software (or technical data) was produced for the U.S. Government     *
+ * under contract, and is subject to the Rights in Data-General Clause        *
+ * 52.227-14, Alt. IV (DEC 2007).                                             *
+ *                                                                            *
+ * Copyright 2020 The MITRE Corporation. All Rights Reserved.                 *
+ ******************************************************************************/
+
+/******************************************************************************
+ * Copyright 2020 The MITRE Corporation                                       *
+ *                                                                            *
+ * Licensed under the Apache License, Version 2.0 (the "License");            *
+ * you may not use this file except in compliance with the License.           *
+ * You may obtain a copy of the License at                                    *
+ *                                                                            *
+ *    http://www.apache.org/licenses/LICENSE-2.0                              *
+ *                                                                            *
+ * Unless required by applicable law or agreed to in writing, software        *
+ * distributed under the License is distributed on an "AS IS" BASIS,          *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   *
+ * See the License for the specific language governing permissions and        *
+ * limitations under the License.                                             *
+ ******************************************************************************/
+
+package org.mitre.mpf.wfm.util;
+
+import org.junit.Test;
+import org.mitre.mpf.test.TestUtil;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class TestThreadUtil {
+
+    @Test
+    public void forEachInParallelProcessesAllItems() {
+        List<Integer> items = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        Set<Integer> processed = ConcurrentHashMap.newKeySet();
+
+        ThreadUtil.forEachInParallel(items, 4, processed::add);
+
+        assertEquals(Set.copyOf(items), processed);
+    }
+
+
+    @Test
+    public void forEachInParallelLimitsThreadCount() {
+        var current = new AtomicInteger();
+        var max = new AtomicInteger();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        ThreadUtil.forEachInParallel(IntStream.range(0, 50).boxed().collect(Collectors.toList()), 3, i -> {
+            threads.add(Thread.currentThread());
+            max.accumulateAndGet(current.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(2);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            current.decrementAndGet();
+        });
+
+        assertTrue(max.get() <= 3);
+        assertTrue(threads.size() <= 3);
+        assertTrue(threads.contains(Thread.currentThread()));
+    }
+
+
+    @Test
+    public void forEachInParallelUsesCallingThreadWhenOnlyOneThread() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        ThreadUtil.forEachInParallel(List.of(1, 2, 3), 1, i -> threads.add(Thread.currentThread()));
+
+        assertEquals(Set.of(Thread.currentThread()), threads);
+    }
+
+
+    @Test
+    public void forEachInParallelRethrowsException() {
+        var processedCount = new AtomicInteger();
+        List<Integer> items = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+
+        var exception = TestUtil.assertThrows(IllegalStateException.class, () ->
+                ThreadUtil.forEachInParallel(items, 4, i -> {
+                    if (i == 10) {
+                        throw new IllegalStateException("intentional");
+                    }
+                    processedCount.incrementAndGet();
+                }));
+
+        assertEquals("intentional", exception.getMessage());
+        assertTrue(processedCount.get() < items.size() - 1);
+    }
+}